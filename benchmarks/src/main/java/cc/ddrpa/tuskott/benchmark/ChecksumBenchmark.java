@@ -0,0 +1,65 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.tus.ChecksumAlgorithmSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过 DigestInputStream 读取一个 chunk 并计算摘要的耗时，与 patchWithChecksum 的用法一致
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    @Param({"sha1", "sha256", "md5", "crc32c", "xxh64"})
+    public String algorithm;
+
+    @Param({"1048576"})
+    public int chunkSize;
+
+    private ByteArrayInputStream chunk;
+    private final byte[] buffer = new byte[8192];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] data = new byte[chunkSize];
+        new Random(42).nextBytes(data);
+        chunk = new ByteArrayInputStream(data);
+    }
+
+    @Benchmark
+    public void digest(Blackhole blackhole) throws Exception {
+        chunk.reset();
+        MessageDigest messageDigest = ChecksumAlgorithmSelector.getMessageDigest(algorithm);
+        try {
+            DigestInputStream digestInputStream = new DigestInputStream(chunk, messageDigest);
+            while (digestInputStream.read(buffer) >= 0) {
+                // 只为计算摘要
+            }
+            blackhole.consume(messageDigest.digest());
+        } finally {
+            ChecksumAlgorithmSelector.recycle(algorithm, messageDigest);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.tus.storage.CompressingStorage;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * CompressingStorage 节省的 I/O 与花费的 CPU
+ * <p>
+ * plain 直接写入 LocalDiskStorage，compressed 经过 CompressingStorage 写入同样的 LocalDiskStorage，
+ * 两者每次都先回退到 0 再从头写入，耗时之差即压缩带来的额外开销。
+ * 每轮结束时根据 CompressingStorage 的计数器输出压缩率、每 MiB 的压缩耗时以及每毫秒压缩耗时换来的少写入的字节数，
+ * 用于和目标磁盘的写入带宽比较。
+ * 写入通常只到达页缓存，因此 plain 的耗时是磁盘足够快时的下限。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressingStorageBenchmark {
+
+    private static final String RESOURCE_ID = "benchmark";
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // text 为日志格式的文本，random 为无法压缩的随机数据
+    @Param({"text", "random"})
+    public String data;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private Path plainDir;
+    private Path compressedDir;
+    private LocalDiskStorage plainStorage;
+    private CompressingStorage compressingStorage;
+    private ByteArrayInputStream chunk;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plainDir = Files.createTempDirectory("tuskott-benchmark");
+        compressedDir = Files.createTempDirectory("tuskott-benchmark");
+        plainStorage = new LocalDiskStorage(Map.of("dir", plainDir.toString()));
+        plainStorage.create(RESOURCE_ID);
+        compressingStorage = new CompressingStorage(
+                new LocalDiskStorage(Map.of("dir", compressedDir.toString())), 256 * 1024, level);
+        compressingStorage.create(RESOURCE_ID);
+        chunk = new ByteArrayInputStream("text".equals(data) ? logLines() : randomBytes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        long rawBytes = compressingStorage.getRawBytes();
+        long storedBytes = compressingStorage.getStoredBytes();
+        long compressionNanos = compressingStorage.getCompressionNanos();
+        if (rawBytes > 0 && compressionNanos > 0) {
+            System.out.printf("%nCompressingStorage data=%s level=%d: stored/raw = %.3f, "
+                            + "compression = %.1f us/MiB, saved = %.1f KiB per ms of compression%n",
+                    data, level, (double) storedBytes / rawBytes,
+                    compressionNanos / 1_000.0 / ((double) rawBytes / CHUNK_SIZE),
+                    (rawBytes - storedBytes) / 1024.0 / (compressionNanos / 1_000_000.0));
+        }
+        plainStorage.remove(RESOURCE_ID);
+        compressingStorage.remove(RESOURCE_ID);
+        for (Path dir : new Path[]{plainDir, compressedDir}) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public Long plain() throws Exception {
+        chunk.reset();
+        // 与 compressed 相同，先截断到 0 再从头写入，两者的差值中不包含截断文件的开销
+        plainStorage.rollback(RESOURCE_ID, 0L);
+        return plainStorage.write(RESOURCE_ID, chunk, 0L);
+    }
+
+    @Benchmark
+    public Long compressed() throws Exception {
+        chunk.reset();
+        // 回退到 0 后从头写入，避免文件无限增长
+        compressingStorage.rollback(RESOURCE_ID, 0L);
+        return compressingStorage.write(RESOURCE_ID, chunk, 0L);
+    }
+
+    private static byte[] logLines() {
+        Random random = new Random(42);
+        String[] levels = {"INFO", "INFO", "INFO", "WARN", "DEBUG"};
+        String[] paths = {"/api/orders", "/api/users", "/tus/files", "/health"};
+        StringBuilder text = new StringBuilder(CHUNK_SIZE + 256);
+        while (text.length() < CHUNK_SIZE) {
+            text.append("2026-10-19T08:").append(10 + random.nextInt(50)).append(':')
+                    .append(10 + random.nextInt(50)).append('.').append(100 + random.nextInt(900))
+                    .append("Z ").append(levels[random.nextInt(levels.length)])
+                    .append(" [http-nio-8080-exec-").append(random.nextInt(200)).append("] ")
+                    .append("GET ").append(paths[random.nextInt(paths.length)])
+                    .append(" status=200 bytes=").append(random.nextInt(1 << 20))
+                    .append(" elapsed=").append(random.nextInt(500)).append("ms\n");
+        }
+        byte[] bytes = new byte[CHUNK_SIZE];
+        System.arraycopy(text.toString().getBytes(StandardCharsets.US_ASCII), 0, bytes, 0, CHUNK_SIZE);
+        return bytes;
+    }
+
+    private static byte[] randomBytes() {
+        byte[] bytes = new byte[CHUNK_SIZE];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
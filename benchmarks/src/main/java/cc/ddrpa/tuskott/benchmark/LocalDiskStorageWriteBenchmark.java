@@ -0,0 +1,76 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * LocalDiskStorage.write 在不同读写缓冲区与 chunk 大小下的耗时
+ * <p>
+ * 每次都从偏移量 0 覆盖写入同一个文件，避免测试过程中文件无限增长
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalDiskStorageWriteBenchmark {
+
+    private static final String RESOURCE_ID = "benchmark";
+
+    @Param({"1024", "8192", "65536"})
+    public int bufferSize;
+
+    @Param({"65536", "1048576", "8388608"})
+    public int chunkSize;
+
+    private Path dir;
+    private LocalDiskStorage storage;
+    private ByteArrayInputStream chunk;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("tuskott-benchmark");
+        storage = new LocalDiskStorage(Map.of("dir", dir.toString(), "buffer-size", bufferSize));
+        storage.create(RESOURCE_ID);
+        byte[] data = new byte[chunkSize];
+        new Random(42).nextBytes(data);
+        chunk = new ByteArrayInputStream(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.remove(RESOURCE_ID);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Long write() throws Exception {
+        chunk.reset();
+        return storage.write(RESOURCE_ID, chunk, 0L);
+    }
+}
@@ -0,0 +1,60 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多个线程争用 InMemoryLockProvider 时加锁与释放的耗时
+ * <p>
+ * keys 为 1 时所有线程争用同一个上传，keys 越大争用越少
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LockProviderBenchmark {
+
+    @Param({"1", "16", "1024"})
+    public int keys;
+
+    private InMemoryLockProvider lockProvider;
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lockProvider = new InMemoryLockProvider(Map.of());
+        ids = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            ids[i] = "%032x".formatted(i);
+        }
+    }
+
+    @Benchmark
+    public boolean acquireAndRelease() {
+        String id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        boolean acquired = lockProvider.acquire(id);
+        if (acquired) {
+            lockProvider.release(id);
+        }
+        return acquired;
+    }
+}
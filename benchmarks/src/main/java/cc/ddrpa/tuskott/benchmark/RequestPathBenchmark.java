@@ -0,0 +1,201 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.TuskottProcessor;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经过 TuskottProcessor 的 HEAD 与 PATCH 请求的耗时与分配量，关注 gc.alloc.rate.norm
+ * <p>
+ * 存储只读取并丢弃请求体，排除磁盘的影响。请求与响应使用 spring-test 的 mock 对象并在每次调用之间复用，
+ * 请求体换成可重置的流（mock 自带的流逐字节读取，耗时会掩盖 tuskott 自身的开销）。
+ * {@link #requestSetupOnly()} 只做同样的 mock 准备工作，PATCH 的结果减去它即为 tuskott 自身的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestPathBenchmark {
+
+    private static final String RESOURCE_ID = "benchmark";
+    private static final String METADATA =
+            "filename d29ybGRfZG9taW5hdGlvbl9wbGFuLnBkZg==,filetype YXBwbGljYXRpb24vcGRm,tenant YWNtZQ==";
+
+    @Param({"4096"})
+    public int chunkSize;
+
+    /**
+     * 开启不限速的带宽控制，每个 PATCH 都需要从 Upload-Metadata 中读取租户
+     */
+    @Param({"false", "true"})
+    public boolean bandwidth;
+
+    private TuskottProcessor processor;
+    private MockHttpServletRequest headRequest;
+    private ChunkRequest patchRequest;
+    private MockHttpServletResponse response;
+    private byte[] chunk;
+    private long offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryUploadResourceTracker tracker = new InMemoryUploadResourceTracker(Map.of());
+        tracker.create(RESOURCE_ID, Long.MAX_VALUE / 2, METADATA);
+        TuskottProperties properties = new TuskottProperties();
+        properties.getBandwidth().setEnable(bandwidth);
+        processor = new TuskottProcessor(properties, tracker, new DiscardingStorage(),
+                new InMemoryLockProvider(Map.of()));
+        headRequest = new MockHttpServletRequest("HEAD", "/tus/files/" + RESOURCE_ID);
+        headRequest.addHeader("Tus-Resumable", "1.0.0");
+        chunk = new byte[chunkSize];
+        patchRequest = new ChunkRequest(chunk);
+        patchRequest.addHeader("Tus-Resumable", "1.0.0");
+        patchRequest.setContentType("application/offset+octet-stream");
+        response = new MockHttpServletResponse();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processor.close();
+    }
+
+    @Benchmark
+    public int head() throws IOException {
+        response.reset();
+        processor.head(RESOURCE_ID, headRequest, response);
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public int patch() throws IOException {
+        preparePatch();
+        processor.patch(RESOURCE_ID, patchRequest, response);
+        offset += chunkSize;
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public int requestSetupOnly() {
+        preparePatch();
+        return response.getStatus();
+    }
+
+    private void preparePatch() {
+        response.reset();
+        patchRequest.removeHeader("Upload-Offset");
+        patchRequest.addHeader("Upload-Offset", offset);
+        patchRequest.rewind();
+    }
+
+    /**
+     * 请求体可以重置并重复读取的 PATCH 请求
+     */
+    private static class ChunkRequest extends MockHttpServletRequest {
+
+        private final ByteArrayInputStream body;
+        private final ServletInputStream inputStream;
+
+        ChunkRequest(byte[] chunk) {
+            super("PATCH", "/tus/files/" + RESOURCE_ID);
+            this.body = new ByteArrayInputStream(chunk);
+            this.inputStream = new ServletInputStream() {
+                @Override
+                public int read() {
+                    return body.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return body.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return body.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        void rewind() {
+            body.reset();
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return inputStream;
+        }
+    }
+
+    /**
+     * 只读取并丢弃请求体的存储
+     */
+    private static class DiscardingStorage implements Storage {
+
+        private final byte[] buffer = new byte[8192];
+
+        @Override
+        public void create(String resourceId) {
+        }
+
+        @Override
+        public Long write(String resourceId, InputStream inputStream, Long uploadOffset) throws IOException {
+            long transferred = 0L;
+            int n;
+            while ((n = inputStream.read(buffer)) >= 0) {
+                transferred += n;
+            }
+            return uploadOffset + transferred;
+        }
+
+        @Override
+        public void remove(List<String> resourceIds) {
+        }
+
+        @Override
+        public void remove(String resourceId) {
+        }
+
+        @Override
+        public InputStream streaming(String resourceId) {
+            return InputStream.nullInputStream();
+        }
+    }
+}
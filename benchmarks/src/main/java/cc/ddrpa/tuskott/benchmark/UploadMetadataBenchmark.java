@@ -0,0 +1,54 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析 Upload-Metadata 的耗时
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadMetadataBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int pairs;
+
+    private UploadResource uploadResource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringJoiner metadata = new StringJoiner(",");
+        for (int i = 0; i < pairs; i++) {
+            String value = "value-" + i + "-" + "x".repeat(24);
+            metadata.add("key" + i + " "
+                    + Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)));
+        }
+        uploadResource = new UploadResource("benchmark", 1L << 20, metadata.toString());
+    }
+
+    @Benchmark
+    public Map<String, String> getMetadata() {
+        return uploadResource.getMetadata();
+    }
+}
@@ -0,0 +1,77 @@
+package cc.ddrpa.tuskott.benchmark;
+
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InMemoryUploadResourceTracker 在保存 10^6 个上传计划时的查询与更新耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(4)
+public class UploadResourceTrackerBenchmark {
+
+    private static final String METADATA = "filename d29ybGRfZG9taW5hdGlvbl9wbGFuLnBkZg==,filetype YXBwbGljYXRpb24vcGRm";
+
+    @Param({"1000000"})
+    public int entries;
+
+    private InMemoryUploadResourceTracker tracker;
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tracker = new InMemoryUploadResourceTracker(Map.of());
+        ids = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            ids[i] = "%032x".formatted(i);
+            tracker.create(ids[i], 1L << 30, METADATA);
+        }
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public UploadResource head() {
+        return tracker.head(randomId());
+    }
+
+    @Benchmark
+    public UploadResource patch() {
+        return tracker.patch(randomId(), ThreadLocalRandom.current().nextLong(1L << 30));
+    }
+
+    /**
+     * 创建并删除一个新的上传计划，表的大小保持不变
+     */
+    @Benchmark
+    public UploadResource createAndRemove() {
+        String id = "x" + Thread.currentThread().getId() + "-" + ThreadLocalRandom.current().nextLong();
+        UploadResource uploadResource = tracker.create(id, 1L << 20, METADATA);
+        tracker.remove(id);
+        return uploadResource;
+    }
+}
@@ -0,0 +1,132 @@
+package cc.ddrpa.tuskott.benchmark.loadtest;
+
+import cc.ddrpa.tuskott.tus.TuskottProcessor;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 端到端压测：启动内嵌 Tomcat 的 tuskott 服务，用多个模拟客户端并发上传，
+ * 随机断线续传并重放 PATCH，最后校验每个文件并输出吞吐量、PATCH 延迟、423/409 次数与堆内存占用
+ * <p>
+ * 客户端与服务端运行在同一个 JVM 中，堆内存包括客户端的 chunk 缓冲区（每个客户端一个 chunk 大小）
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Path dir = Files.createTempDirectory("tuskott-load-test");
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        AtomicLong peakHeap = new AtomicLong();
+        ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "load-test-heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heapSampler.scheduleAtFixedRate(
+                () -> peakHeap.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max),
+                0L, 50L, TimeUnit.MILLISECONDS);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadTestApplication.class)
+                .properties(
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "tuskott.behind-proxy.enable=false",
+                        "tuskott.storage.config.dir=" + dir)
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            Storage storage = context.getBean(TuskottProcessor.class).getStorage();
+            LoadTestStats stats = new LoadTestStats();
+            ExecutorService clients = Executors.newFixedThreadPool(options.clients());
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(options.clients());
+            for (int c = 0; c < options.clients(); c++) {
+                int clientIndex = c;
+                futures.add(clients.submit(() -> {
+                    SimulatedTusClient client = new SimulatedTusClient(port, options, stats, storage, clientIndex);
+                    for (int u = 0; u < options.uploadsPerClient(); u++) {
+                        client.upload(new Payload((long) clientIndex << 32 | u, options.fileSize()));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            clients.shutdown();
+            heapSampler.shutdown();
+            System.gc();
+            long retainedHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+            report(options, stats, elapsedNanos, peakHeap.get(), retainedHeap);
+        } finally {
+            context.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static void report(LoadTestOptions options, LoadTestStats stats, long elapsedNanos,
+                               long peakHeap, long retainedHeap) {
+        double seconds = elapsedNanos / 1e9;
+        long patches = stats.patches.sum();
+        System.out.printf("""
+                        clients=%d uploads-per-client=%d file-size=%d chunk-size=%d disconnect-rate=%.2f race-rate=%.2f
+                        elapsed                 %10.2f s
+                        uploads                 %10d completed, %d verified, %d corrupted, %d failed
+                        throughput              %10.2f MiB/s (%d bytes accepted)
+                        patch latency p50       %10.2f ms
+                        patch latency p99       %10.2f ms
+                        patch requests          %10d (%d raced, %d disconnects)
+                        HTTP 423                %10d (%.2f%%)
+                        HTTP 409                %10d (%.2f%%)
+                        HTTP 460                %10d
+                        other errors            %10d
+                        heap peak               %10.2f MiB
+                        heap after gc           %10.2f MiB
+                        """,
+                options.clients(), options.uploadsPerClient(), options.fileSize(), options.chunkSize(),
+                options.disconnectRate(), options.raceRate(),
+                seconds,
+                stats.uploadsCompleted.sum(), stats.uploadsVerified.sum(), stats.uploadsCorrupted.sum(),
+                stats.uploadsFailed.sum(),
+                stats.bytesAccepted.sum() / seconds / (1 << 20), stats.bytesAccepted.sum(),
+                stats.percentile(0.50) / 1e6,
+                stats.percentile(0.99) / 1e6,
+                patches, stats.racedPatches.sum(), stats.disconnects.sum(),
+                stats.locked.sum(), percentOf(stats.locked.sum(), patches),
+                stats.conflicts.sum(), percentOf(stats.conflicts.sum(), patches),
+                stats.checksumMismatches.sum(),
+                stats.otherErrors.sum(),
+                peakHeap / (double) (1 << 20),
+                retainedHeap / (double) (1 << 20));
+    }
+
+    private static double percentOf(long count, long total) {
+        return total == 0 ? 0.0 : count * 100.0 / total;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package cc.ddrpa.tuskott.benchmark.loadtest;
+
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * 压测时使用的内嵌 Tomcat 应用，只加载 tuskott 的自动配置
+ */
+@SpringBootApplication
+public class LoadTestApplication {
+}
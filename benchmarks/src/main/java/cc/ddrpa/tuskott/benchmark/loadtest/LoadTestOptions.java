@@ -0,0 +1,53 @@
+package cc.ddrpa.tuskott.benchmark.loadtest;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 压测参数，通过 {@code --key=value} 形式的命令行参数指定
+ *
+ * @param clients          并发客户端数量
+ * @param uploadsPerClient 每个客户端依次上传的文件数
+ * @param fileSize         每个文件的大小，支持 K/M/G 后缀
+ * @param chunkSize        每个 PATCH 的大小，支持 K/M/G 后缀
+ * @param disconnectRate   发送 chunk 时中途断开连接的概率
+ * @param raceRate         同时发出两个相同 PATCH 的概率
+ */
+record LoadTestOptions(int clients, int uploadsPerClient, long fileSize, int chunkSize,
+                       double disconnectRate, double raceRate) {
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expect --key=value, got " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        LoadTestOptions options = new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("clients", "16")),
+                Integer.parseInt(values.getOrDefault("uploads-per-client", "4")),
+                parseSize(values.getOrDefault("file-size", "16M")),
+                (int) parseSize(values.getOrDefault("chunk-size", "1M")),
+                Double.parseDouble(values.getOrDefault("disconnect-rate", "0.05")),
+                Double.parseDouble(values.getOrDefault("race-rate", "0.05")));
+        if (options.disconnectRate() + options.raceRate() > 1.0) {
+            throw new IllegalArgumentException("disconnect-rate + race-rate must not exceed 1");
+        }
+        return options;
+    }
+
+    static long parseSize(String value) {
+        String normalized = value.trim().toUpperCase(Locale.ROOT);
+        long unit = switch (normalized.charAt(normalized.length() - 1)) {
+            case 'K' -> 1L << 10;
+            case 'M' -> 1L << 20;
+            case 'G' -> 1L << 30;
+            default -> 1L;
+        };
+        String digits = unit == 1L ? normalized : normalized.substring(0, normalized.length() - 1);
+        return Long.parseLong(digits) * unit;
+    }
+}
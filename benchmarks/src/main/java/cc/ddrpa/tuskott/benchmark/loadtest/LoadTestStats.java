@@ -0,0 +1,46 @@
+package cc.ddrpa.tuskott.benchmark.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测过程中由所有客户端线程共同更新的统计数据
+ */
+final class LoadTestStats {
+
+    final LongAdder uploadsCompleted = new LongAdder();
+    final LongAdder uploadsVerified = new LongAdder();
+    final LongAdder uploadsCorrupted = new LongAdder();
+    final LongAdder uploadsFailed = new LongAdder();
+    final LongAdder patches = new LongAdder();
+    final LongAdder bytesAccepted = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder racedPatches = new LongAdder();
+    final LongAdder locked = new LongAdder();
+    final LongAdder conflicts = new LongAdder();
+    final LongAdder checksumMismatches = new LongAdder();
+    final LongAdder otherErrors = new LongAdder();
+
+    private long[] latencies = new long[1 << 12];
+    private int latencyCount;
+
+    /**
+     * 记录一次返回 204 的 PATCH 请求耗时
+     */
+    synchronized void recordLatency(long nanos) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    synchronized long percentile(double quantile) {
+        if (latencyCount == 0) {
+            return 0L;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,64 @@
+package cc.ddrpa.tuskott.benchmark.loadtest;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+
+/**
+ * 按偏移量确定生成的上传内容
+ * <p>
+ * 客户端断线后可以从任意偏移量续传，也能在不把整个文件放进内存的情况下算出期望的摘要
+ */
+final class Payload {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private final long seed;
+    private final long length;
+
+    Payload(long seed, long length) {
+        this.seed = seed;
+        this.length = length;
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * 把 [offset, offset + len) 的内容写入 dst
+     */
+    void fill(byte[] dst, long offset, int len) {
+        int written = 0;
+        while (written < len) {
+            long position = offset + written;
+            long block = position / BLOCK_SIZE;
+            int skip = (int) (position % BLOCK_SIZE);
+            SplittableRandom random = new SplittableRandom(seed * 31 + block);
+            byte[] blockBytes = new byte[BLOCK_SIZE];
+            random.nextBytes(blockBytes);
+            int n = Math.min(BLOCK_SIZE - skip, len - written);
+            System.arraycopy(blockBytes, skip, dst, written, n);
+            written += n;
+        }
+    }
+
+    byte[] sha256() {
+        MessageDigest messageDigest = newSha256();
+        byte[] buffer = new byte[BLOCK_SIZE * 16];
+        for (long offset = 0; offset < length; offset += buffer.length) {
+            int n = (int) Math.min(buffer.length, length - offset);
+            fill(buffer, offset, n);
+            messageDigest.update(buffer, 0, n);
+        }
+        return messageDigest.digest();
+    }
+
+    static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package cc.ddrpa.tuskott.benchmark.loadtest;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 模拟一个 tus 客户端：按 chunk 上传文件，随机断开连接后续传，偶尔并发重放同一个 PATCH
+ */
+final class SimulatedTusClient {
+
+    private static final int HTTP_LOCKED = 423;
+    private static final int HTTP_CHECKSUM_MISMATCH = 460;
+    // 同一个 chunk 连续失败这么多次后放弃该上传
+    private static final int MAX_ATTEMPTS = 50;
+
+    private final HttpClient httpClient;
+    private final String host;
+    private final int port;
+    private final URI endpoint;
+    private final LoadTestOptions options;
+    private final LoadTestStats stats;
+    private final Storage storage;
+    private final Random random;
+    private final byte[] buffer;
+
+    SimulatedTusClient(int port, LoadTestOptions options, LoadTestStats stats, Storage storage, long seed) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.host = "127.0.0.1";
+        this.port = port;
+        this.endpoint = URI.create("http://" + host + ":" + port + "/tus/files");
+        this.options = options;
+        this.stats = stats;
+        this.storage = storage;
+        this.random = new Random(seed);
+        this.buffer = new byte[options.chunkSize()];
+    }
+
+    void upload(Payload payload) throws IOException, InterruptedException, BlobAccessException {
+        String resourceId = create(payload.length());
+        long offset = 0L;
+        int attempts = 0;
+        while (offset < payload.length()) {
+            if (++attempts > MAX_ATTEMPTS) {
+                stats.uploadsFailed.increment();
+                return;
+            }
+            int len = (int) Math.min(buffer.length, payload.length() - offset);
+            payload.fill(buffer, offset, len);
+            double dice = random.nextDouble();
+            if (dice < options.disconnectRate()) {
+                int sent = disconnect(resourceId, offset, len);
+                stats.disconnects.increment();
+                // 一半的客户端乐观地认为已发送的数据都被服务端接收，下一个 PATCH 可能因此得到 409
+                offset = random.nextBoolean() ? offset + sent : head(resourceId);
+                continue;
+            }
+            HttpResponse<Void> response = dice < options.disconnectRate() + options.raceRate()
+                    ? race(resourceId, offset, len)
+                    : patch(resourceId, offset, len);
+            switch (response.statusCode()) {
+                case 204 -> {
+                    offset = Long.parseLong(response.headers().firstValue("Upload-Offset").orElseThrow());
+                    attempts = 0;
+                }
+                case 409 -> {
+                    stats.conflicts.increment();
+                    offset = head(resourceId);
+                }
+                case HTTP_LOCKED -> {
+                    stats.locked.increment();
+                    // 上一个连接可能仍持有锁，稍等后重新查询进度
+                    Thread.sleep(5L + random.nextInt(20));
+                    offset = head(resourceId);
+                }
+                case HTTP_CHECKSUM_MISMATCH -> stats.checksumMismatches.increment();
+                default -> {
+                    stats.otherErrors.increment();
+                    offset = head(resourceId);
+                }
+            }
+        }
+        stats.uploadsCompleted.increment();
+        verify(resourceId, payload);
+    }
+
+    private String create(long uploadLength) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("Tus-Resumable", "1.0.0")
+                .header("Upload-Length", String.valueOf(uploadLength))
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 201) {
+            throw new IOException("Create upload failed with HTTP " + response.statusCode());
+        }
+        String location = response.headers().firstValue("Location").orElseThrow();
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+    private long head(String resourceId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint.resolve("files/" + resourceId))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .header("Tus-Resumable", "1.0.0")
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 204) {
+            throw new IOException("HEAD failed with HTTP " + response.statusCode());
+        }
+        return Long.parseLong(response.headers().firstValue("Upload-Offset").orElseThrow());
+    }
+
+    private HttpRequest patchRequest(String resourceId, long offset, int len) {
+        MessageDigest messageDigest = Payload.newSha256();
+        messageDigest.update(buffer, 0, len);
+        return HttpRequest.newBuilder(endpoint.resolve("files/" + resourceId))
+                .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(buffer, 0, len))
+                .header("Tus-Resumable", "1.0.0")
+                .header("Content-Type", "application/offset+octet-stream")
+                .header("Upload-Offset", String.valueOf(offset))
+                .header("Upload-Checksum",
+                        "sha256 " + Base64.getEncoder().encodeToString(messageDigest.digest()))
+                .build();
+    }
+
+    private HttpResponse<Void> patch(String resourceId, long offset, int len)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<Void> response = httpClient.send(patchRequest(resourceId, offset, len),
+                HttpResponse.BodyHandlers.discarding());
+        stats.patches.increment();
+        if (response.statusCode() == 204) {
+            stats.recordLatency(System.nanoTime() - start);
+            stats.bytesAccepted.add(len);
+        }
+        return response;
+    }
+
+    /**
+     * 模拟客户端超时后重发：同时发出两个相同的 PATCH，最多只有一个能拿到锁
+     */
+    private HttpResponse<Void> race(String resourceId, long offset, int len) throws IOException {
+        stats.racedPatches.increment();
+        HttpRequest request = patchRequest(resourceId, offset, len);
+        CompletableFuture<HttpResponse<Void>> first = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.discarding());
+        CompletableFuture<HttpResponse<Void>> second = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.discarding());
+        HttpResponse<Void> winner = null;
+        for (CompletableFuture<HttpResponse<Void>> future : Arrays.asList(first, second)) {
+            HttpResponse<Void> response = future.join();
+            stats.patches.increment();
+            if (response.statusCode() == 204) {
+                long updated = Long.parseLong(response.headers().firstValue("Upload-Offset").orElseThrow());
+                if (Objects.isNull(winner)
+                        || updated > Long.parseLong(winner.headers().firstValue("Upload-Offset").orElseThrow())) {
+                    winner = response;
+                }
+            } else if (response.statusCode() == HTTP_LOCKED) {
+                stats.locked.increment();
+            } else if (response.statusCode() == 409) {
+                stats.conflicts.increment();
+            }
+        }
+        if (Objects.nonNull(winner)) {
+            stats.bytesAccepted.add(len);
+            return winner;
+        }
+        return first.join();
+    }
+
+    /**
+     * 通过原始 socket 声明完整的 Content-Length，但只发送一部分请求体后关闭连接
+     *
+     * @return 实际写出的字节数
+     */
+    private int disconnect(String resourceId, long offset, int len) throws IOException {
+        int sent = len > 1 ? 1 + random.nextInt(len - 1) : len;
+        try (Socket socket = new Socket(host, port)) {
+            OutputStream outputStream = socket.getOutputStream();
+            String head = "PATCH /tus/files/" + resourceId + " HTTP/1.1\r\n"
+                    + "Host: " + host + ":" + port + "\r\n"
+                    + "Tus-Resumable: 1.0.0\r\n"
+                    + "Content-Type: application/offset+octet-stream\r\n"
+                    + "Upload-Offset: " + offset + "\r\n"
+                    + "Content-Length: " + len + "\r\n"
+                    + "\r\n";
+            outputStream.write(head.getBytes(StandardCharsets.US_ASCII));
+            outputStream.write(buffer, 0, sent);
+            outputStream.flush();
+        }
+        return sent;
+    }
+
+    private void verify(String resourceId, Payload payload) throws IOException, BlobAccessException {
+        MessageDigest messageDigest = Payload.newSha256();
+        byte[] readBuffer = new byte[65536];
+        try (InputStream inputStream = storage.streaming(resourceId)) {
+            int n;
+            while ((n = inputStream.read(readBuffer)) >= 0) {
+                messageDigest.update(readBuffer, 0, n);
+            }
+        }
+        if (MessageDigest.isEqual(messageDigest.digest(), payload.sha256())) {
+            stats.uploadsVerified.increment();
+        } else {
+            stats.uploadsCorrupted.increment();
+        }
+    }
+}
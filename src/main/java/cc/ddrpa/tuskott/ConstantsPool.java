@@ -5,7 +5,7 @@ public class ConstantsPool {
     public static final String HEADER_TUS_VERSION = "Tus-Version";
     public static final String TUS_VERSION = "1.0.0";
     // TODO concatenation
-    // DO NOT SUPPORT checksum-trailer
+    public static final String HEADER_TRAILER = "Trailer";
     public static final String HEADER_ACCESS_CONTROL_EXPOSE_HEADERS = "Access-Control-Expose-Headers";
     public static final String ACCESS_CONTROL_EXPOSE_HEADERS = "Location, Upload-Offset, Upload-Length, Tus-Version, Tus-Resumable, Tus-Extension, Tus-Max-Size, Upload-Checksum";
     public static final String CACHE_CONTROL_NO_STORE = "no-store";
@@ -27,9 +27,13 @@ public class ConstantsPool {
     public static final String HEADER_UPLOAD_CHECKSUM = "Upload-Checksum";
     public static final String HEADER_TUS_CHECKSUM_ALGORITHM = "Tus-Checksum-Algorithm";
     public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    public static final String HEADER_RETRY_AFTER = "Retry-After";
+    // 标记请求已被其他节点转发过，避免节点之间循环转发
+    public static final String HEADER_TUSKOTT_FORWARDED_BY = "Tuskott-Forwarded-By";
 
     public static final int HTTP_LOCKED = 423;
     public static final int HTTP_CHECKSUM_MISMATCH = 460;
+    public static final int HTTP_INSUFFICIENT_STORAGE = 507;
 
     public static final String PROBLEM_DETAIL_MALFORMED_REQUEST_GENERIC = """
             {
@@ -129,6 +133,15 @@ public class ConstantsPool {
                 "instance": "%s"
             }""";
 
+    public static final String PROBLEM_DETAIL_CHUNK_TOO_LARGE = """
+            {
+                "type": "https://tus.io/protocols/resumable-upload#core-protocol",
+                "title": "Chunk exceeds allowed size",
+                "status": 413,
+                "detail": "The request body exceeds the %d bytes this request may write.",
+                "instance": "%s"
+            }""";
+
     public static final String PROBLEM_DETAIL_UNSUPPORTED_MEDIA_TYPE = """
             {
                 "type": "https://tus.io/protocols/resumable-upload#core-protocol",
@@ -176,6 +189,33 @@ public class ConstantsPool {
                 "instance": "%s"
             }""";
 
+    public static final String PROBLEM_DETAIL_INSUFFICIENT_STORAGE = """
+            {
+                "type": "about:blank",
+                "title": "Insufficient storage",
+                "status": 507,
+                "detail": "The server does not have enough free space to accept an upload of %d bytes.",
+                "instance": "%s"
+            }""";
+
+    public static final String PROBLEM_DETAIL_TOO_MANY_CONCURRENT_UPLOADS = """
+            {
+                "type": "about:blank",
+                "title": "Too many concurrent uploads",
+                "status": 503,
+                "detail": "The server is saturated, retry after %d seconds.",
+                "instance": "%s"
+            }""";
+
+    public static final String PROBLEM_DETAIL_OWNER_NODE_UNREACHABLE = """
+            {
+                "type": "about:blank",
+                "title": "Owner node unreachable",
+                "status": 502,
+                "detail": "The node holding this upload resource could not be reached because of: %s.",
+                "instance": "%s"
+            }""";
+
     private ConstantsPool() {
         throw new UnsupportedOperationException("Utility class cannot be instantiated");
     }
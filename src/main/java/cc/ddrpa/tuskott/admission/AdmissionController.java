@@ -0,0 +1,146 @@
+package cc.ddrpa.tuskott.admission;
+
+import cc.ddrpa.tuskott.metrics.TuskottMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 限制同时写入数据的 PATCH 请求数，包括全局上限与每个客户端的上限
+ * <p>
+ * 全局上限按 AIMD 算法根据写入耗时自适应调整：以每字节耗时的长期均值作为基线，
+ * 单次写入明显慢于基线时按比例缩小上限，否则在并发接近上限时逐步放大上限。
+ * 使用每字节耗时而不是请求耗时，是因为不同请求的 chunk 大小差异很大。
+ * 耗时不包括等待请求体的时间，否则网络较慢或被限速的客户端会让所有客户端的上限一起缩小。
+ */
+public class AdmissionController {
+
+    // 小于该字节数的写入不参与反馈，其耗时主要由固定开销决定
+    private static final long MIN_FEEDBACK_BYTES = 64 * 1024L;
+    // 基线的平滑系数，越小基线变化越慢
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int perClientLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final TuskottMetrics metrics;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 在 compute 中增减计数，保证检查与更新对同一客户端是原子的
+    private final ConcurrentHashMap<String, Integer> inFlightByClient = new ConcurrentHashMap<>();
+    // 全局上限，为了让加性增长在较大的上限下也能生效，使用 double 保存
+    private volatile double limit;
+    // 每字节耗时的长期均值，单位为纳秒，0 表示尚未采样
+    private volatile double baselineNanosPerByte;
+
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, int perClientLimit,
+                               double backoffRatio, double tolerance, TuskottMetrics metrics) {
+        if (minLimit < 1 || maxLimit < minLimit || perClientLimit < 1
+                || backoffRatio <= 0 || backoffRatio >= 1 || tolerance < 1) {
+            throw new IllegalArgumentException("Invalid admission control configuration");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.perClientLimit = perClientLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.metrics = metrics;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        metrics.admissionLimitChanged((int) limit);
+    }
+
+    /**
+     * 尝试为一次写入获取许可
+     *
+     * @param clientKey 客户端或租户的标识
+     * @return 许可，达到全局或客户端上限时返回 null
+     */
+    public Permit tryAcquire(String clientKey) {
+        int current = inFlight.incrementAndGet();
+        if (current > (int) limit) {
+            inFlight.decrementAndGet();
+            metrics.admissionRejected(false);
+            return null;
+        }
+        Integer clientInFlight = inFlightByClient.merge(clientKey, 1, Integer::sum);
+        if (clientInFlight > perClientLimit) {
+            releaseClient(clientKey);
+            inFlight.decrementAndGet();
+            metrics.admissionRejected(true);
+            return null;
+        }
+        metrics.admissionAccepted();
+        return new Permit(clientKey, current);
+    }
+
+    private void releaseClient(String clientKey) {
+        // 客户端没有进行中的写入时移除计数，避免 Map 随客户端数量无限增长
+        inFlightByClient.computeIfPresent(clientKey, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void onSample(long bytes, long nanos, int inFlightAtAcquire) {
+        if (bytes < MIN_FEEDBACK_BYTES || nanos <= 0) {
+            return;
+        }
+        double sample = (double) nanos / bytes;
+        double baseline = baselineNanosPerByte;
+        double currentLimit = limit;
+        double newLimit;
+        if (baseline > 0 && sample > baseline * tolerance) {
+            // 写入明显变慢，说明磁盘或下游已经排队
+            newLimit = Math.max(minLimit, currentLimit * backoffRatio);
+        } else if (inFlightAtAcquire * 2 >= currentLimit) {
+            // 只有在并发确实接近上限时才增长，避免空闲时上限无意义地膨胀
+            newLimit = Math.min(maxLimit, currentLimit + 1.0 / Math.max(1.0, Math.sqrt(currentLimit)));
+        } else {
+            newLimit = currentLimit;
+        }
+        baselineNanosPerByte = baseline > 0
+                ? baseline + (sample - baseline) * BASELINE_SMOOTHING
+                : sample;
+        // 并发更新时丢失一次调整是可以接受的
+        limit = newLimit;
+        if ((int) newLimit != (int) currentLimit) {
+            metrics.admissionLimitChanged((int) newLimit);
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 一次写入的许可，写入结束后必须调用 {@link #release(long, long)}
+     */
+    public final class Permit {
+
+        private final String clientKey;
+        private final int inFlightAtAcquire;
+        private boolean released;
+
+        private Permit(String clientKey, int inFlightAtAcquire) {
+            this.clientKey = clientKey;
+            this.inFlightAtAcquire = inFlightAtAcquire;
+        }
+
+        /**
+         * @param bytes 本次写入的字节数，未写入数据时为 0
+         * @param nanos 本次写入在服务端的耗时，不包括等待客户端发送数据与带宽限速的时间
+         */
+        public void release(long bytes, long nanos) {
+            if (released) {
+                return;
+            }
+            released = true;
+            releaseClient(clientKey);
+            inFlight.decrementAndGet();
+            onSample(bytes, nanos, inFlightAtAcquire);
+        }
+    }
+}
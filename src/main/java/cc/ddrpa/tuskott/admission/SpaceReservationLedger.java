@@ -0,0 +1,136 @@
+package cc.ddrpa.tuskott.admission;
+
+import cc.ddrpa.tuskott.tus.storage.Storage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录进行中的上传还需要写入的字节数，避免接受存储空间无法容纳的上传
+ * <p>
+ * 每个上传预留 {@code Upload-Length - Upload-Offset} 字节，随着数据写入逐步归还。
+ * 已写入的数据会体现在存储后端的可用空间中，因此预留量与已用空间之和即为所有上传完成后的用量。
+ * 该用量超过总空间的高水位时拒绝新的上传。
+ */
+public class SpaceReservationLedger {
+
+    // 查询存储后端可用空间的结果缓存时长
+    private static final long SPACE_CACHE_NANOS = 1_000_000_000L;
+
+    private final Storage storage;
+    private final double highWatermark;
+    private final ConcurrentHashMap<String, Long> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private volatile long cachedUsedSpace;
+    private volatile long cachedTotalSpace;
+    private volatile long cachedAt;
+
+    /**
+     * @param highWatermark 0 到 1 之间，所有上传完成后的用量超过总空间的该比例时拒绝新的上传
+     */
+    public SpaceReservationLedger(Storage storage, double highWatermark) {
+        if (highWatermark <= 0 || highWatermark > 1) {
+            throw new IllegalArgumentException("High watermark must be in (0, 1]: " + highWatermark);
+        }
+        this.storage = storage;
+        this.highWatermark = highWatermark;
+        this.cachedAt = System.nanoTime() - SPACE_CACHE_NANOS;
+    }
+
+    /**
+     * 为上传预留空间
+     *
+     * @param resourceId
+     * @param bytes      还需要写入的字节数
+     * @return 超过高水位时返回 false，此时不会预留
+     */
+    public boolean tryReserve(String resourceId, long bytes) {
+        if (bytes <= 0) {
+            return true;
+        }
+        long total = totalSpace();
+        if (total > 0) {
+            long projected = usedSpace() + outstanding.get() + bytes;
+            if (projected > total * highWatermark) {
+                return false;
+            }
+        }
+        // 并发创建时可能略微超过高水位，高水位本身留有余量
+        Long previous = reservations.put(resourceId, bytes);
+        outstanding.addAndGet(bytes - (previous == null ? 0L : previous));
+        return true;
+    }
+
+    /**
+     * 不检查水位直接预留，用于从 UploadResourceTracker 中恢复进行中的上传
+     */
+    public void restore(String resourceId, long bytes) {
+        if (bytes > 0 && reservations.putIfAbsent(resourceId, bytes) == null) {
+            outstanding.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * 数据写入后更新预留量
+     *
+     * @param resourceId
+     * @param remaining  还需要写入的字节数
+     */
+    public void progress(String resourceId, long remaining) {
+        long[] delta = new long[1];
+        reservations.computeIfPresent(resourceId, (key, reserved) -> {
+            long updated = Math.max(0L, Math.min(reserved, remaining));
+            delta[0] = updated - reserved;
+            return updated == 0L ? null : updated;
+        });
+        if (delta[0] != 0L) {
+            outstanding.addAndGet(delta[0]);
+        }
+    }
+
+    /**
+     * 上传完成、终止或过期时归还预留的空间
+     */
+    public void release(String resourceId) {
+        Long reserved = reservations.remove(resourceId);
+        if (reserved != null) {
+            outstanding.addAndGet(-reserved);
+        }
+    }
+
+    /**
+     * 所有进行中的上传还需要写入的字节数
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    private long usedSpace() {
+        refreshIfStale();
+        return cachedUsedSpace;
+    }
+
+    private long totalSpace() {
+        refreshIfStale();
+        return cachedTotalSpace;
+    }
+
+    private void refreshIfStale() {
+        long now = System.nanoTime();
+        if (now - cachedAt < SPACE_CACHE_NANOS) {
+            return;
+        }
+        long total = storage.totalSpace();
+        long usable = storage.usableSpace();
+        if (total > 0 && usable >= 0) {
+            cachedUsedSpace = total - usable;
+            cachedTotalSpace = total;
+        } else {
+            // 存储后端无法提供容量信息时不做限制
+            cachedUsedSpace = 0L;
+            cachedTotalSpace = -1L;
+        }
+        cachedAt = now;
+    }
+}
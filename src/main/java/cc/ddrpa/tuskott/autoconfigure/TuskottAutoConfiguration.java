@@ -1,30 +1,55 @@
 package cc.ddrpa.tuskott.autoconfigure;
 
+import cc.ddrpa.tuskott.ConstantsPool;
+import cc.ddrpa.tuskott.cluster.NodeAffinityFilter;
 import cc.ddrpa.tuskott.event.PostCompleteEvent;
 import cc.ddrpa.tuskott.event.PostCreateEvent;
 import cc.ddrpa.tuskott.event.PostTerminateEvent;
+import cc.ddrpa.tuskott.event.TuskottEvent;
 import cc.ddrpa.tuskott.event.TuskottEventCallback;
 import cc.ddrpa.tuskott.event.annotation.PostComplete;
 import cc.ddrpa.tuskott.event.annotation.PostCreate;
 import cc.ddrpa.tuskott.event.annotation.PostTerminate;
+import cc.ddrpa.tuskott.metrics.MeteredLockProvider;
+import cc.ddrpa.tuskott.metrics.MeteredStorage;
+import cc.ddrpa.tuskott.metrics.MeteredUploadResourceTracker;
+import cc.ddrpa.tuskott.metrics.MicrometerTuskottMetrics;
+import cc.ddrpa.tuskott.metrics.TuskottMetrics;
 import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.stream.StreamingConsumer;
+import cc.ddrpa.tuskott.tracing.OpenTelemetryTracing;
+import cc.ddrpa.tuskott.tracing.TracedLockProvider;
+import cc.ddrpa.tuskott.tracing.TracedStorage;
+import cc.ddrpa.tuskott.tracing.TracedUploadResourceTracker;
+import cc.ddrpa.tuskott.tracing.TuskottTracing;
 import cc.ddrpa.tuskott.tus.TuskottProcessor;
 import cc.ddrpa.tuskott.tus.lock.LockProvider;
+import cc.ddrpa.tuskott.tus.resource.UploadIdGenerator;
 import cc.ddrpa.tuskott.tus.resource.UploadResourceTracker;
 import cc.ddrpa.tuskott.tus.storage.Storage;
 import jakarta.servlet.http.HttpServletRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.OpenTelemetry;
 import jakarta.servlet.http.HttpServletResponse;
+import org.apache.coyote.http11.AbstractHttp11Protocol;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
@@ -33,9 +58,11 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 @Configuration
 @EnableConfigurationProperties(TuskottProperties.class)
@@ -45,17 +72,26 @@ public class TuskottAutoConfiguration implements ApplicationContextAware {
     private final ObjectProvider<UploadResourceTracker> uploadResourceTrackerObjectProvider;
     private final ObjectProvider<LockProvider> lockProviderObjectProvider;
     private final ObjectProvider<Storage> storageObjectProvider;
+    private final ObjectProvider<UploadIdGenerator> uploadIdGeneratorObjectProvider;
+    private final ObjectProvider<TuskottMetrics> metricsObjectProvider;
+    private final ObjectProvider<TuskottTracing> tracingObjectProvider;
 
     private ApplicationContext applicationContext;
 
     public TuskottAutoConfiguration(TuskottProperties tuskottProperties,
                                     ObjectProvider<UploadResourceTracker> uploadResourceTrackerObjectProvider,
                                     ObjectProvider<LockProvider> lockProviderObjectProvider,
-                                    ObjectProvider<Storage> storageObjectProvider) {
+                                    ObjectProvider<Storage> storageObjectProvider,
+                                    ObjectProvider<UploadIdGenerator> uploadIdGeneratorObjectProvider,
+                                    ObjectProvider<TuskottMetrics> metricsObjectProvider,
+                                    ObjectProvider<TuskottTracing> tracingObjectProvider) {
         this.tuskottProperties = tuskottProperties;
         this.uploadResourceTrackerObjectProvider = uploadResourceTrackerObjectProvider;
         this.lockProviderObjectProvider = lockProviderObjectProvider;
         this.storageObjectProvider = storageObjectProvider;
+        this.uploadIdGeneratorObjectProvider = uploadIdGeneratorObjectProvider;
+        this.metricsObjectProvider = metricsObjectProvider;
+        this.tracingObjectProvider = tracingObjectProvider;
     }
 
     @Override
@@ -99,7 +135,93 @@ public class TuskottAutoConfiguration implements ApplicationContextAware {
             Map<String, Object> lockConfig = tuskottProperties.getLock().getConfig();
             lockProvider = ((Class<LockProvider>) givenClass).getDeclaredConstructor(Map.class).newInstance(lockConfig);
         }
-        return new TuskottProcessor(tuskottProperties, uploadResourceTracker, storage, lockProvider);
+
+        // 检查有没有用户注册的 UploadIdGenerator 实现
+        UploadIdGenerator uploadIdGenerator = uploadIdGeneratorObjectProvider.getIfAvailable();
+        if (Objects.isNull(uploadIdGenerator)) {
+            Class<?> givenClass = Class.forName(tuskottProperties.getIdGenerator().getProvider());
+            if (!UploadIdGenerator.class.isAssignableFrom(givenClass)) {
+                throw new IllegalArgumentException("UploadIdGenerator class " + givenClass.getName() + " does not implement UploadIdGenerator interface");
+            }
+            Map<String, Object> idGeneratorConfig = new HashMap<>(tuskottProperties.getIdGenerator().getConfig());
+            if (tuskottProperties.getCluster().isEnable()) {
+                // 多节点部署时 id 中的节点标识默认使用当前节点的标识
+                idGeneratorConfig.putIfAbsent("node", tuskottProperties.getCluster().getNodeId());
+            }
+            uploadIdGenerator = ((Class<UploadIdGenerator>) givenClass).getDeclaredConstructor(Map.class).newInstance(idGeneratorConfig);
+        }
+
+        TuskottMetrics metrics = metricsObjectProvider.getIfAvailable(() -> TuskottMetrics.NOOP);
+        if (metrics != TuskottMetrics.NOOP) {
+            if (metrics instanceof MicrometerTuskottMetrics micrometerMetrics) {
+                micrometerMetrics.bindChannelCaches(storage);
+            }
+            storage = new MeteredStorage(storage, metrics);
+            uploadResourceTracker = new MeteredUploadResourceTracker(uploadResourceTracker, metrics);
+            lockProvider = new MeteredLockProvider(lockProvider, metrics);
+        }
+        TuskottTracing tracing = tracingObjectProvider.getIfAvailable(() -> TuskottTracing.NOOP);
+        if (tracing != TuskottTracing.NOOP) {
+            storage = new TracedStorage(storage, tracing);
+            uploadResourceTracker = new TracedUploadResourceTracker(uploadResourceTracker, tracing);
+            lockProvider = new TracedLockProvider(lockProvider, tracing);
+        }
+        return new TuskottProcessor(tuskottProperties, uploadResourceTracker, storage, lockProvider,
+                uploadIdGenerator, metrics, tracing);
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class TuskottMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(TuskottMetrics.class)
+        TuskottMetrics tuskottMetrics(ObjectProvider<MeterRegistry> meterRegistryObjectProvider) {
+            // 仅当应用中存在 MeterRegistry 时才收集指标
+            MeterRegistry meterRegistry = meterRegistryObjectProvider.getIfAvailable();
+            return Objects.isNull(meterRegistry) ? TuskottMetrics.NOOP : new MicrometerTuskottMetrics(meterRegistry);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "io.opentelemetry.api.OpenTelemetry")
+    static class TuskottTracingConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(TuskottTracing.class)
+        TuskottTracing tuskottTracing(ObjectProvider<OpenTelemetry> openTelemetryObjectProvider) {
+            // 仅当应用中存在 OpenTelemetry 实例时才记录 span
+            OpenTelemetry openTelemetry = openTelemetryObjectProvider.getIfAvailable();
+            return Objects.isNull(openTelemetry) ? TuskottTracing.NOOP : new OpenTelemetryTracing(openTelemetry);
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "tuskott.cluster", name = "enable")
+    FilterRegistrationBean<NodeAffinityFilter> tuskottNodeAffinityFilter(TuskottProcessor tuskottProcessor) {
+        FilterRegistrationBean<NodeAffinityFilter> registration = new FilterRegistrationBean<>(
+                new NodeAffinityFilter(tuskottProperties, tuskottProcessor.getUploadIdGenerator()));
+        registration.addUrlPatterns(tuskottProperties.getBasePath() + "/files/*");
+        return registration;
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+    @ConditionalOnProperty(prefix = "tuskott.extension", name = "enable-checksum-trailer", matchIfMissing = true)
+    static class TuskottTomcatConfiguration {
+
+        @Bean
+        WebServerFactoryCustomizer<TomcatServletWebServerFactory> tuskottChecksumTrailerCustomizer() {
+            // Tomcat 默认会丢弃未在白名单中的 trailer，需要允许 Upload-Checksum 才能支持 checksum-trailer
+            return factory -> factory.addConnectorCustomizers(connector -> {
+                if (connector.getProtocolHandler() instanceof AbstractHttp11Protocol<?> protocol) {
+                    String allowed = protocol.getAllowedTrailerHeaders();
+                    protocol.setAllowedTrailerHeaders(StringUtils.hasText(allowed)
+                            ? allowed + "," + ConstantsPool.HEADER_UPLOAD_CHECKSUM
+                            : ConstantsPool.HEADER_UPLOAD_CHECKSUM);
+                }
+            });
+        }
     }
 
     @Bean
@@ -109,6 +231,9 @@ public class TuskottAutoConfiguration implements ApplicationContextAware {
         return args -> {
             registerEndpoints(handlerMapping, tuskottProcessor);
             registerEventHandler(tuskottProcessor);
+            // 注册为 Bean 的流式消费者
+            tuskottProcessor.registerStreamingConsumers(
+                    applicationContext.getBeanProvider(StreamingConsumer.class).orderedStream().toList());
         };
     }
 
@@ -177,22 +302,37 @@ public class TuskottAutoConfiguration implements ApplicationContextAware {
         Map<String, Object> beans = applicationContext.getBeansWithAnnotation(Component.class);
         for (Object bean : beans.values()) {
             for (Method method : bean.getClass().getDeclaredMethods()) {
-                if (method.isAnnotationPresent(PostComplete.class)
-                        && method.getParameterCount() == 1
-                        && method.getParameterTypes()[0] == PostCompleteEvent.class) {
-                    postFinishCallback.add(new TuskottEventCallback(bean, method));
-                } else if (method.isAnnotationPresent(PostCreate.class)
-                        && method.getParameterCount() == 1
-                        && method.getParameterTypes()[0] == PostCreateEvent.class) {
-                    postCreateCallback.add(new TuskottEventCallback(bean, method));
-                } else if (method.isAnnotationPresent(PostTerminate.class)
-                        && method.getParameterCount() == 1
-                        && method.getParameterTypes()[0] == PostTerminateEvent.class) {
-                    postTerminateCallback.add(new TuskottEventCallback(bean, method));
+                if (method.isAnnotationPresent(PostComplete.class)) {
+                    resolveEventCallback(bean, method, PostCompleteEvent.class)
+                            .ifPresent(postFinishCallback::add);
+                } else if (method.isAnnotationPresent(PostCreate.class)) {
+                    resolveEventCallback(bean, method, PostCreateEvent.class)
+                            .ifPresent(postCreateCallback::add);
+                } else if (method.isAnnotationPresent(PostTerminate.class)) {
+                    resolveEventCallback(bean, method, PostTerminateEvent.class)
+                            .ifPresent(postTerminateCallback::add);
                 }
             }
         }
         tuskottProcessor.registerCallBack(postCreateCallback, postFinishCallback,
                 postTerminateCallback);
     }
+
+    /**
+     * 回调方法的唯一参数可以是事件本身，也可以是事件列表，后者会按批接收事件
+     */
+    private Optional<TuskottEventCallback> resolveEventCallback(Object bean, Method method,
+                                                                Class<? extends TuskottEvent> eventType) {
+        if (method.getParameterCount() != 1) {
+            return Optional.empty();
+        }
+        ResolvableType parameterType = ResolvableType.forMethodParameter(method, 0);
+        if (parameterType.resolve() == eventType) {
+            return Optional.of(new TuskottEventCallback(bean, method));
+        }
+        if (parameterType.resolve() == List.class && parameterType.getGeneric(0).resolve() == eventType) {
+            return Optional.of(new TuskottEventCallback(bean, method, true));
+        }
+        return Optional.empty();
+    }
 }
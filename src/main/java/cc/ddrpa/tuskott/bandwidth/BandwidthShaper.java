@@ -0,0 +1,111 @@
+package cc.ddrpa.tuskott.bandwidth;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 限制写入数据的速率，分为全局、租户与单个上传三级
+ * <p>
+ * 全局带宽由当前有上传在进行的租户按权重分享：租户的速率为
+ * {@code min(租户上限, 全局上限 × 租户权重 / 活跃租户的权重之和)}，空闲租户的份额会自动分给其他租户。
+ * 所有令牌桶都是无锁的，读取请求体的线程在消费令牌后自行等待，不需要为每个上传创建线程。
+ */
+public class BandwidthShaper {
+
+    private final long globalRate;
+    private final long tenantRate;
+    private final long uploadRate;
+    private final long burstBytes;
+    private final Map<String, Integer> tenantWeights;
+    private final TokenBucket globalBucket;
+    private final ConcurrentHashMap<String, Tenant> activeTenants = new ConcurrentHashMap<>();
+    private final AtomicLong activeWeight = new AtomicLong();
+
+    /**
+     * @param globalRate    全局速率，单位为字节每秒，0 表示不限制
+     * @param tenantRate    每个租户的速率上限，0 表示不限制
+     * @param uploadRate    每个上传的速率上限，0 表示不限制
+     * @param burstBytes    空闲后允许一次性通过的字节数
+     * @param tenantWeights 租户权重，未配置的租户权重为 1
+     */
+    public BandwidthShaper(long globalRate, long tenantRate, long uploadRate, long burstBytes,
+                           Map<String, Integer> tenantWeights) {
+        this.globalRate = globalRate;
+        this.tenantRate = tenantRate;
+        this.uploadRate = uploadRate;
+        this.burstBytes = burstBytes;
+        this.tenantWeights = Map.copyOf(tenantWeights);
+        this.globalBucket = new TokenBucket(burstBytes);
+    }
+
+    /**
+     * 包装请求体，从返回的流中读取数据时按配置限速，读取完毕后必须关闭返回的流
+     *
+     * @param tenant 租户标识
+     */
+    public InputStream throttle(String tenant, InputStream in) {
+        Tenant state = activeTenants.compute(tenant, (key, existing) -> {
+            Tenant t = existing != null ? existing : new Tenant(tenantWeights.getOrDefault(key, 1), burstBytes);
+            if (t.uploads++ == 0) {
+                activeWeight.addAndGet(t.weight);
+            }
+            return t;
+        });
+        return new ThrottledInputStream(in, this, tenant, state);
+    }
+
+    void release(String tenant) {
+        activeTenants.computeIfPresent(tenant, (key, t) -> {
+            if (--t.uploads == 0) {
+                activeWeight.addAndGet(-t.weight);
+                return null;
+            }
+            return t;
+        });
+    }
+
+    /**
+     * 消费三级令牌桶，返回需要等待的纳秒数
+     */
+    long reserve(Tenant tenant, TokenBucket uploadBucket, long bytes) {
+        long wait = globalBucket.reserve(bytes, globalRate);
+        wait = Math.max(wait, tenant.bucket.reserve(bytes, tenantRateOf(tenant)));
+        return Math.max(wait, uploadBucket.reserve(bytes, uploadRate));
+    }
+
+    /**
+     * 租户当前分到的速率，租户没有进行中的上传时返回 0
+     */
+    long tenantRateOf(String tenant) {
+        Tenant state = activeTenants.get(tenant);
+        return Objects.isNull(state) ? 0L : tenantRateOf(state);
+    }
+
+    private long tenantRateOf(Tenant tenant) {
+        if (globalRate <= 0) {
+            return tenantRate;
+        }
+        long share = globalRate * tenant.weight / Math.max(1L, activeWeight.get());
+        return tenantRate > 0 ? Math.min(tenantRate, share) : share;
+    }
+
+    TokenBucket newUploadBucket() {
+        return new TokenBucket(burstBytes);
+    }
+
+    static final class Tenant {
+
+        private final int weight;
+        private final TokenBucket bucket;
+        // 仅在 ConcurrentHashMap.compute 中修改
+        private int uploads;
+
+        private Tenant(int weight, long burstBytes) {
+            this.weight = Math.max(1, weight);
+            this.bucket = new TokenBucket(burstBytes);
+        }
+    }
+}
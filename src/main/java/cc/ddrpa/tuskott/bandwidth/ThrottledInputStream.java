@@ -0,0 +1,78 @@
+package cc.ddrpa.tuskott.bandwidth;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 由 {@link BandwidthShaper} 创建的输入流，每次读取后按读取的字节数消费令牌并等待
+ */
+class ThrottledInputStream extends FilterInputStream {
+
+    // 单次读取的上限，避免一次读取大量数据后长时间等待
+    private static final int MAX_READ = 64 * 1024;
+
+    private final BandwidthShaper shaper;
+    private final String tenantKey;
+    private final BandwidthShaper.Tenant tenant;
+    private final TokenBucket uploadBucket;
+    private boolean closed;
+
+    ThrottledInputStream(InputStream in, BandwidthShaper shaper, String tenantKey, BandwidthShaper.Tenant tenant) {
+        super(in);
+        this.shaper = shaper;
+        this.tenantKey = tenantKey;
+        this.tenant = tenant;
+        this.uploadBucket = shaper.newUploadBucket();
+    }
+
+    @Override
+    public int read() throws IOException {
+        int ch = in.read();
+        if (ch != -1) {
+            pause(shaper.reserve(tenant, uploadBucket, 1L));
+        }
+        return ch;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, Math.min(len, MAX_READ));
+        if (n > 0) {
+            pause(shaper.reserve(tenant, uploadBucket, n));
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        if (skipped > 0) {
+            pause(shaper.reserve(tenant, uploadBucket, skipped));
+        }
+        return skipped;
+    }
+
+    private static void pause(long nanos) throws InterruptedIOException {
+        long deadline = System.nanoTime() + nanos;
+        while (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling upload");
+            }
+            nanos = deadline - System.nanoTime();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            shaper.release(tenantKey);
+        }
+        super.close();
+    }
+}
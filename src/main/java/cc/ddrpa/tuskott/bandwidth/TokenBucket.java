@@ -0,0 +1,62 @@
+package cc.ddrpa.tuskott.bandwidth;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的令牌桶，按 GCRA（通用信元速率算法）实现
+ * <p>
+ * 桶的状态只有一个理论到达时间，消费令牌时通过 CAS 将其向后推移，返回调用方需要等待的时长。
+ * 多个线程共享同一个桶时不需要加锁，也不需要后台线程补充令牌。
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // 换算后的时长上限（一年），与 System.nanoTime() 相加减时不会溢出
+    private static final long MAX_NANOS = 365L * 24 * 3600 * NANOS_PER_SECOND;
+
+    // 理论到达时间，早于当前时间的部分即为可以突发使用的令牌
+    private final AtomicLong theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+    private final long burstBytes;
+
+    /**
+     * @param burstBytes 空闲后允许一次性通过的字节数
+     */
+    public TokenBucket(long burstBytes) {
+        this.burstBytes = burstBytes;
+    }
+
+    /**
+     * 消费令牌
+     *
+     * @param bytes          消费的字节数
+     * @param bytesPerSecond 当前的速率，每次调用可以不同
+     * @return 调用方需要等待的纳秒数，0 表示无需等待
+     */
+    public long reserve(long bytes, long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return 0L;
+        }
+        long cost = toNanos(bytes, bytesPerSecond);
+        long burstNanos = toNanos(burstBytes, bytesPerSecond);
+        while (true) {
+            long now = System.nanoTime();
+            long previous = theoreticalArrivalTime.get();
+            // 空闲期间积累的令牌不超过 burst
+            long next = Math.max(previous, now - burstNanos) + cost;
+            if (theoreticalArrivalTime.compareAndSet(previous, next)) {
+                return Math.max(0L, next - burstNanos - now);
+            }
+        }
+    }
+
+    /**
+     * 按速率将字节数换算为纳秒，结果不超过 MAX_NANOS
+     */
+    private static long toNanos(long bytes, long bytesPerSecond) {
+        if (Math.multiplyHigh(bytes, NANOS_PER_SECOND) == 0L && bytes * NANOS_PER_SECOND >= 0L) {
+            return Math.min(MAX_NANOS, bytes * NANOS_PER_SECOND / bytesPerSecond);
+        }
+        // 超过 9.2 GB 时乘积溢出，改用浮点数计算，精度对等待时长没有影响
+        return (long) Math.min(MAX_NANOS, (double) bytes / bytesPerSecond * NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,170 @@
+package cc.ddrpa.tuskott.cluster;
+
+import cc.ddrpa.tuskott.ConstantsPool;
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.resource.UploadIdGenerator;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 将到达错误节点的 HEAD、PATCH 与 DELETE 请求交给持有上传资源的节点处理
+ * <p>
+ * 上传资源 id 中携带了创建它的节点标识，数据保存在该节点的本地磁盘上。请求被负载均衡分配到其他节点时，
+ * 按配置将请求流式转发给所属节点，或返回 HTTP 307 让客户端直接访问所属节点。
+ * 所属节点未知、就是当前节点，或请求已经被转发过一次时，交由当前节点处理。
+ */
+public class NodeAffinityFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeAffinityFilter.class);
+    private static final Set<String> ROUTED_METHODS = Set.of("HEAD", "PATCH", "DELETE");
+    // 逐跳请求头与由 HttpClient 自行设置的请求头，不能原样转发
+    private static final Set<String> UNFORWARDABLE_HEADERS = Set.of(
+            "connection", "content-length", "expect", "host", "keep-alive", "proxy-connection",
+            "te", "trailer", "transfer-encoding", "upgrade");
+
+    private final String filesPath;
+    private final String nodeId;
+    private final Map<String, String> nodes;
+    private final TuskottProperties.Cluster.Mode mode;
+    private final UploadIdGenerator uploadIdGenerator;
+    private final HttpClient httpClient;
+
+    public NodeAffinityFilter(TuskottProperties tuskottProperties, UploadIdGenerator uploadIdGenerator) {
+        TuskottProperties.Cluster clusterConfiguration = tuskottProperties.getCluster();
+        this.filesPath = tuskottProperties.getBasePath() + "/files/";
+        this.nodeId = clusterConfiguration.getNodeId();
+        this.nodes = Map.copyOf(clusterConfiguration.getNodes());
+        this.mode = clusterConfiguration.getMode();
+        this.uploadIdGenerator = uploadIdGenerator;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(clusterConfiguration.getForwardConnectTimeout()))
+                .build();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !ROUTED_METHODS.contains(request.getMethod())
+                || Objects.nonNull(request.getHeader(ConstantsPool.HEADER_TUSKOTT_FORWARDED_BY));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String ownerUrl = ownerUrlOf(request);
+        if (Objects.isNull(ownerUrl)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        String target = ownerUrl + request.getRequestURI()
+                + (Objects.isNull(request.getQueryString()) ? "" : "?" + request.getQueryString());
+        if (mode == TuskottProperties.Cluster.Mode.REDIRECT) {
+            // 307 要求客户端使用相同的方法与请求体重新发起请求
+            response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+            response.setHeader(ConstantsPool.HEADER_LOCATION, target);
+            response.setHeader(ConstantsPool.HEADER_TUS_RESUMABLE, ConstantsPool.TUS_VERSION);
+            return;
+        }
+        forward(request, response, target);
+    }
+
+    /**
+     * @return 所属节点的地址，应由当前节点处理时返回 null
+     */
+    private String ownerUrlOf(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        int idStart = uri.indexOf(filesPath);
+        if (idStart < 0) {
+            return null;
+        }
+        idStart += filesPath.length();
+        int idEnd = uri.indexOf('/', idStart);
+        String resourceId = idEnd < 0 ? uri.substring(idStart) : uri.substring(idStart, idEnd);
+        String owner = uploadIdGenerator.nodeOf(resourceId);
+        if (Objects.isNull(owner) || owner.equals(nodeId)) {
+            return null;
+        }
+        return nodes.get(owner);
+    }
+
+    private void forward(HttpServletRequest request, HttpServletResponse response, String target)
+            throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(target));
+        for (String headerName : Collections.list(request.getHeaderNames())) {
+            if (UNFORWARDABLE_HEADERS.contains(headerName.toLowerCase())) {
+                continue;
+            }
+            for (String headerValue : Collections.list(request.getHeaders(headerName))) {
+                builder.header(headerName, headerValue);
+            }
+        }
+        builder.header(ConstantsPool.HEADER_TUSKOTT_FORWARDED_BY, nodeId);
+        long contentLength = request.getContentLengthLong();
+        HttpRequest.BodyPublisher bodyPublisher;
+        if (contentLength == 0L || "HEAD".equals(request.getMethod())) {
+            bodyPublisher = HttpRequest.BodyPublishers.noBody();
+        } else {
+            // 边读边发，不在当前节点缓存请求体
+            HttpRequest.BodyPublisher streaming = HttpRequest.BodyPublishers.ofInputStream(() -> {
+                try {
+                    return request.getInputStream();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            bodyPublisher = contentLength > 0
+                    ? HttpRequest.BodyPublishers.fromPublisher(streaming, contentLength)
+                    : streaming;
+        }
+        builder.method(request.getMethod(), bodyPublisher);
+
+        HttpResponse<InputStream> forwarded;
+        try {
+            forwarded = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while forwarding to " + target);
+        } catch (IOException e) {
+            logger.warn("Failed to forward {} {} to {}: {}", request.getMethod(), request.getRequestURI(),
+                    target, e.getMessage());
+            response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+            response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+            response.getWriter().write(
+                    ConstantsPool.PROBLEM_DETAIL_OWNER_NODE_UNREACHABLE.formatted(e.getMessage(), request.getRequestURI()));
+            return;
+        }
+        response.setStatus(forwarded.statusCode());
+        forwarded.headers().map().forEach((headerName, headerValues) -> {
+            if (UNFORWARDABLE_HEADERS.contains(headerName.toLowerCase()) || headerName.startsWith(":")) {
+                return;
+            }
+            for (String headerValue : headerValues) {
+                response.addHeader(headerName, headerValue);
+            }
+        });
+        try (InputStream body = forwarded.body()) {
+            OutputStream outputStream = response.getOutputStream();
+            body.transferTo(outputStream);
+        }
+    }
+}
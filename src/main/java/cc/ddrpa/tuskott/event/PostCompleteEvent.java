@@ -1,16 +1,30 @@
 package cc.ddrpa.tuskott.event;
 
+import cc.ddrpa.tuskott.stream.StreamingResult;
 import cc.ddrpa.tuskott.tus.resource.UploadResource;
 
+import java.util.Map;
+
 public class PostCompleteEvent extends TuskottEvent {
 
     private final UploadResource uploadResource;
+    // 流式消费者名称与处理结果
+    private final Map<String, StreamingResult> streamingResults;
 
     public PostCompleteEvent(UploadResource uploadResource) {
+        this(uploadResource, Map.of());
+    }
+
+    public PostCompleteEvent(UploadResource uploadResource, Map<String, StreamingResult> streamingResults) {
         this.uploadResource = uploadResource;
+        this.streamingResults = streamingResults;
     }
 
     public UploadResource getUploadResource() {
         return uploadResource;
     }
+
+    public Map<String, StreamingResult> getStreamingResults() {
+        return streamingResults;
+    }
 }
\ No newline at end of file
@@ -5,8 +5,14 @@ import java.time.LocalDateTime;
 public abstract class TuskottEvent {
 
     private final LocalDateTime eventTime = LocalDateTime.now();
+    // 用于计算事件分发延迟
+    private final long createNanoTime = System.nanoTime();
 
     public LocalDateTime eventTime() {
         return eventTime;
     }
+
+    long createNanoTime() {
+        return createNanoTime;
+    }
 }
\ No newline at end of file
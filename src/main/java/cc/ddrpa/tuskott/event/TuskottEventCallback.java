@@ -2,7 +2,16 @@ package cc.ddrpa.tuskott.event;
 
 import java.lang.reflect.Method;
 
+/**
+ * @param bean   回调方法所在的 Bean
+ * @param method 回调方法
+ * @param batch  回调方法是否以 {@code List<…Event>} 的形式批量接收事件
+ */
 public record TuskottEventCallback(Object bean,
-                                   Method method) {
+                                   Method method,
+                                   boolean batch) {
 
-}
\ No newline at end of file
+    public TuskottEventCallback(Object bean, Method method) {
+        this(bean, method, false);
+    }
+}
@@ -0,0 +1,255 @@
+package cc.ddrpa.tuskott.event;
+
+import cc.ddrpa.tuskott.metrics.TuskottMetrics;
+import cc.ddrpa.tuskott.tracing.TuskottTracing;
+import jakarta.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将事件分发给注册的回调方法
+ * <p>
+ * 逐个接收事件的回调方法在事件发生时即被异步调用；以 {@code List<…Event>} 接收事件的回调方法会收到按数量和时间攒批后的事件，
+ * 每批最多包含 batchSize 个事件，事件最多等待 batchDelay 毫秒后被投递。
+ */
+public class TuskottEventDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TuskottEventDispatcher.class);
+
+    private final int batchSize;
+    private final long batchDelay;
+    private final TuskottMetrics metrics;
+    private final TuskottTracing tracing;
+
+    private final List<TuskottEventCallback> postCreateCallback = new ArrayList<>();
+    private final List<TuskottEventCallback> postCompleteCallback = new ArrayList<>();
+    private final List<TuskottEventCallback> postTerminateCallback = new ArrayList<>();
+    private final Map<TuskottEventCallback, EventBatch> batches = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService scheduler;
+    // 关闭后不再攒批，新的事件立即投递
+    private volatile boolean closed;
+
+    public TuskottEventDispatcher(int batchSize, long batchDelay) {
+        this(batchSize, batchDelay, TuskottMetrics.NOOP, TuskottTracing.NOOP);
+    }
+
+    public TuskottEventDispatcher(int batchSize, long batchDelay, TuskottMetrics metrics, TuskottTracing tracing) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Event batch size must be positive: " + batchSize);
+        }
+        if (batchDelay < 1L) {
+            throw new IllegalArgumentException("Event batch delay must be positive: " + batchDelay);
+        }
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.metrics = metrics;
+        this.tracing = tracing;
+    }
+
+    /**
+     * 注册回调函数
+     *
+     * @param postCreate
+     * @param postFinish
+     * @param postTerminate
+     */
+    public synchronized void register(List<TuskottEventCallback> postCreate, List<TuskottEventCallback> postFinish,
+                                      List<TuskottEventCallback> postTerminate) {
+        this.postCreateCallback.addAll(postCreate);
+        this.postCompleteCallback.addAll(postFinish);
+        this.postTerminateCallback.addAll(postTerminate);
+        for (List<TuskottEventCallback> callbacks : List.of(postCreate, postFinish, postTerminate)) {
+            for (TuskottEventCallback callback : callbacks) {
+                if (callback.batch()) {
+                    batches.computeIfAbsent(callback, EventBatch::new);
+                }
+            }
+        }
+        if (!batches.isEmpty() && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tuskott-event-batcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flushAll, batchDelay, batchDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 触发回调
+     *
+     * @param event
+     */
+    public void dispatch(TuskottEvent event) {
+        dispatch(event, tracing.captureContext());
+    }
+
+    /**
+     * 触发回调，用于在产生事件的请求线程之外分发事件
+     *
+     * @param event
+     * @param traceContext 在产生事件的请求线程中通过 {@link TuskottTracing#captureContext()} 获取的追踪上下文
+     */
+    public void dispatch(TuskottEvent event, @Nullable Object traceContext) {
+        List<TuskottEventCallback> callbacks;
+        if (event instanceof PostCompleteEvent) {
+            callbacks = postCompleteCallback;
+        } else if (event instanceof PostCreateEvent) {
+            callbacks = postCreateCallback;
+        } else if (event instanceof PostTerminateEvent) {
+            callbacks = postTerminateCallback;
+        } else {
+            callbacks = Collections.emptyList();
+        }
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        for (TuskottEventCallback callback : callbacks) {
+            if (callback.batch()) {
+                batches.get(callback).offer(new PendingEvent(event, traceContext));
+            } else {
+                CompletableFuture.runAsync(() -> {
+                    metrics.eventDispatched(System.nanoTime() - event.createNanoTime());
+                    runCallback(spanName(event), Collections.singletonList(traceContext), callback, event);
+                });
+            }
+        }
+    }
+
+    /**
+     * 投递所有尚未投递的批量事件并停止攒批
+     */
+    public void close() {
+        closed = true;
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            current.shutdown();
+        }
+        flushAll();
+    }
+
+    private void flushAll() {
+        for (EventBatch batch : batches.values()) {
+            batch.flush(false);
+        }
+    }
+
+    private static String spanName(TuskottEvent event) {
+        return "tus.event." + event.getClass().getSimpleName();
+    }
+
+    /**
+     * 回调抛出的异常先交给链路追踪记录到 span 上，再记录日志
+     */
+    private void runCallback(String spanName, List<Object> traceContexts, TuskottEventCallback callback,
+                             Object argument) {
+        try {
+            tracing.runCallback(spanName, traceContexts, () -> invoke(callback, argument));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to invoke tuskott event callback {}", callback.method(), e);
+        }
+    }
+
+    private static void invoke(TuskottEventCallback callback, Object argument) {
+        try {
+            callback.method().invoke(callback.bean(), argument);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new UndeclaredThrowableException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一个批量回调方法的待投递事件
+     */
+    private class EventBatch {
+
+        private final TuskottEventCallback callback;
+        private final Queue<PendingEvent> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+        private EventBatch(TuskottEventCallback callback) {
+            this.callback = callback;
+        }
+
+        private void offer(PendingEvent event) {
+            pending.offer(event);
+            int pendingSize = size.incrementAndGet();
+            if (closed) {
+                // 定时器已停止，不会再有人投递剩余的事件
+                flush(false);
+                return;
+            }
+            // 攒够一批后不必等待定时器，立即安排投递
+            if (pendingSize >= batchSize && flushRequested.compareAndSet(false, true)) {
+                ScheduledExecutorService current = scheduler;
+                if (current != null && !current.isShutdown()) {
+                    current.execute(() -> flush(true));
+                } else {
+                    flush(true);
+                }
+            }
+        }
+
+        /**
+         * @param fullBatchesOnly 为 true 时只投递凑满 batchSize 的批次，剩余的事件等待定时器
+         */
+        private synchronized void flush(boolean fullBatchesOnly) {
+            flushRequested.set(false);
+            while (!fullBatchesOnly || size.get() >= batchSize) {
+                int capacity = Math.min(batchSize, Math.max(size.get(), 1));
+                List<TuskottEvent> events = new ArrayList<>(capacity);
+                List<Object> traceContexts = new ArrayList<>(capacity);
+                PendingEvent pendingEvent;
+                while (events.size() < batchSize && (pendingEvent = pending.poll()) != null) {
+                    events.add(pendingEvent.event());
+                    traceContexts.add(pendingEvent.traceContext());
+                }
+                if (events.isEmpty()) {
+                    return;
+                }
+                size.addAndGet(-events.size());
+                List<TuskottEvent> batch = Collections.unmodifiableList(events);
+                CompletableFuture.runAsync(() -> {
+                    long now = System.nanoTime();
+                    for (TuskottEvent event : batch) {
+                        metrics.eventDispatched(now - event.createNanoTime());
+                    }
+                    runCallback(spanName(batch.get(0)), traceContexts, callback, batch);
+                });
+                if (events.size() < batchSize) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private record PendingEvent(TuskottEvent event, Object traceContext) {
+    }
+}
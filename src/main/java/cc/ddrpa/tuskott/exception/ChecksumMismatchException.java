@@ -2,11 +2,23 @@ package cc.ddrpa.tuskott.exception;
 
 public class ChecksumMismatchException extends Exception {
 
+    // 校验使用的算法，通过 trailer 声明时只有在读完请求体之后才能确定
+    private String algorithm;
+
     public ChecksumMismatchException(String message) {
         super(message);
     }
 
+    public ChecksumMismatchException(String message, String algorithm) {
+        super(message);
+        this.algorithm = algorithm;
+    }
+
     public ChecksumMismatchException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package cc.ddrpa.tuskott.exception;
+
+/**
+ * 请求体超出了本次 PATCH 允许写入的字节数
+ */
+public class ChunkTooLargeException extends Exception {
+
+    public ChunkTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package cc.ddrpa.tuskott.exception;
+
+/**
+ * 存储空间不足以容纳新的上传
+ */
+public class InsufficientStorageException extends BlobAccessException {
+
+    public InsufficientStorageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package cc.ddrpa.tuskott.exception;
+
+public class UnreadableChecksumException extends Exception {
+
+    public UnreadableChecksumException(String message) {
+        super(message);
+    }
+
+    public UnreadableChecksumException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,43 @@
+package cc.ddrpa.tuskott.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 写入一个 chunk 并校验其 Upload-Checksum
+ */
+@Name("cc.ddrpa.tuskott.Checksum")
+@Label("Tus Checksum")
+@Category({"Tuskott", "Upload"})
+@Description("Write and verification of a chunk that carries Upload-Checksum")
+@StackTrace(false)
+public class ChecksumEvent extends Event {
+
+    @Label("Resource Id")
+    public String resourceId;
+
+    @Label("Upload Offset")
+    @DataAmount
+    public long uploadOffset;
+
+    @Label("Bytes Digested")
+    @DataAmount
+    public long bytes;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Digest Time")
+    @Description("Time spent updating the message digest")
+    @Timespan
+    public long digestTime;
+
+    @Label("Matched")
+    public boolean matched;
+}
@@ -0,0 +1,20 @@
+package cc.ddrpa.tuskott.jfr;
+
+import jdk.jfr.EventType;
+
+/**
+ * 热路径上的 JFR 事件类型
+ * <p>
+ * 调用方在 {@link EventType#isEnabled()} 为 false 时跳过事件对象的分配，未开启录制时每个请求不再创建事件对象。
+ */
+public final class JfrEventTypes {
+
+    public static final EventType PATCH = EventType.getEventType(PatchEvent.class);
+    public static final EventType LOCK_ACQUIRE = EventType.getEventType(LockAcquireEvent.class);
+    public static final EventType TRACKER_CALL = EventType.getEventType(TrackerCallEvent.class);
+    public static final EventType STORAGE_WRITE = EventType.getEventType(StorageWriteEvent.class);
+    public static final EventType CHECKSUM = EventType.getEventType(ChecksumEvent.class);
+
+    private JfrEventTypes() {
+    }
+}
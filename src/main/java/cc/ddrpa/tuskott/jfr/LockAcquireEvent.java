@@ -0,0 +1,25 @@
+package cc.ddrpa.tuskott.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 调用一次 {@code LockProvider.acquire}
+ */
+@Name("cc.ddrpa.tuskott.LockAcquire")
+@Label("Tus Lock Acquire")
+@Category({"Tuskott", "Lock"})
+@Description("An attempt to lock an upload resource")
+@StackTrace(false)
+public class LockAcquireEvent extends Event {
+
+    @Label("Resource Id")
+    public String resourceId;
+
+    @Label("Acquired")
+    public boolean acquired;
+}
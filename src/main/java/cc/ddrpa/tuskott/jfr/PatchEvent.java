@@ -0,0 +1,37 @@
+package cc.ddrpa.tuskott.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 处理一个 PATCH 请求（或 creation-with-upload 请求）中数据的全过程，包括加锁、写入、校验与更新上传进度
+ */
+@Name("cc.ddrpa.tuskott.Patch")
+@Label("Tus Patch")
+@Category({"Tuskott", "Upload"})
+@Description("Transfer of a tus chunk, from acquiring the lock to committing the new offset")
+@StackTrace(false)
+public class PatchEvent extends Event {
+
+    @Label("Resource Id")
+    public String resourceId;
+
+    @Label("Upload Offset")
+    @DataAmount
+    public long uploadOffset;
+
+    @Label("Bytes Transferred")
+    @DataAmount
+    public long bytes;
+
+    @Label("Checksum Algorithm")
+    public String checksumAlgorithm;
+
+    @Label("Response Status")
+    public int status;
+}
@@ -0,0 +1,42 @@
+package cc.ddrpa.tuskott.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 调用一次 {@code Storage.write}
+ */
+@Name("cc.ddrpa.tuskott.StorageWrite")
+@Label("Tus Storage Write")
+@Category({"Tuskott", "Storage"})
+@Description("A Storage.write call, split into time spent reading the request body and writing to the backend")
+@StackTrace(false)
+public class StorageWriteEvent extends Event {
+
+    @Label("Resource Id")
+    public String resourceId;
+
+    @Label("Upload Offset")
+    @DataAmount
+    public long uploadOffset;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytes;
+
+    @Label("Read Time")
+    @Description("Time spent reading the request body, including digest updates of wrapping streams")
+    @Timespan
+    public long readTime;
+
+    @Label("Write Time")
+    @Description("Time spent writing to the storage backend")
+    @Timespan
+    public long writeTime;
+}
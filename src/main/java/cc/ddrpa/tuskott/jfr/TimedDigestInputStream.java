@@ -0,0 +1,58 @@
+package cc.ddrpa.tuskott.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * 分别统计读取底层流和更新摘要所耗费时间的 {@link DigestInputStream}，仅在录制 {@link ChecksumEvent} 时使用
+ */
+public class TimedDigestInputStream extends DigestInputStream {
+
+    private long digestNanos;
+    private long digestedBytes;
+
+    public TimedDigestInputStream(InputStream stream, MessageDigest digest) {
+        super(stream, digest);
+        // 由本类自行更新摘要以便计时
+        super.on(false);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int ch = in.read();
+        if (ch != -1) {
+            long start = System.nanoTime();
+            digest.update((byte) ch);
+            digestNanos += System.nanoTime() - start;
+            digestedBytes++;
+        }
+        return ch;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = in.read(b, off, len);
+        if (result > 0) {
+            long start = System.nanoTime();
+            digest.update(b, off, result);
+            digestNanos += System.nanoTime() - start;
+            digestedBytes += result;
+        }
+        return result;
+    }
+
+    @Override
+    public void on(boolean on) {
+        // 摘要总是开启
+    }
+
+    public long getDigestNanos() {
+        return digestNanos;
+    }
+
+    public long getDigestedBytes() {
+        return digestedBytes;
+    }
+}
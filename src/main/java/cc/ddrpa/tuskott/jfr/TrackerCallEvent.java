@@ -0,0 +1,25 @@
+package cc.ddrpa.tuskott.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 在上传的热路径上调用 {@code UploadResourceTracker}
+ */
+@Name("cc.ddrpa.tuskott.TrackerCall")
+@Label("Tus Tracker Call")
+@Category({"Tuskott", "Tracker"})
+@Description("An UploadResourceTracker call made while serving a tus request")
+@StackTrace(false)
+public class TrackerCallEvent extends Event {
+
+    @Label("Resource Id")
+    public String resourceId;
+
+    @Label("Operation")
+    public String operation;
+}
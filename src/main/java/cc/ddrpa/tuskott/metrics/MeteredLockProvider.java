@@ -0,0 +1,38 @@
+package cc.ddrpa.tuskott.metrics;
+
+import cc.ddrpa.tuskott.tus.lock.LockProvider;
+
+/**
+ * 记录加锁耗时与加锁失败次数的 LockProvider 装饰器
+ */
+public class MeteredLockProvider implements LockProvider {
+
+    private final LockProvider delegate;
+    private final TuskottMetrics metrics;
+
+    public MeteredLockProvider(LockProvider delegate, TuskottMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean acquire(String id) {
+        long start = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = delegate.acquire(id);
+            return acquired;
+        } finally {
+            metrics.lockAcquire(acquired, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void release(String id) {
+        delegate.release(id);
+    }
+
+    public LockProvider getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,77 @@
+package cc.ddrpa.tuskott.metrics;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 记录 {@link Storage#write} 耗时的 Storage 装饰器
+ */
+public class MeteredStorage implements Storage {
+
+    private final Storage delegate;
+    private final TuskottMetrics metrics;
+
+    public MeteredStorage(Storage delegate, TuskottMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        delegate.create(resourceId);
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        long start = System.nanoTime();
+        try {
+            return delegate.write(resourceId, inputStream, uploadOffset);
+        } finally {
+            metrics.storageWrite(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        delegate.remove(resourceIds);
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        delegate.remove(resourceId);
+    }
+
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        return delegate.streaming(resourceId);
+    }
+
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        delegate.rollback(resourceId, offset);
+    }
+
+    @Override
+    public void complete(String resourceId) throws BlobAccessException, IOException {
+        delegate.complete(resourceId);
+    }
+
+    @Override
+    public long usableSpace() {
+        return delegate.usableSpace();
+    }
+
+    @Override
+    public long totalSpace() {
+        return delegate.totalSpace();
+    }
+
+    public Storage getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,107 @@
+package cc.ddrpa.tuskott.metrics;
+
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.resource.UploadResourceTracker;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 记录各方法调用耗时的 UploadResourceTracker 装饰器
+ */
+public class MeteredUploadResourceTracker implements UploadResourceTracker {
+
+    private final UploadResourceTracker delegate;
+    private final TuskottMetrics metrics;
+
+    public MeteredUploadResourceTracker(UploadResourceTracker delegate, TuskottMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public UploadResource create(String resourceId, Long uploadLength, String metadata) {
+        long start = System.nanoTime();
+        try {
+            return delegate.create(resourceId, uploadLength, metadata);
+        } finally {
+            metrics.trackerCall("create", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public UploadResource patch(String resourceId, long newUploadOffset) {
+        long start = System.nanoTime();
+        try {
+            return delegate.patch(resourceId, newUploadOffset);
+        } finally {
+            metrics.trackerCall("patch", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public UploadResource head(String resourceId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.head(resourceId);
+        } finally {
+            metrics.trackerCall("head", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public UploadResource updateUploadLength(String resourceId, Long uploadLength) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateUploadLength(resourceId, uploadLength);
+        } finally {
+            metrics.trackerCall("updateUploadLength", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Stream<UploadResource> filter(Predicate<UploadResource> predicate) {
+        long start = System.nanoTime();
+        try {
+            return delegate.filter(predicate);
+        } finally {
+            metrics.trackerCall("filter", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        long start = System.nanoTime();
+        try {
+            delegate.remove(resourceId);
+        } finally {
+            metrics.trackerCall("remove", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        long start = System.nanoTime();
+        try {
+            delegate.remove(resourceIds);
+        } finally {
+            metrics.trackerCall("remove", System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<UploadResource> findByChecksum(String checksum) {
+        long start = System.nanoTime();
+        try {
+            return delegate.findByChecksum(checksum);
+        } finally {
+            metrics.trackerCall("findByChecksum", System.nanoTime() - start);
+        }
+    }
+
+    public UploadResourceTracker getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,222 @@
+package cc.ddrpa.tuskott.metrics;
+
+import cc.ddrpa.tuskott.tus.ChecksumAlgorithmSelector;
+import cc.ddrpa.tuskott.tus.storage.CompressingStorage;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import cc.ddrpa.tuskott.tus.storage.PackedDiskStorage;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+import cc.ddrpa.tuskott.tus.storage.TieredStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于 Micrometer 的 {@link TuskottMetrics} 实现
+ * <p>
+ * 所有 Meter 都在构造时注册并缓存，记录指标时不会再查找或创建 Meter。
+ */
+public class MicrometerTuskottMetrics implements TuskottMetrics {
+
+    private static final String NO_CHECKSUM = "none";
+    // 没有被分层存储包装的 LocalDiskStorage 的 storage 标签
+    private static final String ROOT_STORAGE = "root";
+    private static final List<String> TRACKER_OPERATIONS = List.of(
+            "create", "patch", "head", "updateUploadLength", "filter", "remove", "findByChecksum");
+
+    private final MeterRegistry registry;
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final Counter bytesIngested;
+    private final Counter checksumMismatches;
+    private final Counter offsetMismatches;
+    private final Map<String, Timer> patchTimers = new HashMap<>();
+    private final Timer patchTimerWithoutChecksum;
+    private final Timer storageWriteTimer;
+    private final Map<String, Timer> trackerTimers = new HashMap<>();
+    private final Timer lockAcquiredTimer;
+    private final Timer lockRejectedTimer;
+    private final Timer eventDispatchLagTimer;
+    private final AtomicInteger admissionLimit = new AtomicInteger();
+    private final Counter admissionAccepted;
+    private final Counter admissionRejectedGlobal;
+    private final Counter admissionRejectedPerClient;
+
+    public MicrometerTuskottMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("tuskott.uploads.active", activeUploads, AtomicInteger::get)
+                .description("PATCH requests currently transferring data")
+                .register(registry);
+        bytesIngested = Counter.builder("tuskott.bytes.ingested")
+                .description("Bytes received and persisted by PATCH requests")
+                .baseUnit("bytes")
+                .register(registry);
+        checksumMismatches = Counter.builder("tuskott.checksum.mismatches")
+                .description("Chunks rejected because of Upload-Checksum mismatch")
+                .register(registry);
+        offsetMismatches = Counter.builder("tuskott.offset.mismatches")
+                .description("PATCH requests answered with HTTP 409 because of Upload-Offset mismatch")
+                .register(registry);
+        for (String algorithm : ChecksumAlgorithmSelector.SUPPORTED_CHECKSUM_ALGORITHM.split(",")) {
+            patchTimers.put(algorithm, patchTimer(registry, algorithm));
+        }
+        patchTimerWithoutChecksum = patchTimer(registry, NO_CHECKSUM);
+        storageWriteTimer = Timer.builder("tuskott.storage.write")
+                .description("Latency of Storage.write")
+                .publishPercentileHistogram()
+                .register(registry);
+        for (String operation : TRACKER_OPERATIONS) {
+            trackerTimers.put(operation, Timer.builder("tuskott.tracker.calls")
+                    .description("Latency of UploadResourceTracker calls")
+                    .tag("operation", operation)
+                    .register(registry));
+        }
+        lockAcquiredTimer = lockTimer(registry, "acquired");
+        lockRejectedTimer = lockTimer(registry, "rejected");
+        eventDispatchLagTimer = Timer.builder("tuskott.events.dispatch.lag")
+                .description("Delay between an event being raised and its callback being invoked")
+                .register(registry);
+        Gauge.builder("tuskott.admission.limit", admissionLimit, AtomicInteger::get)
+                .description("Adaptive limit of concurrent chunk writes")
+                .register(registry);
+        admissionAccepted = admissionCounter(registry, "accepted");
+        admissionRejectedGlobal = admissionCounter(registry, "rejected_global");
+        admissionRejectedPerClient = admissionCounter(registry, "rejected_client");
+    }
+
+    /**
+     * 注册 storage 及其包装的所有 LocalDiskStorage 的 FileChannel 缓存命中次数与打开的文件描述符数量
+     * <p>
+     * 依次展开 TieredStorage、CompressingStorage 与 PackedDiskStorage，{@code storage} 标签区分热层与冷层，
+     * 最外层的 LocalDiskStorage 为 {@code root}。
+     */
+    public void bindChannelCaches(Storage storage) {
+        bindChannelCaches(storage, ROOT_STORAGE);
+    }
+
+    private void bindChannelCaches(Storage storage, String name) {
+        if (storage instanceof LocalDiskStorage localDiskStorage) {
+            bindChannelCache(localDiskStorage, name);
+        } else if (storage instanceof PackedDiskStorage packedDiskStorage) {
+            bindChannelCache(packedDiskStorage.getLoose(), name);
+        } else if (storage instanceof CompressingStorage compressingStorage) {
+            bindChannelCaches(compressingStorage.getDelegate(), name);
+        } else if (storage instanceof TieredStorage tieredStorage) {
+            // 嵌套的分层存储以 . 连接各层的名称
+            String prefix = ROOT_STORAGE.equals(name) ? "" : name + ".";
+            bindChannelCaches(tieredStorage.getHot(), prefix + "hot");
+            bindChannelCaches(tieredStorage.getCold(), prefix + "cold");
+        }
+    }
+
+    private void bindChannelCache(LocalDiskStorage storage, String name) {
+        FunctionCounter.builder("tuskott.storage.channel.cache", storage, LocalDiskStorage::getChannelCacheHits)
+                .description("Lookups of cached FileChannels used by LocalDiskStorage writes")
+                .tag("storage", name)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("tuskott.storage.channel.cache", storage, LocalDiskStorage::getChannelCacheMisses)
+                .description("Lookups of cached FileChannels used by LocalDiskStorage writes")
+                .tag("storage", name)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("tuskott.storage.channels.open", storage, LocalDiskStorage::getOpenChannels)
+                .description("FileChannels currently held open by LocalDiskStorage")
+                .tag("storage", name)
+                .register(registry);
+    }
+
+    private static Counter admissionCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("tuskott.admission.decisions")
+                .description("Admission decisions, rejected writes are answered with HTTP 503")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static Timer patchTimer(MeterRegistry registry, String algorithm) {
+        return Timer.builder("tuskott.patch")
+                .description("Latency of transferring the body of a PATCH request")
+                .tag("checksum", algorithm)
+                .publishPercentiles(0.5, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Timer lockTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("tuskott.lock.acquire")
+                .description("Lock acquisitions, rejected ones are answered with HTTP 423")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    @Override
+    public void patchStarted() {
+        activeUploads.incrementAndGet();
+    }
+
+    @Override
+    public void patchFinished(String checksumAlgorithm, long nanos) {
+        activeUploads.decrementAndGet();
+        Timer timer = checksumAlgorithm == null ? null : patchTimers.get(checksumAlgorithm);
+        (timer == null ? patchTimerWithoutChecksum : timer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void bytesIngested(long bytes) {
+        bytesIngested.increment(bytes);
+    }
+
+    @Override
+    public void checksumMismatch() {
+        checksumMismatches.increment();
+    }
+
+    @Override
+    public void offsetMismatch() {
+        offsetMismatches.increment();
+    }
+
+    @Override
+    public void storageWrite(long nanos) {
+        storageWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void trackerCall(String operation, long nanos) {
+        Timer timer = trackerTimers.get(operation);
+        if (timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void lockAcquire(boolean acquired, long nanos) {
+        (acquired ? lockAcquiredTimer : lockRejectedTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void eventDispatched(long lagNanos) {
+        eventDispatchLagTimer.record(lagNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void admissionAccepted() {
+        admissionAccepted.increment();
+    }
+
+    @Override
+    public void admissionRejected(boolean perClient) {
+        (perClient ? admissionRejectedPerClient : admissionRejectedGlobal).increment();
+    }
+
+    @Override
+    public void admissionLimitChanged(int limit) {
+        admissionLimit.set(limit);
+    }
+}
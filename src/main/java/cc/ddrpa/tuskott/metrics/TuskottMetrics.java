@@ -0,0 +1,98 @@
+package cc.ddrpa.tuskott.metrics;
+
+/**
+ * 收集 tuskott 运行时指标
+ * <p>
+ * 这些方法会在上传的热路径上被调用，实现类不应在其中分配对象或执行阻塞操作。
+ */
+public interface TuskottMetrics {
+
+    /**
+     * 不收集任何指标
+     */
+    TuskottMetrics NOOP = new TuskottMetrics() {
+    };
+
+    /**
+     * 开始处理一个 PATCH 请求中的数据
+     */
+    default void patchStarted() {
+    }
+
+    /**
+     * PATCH 请求中的数据处理完毕
+     *
+     * @param checksumAlgorithm 客户端声明的校验算法，未声明时为 null
+     * @param nanos             耗时
+     */
+    default void patchFinished(String checksumAlgorithm, long nanos) {
+    }
+
+    /**
+     * 接收并保存了若干字节
+     */
+    default void bytesIngested(long bytes) {
+    }
+
+    /**
+     * 校验和不匹配
+     */
+    default void checksumMismatch() {
+    }
+
+    /**
+     * 客户端声明的 Upload-Offset 与服务端记录不一致，服务端将返回 HTTP 409
+     */
+    default void offsetMismatch() {
+    }
+
+    /**
+     * 调用 {@code Storage.write} 的耗时
+     */
+    default void storageWrite(long nanos) {
+    }
+
+    /**
+     * 调用 {@code UploadResourceTracker} 的耗时
+     *
+     * @param operation 方法名
+     * @param nanos     耗时
+     */
+    default void trackerCall(String operation, long nanos) {
+    }
+
+    /**
+     * 尝试获取锁，获取失败时服务端将返回 HTTP 423
+     *
+     * @param acquired 是否成功获取
+     * @param nanos    耗时
+     */
+    default void lockAcquire(boolean acquired, long nanos) {
+    }
+
+    /**
+     * 事件从产生到开始执行回调的延迟
+     */
+    default void eventDispatched(long lagNanos) {
+    }
+
+    /**
+     * 准入控制允许了一次写入
+     */
+    default void admissionAccepted() {
+    }
+
+    /**
+     * 准入控制拒绝了一次写入，服务端将返回 HTTP 503
+     *
+     * @param perClient 是否因为达到客户端的上限而被拒绝，否则是达到了全局上限
+     */
+    default void admissionRejected(boolean perClient) {
+    }
+
+    /**
+     * 准入控制的全局并发上限发生了变化
+     */
+    default void admissionLimitChanged(int limit) {
+    }
+}
@@ -21,10 +21,26 @@ public class TuskottProperties {
     private Extension extension = new Extension();
     // 存储上传计划
     private UploadResourceTrackerProperties tracker = new UploadResourceTrackerProperties();
+    // 生成上传资源 id
+    private UploadIdGeneratorProperties idGenerator = new UploadIdGeneratorProperties();
     // 提供锁
     private LockProviderProperties lock = new LockProviderProperties();
     // 存储后端配置
     private StorageProperties storage = new StorageProperties();
+    // 事件回调
+    private Event event = new Event();
+    // 校验和
+    private Checksum checksum = new Checksum();
+    // 多节点部署
+    private Cluster cluster = new Cluster();
+    // 准入控制
+    private Admission admission = new Admission();
+    // 带宽限制
+    private Bandwidth bandwidth = new Bandwidth();
+    // 存储空间预留
+    private SpaceReservation spaceReservation = new SpaceReservation();
+    // 流式消费者
+    private Streaming streaming = new Streaming();
 
     public String getBasePath() {
         return basePath;
@@ -74,6 +90,14 @@ public class TuskottProperties {
         this.tracker = tracker;
     }
 
+    public UploadIdGeneratorProperties getIdGenerator() {
+        return idGenerator;
+    }
+
+    public void setIdGenerator(UploadIdGeneratorProperties idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
     public LockProviderProperties getLock() {
         return lock;
     }
@@ -90,9 +114,67 @@ public class TuskottProperties {
         this.storage = storage;
     }
 
+    public Event getEvent() {
+        return event;
+    }
+
+    public void setEvent(Event event) {
+        this.event = event;
+    }
+
+    public Checksum getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(Admission admission) {
+        this.admission = admission;
+    }
+
+    public Bandwidth getBandwidth() {
+        return bandwidth;
+    }
+
+    public void setBandwidth(Bandwidth bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    public SpaceReservation getSpaceReservation() {
+        return spaceReservation;
+    }
+
+    public void setSpaceReservation(SpaceReservation spaceReservation) {
+        this.spaceReservation = spaceReservation;
+    }
+
+    public Streaming getStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(Streaming streaming) {
+        this.streaming = streaming;
+    }
+
     public static class Extension {
         private boolean enableCreation = true;
         private boolean enableTermination = true;
+        // 允许客户端在 HTTP trailer 中提供 Upload-Checksum
+        private boolean enableChecksumTrailer = true;
 
         public boolean isEnableCreation() {
             return enableCreation;
@@ -109,6 +191,364 @@ public class TuskottProperties {
         public void setEnableTermination(boolean enableTermination) {
             this.enableTermination = enableTermination;
         }
+
+        public boolean isEnableChecksumTrailer() {
+            return enableChecksumTrailer;
+        }
+
+        public void setEnableChecksumTrailer(boolean enableChecksumTrailer) {
+            this.enableChecksumTrailer = enableChecksumTrailer;
+        }
+    }
+
+    public static class Event {
+        // 批量回调方法单次最多接收的事件数
+        private int batchSize = 100;
+        // 批量回调方法中事件的最长等待时间，单位为毫秒
+        private long batchDelay = 200L;
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public long getBatchDelay() {
+            return batchDelay;
+        }
+
+        public void setBatchDelay(long batchDelay) {
+            this.batchDelay = batchDelay;
+        }
+    }
+
+    public static class Checksum {
+        // 是否在后台线程中计算校验和，使其与写入存储并行进行
+        private boolean pipelined = false;
+        // 计算校验和的线程数，默认为 CPU 核数
+        private int digestThreads = Runtime.getRuntime().availableProcessors();
+        // 流水线模式下每个缓冲区的大小，单位为字节
+        private int pipelineBufferSize = 65_536;
+        // 流水线模式下每个请求最多占用的缓冲区数
+        private int pipelineBuffers = 4;
+
+        public boolean isPipelined() {
+            return pipelined;
+        }
+
+        public void setPipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+        }
+
+        public int getDigestThreads() {
+            return digestThreads;
+        }
+
+        public void setDigestThreads(int digestThreads) {
+            this.digestThreads = digestThreads;
+        }
+
+        public int getPipelineBufferSize() {
+            return pipelineBufferSize;
+        }
+
+        public void setPipelineBufferSize(int pipelineBufferSize) {
+            this.pipelineBufferSize = pipelineBufferSize;
+        }
+
+        public int getPipelineBuffers() {
+            return pipelineBuffers;
+        }
+
+        public void setPipelineBuffers(int pipelineBuffers) {
+            this.pipelineBuffers = pipelineBuffers;
+        }
+    }
+
+    public static class Cluster {
+        private boolean enable = false;
+        // 当前节点的标识，会写入上传资源的 id
+        private String nodeId = "0";
+        // 节点标识与节点地址的对应关系，例如 node1: 'http://10.0.0.1:8080'
+        private Map<String, String> nodes = Collections.emptyMap();
+        // 请求到达的节点不持有上传资源时，转发给所属节点还是重定向客户端
+        private Mode mode = Mode.FORWARD;
+        // 创建上传资源时，Location 是否直接使用当前节点的地址
+        private boolean locationWithNodeUrl = false;
+        // 转发请求时连接所属节点的超时时间，单位为毫秒
+        private long forwardConnectTimeout = 2_000L;
+
+        public boolean isEnable() {
+            return enable;
+        }
+
+        public void setEnable(boolean enable) {
+            this.enable = enable;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public Map<String, String> getNodes() {
+            return nodes;
+        }
+
+        public void setNodes(Map<String, String> nodes) {
+            this.nodes = nodes;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public boolean isLocationWithNodeUrl() {
+            return locationWithNodeUrl;
+        }
+
+        public void setLocationWithNodeUrl(boolean locationWithNodeUrl) {
+            this.locationWithNodeUrl = locationWithNodeUrl;
+        }
+
+        public long getForwardConnectTimeout() {
+            return forwardConnectTimeout;
+        }
+
+        public void setForwardConnectTimeout(long forwardConnectTimeout) {
+            this.forwardConnectTimeout = forwardConnectTimeout;
+        }
+
+        public enum Mode {
+            // 由当前节点将请求流式转发给所属节点
+            FORWARD,
+            // 返回 HTTP 307，由客户端重新向所属节点发起请求
+            REDIRECT
+        }
+    }
+
+    public static class Admission {
+        private boolean enable = false;
+        // 同时写入数据的 PATCH 请求数的初始上限，之后根据写入耗时在最小值与最大值之间调整
+        private int initialLimit = 64;
+        private int minLimit = 4;
+        private int maxLimit = 1024;
+        // 单个客户端同时写入数据的 PATCH 请求数上限
+        private int perClientLimit = 8;
+        // 从指定请求头中识别客户端或租户，未配置或请求中没有该请求头时使用客户端地址
+        private String clientHeader;
+        // 写入耗时超过基线的多少倍时缩小上限
+        private double tolerance = 2.0;
+        // 缩小上限时乘以的系数
+        private double backoffRatio = 0.9;
+        // 拒绝请求时通过 Retry-After 建议客户端等待的秒数
+        private int retryAfter = 1;
+
+        public boolean isEnable() {
+            return enable;
+        }
+
+        public void setEnable(boolean enable) {
+            this.enable = enable;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public int getPerClientLimit() {
+            return perClientLimit;
+        }
+
+        public void setPerClientLimit(int perClientLimit) {
+            this.perClientLimit = perClientLimit;
+        }
+
+        public String getClientHeader() {
+            return clientHeader;
+        }
+
+        public void setClientHeader(String clientHeader) {
+            this.clientHeader = clientHeader;
+        }
+
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public int getRetryAfter() {
+            return retryAfter;
+        }
+
+        public void setRetryAfter(int retryAfter) {
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    public static class Bandwidth {
+        private boolean enable = false;
+        // 以下速率的单位均为字节每秒，0 表示不限制
+        private long globalRate = 0L;
+        private long tenantRate = 0L;
+        private long uploadRate = 0L;
+        // 空闲后允许一次性通过的字节数
+        private long burst = 262_144L;
+        // 从 Upload-Metadata 的指定键中读取租户标识，没有该键的上传属于同一个默认租户
+        private String tenantMetadataKey = "tenant";
+        // 分享全局带宽时各租户的权重，未配置的租户权重为 1
+        private Map<String, Integer> tenantWeights = Collections.emptyMap();
+
+        public boolean isEnable() {
+            return enable;
+        }
+
+        public void setEnable(boolean enable) {
+            this.enable = enable;
+        }
+
+        public long getGlobalRate() {
+            return globalRate;
+        }
+
+        public void setGlobalRate(long globalRate) {
+            this.globalRate = globalRate;
+        }
+
+        public long getTenantRate() {
+            return tenantRate;
+        }
+
+        public void setTenantRate(long tenantRate) {
+            this.tenantRate = tenantRate;
+        }
+
+        public long getUploadRate() {
+            return uploadRate;
+        }
+
+        public void setUploadRate(long uploadRate) {
+            this.uploadRate = uploadRate;
+        }
+
+        public long getBurst() {
+            return burst;
+        }
+
+        public void setBurst(long burst) {
+            this.burst = burst;
+        }
+
+        public String getTenantMetadataKey() {
+            return tenantMetadataKey;
+        }
+
+        public void setTenantMetadataKey(String tenantMetadataKey) {
+            this.tenantMetadataKey = tenantMetadataKey;
+        }
+
+        public Map<String, Integer> getTenantWeights() {
+            return tenantWeights;
+        }
+
+        public void setTenantWeights(Map<String, Integer> tenantWeights) {
+            this.tenantWeights = tenantWeights;
+        }
+    }
+
+    public static class SpaceReservation {
+        private boolean enable = false;
+        // 已用空间与进行中的上传还需写入的字节数之和超过总空间的该比例时，拒绝新的上传
+        private double highWatermark = 0.9;
+
+        public boolean isEnable() {
+            return enable;
+        }
+
+        public void setEnable(boolean enable) {
+            this.enable = enable;
+        }
+
+        public double getHighWatermark() {
+            return highWatermark;
+        }
+
+        public void setHighWatermark(double highWatermark) {
+            this.highWatermark = highWatermark;
+        }
+    }
+
+    public static class Streaming {
+        // 执行流式消费者的线程数
+        private int consumerThreads = 4;
+        // 每个消费者在每个上传上最多缓存的字节数，超过后按消费者的策略阻塞上传或暂时落后
+        private int bufferSize = 4_194_304;
+        // 上传完成后等待消费者给出结果的最长毫秒数
+        private long completionTimeout = 600_000L;
+
+        public int getConsumerThreads() {
+            return consumerThreads;
+        }
+
+        public void setConsumerThreads(int consumerThreads) {
+            this.consumerThreads = consumerThreads;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public long getCompletionTimeout() {
+            return completionTimeout;
+        }
+
+        public void setCompletionTimeout(long completionTimeout) {
+            this.completionTimeout = completionTimeout;
+        }
     }
 
     public static class BehindProxy {
@@ -178,6 +618,28 @@ public class TuskottProperties {
         }
     }
 
+    public static class UploadIdGeneratorProperties {
+        private String provider = "cc.ddrpa.tuskott.tus.resource.TimeOrderedUploadIdGenerator";
+        // config 配置如何要看具体实现
+        private Map<String, Object> config = Collections.emptyMap();
+
+        public String getProvider() {
+            return provider;
+        }
+
+        public void setProvider(String provider) {
+            this.provider = provider;
+        }
+
+        public Map<String, Object> getConfig() {
+            return config;
+        }
+
+        public void setConfig(Map<String, Object> config) {
+            this.config = config;
+        }
+    }
+
     public static class StorageProperties {
         private String provider = "cc.ddrpa.tuskott.tus.storage.LocalDiskStorage";
         private Map<String, Object> config = Collections.emptyMap();
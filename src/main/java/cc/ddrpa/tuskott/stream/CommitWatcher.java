@@ -0,0 +1,250 @@
+package cc.ddrpa.tuskott.stream;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.resource.UploadResourceTracker;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 跟踪上传的提交进度，支持在上传过程中读取已提交的数据
+ * <p>
+ * 只有存在读取者的上传才会被跟踪，读取者在没有新数据时等待下一次提交的通知而不是轮询。
+ * 提交的偏移量只在数据写入并校验通过后前进，因此读取者不会读到未校验或被回退的数据。
+ * 提交通知只在本节点内传递，多节点部署时读取者需要与上传请求位于同一节点。
+ */
+public class CommitWatcher {
+
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    /**
+     * 从 offset 开始读取上传的数据，读到已提交的位置后等待后续提交，上传完成后结束
+     *
+     * @throws FileNotFoundException 上传不存在
+     */
+    public InputStream follow(String resourceId, long offset, Storage storage, UploadResourceTracker tracker)
+            throws FileNotFoundException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        // 先登记再查询上传进度，避免错过两者之间的提交
+        Watch watch = watches.compute(resourceId, (id, existing) -> {
+            Watch registered = Objects.isNull(existing) ? new Watch() : existing;
+            registered.followers++;
+            return registered;
+        });
+        UploadResource uploadResource = tracker.head(resourceId);
+        if (Objects.isNull(uploadResource)) {
+            unregister(resourceId, watch);
+            throw new FileNotFoundException(resourceId + " does not exist");
+        }
+        watch.committed(uploadResource.getUploadOffset());
+        if (Objects.equals(uploadResource.getUploadOffset(), uploadResource.getUploadLength())) {
+            watch.completed();
+        }
+        return new FollowingInputStream(resourceId, watch, storage, offset);
+    }
+
+    /**
+     * 数据已写入并提交
+     */
+    public void committed(String resourceId, long uploadOffset) {
+        Watch watch = watches.get(resourceId);
+        if (Objects.nonNull(watch)) {
+            watch.committed(uploadOffset);
+        }
+    }
+
+    /**
+     * 上传完成，读取者读完已提交的数据后结束
+     */
+    public void completed(String resourceId) {
+        Watch watch = watches.get(resourceId);
+        if (Objects.nonNull(watch)) {
+            watch.completed();
+        }
+    }
+
+    /**
+     * 上传被终止或过期，读取者抛出异常
+     */
+    public void terminated(String resourceId) {
+        Watch watch = watches.get(resourceId);
+        if (Objects.nonNull(watch)) {
+            watch.terminated();
+        }
+    }
+
+    private void unregister(String resourceId, Watch watch) {
+        watches.computeIfPresent(resourceId, (id, existing) -> {
+            if (existing != watch) {
+                return existing;
+            }
+            existing.followers--;
+            return existing.followers == 0 ? null : existing;
+        });
+    }
+
+    private static final class Watch {
+
+        // 只在 watches.compute 中访问
+        private int followers;
+        private volatile long committed;
+        private volatile boolean completed;
+        private volatile boolean terminated;
+
+        private synchronized void committed(long uploadOffset) {
+            if (uploadOffset > committed) {
+                committed = uploadOffset;
+                notifyAll();
+            }
+        }
+
+        private synchronized void completed() {
+            completed = true;
+            notifyAll();
+        }
+
+        private synchronized void terminated() {
+            terminated = true;
+            notifyAll();
+        }
+
+        private synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        /**
+         * 等待 position 之后的数据被提交
+         *
+         * @return 已提交的位置，上传已完成且没有更多数据时返回 -1
+         */
+        private long await(long position, FollowingInputStream follower) throws IOException {
+            long current = committed;
+            if (current > position) {
+                return current;
+            }
+            synchronized (this) {
+                while (committed <= position && !completed && !terminated && !follower.closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for new data");
+                    }
+                }
+            }
+            if (follower.closed) {
+                throw new IOException("Stream closed");
+            }
+            if (committed > position) {
+                return committed;
+            }
+            if (terminated) {
+                throw new IOException("Upload was terminated");
+            }
+            return -1L;
+        }
+    }
+
+    /**
+     * 只读取已提交的数据，需要时重新打开 Storage 的数据流以读到新追加的数据
+     */
+    private final class FollowingInputStream extends InputStream {
+
+        private final String resourceId;
+        private final Watch watch;
+        private final Storage storage;
+        private long position;
+        private InputStream source;
+        private volatile boolean closed;
+
+        private FollowingInputStream(String resourceId, Watch watch, Storage storage, long position) {
+            this.resourceId = resourceId;
+            this.watch = watch;
+            this.storage = storage;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            boolean reopened = false;
+            while (true) {
+                long limit = watch.await(position, this);
+                if (limit < 0) {
+                    return -1;
+                }
+                if (Objects.isNull(source)) {
+                    source = open();
+                    reopened = true;
+                }
+                int n = source.read(b, off, (int) Math.min(len, limit - position));
+                if (n > 0) {
+                    position += n;
+                    return n;
+                }
+                source.close();
+                source = null;
+                if (reopened) {
+                    // 新打开的数据流也读不到已提交的数据
+                    throw new IOException("Storage of " + resourceId + " ended at " + position
+                            + " before committed offset " + limit);
+                }
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            long current = watch.committed;
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, current - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            watch.wakeUp();
+            unregister(resourceId, watch);
+            if (Objects.nonNull(source)) {
+                source.close();
+                source = null;
+            }
+        }
+
+        private InputStream open() throws IOException {
+            InputStream inputStream;
+            try {
+                inputStream = storage.streaming(resourceId);
+            } catch (BlobAccessException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            try {
+                inputStream.skipNBytes(position);
+            } catch (IOException e) {
+                inputStream.close();
+                throw e;
+            }
+            return inputStream;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cc.ddrpa.tuskott.stream;
+
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+
+/**
+ * 在上传过程中按顺序接收上传数据的消费者，例如病毒扫描、生成缩略图或转发到其他系统
+ * <p>
+ * 注册为 Spring Bean 即可生效。每个上传会为每个消费者打开一个 {@link StreamingConsumerSession}，
+ * 会话的结果附加在 {@link cc.ddrpa.tuskott.event.PostCompleteEvent} 上，回调不必再通过 Storage 重新读取文件。
+ */
+public interface StreamingConsumer {
+
+    /**
+     * 消费者名称，作为结果在 {@link cc.ddrpa.tuskott.event.PostCompleteEvent#getStreamingResults()} 中的键
+     */
+    String name();
+
+    /**
+     * 是否消费该上传
+     */
+    default boolean accepts(UploadResource uploadResource) {
+        return true;
+    }
+
+    /**
+     * 消费者跟不上上传速度、缓存已满时的处理方式
+     */
+    default OverflowPolicy overflowPolicy() {
+        return OverflowPolicy.CATCH_UP;
+    }
+
+    /**
+     * 为一个上传打开会话，在消费者线程中调用
+     */
+    StreamingConsumerSession open(UploadResource uploadResource) throws Exception;
+
+    enum OverflowPolicy {
+        // 暂停读取请求体，直到消费者处理完缓存的数据
+        BLOCK,
+        // 丢弃缓存不下的数据，之后从 Storage 中读取已写入的部分追上进度
+        CATCH_UP
+    }
+}
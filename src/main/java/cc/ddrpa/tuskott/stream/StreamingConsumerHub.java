@@ -0,0 +1,464 @@
+package cc.ddrpa.tuskott.stream;
+
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 将 PATCH 请求体中的数据分发给注册的 {@link StreamingConsumer}
+ * <p>
+ * 请求体在写入 Storage 的同时被复制到每个消费者的队列中，由消费者线程按顺序交付。
+ * 队列超过 bufferSize 时，按消费者的 {@link StreamingConsumer.OverflowPolicy} 阻塞上传或丢弃数据，
+ * 被丢弃的数据在写入 Storage 并提交后再从 Storage 中读取。
+ * 已交付但最终没有提交的数据（校验失败、写入中断）会使会话被中止并从头重新交付。
+ * <p>
+ * 消费者、数据提交与完成由 TuskottProcessor 在持有上传资源锁时通知，同一个上传的通知不会并发发生。
+ */
+public class StreamingConsumerHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingConsumerHub.class);
+    // 复制请求体时每个数据块的大小
+    private static final int TEE_CHUNK_SIZE = 65_536;
+    // 阻塞上传时检查消费者状态的间隔
+    private static final long BLOCK_WAIT_MILLIS = 100L;
+
+    private final List<StreamingConsumer> consumers;
+    private final Storage storage;
+    private final int bufferSize;
+    private final long completionTimeout;
+    private final ExecutorService executor;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+
+    public StreamingConsumerHub(List<StreamingConsumer> consumers, Storage storage, int consumerThreads,
+                                int bufferSize, long completionTimeout) {
+        if (consumerThreads < 1) {
+            throw new IllegalArgumentException("Consumer threads must be positive: " + consumerThreads);
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Consumer buffer size must be positive: " + bufferSize);
+        }
+        this.consumers = List.copyOf(consumers);
+        this.storage = storage;
+        this.bufferSize = bufferSize;
+        this.completionTimeout = completionTimeout;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(consumerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "tuskott-streaming-consumer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 包装请求体，读取的数据会被复制给消费者
+     *
+     * @param uploadOffset 本次写入的起始位置，即已提交的字节数
+     */
+    public InputStream tee(UploadResource uploadResource, InputStream in, long uploadOffset) {
+        Upload upload = uploadOf(uploadResource, uploadOffset);
+        if (upload.workers.isEmpty()) {
+            return in;
+        }
+        TeeInputStream teeInputStream = new TeeInputStream(upload, in, uploadOffset);
+        upload.activeTee = teeInputStream;
+        return teeInputStream;
+    }
+
+    /**
+     * 数据已经写入 Storage 并提交
+     */
+    public void committed(String resourceId, long uploadOffset) {
+        Upload upload = uploads.get(resourceId);
+        if (Objects.isNull(upload)) {
+            return;
+        }
+        TeeInputStream teeInputStream = upload.activeTee;
+        if (Objects.nonNull(teeInputStream)) {
+            teeInputStream.flush();
+        }
+        upload.committed = uploadOffset;
+        upload.workers.forEach(Worker::schedule);
+    }
+
+    /**
+     * PATCH 请求处理结束，复制给消费者但没有提交的数据作废
+     */
+    public void endWrite(String resourceId) {
+        Upload upload = uploads.get(resourceId);
+        if (Objects.isNull(upload)) {
+            return;
+        }
+        TeeInputStream teeInputStream = upload.activeTee;
+        upload.activeTee = null;
+        if (Objects.nonNull(teeInputStream) && teeInputStream.end > upload.committed) {
+            upload.invalidatedAt.add(upload.committed);
+            upload.generation++;
+            upload.workers.forEach(Worker::schedule);
+        }
+    }
+
+    /**
+     * 上传完成，等待所有消费者处理完数据
+     *
+     * @return 消费者名称与结果，超过 completionTimeout 仍未完成的消费者结果为 {@link TimeoutException}
+     */
+    public CompletableFuture<Map<String, StreamingResult>> complete(UploadResource uploadResource) {
+        Upload upload = uploadOf(uploadResource, uploadResource.getUploadOffset());
+        if (upload.workers.isEmpty()) {
+            uploads.remove(uploadResource.getId());
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        upload.committed = uploadResource.getUploadOffset();
+        upload.target = uploadResource.getUploadOffset();
+        List<CompletableFuture<StreamingResult>> futures = new ArrayList<>(upload.workers.size());
+        for (Worker worker : upload.workers) {
+            futures.add(worker.result.completeOnTimeout(
+                    new StreamingResult(null, new TimeoutException("Streaming consumer "
+                            + worker.consumer.name() + " did not finish in " + completionTimeout + "ms")),
+                    completionTimeout, TimeUnit.MILLISECONDS));
+            worker.schedule();
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            uploads.remove(uploadResource.getId());
+            Map<String, StreamingResult> results = new LinkedHashMap<>();
+            for (int i = 0; i < futures.size(); i++) {
+                results.put(upload.workers.get(i).consumer.name(), futures.get(i).join());
+            }
+            return Collections.unmodifiableMap(results);
+        });
+    }
+
+    /**
+     * 上传被终止或过期，中止所有会话
+     */
+    public void abort(String resourceId) {
+        Upload upload = uploads.remove(resourceId);
+        if (Objects.isNull(upload)) {
+            return;
+        }
+        for (Worker worker : upload.workers) {
+            worker.aborted = true;
+            worker.schedule();
+        }
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    private Upload uploadOf(UploadResource uploadResource, long committed) {
+        return uploads.computeIfAbsent(uploadResource.getId(), id -> {
+            Upload upload = new Upload(uploadResource, committed);
+            for (StreamingConsumer consumer : consumers) {
+                if (consumer.accepts(uploadResource)) {
+                    upload.workers.add(new Worker(upload, consumer));
+                }
+            }
+            return upload;
+        });
+    }
+
+    private static final class Upload {
+
+        private final UploadResource uploadResource;
+        private final List<Worker> workers = new ArrayList<>();
+        // 已提交的字节数，之前的数据可以从 Storage 中读取
+        private volatile long committed;
+        // 上传完成时的总长度，未完成时为 -1
+        private volatile long target = -1L;
+        // 每次作废未提交的数据时递增，旧的数据块被丢弃
+        private volatile int generation;
+        // 第 n 次作废时已提交的字节数，消费者处理作废时可能已经有新的数据被提交
+        private final List<Long> invalidatedAt = new CopyOnWriteArrayList<>();
+        // 正在进行的 PATCH 请求的请求体
+        private volatile TeeInputStream activeTee;
+
+        private Upload(UploadResource uploadResource, long committed) {
+            this.uploadResource = uploadResource;
+            this.committed = committed;
+        }
+    }
+
+    private record Chunk(long offset, byte[] data, int generation) {
+    }
+
+    /**
+     * 一个消费者在一个上传上的队列与会话，drain 由 pending 保证同一时间只在一个线程中执行
+     */
+    private final class Worker {
+
+        private final Upload upload;
+        private final StreamingConsumer consumer;
+        private final Queue<Chunk> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CompletableFuture<StreamingResult> result = new CompletableFuture<>();
+        private volatile boolean aborted;
+        // 以下字段只在 drain 中访问
+        private StreamingConsumerSession session;
+        private long position;
+        private int generation;
+
+        private Worker(Upload upload, StreamingConsumer consumer) {
+            this.upload = upload;
+            this.consumer = consumer;
+        }
+
+        private void offer(Chunk chunk) {
+            if (result.isDone()) {
+                return;
+            }
+            if (queuedBytes.get() + chunk.data().length > bufferSize && !queue.isEmpty()) {
+                if (consumer.overflowPolicy() == StreamingConsumer.OverflowPolicy.CATCH_UP) {
+                    // 丢弃，之后从 Storage 中读取
+                    return;
+                }
+                synchronized (this) {
+                    while (queuedBytes.get() + chunk.data().length > bufferSize && !queue.isEmpty()
+                            && !result.isDone()) {
+                        try {
+                            wait(BLOCK_WAIT_MILLIS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }
+            }
+            queue.offer(chunk);
+            queuedBytes.addAndGet(chunk.data().length);
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException e) {
+                    pending.set(0);
+                    fail(e);
+                }
+            }
+        }
+
+        private void drain() {
+            do {
+                try {
+                    process();
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            } while (pending.decrementAndGet() > 0);
+        }
+
+        private void process() throws Exception {
+            if (result.isDone()) {
+                clear();
+                return;
+            }
+            if (aborted) {
+                fail(new CancellationException("Upload " + upload.uploadResource.getId() + " was terminated"));
+                return;
+            }
+            int currentGeneration = upload.generation;
+            if (currentGeneration != generation) {
+                // 提交的字节数只增不减，最早一次作废时的位置最小
+                long validUntil = upload.invalidatedAt.get(generation);
+                generation = currentGeneration;
+                if (position > validUntil) {
+                    // 已交付的数据被作废，重新开始
+                    abortSession();
+                    position = 0L;
+                }
+            }
+            if (Objects.isNull(session)) {
+                session = consumer.open(upload.uploadResource);
+            }
+            Chunk chunk;
+            while ((chunk = queue.peek()) != null) {
+                if (chunk.generation() > generation) {
+                    // 数据块来自作废之后的写入，重新检查作废的范围
+                    schedule();
+                    return;
+                }
+                long chunkEnd = chunk.offset() + chunk.data().length;
+                if (chunk.generation() == generation && chunkEnd > position) {
+                    if (chunk.offset() > position) {
+                        long committed = upload.committed;
+                        if (committed < chunk.offset()) {
+                            // 缺失的数据还没有提交，等待提交后再继续
+                            catchUp(committed);
+                            return;
+                        }
+                        catchUp(chunk.offset());
+                    }
+                    int skip = (int) (position - chunk.offset());
+                    session.accept(chunk.data(), skip, chunk.data().length - skip);
+                    position = chunkEnd;
+                }
+                queue.poll();
+                release(chunk);
+            }
+            long target = upload.target;
+            if (target >= 0L) {
+                catchUp(target);
+                Object value = session.finish();
+                session = null;
+                result.complete(new StreamingResult(value, null));
+            }
+        }
+
+        /**
+         * 从 Storage 中读取 [position, to) 范围内已提交的数据
+         */
+        private void catchUp(long to) throws Exception {
+            if (position >= to) {
+                return;
+            }
+            try (InputStream inputStream = storage.streaming(upload.uploadResource.getId())) {
+                inputStream.skipNBytes(position);
+                byte[] buffer = new byte[(int) Math.min(TEE_CHUNK_SIZE, to - position)];
+                while (position < to) {
+                    int n = inputStream.read(buffer, 0, (int) Math.min(buffer.length, to - position));
+                    if (n < 0) {
+                        throw new EOFException("Storage ended at " + position + " before " + to);
+                    }
+                    session.accept(buffer, 0, n);
+                    position += n;
+                }
+            }
+        }
+
+        private void release(Chunk chunk) {
+            queuedBytes.addAndGet(-chunk.data().length);
+            if (consumer.overflowPolicy() == StreamingConsumer.OverflowPolicy.BLOCK) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private void fail(Throwable cause) {
+            if (!(cause instanceof CancellationException)) {
+                logger.warn("Streaming consumer {} failed on {}", consumer.name(), upload.uploadResource.getId(), cause);
+            }
+            abortSession();
+            result.complete(new StreamingResult(null, cause));
+            clear();
+        }
+
+        private void abortSession() {
+            if (Objects.nonNull(session)) {
+                try {
+                    session.abort();
+                } catch (RuntimeException e) {
+                    logger.debug("Failed to abort streaming consumer {}", consumer.name(), e);
+                }
+                session = null;
+            }
+        }
+
+        private void clear() {
+            Chunk chunk;
+            while ((chunk = queue.poll()) != null) {
+                release(chunk);
+            }
+        }
+    }
+
+    /**
+     * 将读取的数据按 TEE_CHUNK_SIZE 攒成数据块复制给消费者
+     */
+    private final class TeeInputStream extends InputStream {
+
+        private final Upload upload;
+        private final InputStream in;
+        private final byte[] buffer = new byte[TEE_CHUNK_SIZE];
+        private int buffered;
+        // 已复制给消费者的数据的结束位置
+        private long end;
+
+        private TeeInputStream(Upload upload, InputStream in, long uploadOffset) {
+            this.upload = upload;
+            this.in = in;
+            this.end = uploadOffset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ch = in.read();
+            if (ch >= 0) {
+                buffer[buffered++] = (byte) ch;
+                if (buffered == buffer.length) {
+                    flush();
+                }
+            }
+            return ch;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            int copied = 0;
+            while (copied < n) {
+                int count = Math.min(n - copied, buffer.length - buffered);
+                System.arraycopy(b, off + copied, buffer, buffered, count);
+                buffered += count;
+                copied += count;
+                if (buffered == buffer.length) {
+                    publish();
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void flush() {
+            if (buffered > 0) {
+                publish();
+            }
+        }
+
+        private void publish() {
+            Chunk chunk = new Chunk(end, Arrays.copyOf(buffer, buffered), upload.generation);
+            end += buffered;
+            buffered = 0;
+            for (Worker worker : upload.workers) {
+                worker.offer(chunk);
+            }
+        }
+    }
+}
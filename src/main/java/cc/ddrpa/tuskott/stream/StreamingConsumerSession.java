@@ -0,0 +1,28 @@
+package cc.ddrpa.tuskott.stream;
+
+/**
+ * 消费者在一个上传上的会话，所有方法都在同一时刻只被一个消费者线程调用
+ * <p>
+ * 数据按偏移量顺序且不重复地交给 {@link #accept(byte[], int, int)}。若已交付的数据因校验失败等原因被回退，
+ * 会话会被 {@link #abort()}，随后重新打开新的会话并从头交付。
+ */
+public interface StreamingConsumerSession {
+
+    /**
+     * 接收下一段数据，方法返回后 data 可能被复用，需要保留时应复制
+     */
+    void accept(byte[] data, int offset, int length) throws Exception;
+
+    /**
+     * 所有数据都已交付
+     *
+     * @return 附加到完成事件上的结果
+     */
+    Object finish() throws Exception;
+
+    /**
+     * 上传被终止或数据被回退，释放会话持有的资源
+     */
+    default void abort() {
+    }
+}
@@ -0,0 +1,16 @@
+package cc.ddrpa.tuskott.stream;
+
+import java.util.Objects;
+
+/**
+ * 流式消费者在一个上传上的结果
+ *
+ * @param value   {@link StreamingConsumerSession#finish()} 的返回值
+ * @param failure 消费失败或超时的原因，成功时为 null
+ */
+public record StreamingResult(Object value, Throwable failure) {
+
+    public boolean isSuccess() {
+        return Objects.isNull(failure);
+    }
+}
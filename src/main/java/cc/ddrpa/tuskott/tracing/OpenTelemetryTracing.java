@@ -0,0 +1,103 @@
+package cc.ddrpa.tuskott.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+import java.util.List;
+
+/**
+ * 基于 OpenTelemetry 的 {@link TuskottTracing} 实现
+ */
+public class OpenTelemetryTracing implements TuskottTracing {
+
+    public static final String INSTRUMENTATION_SCOPE = "cc.ddrpa.tuskott";
+    public static final AttributeKey<String> UPLOAD_ID = AttributeKey.stringKey("tus.upload.id");
+    public static final AttributeKey<Long> HTTP_STATUS = AttributeKey.longKey("http.response.status_code");
+
+    private final Tracer tracer;
+
+    public OpenTelemetryTracing(OpenTelemetry openTelemetry) {
+        this.tracer = openTelemetry.getTracer(INSTRUMENTATION_SCOPE);
+    }
+
+    @Override
+    public TracingScope startSpan(String name, String resourceId) {
+        SpanBuilder spanBuilder = tracer.spanBuilder(name);
+        if (resourceId != null) {
+            spanBuilder.setAttribute(UPLOAD_ID, resourceId);
+        }
+        Span span = spanBuilder.startSpan();
+        return new OpenTelemetryScope(span, span.makeCurrent());
+    }
+
+    @Override
+    public Object captureContext() {
+        return Context.current();
+    }
+
+    @Override
+    public void runCallback(String name, List<Object> contexts, Runnable callback) {
+        SpanBuilder spanBuilder = tracer.spanBuilder(name);
+        if (contexts.size() == 1 && contexts.get(0) instanceof Context context) {
+            // 单个事件的回调作为产生事件的请求的子 span
+            spanBuilder.setParent(context);
+        } else {
+            // 批量回调同时关联到产生这些事件的所有请求
+            spanBuilder.setNoParent();
+            for (Object context : contexts) {
+                if (context instanceof Context otelContext) {
+                    spanBuilder.addLink(Span.fromContext(otelContext).getSpanContext());
+                }
+            }
+        }
+        try (OpenTelemetryScope scope = new OpenTelemetryScope(spanBuilder.startSpan())) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    private static class OpenTelemetryScope implements TracingScope {
+
+        private final Span span;
+        private final Scope scope;
+
+        private OpenTelemetryScope(Span span) {
+            this(span, span.makeCurrent());
+        }
+
+        private OpenTelemetryScope(Span span, Scope scope) {
+            this.span = span;
+            this.scope = scope;
+        }
+
+        @Override
+        public void setHttpStatus(int status) {
+            span.setAttribute(HTTP_STATUS, (long) status);
+            if (status >= 500) {
+                span.setStatus(StatusCode.ERROR);
+            }
+        }
+
+        @Override
+        public void recordException(Throwable throwable) {
+            span.recordException(throwable);
+            span.setStatus(StatusCode.ERROR);
+        }
+
+        @Override
+        public void close() {
+            scope.close();
+            span.end();
+        }
+    }
+}
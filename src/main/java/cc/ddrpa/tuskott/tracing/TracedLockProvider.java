@@ -0,0 +1,38 @@
+package cc.ddrpa.tuskott.tracing;
+
+import cc.ddrpa.tuskott.tus.lock.LockProvider;
+
+/**
+ * 为加锁操作创建 span 的 LockProvider 装饰器
+ */
+public class TracedLockProvider implements LockProvider {
+
+    private final LockProvider delegate;
+    private final TuskottTracing tracing;
+
+    public TracedLockProvider(LockProvider delegate, TuskottTracing tracing) {
+        this.delegate = delegate;
+        this.tracing = tracing;
+    }
+
+    @Override
+    public boolean acquire(String id) {
+        try (TracingScope scope = tracing.startSpan("tus.lock.acquire", id)) {
+            boolean acquired = delegate.acquire(id);
+            if (!acquired) {
+                // 加锁失败时服务端返回 HTTP 423
+                scope.setHttpStatus(423);
+            }
+            return acquired;
+        }
+    }
+
+    @Override
+    public void release(String id) {
+        delegate.release(id);
+    }
+
+    public LockProvider getDelegate() {
+        return delegate;
+    }
+}
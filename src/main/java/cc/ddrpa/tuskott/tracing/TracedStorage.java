@@ -0,0 +1,114 @@
+package cc.ddrpa.tuskott.tracing;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 为存储操作创建 span 的 Storage 装饰器
+ */
+public class TracedStorage implements Storage {
+
+    private final Storage delegate;
+    private final TuskottTracing tracing;
+
+    public TracedStorage(Storage delegate, TuskottTracing tracing) {
+        this.delegate = delegate;
+        this.tracing = tracing;
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        try (TracingScope scope = tracing.startSpan("tus.storage.create", resourceId)) {
+            try {
+                delegate.create(resourceId);
+            } catch (BlobAccessException | IOException | RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        try (TracingScope scope = tracing.startSpan("tus.storage.write", resourceId)) {
+            try {
+                return delegate.write(resourceId, inputStream, uploadOffset);
+            } catch (BlobAccessException | IOException | RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        try (TracingScope scope = tracing.startSpan("tus.storage.remove", null)) {
+            try {
+                delegate.remove(resourceIds);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        try (TracingScope scope = tracing.startSpan("tus.storage.remove", resourceId)) {
+            try {
+                delegate.remove(resourceId);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        return delegate.streaming(resourceId);
+    }
+
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        try (TracingScope scope = tracing.startSpan("tus.storage.rollback", resourceId)) {
+            try {
+                delegate.rollback(resourceId, offset);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void complete(String resourceId) throws BlobAccessException, IOException {
+        try (TracingScope scope = tracing.startSpan("tus.storage.complete", resourceId)) {
+            try {
+                delegate.complete(resourceId);
+            } catch (BlobAccessException | IOException | RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public long usableSpace() {
+        return delegate.usableSpace();
+    }
+
+    @Override
+    public long totalSpace() {
+        return delegate.totalSpace();
+    }
+
+    public Storage getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,116 @@
+package cc.ddrpa.tuskott.tracing;
+
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.resource.UploadResourceTracker;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * 为上传计划的查询与更新创建 span 的 UploadResourceTracker 装饰器
+ */
+public class TracedUploadResourceTracker implements UploadResourceTracker {
+
+    private final UploadResourceTracker delegate;
+    private final TuskottTracing tracing;
+
+    public TracedUploadResourceTracker(UploadResourceTracker delegate, TuskottTracing tracing) {
+        this.delegate = delegate;
+        this.tracing = tracing;
+    }
+
+    @Override
+    public UploadResource create(String resourceId, Long uploadLength, String metadata) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.create", resourceId)) {
+            try {
+                return delegate.create(resourceId, uploadLength, metadata);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public UploadResource patch(String resourceId, long newUploadOffset) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.patch", resourceId)) {
+            try {
+                return delegate.patch(resourceId, newUploadOffset);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public UploadResource head(String resourceId) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.head", resourceId)) {
+            try {
+                return delegate.head(resourceId);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public UploadResource updateUploadLength(String resourceId, Long uploadLength) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.updateUploadLength", resourceId)) {
+            try {
+                return delegate.updateUploadLength(resourceId, uploadLength);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public Stream<UploadResource> filter(Predicate<UploadResource> predicate) {
+        return delegate.filter(predicate);
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.remove", resourceId)) {
+            try {
+                delegate.remove(resourceId);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.remove", null)) {
+            try {
+                delegate.remove(resourceIds);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public Optional<UploadResource> findByChecksum(String checksum) {
+        try (TracingScope scope = tracing.startSpan("tus.tracker.findByChecksum", null)) {
+            try {
+                return delegate.findByChecksum(checksum);
+            } catch (RuntimeException e) {
+                scope.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    public UploadResourceTracker getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,26 @@
+package cc.ddrpa.tuskott.tracing;
+
+/**
+ * 一个进行中的 span，关闭时结束该 span 并恢复之前的上下文
+ */
+public interface TracingScope extends AutoCloseable {
+
+    TracingScope NOOP = new TracingScope() {
+    };
+
+    /**
+     * 记录请求的响应状态码
+     */
+    default void setHttpStatus(int status) {
+    }
+
+    /**
+     * 记录导致操作失败的异常
+     */
+    default void recordException(Throwable throwable) {
+    }
+
+    @Override
+    default void close() {
+    }
+}
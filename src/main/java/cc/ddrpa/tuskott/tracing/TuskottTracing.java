@@ -0,0 +1,48 @@
+package cc.ddrpa.tuskott.tracing;
+
+import jakarta.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * 为 tus 请求及其内部调用创建链路追踪 span
+ */
+public interface TuskottTracing {
+
+    /**
+     * 不记录任何 span
+     */
+    TuskottTracing NOOP = new TuskottTracing() {
+    };
+
+    /**
+     * 创建一个 span 并将其设为当前上下文，关闭返回的 {@link TracingScope} 时结束该 span
+     *
+     * @param name       span 名称
+     * @param resourceId 上传资源 ID，尚未分配时为 null
+     */
+    default TracingScope startSpan(String name, @Nullable String resourceId) {
+        return TracingScope.NOOP;
+    }
+
+    /**
+     * 获取当前的追踪上下文，以便在异步执行事件回调时关联到产生事件的请求
+     *
+     * @return 追踪上下文，不记录 span 时为 null
+     */
+    @Nullable
+    default Object captureContext() {
+        return null;
+    }
+
+    /**
+     * 在一个关联到产生事件的请求的 span 中执行事件回调
+     *
+     * @param name     span 名称
+     * @param contexts 产生这些事件时通过 {@link #captureContext()} 获取的追踪上下文
+     * @param callback 事件回调
+     */
+    default void runCallback(String name, List<Object> contexts, Runnable callback) {
+        callback.run();
+    }
+}
@@ -1,24 +1,100 @@
 package cc.ddrpa.tuskott.tus;
 
+import cc.ddrpa.tuskott.tus.checksum.ChecksumMessageDigest;
+import cc.ddrpa.tuskott.tus.checksum.CompositeMessageDigest;
+import cc.ddrpa.tuskott.tus.checksum.XxHash64;
+
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32C;
 
 public class ChecksumAlgorithmSelector {
 
-    public static final String SUPPORTED_CHECKSUM_ALGORITHM = "sha1,sha256,md5";
+    public static final String SUPPORTED_CHECKSUM_ALGORITHM = "sha1,sha256,md5,crc32c,xxh64";
+    private static final String[] SUPPORTED_CHECKSUM_ALGORITHMS = SUPPORTED_CHECKSUM_ALGORITHM.split(",");
+
+    // 每种算法最多缓存的 MessageDigest 实例数
+    private static final int POOL_CAPACITY = 64;
+    private static final Map<String, BlockingQueue<MessageDigest>> POOLS = Map.of(
+            "sha1", new ArrayBlockingQueue<>(POOL_CAPACITY),
+            "sha256", new ArrayBlockingQueue<>(POOL_CAPACITY),
+            "md5", new ArrayBlockingQueue<>(POOL_CAPACITY),
+            "crc32c", new ArrayBlockingQueue<>(POOL_CAPACITY),
+            "xxh64", new ArrayBlockingQueue<>(POOL_CAPACITY));
 
     private ChecksumAlgorithmSelector() {
         throw new UnsupportedOperationException("Utility class cannot be instantiated");
     }
 
+    /**
+     * 获取一个可用的 MessageDigest，用完后应通过 {@link #recycle(String, MessageDigest)} 归还
+     */
     public static MessageDigest getMessageDigest(String declaredAlgorithm)
             throws NoSuchAlgorithmException {
+        BlockingQueue<MessageDigest> pool = declaredAlgorithm == null ? null : POOLS.get(declaredAlgorithm);
+        if (pool == null) {
+            throw new NoSuchAlgorithmException(
+                    "Unsupported checksum algorithm: " + declaredAlgorithm);
+        }
+        MessageDigest messageDigest = pool.poll();
+        return messageDigest != null ? messageDigest : createMessageDigest(declaredAlgorithm);
+    }
+
+    /**
+     * 在不创建子串的情况下识别 value 前 length 个字符所表示的算法
+     *
+     * @return 算法名称常量，不受支持时返回 null
+     */
+    public static String resolveAlgorithm(String value, int length) {
+        for (String declaredAlgorithm : SUPPORTED_CHECKSUM_ALGORITHMS) {
+            if (declaredAlgorithm.length() == length && value.regionMatches(0, declaredAlgorithm, 0, length)) {
+                return declaredAlgorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取一个同时计算所有支持算法的 MessageDigest，用于 checksum-trailer
+     */
+    public static CompositeMessageDigest getCompositeMessageDigest() throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> messageDigests = new HashMap<>();
+        for (String declaredAlgorithm : SUPPORTED_CHECKSUM_ALGORITHMS) {
+            messageDigests.put(declaredAlgorithm, getMessageDigest(declaredAlgorithm));
+        }
+        return new CompositeMessageDigest(messageDigests);
+    }
+
+    /**
+     * 归还 MessageDigest 以便后续请求复用，缓存已满时直接丢弃
+     */
+    public static void recycle(String declaredAlgorithm, MessageDigest messageDigest) {
+        if (messageDigest instanceof CompositeMessageDigest compositeMessageDigest) {
+            compositeMessageDigest.getMessageDigests().forEach(ChecksumAlgorithmSelector::recycle);
+            return;
+        }
+        BlockingQueue<MessageDigest> pool = declaredAlgorithm == null ? null : POOLS.get(declaredAlgorithm);
+        if (pool != null && messageDigest != null) {
+            messageDigest.reset();
+            pool.offer(messageDigest);
+        }
+    }
+
+    private static MessageDigest createMessageDigest(String declaredAlgorithm)
+            throws NoSuchAlgorithmException {
         return switch (declaredAlgorithm) {
             case "sha1" -> MessageDigest.getInstance("SHA-1");
             case "sha256" -> MessageDigest.getInstance("SHA-256");
             case "md5" -> MessageDigest.getInstance("MD5");
+            // JDK 会为 CRC32C 使用硬件指令
+            case "crc32c" -> new ChecksumMessageDigest("CRC32C", new CRC32C(), Integer.BYTES);
+            case "xxh64" -> new ChecksumMessageDigest("XXH64", new XxHash64(), Long.BYTES);
             default -> throw new NoSuchAlgorithmException(
                     "Unsupported checksum algorithm: " + declaredAlgorithm);
         };
     }
-}
\ No newline at end of file
+}
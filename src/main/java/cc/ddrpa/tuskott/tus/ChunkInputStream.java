@@ -0,0 +1,126 @@
+package cc.ddrpa.tuskott.tus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * PATCH 请求体的包装，限制最多读取的字节数，并可选地在读取时更新摘要
+ * <p>
+ * 相当于 BoundedInputStream 与 DigestInputStream 的组合，实例在请求之间复用，
+ * 通过 {@link #obtain(InputStream, long)} 获取，用完后调用 {@link #recycle()} 归还。
+ */
+final class ChunkInputStream extends InputStream {
+
+    // 最多缓存的实例数
+    private static final int POOL_CAPACITY = 64;
+    private static final BlockingQueue<ChunkInputStream> POOL = new ArrayBlockingQueue<>(POOL_CAPACITY);
+
+    private InputStream in;
+    private long remaining;
+    private MessageDigest messageDigest;
+    // 是否统计等待请求体的耗时，包括网络传输与带宽限速
+    private boolean timed;
+    private long readNanos;
+
+    private ChunkInputStream() {
+    }
+
+    /**
+     * @param in       请求体
+     * @param maxCount 最多读取的字节数
+     */
+    static ChunkInputStream obtain(InputStream in, long maxCount) {
+        ChunkInputStream chunkInputStream = POOL.poll();
+        if (chunkInputStream == null) {
+            chunkInputStream = new ChunkInputStream();
+        }
+        chunkInputStream.in = in;
+        chunkInputStream.remaining = maxCount;
+        chunkInputStream.messageDigest = null;
+        chunkInputStream.timed = false;
+        chunkInputStream.readNanos = 0L;
+        return chunkInputStream;
+    }
+
+    /**
+     * 统计从请求体读取数据的耗时，通过 {@link #getReadNanos()} 获取
+     */
+    ChunkInputStream timeReads() {
+        this.timed = true;
+        return this;
+    }
+
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * 读取数据时同时更新 messageDigest
+     */
+    ChunkInputStream digestWith(MessageDigest messageDigest) {
+        this.messageDigest = messageDigest;
+        return this;
+    }
+
+    /**
+     * 归还实例，之后不能再使用
+     */
+    void recycle() {
+        in = null;
+        messageDigest = null;
+        POOL.offer(this);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        int ch = in.read();
+        if (timed) {
+            readNanos += System.nanoTime() - start;
+        }
+        if (ch != -1) {
+            remaining--;
+            if (messageDigest != null) {
+                messageDigest.update((byte) ch);
+            }
+        }
+        return ch;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        int n = in.read(b, off, (int) Math.min(len, remaining));
+        if (timed) {
+            readNanos += System.nanoTime() - start;
+        }
+        if (n > 0) {
+            remaining -= n;
+            if (messageDigest != null) {
+                messageDigest.update(b, off, n);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+}
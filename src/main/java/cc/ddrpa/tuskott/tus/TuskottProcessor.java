@@ -1,18 +1,40 @@
 package cc.ddrpa.tuskott.tus;
 
 import cc.ddrpa.tuskott.ConstantsPool;
+import cc.ddrpa.tuskott.admission.AdmissionController;
+import cc.ddrpa.tuskott.admission.SpaceReservationLedger;
+import cc.ddrpa.tuskott.bandwidth.BandwidthShaper;
 import cc.ddrpa.tuskott.event.*;
 import cc.ddrpa.tuskott.exception.BlobAccessException;
 import cc.ddrpa.tuskott.exception.ChecksumMismatchException;
+import cc.ddrpa.tuskott.exception.ChunkTooLargeException;
+import cc.ddrpa.tuskott.exception.InsufficientStorageException;
+import cc.ddrpa.tuskott.exception.UnreadableChecksumException;
+import cc.ddrpa.tuskott.jfr.ChecksumEvent;
+import cc.ddrpa.tuskott.jfr.JfrEventTypes;
+import cc.ddrpa.tuskott.jfr.LockAcquireEvent;
+import cc.ddrpa.tuskott.jfr.PatchEvent;
+import cc.ddrpa.tuskott.jfr.TimedDigestInputStream;
+import cc.ddrpa.tuskott.jfr.TrackerCallEvent;
+import cc.ddrpa.tuskott.metrics.TuskottMetrics;
 import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.stream.CommitWatcher;
+import cc.ddrpa.tuskott.stream.StreamingConsumer;
+import cc.ddrpa.tuskott.stream.StreamingConsumerHub;
+import cc.ddrpa.tuskott.tracing.TracingScope;
+import cc.ddrpa.tuskott.tracing.TuskottTracing;
+import cc.ddrpa.tuskott.tus.checksum.ChecksumPipeline;
+import cc.ddrpa.tuskott.tus.checksum.CompositeMessageDigest;
+import cc.ddrpa.tuskott.tus.checksum.PipelinedDigestInputStream;
 import cc.ddrpa.tuskott.tus.lock.LockProvider;
+import cc.ddrpa.tuskott.tus.resource.TimeOrderedUploadIdGenerator;
+import cc.ddrpa.tuskott.tus.resource.UploadIdGenerator;
 import cc.ddrpa.tuskott.tus.resource.UploadResource;
 import cc.ddrpa.tuskott.tus.resource.UploadResourceTracker;
 import cc.ddrpa.tuskott.tus.storage.Storage;
 import jakarta.annotation.Nullable;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
@@ -21,13 +43,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 
 /**
@@ -36,28 +57,102 @@ import java.util.function.BiFunction;
 public class TuskottProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(TuskottProcessor.class);
+    // 请求头缺失或无法解析
+    private static final long ABSENT = -1L;
 
     private final TuskottProperties tuskottProperties;
     private final UploadResourceTracker tracker;
     private final Storage storage;
     private final LockProvider lockProvider;
+    private final UploadIdGenerator uploadIdGenerator;
+    private final TuskottMetrics metrics;
+    private final TuskottTracing tracing;
     private final DateTimeFormatter rfc7231DateTimeFormatter = DateTimeFormatter
             .ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH)
             .withZone(ZoneId.of("GMT"));
 
-    private final List<TuskottEventCallback> postCreateCallback = new ArrayList<>();
-    private final List<TuskottEventCallback> postCompleteCallback = new ArrayList<>();
-    private final List<TuskottEventCallback> postTerminateCallback = new ArrayList<>();
+    private final TuskottEventDispatcher eventDispatcher;
+    // 未开启流水线校验时为 null
+    private final ChecksumPipeline checksumPipeline;
+    // 未开启准入控制时为 null
+    private final AdmissionController admissionController;
+    private final String clientHeader;
+    private final String retryAfterHeaderValue;
+    // 未开启存储空间预留时为 null
+    private final SpaceReservationLedger spaceReservationLedger;
+    // 未开启带宽限制时为 null
+    private final BandwidthShaper bandwidthShaper;
+    // 上传过程中读取已提交数据的读取者
+    private final CommitWatcher commitWatcher = new CommitWatcher();
+    // 没有注册流式消费者时为 null
+    private volatile StreamingConsumerHub streamingConsumerHub;
+    private final String tenantMetadataKey;
     private final String enabledTusExtension;
+    // 每个响应都要携带的 Tus-Max-Size，预先格式化
+    private final String maxUploadLengthHeaderValue;
+    private final boolean checksumTrailerEnabled;
 
     private final BiFunction<HttpServletRequest, String, String> uploadLocationHelperFunction;
 
     public TuskottProcessor(TuskottProperties tuskottProperties, UploadResourceTracker tracker, Storage storage, LockProvider lockProvider) {
+        this(tuskottProperties, tracker, storage, lockProvider,
+                new TimeOrderedUploadIdGenerator(tuskottProperties.getIdGenerator().getConfig()),
+                TuskottMetrics.NOOP, TuskottTracing.NOOP);
+    }
+
+    public TuskottProcessor(TuskottProperties tuskottProperties, UploadResourceTracker tracker, Storage storage, LockProvider lockProvider,
+                            UploadIdGenerator uploadIdGenerator, TuskottMetrics metrics, TuskottTracing tracing) {
         this.tuskottProperties = tuskottProperties;
         this.tracker = tracker;
         this.storage = storage;
         this.lockProvider = lockProvider;
-        if (tuskottProperties.getBehindProxy().isEnable()) {
+        this.uploadIdGenerator = uploadIdGenerator;
+        this.metrics = metrics;
+        this.tracing = tracing;
+        this.maxUploadLengthHeaderValue = String.valueOf(tuskottProperties.getMaxUploadLength());
+        TuskottProperties.Event eventConfiguration = tuskottProperties.getEvent();
+        this.eventDispatcher = new TuskottEventDispatcher(eventConfiguration.getBatchSize(),
+                eventConfiguration.getBatchDelay(), metrics, tracing);
+        TuskottProperties.Checksum checksumConfiguration = tuskottProperties.getChecksum();
+        this.checksumPipeline = checksumConfiguration.isPipelined()
+                ? new ChecksumPipeline(checksumConfiguration.getDigestThreads(),
+                checksumConfiguration.getPipelineBufferSize(), checksumConfiguration.getPipelineBuffers())
+                : null;
+        TuskottProperties.Admission admissionConfiguration = tuskottProperties.getAdmission();
+        this.admissionController = admissionConfiguration.isEnable()
+                ? new AdmissionController(admissionConfiguration.getInitialLimit(),
+                admissionConfiguration.getMinLimit(), admissionConfiguration.getMaxLimit(),
+                admissionConfiguration.getPerClientLimit(), admissionConfiguration.getBackoffRatio(),
+                admissionConfiguration.getTolerance(), metrics)
+                : null;
+        this.clientHeader = admissionConfiguration.getClientHeader();
+        this.retryAfterHeaderValue = String.valueOf(admissionConfiguration.getRetryAfter());
+        TuskottProperties.SpaceReservation spaceReservationConfiguration = tuskottProperties.getSpaceReservation();
+        if (spaceReservationConfiguration.isEnable()) {
+            this.spaceReservationLedger = new SpaceReservationLedger(storage,
+                    spaceReservationConfiguration.getHighWatermark());
+            // 恢复已经存在的上传计划的预留，UploadResourceTracker 有持久化时服务重启后仍然有效
+            tracker.filter(resource -> !Boolean.TRUE.equals(resource.getUploadDeferLength())
+                            && Objects.nonNull(resource.getUploadLength()))
+                    .forEach(resource -> spaceReservationLedger.restore(resource.getId(),
+                            resource.getUploadLength() - resource.getUploadOffset()));
+        } else {
+            this.spaceReservationLedger = null;
+        }
+        TuskottProperties.Bandwidth bandwidthConfiguration = tuskottProperties.getBandwidth();
+        this.bandwidthShaper = bandwidthConfiguration.isEnable()
+                ? new BandwidthShaper(bandwidthConfiguration.getGlobalRate(), bandwidthConfiguration.getTenantRate(),
+                bandwidthConfiguration.getUploadRate(), bandwidthConfiguration.getBurst(),
+                bandwidthConfiguration.getTenantWeights())
+                : null;
+        this.tenantMetadataKey = bandwidthConfiguration.getTenantMetadataKey();
+        TuskottProperties.Cluster clusterConfiguration = tuskottProperties.getCluster();
+        String nodeUrl = clusterConfiguration.getNodes().get(clusterConfiguration.getNodeId());
+        if (clusterConfiguration.isEnable() && clusterConfiguration.isLocationWithNodeUrl()
+                && StringUtils.hasText(nodeUrl)) {
+            // 让客户端之后的请求直接发往持有数据的节点
+            uploadLocationHelperFunction = (req, resourceId) -> nodeUrl + req.getRequestURI() + "/" + resourceId;
+        } else if (tuskottProperties.getBehindProxy().isEnable()) {
             TuskottProperties.BehindProxy behindProxyConfiguration = tuskottProperties.getBehindProxy();
             String fetchFromGivenUriHeader = behindProxyConfiguration.getHeader();
             uploadLocationHelperFunction = (req, resourceId) ->
@@ -76,6 +171,10 @@ public class TuskottProcessor {
             enabledExtensions.add("termination");
         }
         enabledExtensions.add("checksum");
+        this.checksumTrailerEnabled = extensionConfiguration.isEnableChecksumTrailer();
+        if (checksumTrailerEnabled) {
+            enabledExtensions.add("checksum-trailer");
+        }
         // enabledExtensions.add("creation-with-upload");
         this.enabledTusExtension = String.join(", ", enabledExtensions);
     }
@@ -90,8 +189,7 @@ public class TuskottProcessor {
         response.setHeader(ConstantsPool.HEADER_TUS_RESUMABLE, ConstantsPool.TUS_VERSION);
         response.setHeader(ConstantsPool.HEADER_TUS_VERSION, ConstantsPool.TUS_VERSION);
         response.setHeader(ConstantsPool.HEADER_TUS_EXTENSION, enabledTusExtension);
-        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE,
-                String.valueOf(tuskottProperties.getMaxUploadLength()));
+        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE, maxUploadLengthHeaderValue);
         response.setHeader(ConstantsPool.HEADER_TUS_CHECKSUM_ALGORITHM,
                 ChecksumAlgorithmSelector.SUPPORTED_CHECKSUM_ALGORITHM);
         response.setStatus(HttpServletResponse.SC_NO_CONTENT);
@@ -103,6 +201,13 @@ public class TuskottProcessor {
      * The Upload-Length header indicates the size of the entire upload in bytes.
      */
     public void create(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (TracingScope scope = tracing.startSpan("tus.create", null)) {
+            processCreate(request, response);
+            scope.setHttpStatus(response.getStatus());
+        }
+    }
+
+    private void processCreate(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setHeader(ConstantsPool.HEADER_ACCESS_CONTROL_EXPOSE_HEADERS,
                 ConstantsPool.ACCESS_CONTROL_EXPOSE_HEADERS);
         response.setHeader(ConstantsPool.HEADER_CACHE_CONTROL, ConstantsPool.CACHE_CONTROL_NO_STORE);
@@ -117,8 +222,8 @@ public class TuskottProcessor {
             return;
         }
 
-        Optional<Long> optionalUploadLength = getLongValueFromRequestHeader(request, ConstantsPool.HEADER_UPLOAD_LENGTH);
-        if (optionalUploadLength.isEmpty()) {
+        long uploadLength = parseLongHeader(request, ConstantsPool.HEADER_UPLOAD_LENGTH);
+        if (uploadLength == ABSENT) {
             // 如果客户端没有提供 Upload-Length，允许客户端在之后声明上传长度
             if (!checkUploadDeferLength(request)) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -127,7 +232,7 @@ public class TuskottProcessor {
                         ConstantsPool.PROBLEM_DETAIL_MISSING_UPLOAD_LENGTH.formatted(request.getRequestURI()));
                 return;
             }
-        } else if (optionalUploadLength.get() > tuskottProperties.getMaxUploadLength()) {
+        } else if (uploadLength > tuskottProperties.getMaxUploadLength()) {
             // 客户端声明的上传总体积过大，返回 HTTP 413
             response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
             response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
@@ -138,8 +243,14 @@ public class TuskottProcessor {
 
         UploadResource uploadResource;
         try {
-            uploadResource = createUploadResource(optionalUploadLength.orElse(null),
+            uploadResource = createUploadResource(uploadLength == ABSENT ? null : uploadLength,
                     request.getHeader(ConstantsPool.HEADER_UPLOAD_METADATA));
+        } catch (InsufficientStorageException e) {
+            response.setStatus(ConstantsPool.HTTP_INSUFFICIENT_STORAGE);
+            response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+            response.getWriter().write(
+                    ConstantsPool.PROBLEM_DETAIL_INSUFFICIENT_STORAGE.formatted(uploadLength, request.getRequestURI()));
+            return;
         } catch (BlobAccessException | IOException e) {
             logger.error(e.getMessage());
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -149,16 +260,30 @@ public class TuskottProcessor {
             return;
         }
 
+        // if uploadLength = 0，空文件，立即完成上传
+        if (uploadLength == 0L) {
+            try {
+                storage.complete(uploadResource.getId());
+            } catch (BlobAccessException | IOException | RuntimeException e) {
+                // 偏移量已经等于上传长度，无法通过续传再次完成，删除上传让客户端重新创建
+                logger.error(e.getMessage());
+                tracker.remove(uploadResource.getId());
+                storage.remove(uploadResource.getId());
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+                response.getWriter().write(
+                        ConstantsPool.PROBLEM_DETAIL_INTERNAL_SERVER_ERROR.formatted(e.getMessage(), request.getRequestURI()));
+                return;
+            }
+        }
         response.setStatus(HttpServletResponse.SC_CREATED);
         response.setHeader(ConstantsPool.HEADER_LOCATION,
                 uploadLocationHelperFunction.apply(request, uploadResource.getId()));
-
-        // if uploadLength = 0，空文件，立即完成上传
-        if (optionalUploadLength.isPresent() && optionalUploadLength.get() <= 0L) {
+        if (uploadLength == 0L) {
             completeUploadResource(uploadResource.getId());
         }
         // 如果客户端在创建上传时提供了 Upload-Length 和 Content-Type，视为 creation-with-upload
-        if (optionalUploadLength.isPresent()
+        if (uploadLength != ABSENT
                 && ConstantsPool.UPLOAD_CONTENT_TYPE.equalsIgnoreCase(request.getHeader(ConstantsPool.HEADER_CONTENT_TYPE))) {
             // 调用 path 方法，其中 uploadOffset = 0
             doPath(uploadResource, request, response, 0L);
@@ -177,12 +302,19 @@ public class TuskottProcessor {
      */
     public void head(@PathVariable("resource") String resourceId,
                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (TracingScope scope = tracing.startSpan("tus.head", resourceId)) {
+            processHead(resourceId, request, response);
+            scope.setHttpStatus(response.getStatus());
+        }
+    }
+
+    private void processHead(String resourceId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         response.setHeader(ConstantsPool.HEADER_ACCESS_CONTROL_EXPOSE_HEADERS,
                 ConstantsPool.ACCESS_CONTROL_EXPOSE_HEADERS);
         response.setHeader(ConstantsPool.HEADER_CACHE_CONTROL, ConstantsPool.CACHE_CONTROL_NO_STORE);
         response.setHeader(ConstantsPool.HEADER_TUS_RESUMABLE, ConstantsPool.TUS_VERSION);
-        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE,
-                String.valueOf(tuskottProperties.getMaxUploadLength()));
+        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE, maxUploadLengthHeaderValue);
 
         if (!checkTusResumable(request)) {
             response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
@@ -202,7 +334,7 @@ public class TuskottProcessor {
             return;
         }
         response.setHeader(ConstantsPool.HEADER_UPLOAD_EXPIRES,
-                rfc7231DateTimeFormatter.format(uploadResource.getExpireTime()));
+                uploadResource.getFormattedExpireTime(rfc7231DateTimeFormatter));
         if (Objects.isNull(uploadResource.getUploadDeferLength())) {
             // 如果客户端没有指定上传长度，服务端必须在每次 HEAD 响应中提醒
             response.setHeader(ConstantsPool.HEADER_UPLOAD_DEFER_LENGTH, "1");
@@ -220,11 +352,19 @@ public class TuskottProcessor {
      */
     public void patch(@PathVariable("resource") String resourceId,
                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (TracingScope scope = tracing.startSpan("tus.patch", resourceId)) {
+            processPatch(resourceId, request, response);
+            scope.setHttpStatus(response.getStatus());
+        }
+    }
+
+    private void processPatch(String resourceId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         response.setHeader(ConstantsPool.HEADER_ACCESS_CONTROL_EXPOSE_HEADERS,
                 ConstantsPool.ACCESS_CONTROL_EXPOSE_HEADERS);
         response.setHeader(ConstantsPool.HEADER_CACHE_CONTROL, ConstantsPool.CACHE_CONTROL_NO_STORE);
         response.setHeader(ConstantsPool.HEADER_TUS_RESUMABLE, ConstantsPool.TUS_VERSION);
-        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE, String.valueOf(tuskottProperties.getMaxUploadLength()));
+        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE, maxUploadLengthHeaderValue);
 
         if (!checkTusResumable(request)) {
             response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
@@ -244,7 +384,20 @@ public class TuskottProcessor {
             return;
         }
 
+        // 未录制 JFR 时不分配事件对象
+        TrackerCallEvent trackerEvent = JfrEventTypes.TRACKER_CALL.isEnabled() ? new TrackerCallEvent() : null;
+        if (Objects.nonNull(trackerEvent)) {
+            trackerEvent.begin();
+        }
         UploadResource uploadResource = tracker.head(resourceId);
+        if (Objects.nonNull(trackerEvent)) {
+            trackerEvent.end();
+            if (trackerEvent.shouldCommit()) {
+                trackerEvent.resourceId = resourceId;
+                trackerEvent.operation = "head";
+                trackerEvent.commit();
+            }
+        }
         if (Objects.isNull(uploadResource)) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
@@ -253,40 +406,49 @@ public class TuskottProcessor {
             return;
         }
         response.setHeader(ConstantsPool.HEADER_UPLOAD_EXPIRES,
-                rfc7231DateTimeFormatter.format(uploadResource.getExpireTime()));
+                uploadResource.getFormattedExpireTime(rfc7231DateTimeFormatter));
 
         // 如果客户端之前请求在上传时指定上传长度，必须在第一个 PATCH 中提供 Upload-Length
         if (Boolean.TRUE.equals(uploadResource.getUploadDeferLength())) {
-            Optional<Long> optionalUploadLength = getLongValueFromRequestHeader(request, ConstantsPool.HEADER_UPLOAD_LENGTH);
-            if (optionalUploadLength.isEmpty()) {
+            long uploadLength = parseLongHeader(request, ConstantsPool.HEADER_UPLOAD_LENGTH);
+            if (uploadLength == ABSENT) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
                 response.getWriter().write(
                         ConstantsPool.PROBLEM_DETAIL_MISSING_UPLOAD_LENGTH.formatted(request.getRequestURI()));
                 return;
-            } else if (optionalUploadLength.get() > tuskottProperties.getMaxUploadLength()) {
+            } else if (uploadLength > tuskottProperties.getMaxUploadLength()) {
                 response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
                 response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
                 response.getWriter().write(
                         ConstantsPool.PROBLEM_DETAIL_REQUEST_ENTITY_TOO_LARGE.formatted(request.getRequestURI()));
                 return;
             }
-            tracker.updateUploadLength(resourceId, optionalUploadLength.get());
+            if (Objects.nonNull(spaceReservationLedger)
+                    && !spaceReservationLedger.tryReserve(resourceId, uploadLength - uploadResource.getUploadOffset())) {
+                response.setStatus(ConstantsPool.HTTP_INSUFFICIENT_STORAGE);
+                response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+                response.getWriter().write(
+                        ConstantsPool.PROBLEM_DETAIL_INSUFFICIENT_STORAGE.formatted(uploadLength, request.getRequestURI()));
+                return;
+            }
+            tracker.updateUploadLength(resourceId, uploadLength);
         }
 
         // The Upload-Offset request header MUST be included and
-        // its value MUST be equal or smaller to the current offset of the file.
-        Optional<Long> optionalUploadOffset = getLongValueFromRequestHeader(request, ConstantsPool.HEADER_UPLOAD_OFFSET);
-        if (optionalUploadOffset.isEmpty()) {
+        // its value MUST be equal to the current offset of the file.
+        // 允许更小的偏移量会让已提交的偏移量倒退，客户端需要先通过 HEAD 获取当前偏移量
+        long clientClaimedOffset = parseLongHeader(request, ConstantsPool.HEADER_UPLOAD_OFFSET);
+        if (clientClaimedOffset == ABSENT) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
             response.getWriter().write(
                     ConstantsPool.PROBLEM_DETAIL_MISSING_UPLOAD_OFFSET.formatted(request.getRequestURI()));
             return;
         }
-        Long clientClaimedOffset = optionalUploadOffset.get();
-        Long serverRecordedOffset = uploadResource.getUploadOffset();
-        if (clientClaimedOffset > serverRecordedOffset) {
+        long serverRecordedOffset = uploadResource.getUploadOffset();
+        if (clientClaimedOffset != serverRecordedOffset) {
+            metrics.offsetMismatch();
             response.setStatus(HttpServletResponse.SC_CONFLICT);
             response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
             response.getWriter().write(
@@ -301,29 +463,35 @@ public class TuskottProcessor {
         doPath(uploadResource, request, response, clientClaimedOffset);
     }
 
-    private void doPath(UploadResource uploadResource, HttpServletRequest request, HttpServletResponse response, long uploadOffset) throws IOException {
+    private void doPath(UploadResource uploadResource, HttpServletRequest request, HttpServletResponse response,
+                        long uploadOffset) throws IOException {
         String resourceId = uploadResource.getId();
-        // 计算从客户端声明的 Upload-Offset 到完整上传的差值，与单次上传 chunk 上限比较取最小值作为上传上限
-        // 防止上传溢出
-        long maxChunkSizeAllowed = Math.min(tuskottProperties.getMaxChunkSize(),
-                uploadResource.getUploadLength() - uploadOffset);
 
         // 如果客户端声明了 Upload-Checksum，需要计算 chunk 的 Checksum 并与提供值进行比较
         MessageDigest messageDigest = null;
+        String checksumAlgorithm = null;
         boolean checksumValidateForChunkRequired = false;
         byte[] expectedChecksum = {};
         String checksumRequest = request.getHeader(ConstantsPool.HEADER_UPLOAD_CHECKSUM);
         if (StringUtils.hasText(checksumRequest)) {
-            String[] split = checksumRequest.split(" ");
-            if (split.length != 2) {
+            int separator = indexOfChecksumSeparator(checksumRequest);
+            if (separator < 0) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
                 response.getWriter().write(
                         ConstantsPool.PROBLEM_DETAIL_UNREADABLE_CHECKSUM_REQUEST_HEADER.formatted(request.getRequestURI()));
                 return;
             }
+            checksumAlgorithm = ChecksumAlgorithmSelector.resolveAlgorithm(checksumRequest, separator);
             try {
-                messageDigest = ChecksumAlgorithmSelector.getMessageDigest(split[0]);
+                expectedChecksum = Base64.getDecoder().decode(checksumRequest.substring(separator + 1));
+                messageDigest = ChecksumAlgorithmSelector.getMessageDigest(checksumAlgorithm);
+            } catch (IllegalArgumentException e) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+                response.getWriter().write(
+                        ConstantsPool.PROBLEM_DETAIL_UNREADABLE_CHECKSUM_REQUEST_HEADER.formatted(request.getRequestURI()));
+                return;
             } catch (NoSuchAlgorithmException e) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
@@ -331,43 +499,159 @@ public class TuskottProcessor {
                         ConstantsPool.PROBLEM_DETAIL_UNSUPPORTED_CHECKSUM_ALGORITHM.formatted(request.getRequestURI()));
                 return;
             }
-            expectedChecksum = Base64.getDecoder().decode(split[1]);
             checksumValidateForChunkRequired = true;
         }
+        // 客户端通过 Trailer 声明将在请求体之后提供 Upload-Checksum，此时还不知道校验算法，需要同时计算所有支持的算法
+        boolean checksumTrailerRequired = !checksumValidateForChunkRequired
+                && checksumTrailerEnabled && declaresChecksumTrailer(request);
+        if (checksumTrailerRequired) {
+            try {
+                messageDigest = ChecksumAlgorithmSelector.getCompositeMessageDigest();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // 在读取请求体之前进行准入控制，系统饱和时让客户端稍后重试而不是继续排队
+        AdmissionController.Permit permit = null;
+        if (Objects.nonNull(admissionController)) {
+            permit = admissionController.tryAcquire(clientKeyOf(request));
+            if (Objects.isNull(permit)) {
+                ChecksumAlgorithmSelector.recycle(checksumAlgorithm, messageDigest);
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader(ConstantsPool.HEADER_RETRY_AFTER, retryAfterHeaderValue);
+                response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+                response.getWriter().write(
+                        ConstantsPool.PROBLEM_DETAIL_TOO_MANY_CONCURRENT_UPLOADS.formatted(
+                                tuskottProperties.getAdmission().getRetryAfter(), request.getRequestURI()));
+                return;
+            }
+        }
 
-        if (!lockProvider.acquire(resourceId)) {
+        PatchEvent patchEvent = JfrEventTypes.PATCH.isEnabled() ? new PatchEvent() : null;
+        if (Objects.nonNull(patchEvent)) {
+            patchEvent.begin();
+        }
+        LockAcquireEvent lockEvent = JfrEventTypes.LOCK_ACQUIRE.isEnabled() ? new LockAcquireEvent() : null;
+        if (Objects.nonNull(lockEvent)) {
+            lockEvent.begin();
+        }
+        boolean lockAcquired = lockProvider.acquire(resourceId);
+        if (Objects.nonNull(lockEvent)) {
+            lockEvent.end();
+            if (lockEvent.shouldCommit()) {
+                lockEvent.resourceId = resourceId;
+                lockEvent.acquired = lockAcquired;
+                lockEvent.commit();
+            }
+        }
+        if (!lockAcquired) {
+            if (Objects.nonNull(permit)) {
+                permit.release(0L, 0L);
+            }
+            ChecksumAlgorithmSelector.recycle(checksumAlgorithm, messageDigest);
             response.setStatus(ConstantsPool.HTTP_LOCKED);
             response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
             response.getWriter().write(
                     ConstantsPool.PROBLEM_DETAIL_RESOURCE_LOCKED.formatted(request.getRequestURI()));
             return;
         }
-        try (InputStream originInputStream = request.getInputStream()) {
-            BoundedInputStream boundedInputStream = BoundedInputStream.builder()
-                    .setInputStream(originInputStream)
-                    .setMaxCount(maxChunkSizeAllowed)
-                    .setPropagateClose(true)
-                    .get();
+        // 偏移量检查发生在加锁之前，两个 PATCH 可能都通过了检查后先后拿到锁，
+        // 后一个请求会从过期的偏移量写入并让已提交的偏移量倒退，因此持有锁之后需要重新读取并校验
+        UploadResource lockedUploadResource = tracker.head(resourceId);
+        if (Objects.isNull(lockedUploadResource) || lockedUploadResource.getUploadOffset() != uploadOffset) {
+            lockProvider.release(resourceId);
+            if (Objects.nonNull(permit)) {
+                permit.release(0L, 0L);
+            }
+            ChecksumAlgorithmSelector.recycle(checksumAlgorithm, messageDigest);
+            response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+            if (Objects.isNull(lockedUploadResource)) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                response.getWriter().write(
+                        ConstantsPool.PROBLEM_DETAIL_UPLOAD_RESOURCE_NOT_FOUND.formatted(request.getRequestURI()));
+            } else {
+                long serverRecordedOffset = lockedUploadResource.getUploadOffset();
+                metrics.offsetMismatch();
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.getWriter().write(
+                        ConstantsPool.PROBLEM_DETAIL_OFFSET_MISMATCH.formatted(
+                                uploadOffset,
+                                serverRecordedOffset,
+                                request.getRequestURI(),
+                                serverRecordedOffset,
+                                uploadOffset));
+            }
+            return;
+        }
+        uploadResource = lockedUploadResource;
+        // 计算从客户端声明的 Upload-Offset 到完整上传的差值，与单次上传 chunk 上限比较取最小值作为上传上限
+        // 防止上传溢出
+        long maxChunkSizeAllowed = Math.min(tuskottProperties.getMaxChunkSize(),
+                uploadResource.getUploadLength() - uploadOffset);
+        long patchStartTime = System.nanoTime();
+        metrics.patchStarted();
+        long transferred = 0L;
+        // 指标与 JFR 事件中记录的校验算法，通过 trailer 声明时读完请求体后才能确定；
+        // checksumAlgorithm 在 trailer 模式下保持为 null，以便将组合摘要归还到对应的池中
+        String reportedChecksumAlgorithm = checksumAlgorithm;
+        ChunkInputStream chunkInputStream = null;
+        try (InputStream originInputStream = request.getInputStream();
+             InputStream shapedInputStream = shape(uploadResource, originInputStream)) {
+            chunkInputStream = ChunkInputStream.obtain(tee(uploadResource, shapedInputStream, uploadOffset),
+                    maxChunkSizeAllowed);
+            if (Objects.nonNull(permit)) {
+                // 准入控制的反馈只应反映服务端的处理能力，需要扣除等待客户端发送数据与限速的时间
+                chunkInputStream.timeReads();
+            }
             // 本 chunk 上传成功后的总上传量
             Long updatedUploadOffset;
             if (checksumValidateForChunkRequired) {
-                updatedUploadOffset = patchWithChecksum(resourceId, boundedInputStream, uploadOffset, expectedChecksum, messageDigest);
+                updatedUploadOffset = patchWithChecksum(resourceId, chunkInputStream, uploadOffset,
+                        uploadResource.getUploadLength(), expectedChecksum, messageDigest);
+            } else if (checksumTrailerRequired) {
+                TrailerPatch trailerPatch = patchWithChecksumTrailer(resourceId, chunkInputStream, uploadOffset,
+                        uploadResource.getUploadLength(), request, originInputStream, maxChunkSizeAllowed, (CompositeMessageDigest) messageDigest);
+                updatedUploadOffset = trailerPatch.newUploadOffset();
+                reportedChecksumAlgorithm = trailerPatch.checksumAlgorithm();
             } else {
-                updatedUploadOffset = patchWithoutChecksum(resourceId, boundedInputStream, uploadOffset);
+                updatedUploadOffset = patchWithoutChecksum(resourceId, chunkInputStream, uploadOffset,
+                        uploadResource.getUploadLength());
             }
+            transferred = updatedUploadOffset - uploadOffset;
+            metrics.bytesIngested(transferred);
             response.setStatus(HttpServletResponse.SC_NO_CONTENT);
             // MUST include the Upload-Offset header containing the new offset
             response.setHeader(ConstantsPool.HEADER_UPLOAD_OFFSET, String.valueOf(updatedUploadOffset));
 
-            // 如果上传完成，触发回调并更新上传状态
+            // 如果上传完成，触发回调并更新上传状态，Storage 已经在提交偏移量之前完成
             if (Objects.equals(updatedUploadOffset, uploadResource.getUploadLength())) {
                 completeUploadResource(resourceId);
             }
         } catch (ChecksumMismatchException e) {
+            if (checksumTrailerRequired) {
+                reportedChecksumAlgorithm = e.getAlgorithm();
+            }
+            metrics.checksumMismatch();
             response.setStatus(ConstantsPool.HTTP_CHECKSUM_MISMATCH);
             response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
             response.getWriter().write(
                     ConstantsPool.PROBLEM_DETAIL_CHECKSUM_MISMATCH.formatted(request.getRequestURI()));
+        } catch (ChunkTooLargeException e) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+            response.getWriter().write(
+                    ConstantsPool.PROBLEM_DETAIL_CHUNK_TOO_LARGE.formatted(maxChunkSizeAllowed, request.getRequestURI()));
+        } catch (UnreadableChecksumException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+            response.getWriter().write(
+                    ConstantsPool.PROBLEM_DETAIL_UNREADABLE_CHECKSUM_REQUEST_HEADER.formatted(request.getRequestURI()));
+        } catch (NoSuchAlgorithmException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+            response.getWriter().write(
+                    ConstantsPool.PROBLEM_DETAIL_UNSUPPORTED_CHECKSUM_ALGORITHM.formatted(request.getRequestURI()));
         } catch (BlobAccessException | IOException e) {
             logger.error(e.getMessage());
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -375,7 +659,36 @@ public class TuskottProcessor {
             response.getWriter().write(
                     ConstantsPool.PROBLEM_DETAIL_SERVICE_UNAVAILABLE.formatted(e.getMessage(), request.getRequestURI()));
         } finally {
+            StreamingConsumerHub hub = streamingConsumerHub;
+            if (Objects.nonNull(hub)) {
+                hub.endWrite(resourceId);
+            }
             lockProvider.release(resourceId);
+            long readNanos = 0L;
+            if (Objects.nonNull(chunkInputStream)) {
+                readNanos = chunkInputStream.getReadNanos();
+                chunkInputStream.recycle();
+            }
+            // 请求线程在等待摘要时被中断，后台线程仍可能在更新该摘要，此时直接丢弃而不是归还到池中
+            if (Objects.isNull(checksumPipeline) || checksumPipeline.isReleased(messageDigest)) {
+                ChecksumAlgorithmSelector.recycle(checksumAlgorithm, messageDigest);
+            }
+            long patchNanos = System.nanoTime() - patchStartTime;
+            if (Objects.nonNull(permit)) {
+                permit.release(transferred, Math.max(0L, patchNanos - readNanos));
+            }
+            metrics.patchFinished(reportedChecksumAlgorithm, patchNanos);
+            if (Objects.nonNull(patchEvent)) {
+                patchEvent.end();
+                if (patchEvent.shouldCommit()) {
+                    patchEvent.resourceId = resourceId;
+                    patchEvent.uploadOffset = uploadOffset;
+                    patchEvent.bytes = transferred;
+                    patchEvent.checksumAlgorithm = reportedChecksumAlgorithm;
+                    patchEvent.status = response.getStatus();
+                    patchEvent.commit();
+                }
+            }
         }
     }
 
@@ -385,12 +698,19 @@ public class TuskottProcessor {
      */
     public void termination(@PathVariable("resource") String resourceId,
                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (TracingScope scope = tracing.startSpan("tus.termination", resourceId)) {
+            processTermination(resourceId, request, response);
+            scope.setHttpStatus(response.getStatus());
+        }
+    }
+
+    private void processTermination(String resourceId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         response.setHeader(ConstantsPool.HEADER_ACCESS_CONTROL_EXPOSE_HEADERS,
                 ConstantsPool.ACCESS_CONTROL_EXPOSE_HEADERS);
         response.setHeader(ConstantsPool.HEADER_CACHE_CONTROL, ConstantsPool.CACHE_CONTROL_NO_STORE);
         response.setHeader(ConstantsPool.HEADER_TUS_RESUMABLE, ConstantsPool.TUS_VERSION);
-        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE,
-                String.valueOf(tuskottProperties.getMaxUploadLength()));
+        response.setHeader(ConstantsPool.HEADER_TUS_MAX_SIZE, maxUploadLengthHeaderValue);
 
         if (!checkTusResumable(request)) {
             response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
@@ -417,24 +737,109 @@ public class TuskottProcessor {
                 request.getHeader(ConstantsPool.HEADER_TUS_RESUMABLE));
     }
 
+    /**
+     * 开启带宽限制时按上传资源所属的租户限速，否则原样返回
+     */
+    private InputStream shape(UploadResource uploadResource, InputStream inputStream) {
+        if (Objects.isNull(bandwidthShaper)) {
+            return inputStream;
+        }
+        String tenant = uploadResource.getMetadata().get(tenantMetadataKey);
+        return bandwidthShaper.throttle(Objects.isNull(tenant) ? "" : tenant, inputStream);
+    }
+
+    /**
+     * 注册了流式消费者时，将请求体复制给消费者
+     */
+    private InputStream tee(UploadResource uploadResource, InputStream inputStream, Long uploadOffset) {
+        StreamingConsumerHub hub = streamingConsumerHub;
+        if (Objects.isNull(hub)) {
+            return inputStream;
+        }
+        return hub.tee(uploadResource, inputStream, uploadOffset);
+    }
+
+    /**
+     * 准入控制中用于区分客户端或租户的标识
+     */
+    private String clientKeyOf(HttpServletRequest request) {
+        if (Objects.nonNull(clientHeader)) {
+            String clientKey = request.getHeader(clientHeader);
+            if (StringUtils.hasText(clientKey)) {
+                return clientKey;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * 客户端是否通过 Trailer 请求头声明将在 trailer 中提供 Upload-Checksum
+     */
+    private boolean declaresChecksumTrailer(HttpServletRequest request) {
+        Enumeration<String> trailers = request.getHeaders(ConstantsPool.HEADER_TRAILER);
+        while (Objects.nonNull(trailers) && trailers.hasMoreElements()) {
+            for (String trailer : trailers.nextElement().split(",")) {
+                if (ConstantsPool.HEADER_UPLOAD_CHECKSUM.equalsIgnoreCase(trailer.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private boolean checkContentType(HttpServletRequest request) {
         return ConstantsPool.UPLOAD_CONTENT_TYPE.equalsIgnoreCase(request.getContentType());
     }
 
-    private Optional<Long> getLongValueFromRequestHeader(HttpServletRequest request, String headerName) {
-        String valueAsStr = request.getHeader(headerName);
-        if (!StringUtils.hasText(valueAsStr)) {
-            return Optional.empty();
+    /**
+     * 原地解析十进制的请求头，负数视为 0
+     *
+     * @return 请求头缺失或格式错误时返回 {@link #ABSENT}
+     */
+    private static long parseLongHeader(HttpServletRequest request, String headerName) {
+        String value = request.getHeader(headerName);
+        if (Objects.isNull(value)) {
+            return ABSENT;
         }
-        Long actualValue = null;
-        try {
-            actualValue = Long.parseLong(valueAsStr);
-            if (actualValue < 0) {
-                actualValue = 0L;
+        int begin = 0;
+        int end = value.length();
+        while (begin < end && value.charAt(begin) == ' ') {
+            begin++;
+        }
+        while (end > begin && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        boolean negative = false;
+        if (begin < end && (value.charAt(begin) == '-' || value.charAt(begin) == '+')) {
+            negative = value.charAt(begin) == '-';
+            begin++;
+        }
+        if (begin == end) {
+            return ABSENT;
+        }
+        long result = 0L;
+        for (int i = begin; i < end; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result > (Long.MAX_VALUE - digit) / 10) {
+                return ABSENT;
             }
-        } catch (Exception ignored) {
+            result = result * 10 + digit;
         }
-        return Optional.ofNullable(actualValue);
+        return negative ? 0L : result;
+    }
+
+    /**
+     * Upload-Checksum 由算法名称与 Base64 编码的校验和组成，以单个空格分隔
+     *
+     * @return 分隔符的位置，格式错误时返回 -1
+     */
+    private static int indexOfChecksumSeparator(String checksum) {
+        int separator = checksum.indexOf(' ');
+        if (separator <= 0 || separator == checksum.length() - 1
+                || checksum.indexOf(' ', separator + 1) >= 0) {
+            return -1;
+        }
+        return separator;
     }
 
     private boolean checkUploadDeferLength(HttpServletRequest request) {
@@ -454,23 +859,50 @@ public class TuskottProcessor {
     private UploadResource createUploadResource(@Nullable Long uploadLength, @Nullable String metadata)
             throws BlobAccessException, IOException {
         // create resource id
-        String resourceId = UUID.randomUUID().toString().replaceAll("-", "");
-        // create and hold upload resource
-        UploadResource uploadResource = tracker.create(resourceId, uploadLength, metadata);
-        // create actual file in storage backend
-        storage.create(resourceId);
+        String resourceId = uploadIdGenerator.generate();
+        // 为整个上传预留存储空间，空间不足时不创建上传计划
+        if (Objects.nonNull(spaceReservationLedger) && Objects.nonNull(uploadLength)
+                && !spaceReservationLedger.tryReserve(resourceId, uploadLength)) {
+            throw new InsufficientStorageException("Not enough space for " + uploadLength + " bytes");
+        }
+        UploadResource uploadResource;
+        try {
+            // create and hold upload resource
+            uploadResource = tracker.create(resourceId, uploadLength, metadata);
+            // create actual file in storage backend
+            storage.create(resourceId);
+        } catch (BlobAccessException | IOException | RuntimeException e) {
+            if (Objects.nonNull(spaceReservationLedger)) {
+                spaceReservationLedger.release(resourceId);
+            }
+            throw e;
+        }
         invokeCallback(new PostCreateEvent(uploadResource));
         return uploadResource;
     }
 
     /**
-     * 完成上传资源，更新上传状态并触发回调事件
+     * 完成上传资源，更新上传状态并触发回调事件，调用前 Storage 必须已经完成
      *
      * @param resourceId
      */
     private void completeUploadResource(String resourceId) {
+        if (Objects.nonNull(spaceReservationLedger)) {
+            spaceReservationLedger.release(resourceId);
+        }
+        commitWatcher.completed(resourceId);
         UploadResource uploadResource = tracker.head(resourceId);
-        invokeCallback(new PostCompleteEvent(uploadResource));
+        StreamingConsumerHub hub = streamingConsumerHub;
+        if (Objects.isNull(hub)) {
+            invokeCallback(new PostCompleteEvent(uploadResource));
+            return;
+        }
+        // 等待流式消费者给出结果后再触发回调，不阻塞当前请求。回调在消费者或超时线程中分发，
+        // 需要在请求线程中记录追踪上下文，使回调仍然关联到最后一个 PATCH 请求
+        Object traceContext = tracing.captureContext();
+        hub.complete(uploadResource)
+                .thenAccept(results -> eventDispatcher.dispatch(new PostCompleteEvent(uploadResource, results),
+                        traceContext));
     }
 
     /**
@@ -479,14 +911,15 @@ public class TuskottProcessor {
      * @param resourceId
      * @param ins
      * @param uploadOffset
+     * @param uploadLength
      * @return
      * @throws FileNotFoundException
      * @throws BlobAccessException
      */
-    private Long patchWithoutChecksum(String resourceId, InputStream ins, Long uploadOffset)
+    private Long patchWithoutChecksum(String resourceId, InputStream ins, Long uploadOffset, Long uploadLength)
             throws BlobAccessException, IOException {
         Long newUploadOffset = storage.write(resourceId, ins, uploadOffset);
-        tracker.patch(resourceId, newUploadOffset);
+        commitUploadOffset(resourceId, uploadOffset, newUploadOffset, uploadLength);
         return newUploadOffset;
     }
 
@@ -496,6 +929,7 @@ public class TuskottProcessor {
      * @param resourceId
      * @param ins
      * @param uploadOffset
+     * @param uploadLength
      * @param expectedChecksum
      * @param messageDigest
      * @return
@@ -503,17 +937,186 @@ public class TuskottProcessor {
      * @throws ChecksumMismatchException
      * @throws IOException
      */
-    private Long patchWithChecksum(String resourceId, InputStream ins, Long uploadOffset,
+    private Long patchWithChecksum(String resourceId, ChunkInputStream ins, Long uploadOffset, Long uploadLength,
                                    byte[] expectedChecksum, MessageDigest messageDigest)
             throws BlobAccessException, ChecksumMismatchException, IOException {
-        DigestInputStream digestInputStream = new DigestInputStream(ins, messageDigest);
-        Long newUploadOffset = storage.write(resourceId, digestInputStream, uploadOffset);
-        if (!MessageDigest.isEqual(expectedChecksum, messageDigest.digest())) {
+        ChecksumEvent checksumEvent = JfrEventTypes.CHECKSUM.isEnabled() ? new ChecksumEvent() : null;
+        if (Objects.nonNull(checksumEvent)) {
+            checksumEvent.begin();
+        }
+        DigestedWrite digestedWrite = writeAndDigest(resourceId, ins, uploadOffset, messageDigest, checksumEvent);
+        boolean matched = MessageDigest.isEqual(expectedChecksum, digestedWrite.digest());
+        verifyAndCommit(resourceId, uploadOffset, digestedWrite.newUploadOffset(), uploadLength,
+                messageDigest.getAlgorithm(), matched, checksumEvent);
+        return digestedWrite.newUploadOffset();
+    }
+
+    /**
+     * 上传文件，同时计算所有支持算法的摘要，读取完请求体后根据 trailer 中的 Upload-Checksum 进行校验
+     *
+     * @param resourceId
+     * @param ins
+     * @param uploadOffset
+     * @param uploadLength
+     * @param request
+     * @param messageDigest
+     * @return 新的上传偏移量与 trailer 中声明的校验算法
+     * @throws BlobAccessException
+     * @throws ChecksumMismatchException
+     * @throws UnreadableChecksumException trailer 缺失或格式错误
+     * @throws NoSuchAlgorithmException    trailer 中声明的算法不受支持
+     * @throws IOException
+     */
+    private TrailerPatch patchWithChecksumTrailer(String resourceId, ChunkInputStream ins, Long uploadOffset,
+                                          Long uploadLength, HttpServletRequest request, InputStream body, long maxChunkSizeAllowed,
+                                          CompositeMessageDigest messageDigest)
+            throws BlobAccessException, ChecksumMismatchException, UnreadableChecksumException,
+            NoSuchAlgorithmException, ChunkTooLargeException, IOException {
+        ChecksumEvent checksumEvent = JfrEventTypes.CHECKSUM.isEnabled() ? new ChecksumEvent() : null;
+        if (Objects.nonNull(checksumEvent)) {
+            checksumEvent.begin();
+        }
+        DigestedWrite digestedWrite = writeAndDigest(resourceId, ins, uploadOffset, messageDigest, checksumEvent);
+        // 请求体读取完毕后才能获取 trailer：ChunkInputStream 读满上限后就不再读取，
+        // 容器此时还没有读到结束 chunk，需要确认请求体已经到达 EOF。
+        // 超出上限的数据无法写入，trailer 中的校验和也就无法与已写入的数据对应，直接拒绝
+        if (body.read() != -1) {
             storage.rollback(resourceId, uploadOffset);
-            throw new ChecksumMismatchException("checksum mismatch");
+            throw new ChunkTooLargeException("Request body exceeds " + maxChunkSizeAllowed + " bytes");
+        }
+        String checksumTrailer = request.isTrailerFieldsReady()
+                ? request.getTrailerFields().get(ConstantsPool.HEADER_UPLOAD_CHECKSUM.toLowerCase(Locale.ROOT))
+                : null;
+        if (StringUtils.hasText(checksumTrailer)) {
+            checksumTrailer = checksumTrailer.trim();
+        }
+        int separator = StringUtils.hasText(checksumTrailer) ? indexOfChecksumSeparator(checksumTrailer) : -1;
+        if (separator < 0) {
+            storage.rollback(resourceId, uploadOffset);
+            throw new UnreadableChecksumException("Upload-Checksum trailer is missing or malformed");
+        }
+        String checksumAlgorithm = ChecksumAlgorithmSelector.resolveAlgorithm(checksumTrailer, separator);
+        byte[] expectedChecksum;
+        try {
+            expectedChecksum = Base64.getDecoder().decode(checksumTrailer.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            storage.rollback(resourceId, uploadOffset);
+            throw new UnreadableChecksumException("Upload-Checksum trailer is malformed", e);
+        }
+        byte[] actualChecksum = Objects.isNull(checksumAlgorithm) ? null : messageDigest.getDigest(checksumAlgorithm);
+        if (Objects.isNull(actualChecksum)) {
+            storage.rollback(resourceId, uploadOffset);
+            throw new NoSuchAlgorithmException("Unsupported checksum algorithm: "
+                    + checksumTrailer.substring(0, separator));
+        }
+        boolean matched = MessageDigest.isEqual(expectedChecksum, actualChecksum);
+        verifyAndCommit(resourceId, uploadOffset, digestedWrite.newUploadOffset(), uploadLength,
+                checksumAlgorithm, matched, checksumEvent);
+        return new TrailerPatch(digestedWrite.newUploadOffset(), checksumAlgorithm);
+    }
+
+    /**
+     * 写入数据的同时计算摘要，未录制 ChecksumEvent 时 checksumEvent 为 null
+     */
+    private DigestedWrite writeAndDigest(String resourceId, ChunkInputStream ins, Long uploadOffset,
+                                         MessageDigest messageDigest, ChecksumEvent checksumEvent)
+            throws BlobAccessException, IOException {
+        if (Objects.nonNull(checksumPipeline)) {
+            // 在后台线程中计算摘要，与写入存储并行进行
+            try (PipelinedDigestInputStream pipelinedInputStream = checksumPipeline.wrap(ins, messageDigest)) {
+                Long newUploadOffset = storage.write(resourceId, pipelinedInputStream, uploadOffset);
+                byte[] digest = pipelinedInputStream.digest();
+                if (Objects.nonNull(checksumEvent)) {
+                    checksumEvent.bytes = pipelinedInputStream.getDigestedBytes();
+                    checksumEvent.digestTime = pipelinedInputStream.getDigestNanos();
+                }
+                return new DigestedWrite(newUploadOffset, digest);
+            }
+        }
+        if (Objects.nonNull(checksumEvent)) {
+            // 仅在录制 ChecksumEvent 时单独统计计算摘要的耗时
+            TimedDigestInputStream timedDigestInputStream = new TimedDigestInputStream(ins, messageDigest);
+            Long newUploadOffset = storage.write(resourceId, timedDigestInputStream, uploadOffset);
+            checksumEvent.bytes = timedDigestInputStream.getDigestedBytes();
+            checksumEvent.digestTime = timedDigestInputStream.getDigestNanos();
+            return new DigestedWrite(newUploadOffset, messageDigest.digest());
+        }
+        Long newUploadOffset = storage.write(resourceId, ins.digestWith(messageDigest), uploadOffset);
+        return new DigestedWrite(newUploadOffset, messageDigest.digest());
+    }
+
+    /**
+     * 记录校验结果，校验通过时更新上传进度，否则回滚本次写入；未录制 ChecksumEvent 时 checksumEvent 为 null
+     */
+    private void verifyAndCommit(String resourceId, Long uploadOffset, Long newUploadOffset, Long uploadLength,
+                                 String algorithm, boolean matched, ChecksumEvent checksumEvent)
+            throws BlobAccessException, ChecksumMismatchException, IOException {
+        if (Objects.nonNull(checksumEvent)) {
+            checksumEvent.end();
+            if (checksumEvent.shouldCommit()) {
+                checksumEvent.resourceId = resourceId;
+                checksumEvent.uploadOffset = uploadOffset;
+                checksumEvent.algorithm = algorithm;
+                checksumEvent.matched = matched;
+                checksumEvent.commit();
+            }
+        }
+        if (!matched) {
+            storage.rollback(resourceId, uploadOffset);
+            throw new ChecksumMismatchException("checksum mismatch", algorithm);
+        }
+        commitUploadOffset(resourceId, uploadOffset, newUploadOffset, uploadLength);
+    }
+
+    private record DigestedWrite(Long newUploadOffset, byte[] digest) {
+    }
+
+    private record TrailerPatch(Long newUploadOffset, String checksumAlgorithm) {
+    }
+
+    /**
+     * 数据写入并校验完成后更新上传进度
+     * <p>
+     * 最后一次写入先完成 Storage 再提交偏移量。完成失败时回退本次写入，已提交的偏移量保持不变，
+     * 客户端重新上传最后一个 chunk 即可再次尝试，否则偏移量已经等于上传长度，却再也不会有人完成 Storage。
+     *
+     * @param resourceId
+     * @param uploadOffset    本次写入的起始位置
+     * @param newUploadOffset
+     * @param uploadLength    上传长度，尚未声明时为 null
+     */
+    private void commitUploadOffset(String resourceId, Long uploadOffset, Long newUploadOffset, Long uploadLength)
+            throws BlobAccessException, IOException {
+        if (Objects.equals(newUploadOffset, uploadLength)) {
+            try {
+                storage.complete(resourceId);
+            } catch (BlobAccessException | IOException | RuntimeException e) {
+                storage.rollback(resourceId, uploadOffset);
+                throw e;
+            }
+        }
+        TrackerCallEvent trackerEvent = JfrEventTypes.TRACKER_CALL.isEnabled() ? new TrackerCallEvent() : null;
+        if (Objects.nonNull(trackerEvent)) {
+            trackerEvent.begin();
+        }
+        UploadResource uploadResource = tracker.patch(resourceId, newUploadOffset);
+        if (Objects.nonNull(trackerEvent)) {
+            trackerEvent.end();
+        }
+        if (Objects.nonNull(spaceReservationLedger) && Objects.nonNull(uploadResource)
+                && Objects.nonNull(uploadResource.getUploadLength())) {
+            spaceReservationLedger.progress(resourceId, uploadResource.getUploadLength() - newUploadOffset);
+        }
+        if (Objects.nonNull(trackerEvent) && trackerEvent.shouldCommit()) {
+            trackerEvent.resourceId = resourceId;
+            trackerEvent.operation = "patch";
+            trackerEvent.commit();
+        }
+        commitWatcher.committed(resourceId, newUploadOffset);
+        StreamingConsumerHub hub = streamingConsumerHub;
+        if (Objects.nonNull(hub)) {
+            hub.committed(resourceId, newUploadOffset);
         }
-        tracker.patch(resourceId, newUploadOffset);
-        return newUploadOffset;
     }
 
     /**
@@ -527,9 +1130,51 @@ public class TuskottProcessor {
             tracker.remove(resourceId);
             storage.remove(resourceId);
         }
+        commitWatcher.terminated(resourceId);
+        StreamingConsumerHub hub = streamingConsumerHub;
+        if (Objects.nonNull(hub)) {
+            hub.abort(resourceId);
+        }
+        if (Objects.nonNull(spaceReservationLedger)) {
+            spaceReservationLedger.release(resourceId);
+        }
         invokeCallback(new PostTerminateEvent(uploadResource));
     }
 
+    /**
+     * 清理已经过期的上传，删除上传计划与数据并归还预留的空间，需要由使用者定期调用
+     * <p>
+     * 每个上传在删除前需要先获得锁，正在处理 PATCH 的上传会被跳过，留到下一次清理，
+     * 避免在写入过程中删除数据后 PATCH 又提交了偏移量。
+     *
+     * @return 清理的上传数量
+     */
+    public int removeExpiredUploadResources() {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> expiredResourceIds = tracker.filter(resource -> resource.getExpireTime().isBefore(now))
+                .map(UploadResource::getId)
+                .filter(lockProvider::acquire)
+                .toList();
+        if (expiredResourceIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            tracker.remove(expiredResourceIds);
+            storage.remove(expiredResourceIds);
+            expiredResourceIds.forEach(commitWatcher::terminated);
+            if (Objects.nonNull(spaceReservationLedger)) {
+                expiredResourceIds.forEach(spaceReservationLedger::release);
+            }
+            StreamingConsumerHub hub = streamingConsumerHub;
+            if (Objects.nonNull(hub)) {
+                expiredResourceIds.forEach(hub::abort);
+            }
+        } finally {
+            expiredResourceIds.forEach(lockProvider::release);
+        }
+        return expiredResourceIds.size();
+    }
+
     /**
      * 注册回调函数
      *
@@ -539,15 +1184,21 @@ public class TuskottProcessor {
      */
     public void registerCallBack(List<TuskottEventCallback> postCreate, List<TuskottEventCallback> postFinish,
                                  List<TuskottEventCallback> postTerminate) {
-        if (!postCreate.isEmpty()) {
-            this.postCreateCallback.addAll(postCreate);
-        }
-        if (!postFinish.isEmpty()) {
-            this.postCompleteCallback.addAll(postFinish);
-        }
-        if (!postTerminate.isEmpty()) {
-            this.postTerminateCallback.addAll(postTerminate);
+        eventDispatcher.register(postCreate, postFinish, postTerminate);
+    }
+
+    /**
+     * 注册流式消费者，PATCH 请求体在写入 Storage 的同时交付给消费者，结果随 PostCompleteEvent 返回
+     *
+     * @param consumers
+     */
+    public void registerStreamingConsumers(List<StreamingConsumer> consumers) {
+        if (consumers.isEmpty()) {
+            return;
         }
+        TuskottProperties.Streaming streaming = tuskottProperties.getStreaming();
+        streamingConsumerHub = new StreamingConsumerHub(consumers, storage, streaming.getConsumerThreads(),
+                streaming.getBufferSize(), streaming.getCompletionTimeout());
     }
 
     /**
@@ -556,23 +1207,38 @@ public class TuskottProcessor {
      * @param event
      */
     private void invokeCallback(TuskottEvent event) {
-        List<TuskottEventCallback> callbacks;
-        if (event instanceof PostCompleteEvent) {
-            callbacks = postCompleteCallback;
-        } else if (event instanceof PostCreateEvent) {
-            callbacks = postCreateCallback;
-        } else if (event instanceof PostTerminateEvent) {
-            callbacks = postTerminateCallback;
-        } else {
-            callbacks = Collections.emptyList();
+        eventDispatcher.dispatch(event);
+    }
+
+    /**
+     * 读取上传中已经提交的数据，读完后等待之后的 PATCH 请求提交新的数据，上传完成后到达流的末尾
+     * <p>
+     * 上传被终止或过期时读取抛出 IOException，可以在其他线程中关闭流以停止等待
+     *
+     * @param resourceId
+     * @param offset     开始读取的位置
+     * @return
+     * @throws FileNotFoundException 上传不存在
+     */
+    public InputStream follow(String resourceId, long offset) throws FileNotFoundException {
+        return commitWatcher.follow(resourceId, offset, storage, tracker);
+    }
+
+    public UploadIdGenerator getUploadIdGenerator() {
+        return uploadIdGenerator;
+    }
+
+    /**
+     * 投递尚未投递的批量事件并释放后台线程，由 Spring 在容器关闭时调用
+     */
+    public void close() {
+        eventDispatcher.close();
+        if (Objects.nonNull(checksumPipeline)) {
+            checksumPipeline.close();
         }
-        for (TuskottEventCallback callback : callbacks) {
-            CompletableFuture.runAsync(() -> {
-                try {
-                    callback.method().invoke(callback.bean(), event);
-                } catch (Exception ignored) {
-                }
-            });
+        StreamingConsumerHub hub = streamingConsumerHub;
+        if (Objects.nonNull(hub)) {
+            hub.close();
         }
     }
 
@@ -0,0 +1,56 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import java.security.MessageDigest;
+import java.util.zip.Checksum;
+
+/**
+ * 将 {@link Checksum} 适配为 {@link MessageDigest}，以便与 {@link java.security.DigestInputStream} 一起使用
+ * <p>
+ * 摘要为校验值的大端序表示，长度为 digestLength 字节。
+ */
+public class ChecksumMessageDigest extends MessageDigest {
+
+    private final Checksum checksum;
+    private final int digestLength;
+
+    public ChecksumMessageDigest(String algorithm, Checksum checksum, int digestLength) {
+        super(algorithm);
+        if (digestLength < 1 || digestLength > Long.BYTES) {
+            throw new IllegalArgumentException("Digest length must be between 1 and 8: " + digestLength);
+        }
+        this.checksum = checksum;
+        this.digestLength = digestLength;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        checksum.update(input);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        checksum.update(input, offset, len);
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return digestLength;
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long value = checksum.getValue();
+        checksum.reset();
+        byte[] digest = new byte[digestLength];
+        for (int i = digestLength - 1; i >= 0; i--) {
+            digest[i] = (byte) value;
+            value >>>= 8;
+        }
+        return digest;
+    }
+
+    @Override
+    protected void engineReset() {
+        checksum.reset();
+    }
+}
@@ -0,0 +1,83 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在独立的线程池中计算校验和，使计算摘要与写入存储并行进行
+ * <p>
+ * 请求线程从请求体读取数据到缓冲区，缓冲区同时交给存储写入和摘要计算，缓冲区在多个请求之间复用。
+ */
+public class ChecksumPipeline implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final BlockingQueue<byte[]> bufferPool;
+    private final int bufferSize;
+    private final int buffersPerStream;
+    // 后台线程可能仍在更新的摘要，请求线程提前退出时它们不能被归还到池中复用
+    private final Set<MessageDigest> busyDigests = ConcurrentHashMap.newKeySet();
+
+    public ChecksumPipeline(int threads, int bufferSize, int buffersPerStream) {
+        if (threads < 1 || bufferSize < 1 || buffersPerStream < 2) {
+            throw new IllegalArgumentException("Checksum pipeline requires at least 1 thread, "
+                    + "a positive buffer size and 2 buffers per stream");
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tuskott-digester-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bufferSize = bufferSize;
+        this.buffersPerStream = buffersPerStream;
+        this.bufferPool = new ArrayBlockingQueue<>(threads * buffersPerStream * 4);
+    }
+
+    /**
+     * 包装输入流，从返回的流中读出的数据会在后台线程中更新到 messageDigest
+     */
+    public PipelinedDigestInputStream wrap(InputStream inputStream, MessageDigest messageDigest) {
+        busyDigests.add(messageDigest);
+        return new PipelinedDigestInputStream(inputStream, messageDigest, this);
+    }
+
+    /**
+     * 后台线程是否已经不再使用 messageDigest，只有返回 true 时才能将其归还到池中，否则应当丢弃
+     */
+    public boolean isReleased(MessageDigest messageDigest) {
+        return messageDigest == null || !busyDigests.contains(messageDigest);
+    }
+
+    void release(MessageDigest messageDigest) {
+        busyDigests.remove(messageDigest);
+    }
+
+    byte[] borrowBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    void returnBuffer(byte[] buffer) {
+        bufferPool.offer(buffer);
+    }
+
+    int buffersPerStream() {
+        return buffersPerStream;
+    }
+
+    ExecutorService executor() {
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
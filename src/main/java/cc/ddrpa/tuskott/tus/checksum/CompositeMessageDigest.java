@@ -0,0 +1,71 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 同时计算多种算法的摘要
+ * <p>
+ * 用于 checksum-trailer：客户端在请求体之后才声明校验算法，服务端需要在读取数据时为每种支持的算法计算摘要。
+ * 调用 {@link #digest()} 后通过 {@link #getDigest(String)} 获取指定算法的结果。
+ */
+public class CompositeMessageDigest extends MessageDigest {
+
+    private final Map<String, MessageDigest> messageDigests;
+    private final Map<String, byte[]> results = new HashMap<>();
+
+    /**
+     * @param messageDigests 以客户端声明的算法名称为键
+     */
+    public CompositeMessageDigest(Map<String, MessageDigest> messageDigests) {
+        super("COMPOSITE");
+        this.messageDigests = Map.copyOf(messageDigests);
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        for (MessageDigest messageDigest : messageDigests.values()) {
+            messageDigest.update(input);
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        for (MessageDigest messageDigest : messageDigests.values()) {
+            messageDigest.update(input, offset, len);
+        }
+    }
+
+    /**
+     * 完成所有算法的计算，返回空数组
+     */
+    @Override
+    protected byte[] engineDigest() {
+        for (Map.Entry<String, MessageDigest> entry : messageDigests.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().digest());
+        }
+        return new byte[0];
+    }
+
+    @Override
+    protected void engineReset() {
+        results.clear();
+        for (MessageDigest messageDigest : messageDigests.values()) {
+            messageDigest.reset();
+        }
+    }
+
+    /**
+     * @param declaredAlgorithm 客户端声明的算法名称
+     * @return 该算法的摘要，算法不受支持或尚未调用 {@link #digest()} 时返回 null
+     */
+    public byte[] getDigest(String declaredAlgorithm) {
+        return results.get(declaredAlgorithm);
+    }
+
+    public Map<String, MessageDigest> getMessageDigests() {
+        return Collections.unmodifiableMap(messageDigests);
+    }
+}
@@ -0,0 +1,198 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 由 {@link ChecksumPipeline} 创建的输入流，读取方消费数据的同时，后台线程按顺序计算这些数据的摘要
+ * <p>
+ * 读取完毕后调用 {@link #digest()} 等待后台计算完成并获取摘要。该类不是线程安全的，只能由一个线程读取。
+ */
+public class PipelinedDigestInputStream extends InputStream {
+
+    private final InputStream in;
+    private final MessageDigest messageDigest;
+    private final ChecksumPipeline pipeline;
+    // 本流持有的缓冲区，后台线程处理完一个缓冲区后将其放回
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<byte[]> ownedBuffers = new ArrayList<>();
+    // 等待后台线程处理的数据块，由 pending 保证同一时间只有一个后台任务在处理本流的数据
+    private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+    private byte[] current;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean finished;
+    private volatile long digestNanos;
+    private volatile long digestedBytes;
+
+    PipelinedDigestInputStream(InputStream in, MessageDigest messageDigest, ChecksumPipeline pipeline) {
+        this.in = in;
+        this.messageDigest = messageDigest;
+        this.pipeline = pipeline;
+        this.freeBuffers = new ArrayBlockingQueue<>(pipeline.buffersPerStream());
+        for (int i = 0; i < pipeline.buffersPerStream(); i++) {
+            byte[] buffer = pipeline.borrowBuffer();
+            ownedBuffers.add(buffer);
+            freeBuffers.add(buffer);
+        }
+        // 计算出摘要或失败之后后台线程不会再访问 messageDigest
+        result.whenComplete((digest, e) -> pipeline.release(messageDigest));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    /**
+     * 从请求体读取下一个缓冲区，并将其交给后台线程计算摘要
+     *
+     * @return 是否还有数据
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        byte[] buffer;
+        try {
+            // 后台线程落后太多时在此等待，避免无限制地占用内存
+            buffer = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the digester");
+        }
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            freeBuffers.add(buffer);
+            return false;
+        }
+        submit(new Chunk(buffer, n));
+        current = buffer;
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private void submit(Chunk chunk) {
+        chunks.offer(chunk);
+        if (pending.getAndIncrement() == 0) {
+            pipeline.executor().execute(this::drain);
+        }
+    }
+
+    /**
+     * 在后台线程中按提交顺序处理数据块
+     */
+    private void drain() {
+        do {
+            Chunk chunk = chunks.poll();
+            if (chunk.buffer() == null) {
+                result.complete(messageDigest.digest());
+            } else if (!result.isDone()) {
+                try {
+                    long start = System.nanoTime();
+                    messageDigest.update(chunk.buffer(), 0, chunk.length());
+                    digestNanos += System.nanoTime() - start;
+                    digestedBytes += chunk.length();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+                freeBuffers.offer(chunk.buffer());
+            } else {
+                freeBuffers.offer(chunk.buffer());
+            }
+        } while (pending.decrementAndGet() > 0);
+    }
+
+    /**
+     * 等待后台线程处理完已读取的全部数据并返回摘要
+     */
+    public byte[] digest() throws IOException {
+        if (!finished) {
+            finished = true;
+            submit(new Chunk(null, 0));
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the digester");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compute checksum", e.getCause());
+        }
+    }
+
+    /**
+     * 后台线程计算摘要的累计耗时
+     */
+    public long getDigestNanos() {
+        return digestNanos;
+    }
+
+    public long getDigestedBytes() {
+        return digestedBytes;
+    }
+
+    /**
+     * 等待后台线程结束并归还缓冲区，不会关闭底层输入流
+     * <p>
+     * 等待被中断时后台线程仍可能在使用摘要，调用方需要通过 {@link ChecksumPipeline#isReleased} 判断能否复用
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            digest();
+        } finally {
+            if (result.isDone()) {
+                for (byte[] buffer : ownedBuffers) {
+                    pipeline.returnBuffer(buffer);
+                }
+                ownedBuffers.clear();
+            }
+        }
+    }
+
+    private record Chunk(byte[] buffer, int length) {
+    }
+}
@@ -0,0 +1,135 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * 流式计算 <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">XXH64</a>（seed 为 0）
+ */
+public class XxHash64 implements Checksum {
+
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // 未凑满 32 字节的输入
+    private final byte[] buffer = new byte[32];
+    private int bufferSize;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64() {
+        reset();
+    }
+
+    @Override
+    public void update(int b) {
+        buffer[bufferSize++] = (byte) b;
+        totalLength++;
+        if (bufferSize == 32) {
+            processStripe(buffer, 0);
+            bufferSize = 0;
+        }
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        totalLength += len;
+        if (bufferSize > 0) {
+            int fill = Math.min(32 - bufferSize, len);
+            System.arraycopy(b, off, buffer, bufferSize, fill);
+            bufferSize += fill;
+            off += fill;
+            len -= fill;
+            if (bufferSize < 32) {
+                return;
+            }
+            processStripe(buffer, 0);
+            bufferSize = 0;
+        }
+        int end = off + len;
+        while (off <= end - 32) {
+            processStripe(b, off);
+            off += 32;
+        }
+        int remaining = end - off;
+        if (remaining > 0) {
+            System.arraycopy(b, off, buffer, 0, remaining);
+            bufferSize = remaining;
+        }
+    }
+
+    @Override
+    public long getValue() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME64_5;
+        }
+        hash += totalLength;
+        int off = 0;
+        while (off + 8 <= bufferSize) {
+            hash ^= round(0, (long) LONG_LE.get(buffer, off));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+            off += 8;
+        }
+        if (off + 4 <= bufferSize) {
+            hash ^= ((int) INT_LE.get(buffer, off) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            off += 4;
+        }
+        while (off < bufferSize) {
+            hash ^= (buffer[off] & 0xFFL) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+            off++;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    @Override
+    public void reset() {
+        v1 = PRIME64_1 + PRIME64_2;
+        v2 = PRIME64_2;
+        v3 = 0L;
+        v4 = -PRIME64_1;
+        bufferSize = 0;
+        totalLength = 0L;
+    }
+
+    private void processStripe(byte[] b, int off) {
+        v1 = round(v1, (long) LONG_LE.get(b, off));
+        v2 = round(v2, (long) LONG_LE.get(b, off + 8));
+        v3 = round(v3, (long) LONG_LE.get(b, off + 16));
+        v4 = round(v4, (long) LONG_LE.get(b, off + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+}
@@ -16,8 +16,9 @@ public class InMemoryLockProvider implements LockProvider {
     }
 
     @Override
-    public synchronized boolean acquire(String id) {
-        return !lockSet.contains(id);
+    public boolean acquire(String id) {
+        // add 在集合中已存在该 id 时返回 false，检查与加锁是一个原子操作
+        return lockSet.add(id);
     }
 
     @Override
@@ -35,7 +35,8 @@ public class InMemoryUploadResourceTracker implements UploadResourceTracker {
 
     @Override
     public UploadResource patch(String resourceId, long newUploadOffset) {
-        return store.get(resourceId).patch(newUploadOffset);
+        // 在 map 的锁内更新，避免与 remove 并发时修改已被移除的上传计划
+        return store.computeIfPresent(resourceId, (id, uploadResource) -> uploadResource.patch(newUploadOffset));
     }
 
     @Override
@@ -45,7 +46,7 @@ public class InMemoryUploadResourceTracker implements UploadResourceTracker {
 
     @Override
     public UploadResource updateUploadLength(String resourceId, Long uploadLength) {
-        return store.get(resourceId).uploadLength(uploadLength);
+        return store.computeIfPresent(resourceId, (id, uploadResource) -> uploadResource.uploadLength(uploadLength));
     }
 
     @Override
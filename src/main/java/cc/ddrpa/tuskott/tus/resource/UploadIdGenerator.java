@@ -0,0 +1,26 @@
+package cc.ddrpa.tuskott.tus.resource;
+
+/**
+ * 为上传资源生成 id
+ * <p>
+ * id 会出现在上传地址中，必须是 URL 安全的字符串。
+ */
+public interface UploadIdGenerator {
+
+    /**
+     * 生成一个新的 id
+     *
+     * @return
+     */
+    String generate();
+
+    /**
+     * 解析 id 中携带的节点标识
+     *
+     * @param id
+     * @return 节点标识，id 不携带节点信息或格式不符时返回 null
+     */
+    default String nodeOf(String id) {
+        return null;
+    }
+}
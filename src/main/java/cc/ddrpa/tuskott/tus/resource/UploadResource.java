@@ -5,7 +5,9 @@ import org.springframework.util.StringUtils;
 import java.io.Serial;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -20,12 +22,17 @@ public class UploadResource implements Serializable {
     private final LocalDateTime expireTime;
     private final String metadata;
     private String checksum;
+    // 以下字段会被并发的请求读取，使用 volatile 保证可见性
     // 文件总体积（字节数）
-    private Long uploadLength;
+    private volatile Long uploadLength;
     // 稍后指定文件体积
-    private Boolean uploadDeferLength;
+    private volatile Boolean uploadDeferLength;
     // 上传进度
-    private Long uploadOffset;
+    private volatile Long uploadOffset;
+    // 格式化后的过期时间，expireTime 不会变化，只需格式化一次
+    private transient volatile String formattedExpireTime;
+    // 解析后的 Upload-Metadata，metadata 不会变化，只需解析一次
+    private transient volatile Map<String, String> decodedMetadata;
 
     public UploadResource(String id, LocalDateTime createTime, LocalDateTime expireTime, String metadata, String checksum, Long uploadLength, Boolean uploadDeferLength, Long uploadOffset) {
         this.id = id;
@@ -58,31 +65,44 @@ public class UploadResource implements Serializable {
         this.metadata = metadata;
     }
 
-    public UploadResource patch(long newUploadOffset) {
+    public synchronized UploadResource patch(long newUploadOffset) {
         this.uploadOffset = newUploadOffset;
         return this;
     }
 
-    public UploadResource uploadLength(Long uploadLength) {
+    public synchronized UploadResource uploadLength(Long uploadLength) {
+        // 先写入 uploadLength，读到 uploadDeferLength = false 的线程一定能读到新的 uploadLength
         this.uploadLength = uploadLength;
         this.uploadDeferLength = false;
         return this;
     }
 
+    /**
+     * 获取解码后的 Upload-Metadata，结果会被缓存，返回的 Map 不可修改
+     */
     public Map<String, String> getMetadata() {
+        Map<String, String> decoded = decodedMetadata;
+        if (decoded == null) {
+            decoded = decodeMetadata();
+            decodedMetadata = decoded;
+        }
+        return decoded;
+    }
+
+    private Map<String, String> decodeMetadata() {
         if (StringUtils.hasText(metadata)) {
-            Map<String, String> decodedMetadata = new HashMap<>();
+            Map<String, String> decoded = new HashMap<>();
             String[] pairs = metadata.split(",");
             for (String pair : pairs) {
                 String[] kv = pair.split(" ");
                 if (kv.length == 1) {
-                    decodedMetadata.put(kv[0], null);
+                    decoded.put(kv[0], null);
                 } else if (kv.length >= 2) {
                     String value = new String(Base64.getDecoder().decode(kv[1]));
-                    decodedMetadata.put(kv[0], value);
+                    decoded.put(kv[0], value);
                 }
             }
-            return decodedMetadata;
+            return Collections.unmodifiableMap(decoded);
         } else {
             return Map.of();
         }
@@ -100,6 +120,18 @@ public class UploadResource implements Serializable {
         return expireTime;
     }
 
+    /**
+     * 获取格式化后的过期时间，结果会被缓存，同一实例应始终使用同一个 formatter
+     */
+    public String getFormattedExpireTime(DateTimeFormatter formatter) {
+        String formatted = formattedExpireTime;
+        if (formatted == null) {
+            formatted = formatter.format(expireTime);
+            formattedExpireTime = formatted;
+        }
+        return formatted;
+    }
+
     public String getChecksum() {
         return checksum;
     }
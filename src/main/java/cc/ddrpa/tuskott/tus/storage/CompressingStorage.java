@@ -0,0 +1,513 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩后再交给被包装的 Storage 保存
+ * <p>
+ * 写入的数据按 {@code frame-size} 切分为帧，每帧使用 Deflate 独立压缩，压缩后不变小的帧按原样保存。
+ * 一次写入结束时不足一帧的数据也单独成帧，因此帧不会跨越两次 PATCH，回退到写入开始的位置只需要丢弃之后的帧。
+ * 帧的逻辑偏移量、物理偏移量与长度记录在同名加 {@code .idx} 后缀的索引中，{@link #streaming(String)} 按索引逐帧解压。
+ * <p>
+ * 被包装的 Storage 需要在 {@link Storage#rollback(String, Long)} 时丢弃偏移量之后的数据，如
+ * {@link LocalDiskStorage} 与 {@link SegmentedDiskStorage}。
+ * <p>
+ * 配置示例：
+ * <pre>
+ * provider: 'cc.ddrpa.tuskott.tus.storage.CompressingStorage'
+ * config:
+ *   delegate:
+ *     provider: 'cc.ddrpa.tuskott.tus.storage.LocalDiskStorage'
+ *     config:
+ *       dir: 'uploads'
+ *   level: 1
+ *   frame-size: 262144
+ * </pre>
+ */
+public class CompressingStorage implements Storage {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressingStorage.class);
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int DEFAULT_FRAME_SIZE = 256 * 1024;
+    // 较低的压缩级别对日志、CSV、JSON 等文本已经有不错的压缩率，且耗时远小于默认级别
+    private static final int DEFAULT_LEVEL = 1;
+
+    private final Storage delegate;
+    private final int frameSize;
+    private final int level;
+    // 已加载的帧索引，服务重启后从索引按需加载
+    private final Map<String, FrameIndex> indexes = new ConcurrentHashMap<>();
+    // 压缩前后的字节数与压缩耗时，用于评估节省的 I/O 与花费的 CPU
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+
+    public CompressingStorage(Map<String, Object> configuration) throws ReflectiveOperationException {
+        this(NestedStorageFactory.create(configuration, "delegate"),
+                Integer.parseInt(String.valueOf(configuration.getOrDefault("frame-size", DEFAULT_FRAME_SIZE))),
+                Integer.parseInt(String.valueOf(configuration.getOrDefault("level", DEFAULT_LEVEL))));
+    }
+
+    public CompressingStorage(Storage delegate, int frameSize, int level) {
+        if (frameSize <= 0) {
+            throw new IllegalArgumentException("frame-size must be positive: " + frameSize);
+        }
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 1 and 9: " + level);
+        }
+        this.delegate = delegate;
+        this.frameSize = frameSize;
+        this.level = level;
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        delegate.create(resourceId);
+        try {
+            delegate.create(indexIdOf(resourceId));
+        } catch (BlobAccessException | IOException e) {
+            delegate.remove(resourceId);
+            throw e;
+        }
+        indexes.put(resourceId, new FrameIndex(new ArrayList<>()));
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        FrameIndex index = indexOf(resourceId);
+        synchronized (index) {
+            if (uploadOffset != index.logicalLength()) {
+                throw new BlobAccessException("Upload offset " + uploadOffset + " of " + resourceId
+                        + " does not match stored length " + index.logicalLength());
+            }
+            long physicalStart = index.physicalLength();
+            FramingInputStream framingInputStream = new FramingInputStream(inputStream, uploadOffset, physicalStart);
+            long physicalEnd;
+            try {
+                physicalEnd = delegate.write(resourceId, framingInputStream, physicalStart);
+            } finally {
+                framingInputStream.end();
+            }
+            // 只有完整写入的帧才算提交，被截断的帧由客户端重新上传
+            List<Frame> written = new ArrayList<>();
+            for (Frame frame : framingInputStream.frames) {
+                if (frame.physicalEnd() <= physicalEnd) {
+                    written.add(frame);
+                }
+            }
+            long committedPhysicalEnd = written.isEmpty() ? physicalStart : written.get(written.size() - 1).physicalEnd();
+            if (physicalEnd > committedPhysicalEnd) {
+                delegate.rollback(resourceId, committedPhysicalEnd);
+            }
+            if (!written.isEmpty()) {
+                appendToIndex(resourceId, index, written);
+            }
+            return index.logicalLength();
+        }
+    }
+
+    private void appendToIndex(String resourceId, FrameIndex index, List<Frame> frames)
+            throws BlobAccessException, IOException {
+        ByteBuffer records = ByteBuffer.allocate(frames.size() * Frame.RECORD_SIZE);
+        for (Frame frame : frames) {
+            frame.writeTo(records);
+        }
+        long indexOffset = (long) index.frames.size() * Frame.RECORD_SIZE;
+        long indexEnd = delegate.write(indexIdOf(resourceId),
+                new ByteArrayInputStream(records.array()), indexOffset);
+        if (indexEnd != indexOffset + records.capacity()) {
+            // 索引没有完整写入，丢弃本次写入的数据
+            delegate.rollback(indexIdOf(resourceId), indexOffset);
+            delegate.rollback(resourceId, index.physicalLength());
+            throw new BlobAccessException("Failed to write frame index of " + resourceId);
+        }
+        List<Frame> updated = new ArrayList<>(index.frames);
+        updated.addAll(frames);
+        index.frames = updated;
+    }
+
+    /**
+     * 丢弃 offset 之后的帧，offset 位于帧中间时将该帧的前半部分重新压缩
+     */
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        FrameIndex index = indexes.get(resourceId);
+        if (Objects.isNull(index)) {
+            return;
+        }
+        synchronized (index) {
+            List<Frame> frames = index.frames;
+            int kept = 0;
+            while (kept < frames.size() && frames.get(kept).logicalEnd() <= offset) {
+                kept++;
+            }
+            Frame partial = kept < frames.size() && frames.get(kept).logicalStart() < offset ? frames.get(kept) : null;
+            byte[] prefix = null;
+            if (Objects.nonNull(partial)) {
+                try {
+                    prefix = readFrame(resourceId, partial);
+                } catch (BlobAccessException | IOException e) {
+                    logger.warn("Failed to read frame of {} at {}, rolling back to {} instead: {}",
+                            resourceId, partial.logicalStart(), partial.logicalStart(), e.getMessage());
+                }
+            }
+            List<Frame> retained = new ArrayList<>(frames.subList(0, kept));
+            long physicalEnd = retained.isEmpty() ? 0L : retained.get(retained.size() - 1).physicalEnd();
+            delegate.rollback(indexIdOf(resourceId), (long) kept * Frame.RECORD_SIZE);
+            delegate.rollback(resourceId, physicalEnd);
+            index.frames = retained;
+            if (Objects.nonNull(prefix)) {
+                try {
+                    write(resourceId, new ByteArrayInputStream(prefix, 0, (int) (offset - partial.logicalStart())),
+                            partial.logicalStart());
+                } catch (BlobAccessException | IOException e) {
+                    logger.warn("Failed to roll {} back to {}, kept data up to {}: {}",
+                            resourceId, offset, partial.logicalStart(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private byte[] readFrame(String resourceId, Frame frame) throws BlobAccessException, IOException {
+        try (InputStream physical = delegate.streaming(resourceId)) {
+            physical.skipNBytes(frame.physicalStart());
+            return frame.decode(physical.readNBytes(frame.storedLength()));
+        }
+    }
+
+    @Override
+    public void complete(String resourceId) throws BlobAccessException, IOException {
+        delegate.complete(resourceId);
+        delegate.complete(indexIdOf(resourceId));
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        for (String resourceId : resourceIds) {
+            remove(resourceId);
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        indexes.remove(resourceId);
+        delegate.remove(resourceId);
+        delegate.remove(indexIdOf(resourceId));
+    }
+
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        List<Frame> frames = indexOf(resourceId).frames;
+        return new InflatingInputStream(delegate.streaming(resourceId), frames);
+    }
+
+    @Override
+    public long usableSpace() {
+        return delegate.usableSpace();
+    }
+
+    @Override
+    public long totalSpace() {
+        return delegate.totalSpace();
+    }
+
+    public Storage getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 写入的原始字节数
+     */
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * 实际交给被包装 Storage 的字节数
+     */
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    /**
+     * 压缩的累计耗时
+     */
+    public long getCompressionNanos() {
+        return compressionNanos.sum();
+    }
+
+    private static String indexIdOf(String resourceId) {
+        return resourceId + INDEX_SUFFIX;
+    }
+
+    private FrameIndex indexOf(String resourceId) throws BlobAccessException, IOException {
+        FrameIndex index = indexes.get(resourceId);
+        if (Objects.nonNull(index)) {
+            return index;
+        }
+        byte[] records;
+        try (InputStream inputStream = delegate.streaming(indexIdOf(resourceId))) {
+            records = inputStream.readAllBytes();
+        } catch (FileNotFoundException e) {
+            throw new FileNotFoundException(resourceId + " does not exist");
+        }
+        List<Frame> frames = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        long logicalEnd = 0L;
+        long physicalEnd = 0L;
+        while (buffer.remaining() >= Frame.RECORD_SIZE) {
+            Frame frame = Frame.readFrom(buffer);
+            // 只接受首尾相接的记录，之后的内容视为未完成的写入
+            if (frame.logicalStart() != logicalEnd || frame.physicalStart() != physicalEnd) {
+                break;
+            }
+            frames.add(frame);
+            logicalEnd = frame.logicalEnd();
+            physicalEnd = frame.physicalEnd();
+        }
+        return indexes.computeIfAbsent(resourceId, id -> new FrameIndex(frames));
+    }
+
+    /**
+     * 一个上传资源的帧索引，修改时由调用方持有该对象的锁，读取方通过 volatile 字段获取快照
+     */
+    private static final class FrameIndex {
+
+        private volatile List<Frame> frames;
+
+        private FrameIndex(List<Frame> frames) {
+            this.frames = frames;
+        }
+
+        private long logicalLength() {
+            List<Frame> current = frames;
+            return current.isEmpty() ? 0L : current.get(current.size() - 1).logicalEnd();
+        }
+
+        private long physicalLength() {
+            List<Frame> current = frames;
+            return current.isEmpty() ? 0L : current.get(current.size() - 1).physicalEnd();
+        }
+    }
+
+    /**
+     * 索引中的一条记录，storedLength 等于 rawLength 时表示该帧未压缩
+     */
+    private record Frame(long logicalStart, long physicalStart, int rawLength, int storedLength) {
+
+        private static final int RECORD_SIZE = Long.BYTES * 2 + Integer.BYTES * 2;
+
+        private long logicalEnd() {
+            return logicalStart + rawLength;
+        }
+
+        private long physicalEnd() {
+            return physicalStart + storedLength;
+        }
+
+        private boolean compressed() {
+            return storedLength != rawLength;
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            buffer.putLong(logicalStart).putLong(physicalStart).putInt(rawLength).putInt(storedLength);
+        }
+
+        private static Frame readFrom(ByteBuffer buffer) {
+            return new Frame(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+        }
+
+        private byte[] decode(byte[] stored) throws IOException {
+            if (stored.length != storedLength) {
+                throw new IOException("Frame at " + physicalStart + " is truncated");
+            }
+            if (!compressed()) {
+                return stored;
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(stored);
+                byte[] raw = new byte[rawLength];
+                int inflated = 0;
+                while (inflated < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if (inflated != rawLength) {
+                    throw new IOException("Frame at " + physicalStart + " is corrupted");
+                }
+                return raw;
+            } catch (DataFormatException e) {
+                throw new IOException("Frame at " + physicalStart + " is corrupted", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * 从请求体读取数据并逐帧压缩，交给被包装的 Storage 读取
+     */
+    private final class FramingInputStream extends InputStream {
+
+        private final InputStream in;
+        private final Deflater deflater = new Deflater(level);
+        private final byte[] raw = new byte[frameSize];
+        // Deflate 在最坏情况下会略大于原始数据，此时按原样保存
+        private final byte[] encoded = new byte[frameSize];
+        private final List<Frame> frames = new ArrayList<>();
+        private long logicalOffset;
+        private long physicalOffset;
+        private byte[] current;
+        private int position;
+        private int limit;
+        private boolean eof;
+
+        private FramingInputStream(InputStream in, long logicalOffset, long physicalOffset) {
+            this.in = in;
+            this.logicalOffset = logicalOffset;
+            this.physicalOffset = physicalOffset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == limit && !nextFrame()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean nextFrame() {
+            if (eof) {
+                return false;
+            }
+            int rawLength = 0;
+            while (rawLength < frameSize) {
+                int n;
+                try {
+                    n = in.read(raw, rawLength, frameSize - rawLength);
+                } catch (IOException e) {
+                    // 传输被打断，保存已读取的数据
+                    n = -1;
+                }
+                if (n < 0) {
+                    eof = true;
+                    break;
+                }
+                rawLength += n;
+            }
+            if (rawLength == 0) {
+                return false;
+            }
+            long start = System.nanoTime();
+            deflater.reset();
+            deflater.setInput(raw, 0, rawLength);
+            deflater.finish();
+            int storedLength = 0;
+            while (!deflater.finished() && storedLength < rawLength) {
+                storedLength += deflater.deflate(encoded, storedLength, encoded.length - storedLength);
+            }
+            compressionNanos.add(System.nanoTime() - start);
+            if (deflater.finished() && storedLength < rawLength) {
+                current = encoded;
+            } else {
+                current = raw;
+                storedLength = rawLength;
+            }
+            frames.add(new Frame(logicalOffset, physicalOffset, rawLength, storedLength));
+            logicalOffset += rawLength;
+            physicalOffset += storedLength;
+            rawBytes.add(rawLength);
+            storedBytes.add(storedLength);
+            position = 0;
+            limit = storedLength;
+            return true;
+        }
+
+        private void end() {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 按索引逐帧读取并解压
+     */
+    private static final class InflatingInputStream extends InputStream {
+
+        private final InputStream physical;
+        private final List<Frame> frames;
+        private int nextFrame;
+        private byte[] current;
+        private int position;
+
+        private InflatingInputStream(InputStream physical, List<Frame> frames) {
+            this.physical = physical;
+            this.frames = frames;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (Objects.isNull(current) || position == current.length) {
+                if (nextFrame == frames.size()) {
+                    return -1;
+                }
+                Frame frame = frames.get(nextFrame++);
+                current = frame.decode(physical.readNBytes(frame.storedLength()));
+                position = 0;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            physical.close();
+        }
+    }
+}
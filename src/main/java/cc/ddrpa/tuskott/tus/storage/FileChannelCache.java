@@ -0,0 +1,205 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按上传资源 id 缓存打开的 FileChannel，避免每个 chunk 都重新打开文件并检查文件属性
+ * <p>
+ * 最多缓存 capacity 个 FileChannel，超出时关闭最久未使用的，闲置超过 idleTimeout 的 FileChannel 由后台线程关闭。
+ * 被淘汰时仍在使用的 FileChannel 在最后一个使用者归还后关闭。capacity 为 0 时不缓存，每次使用后立即关闭。
+ */
+final class FileChannelCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileChannelCache.class);
+
+    private final int capacity;
+    private final long idleTimeoutNanos;
+    // 按访问顺序排列，最久未使用的在最前
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicInteger openChannels = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+
+    FileChannelCache(int capacity, long idleTimeoutMillis) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("channel-cache-size must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        if (capacity > 0 && idleTimeoutMillis > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tuskott-channel-cache-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(idleTimeoutMillis / 2, 1L);
+            evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * 取得 path 对应的 FileChannel，使用完毕后需要调用 {@link #release(Entry)}
+     * <p>
+     * 只在打开文件时检查文件是否存在、是否可读写，命中缓存时不再访问文件系统
+     */
+    Entry acquire(String key, Path path) throws IOException {
+        if (capacity > 0) {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (Objects.nonNull(entry)) {
+                    hits.increment();
+                    entry.refs++;
+                    return entry;
+                }
+            }
+        }
+        misses.increment();
+        Entry opened = new Entry(key, open(path));
+        if (capacity == 0) {
+            opened.retired = true;
+            opened.refs = 1;
+            return opened;
+        }
+        List<Entry> toClose = new ArrayList<>();
+        Entry acquired;
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (Objects.nonNull(existing)) {
+                // 其他线程同时打开了同一个文件
+                existing.refs++;
+                toClose.add(opened);
+                acquired = existing;
+            } else {
+                opened.refs = 1;
+                entries.put(key, opened);
+                acquired = opened;
+                Iterator<Entry> iterator = entries.values().iterator();
+                while (entries.size() > capacity && iterator.hasNext()) {
+                    Entry eldest = iterator.next();
+                    iterator.remove();
+                    retire(eldest, toClose);
+                }
+            }
+        }
+        toClose.forEach(this::close);
+        return acquired;
+    }
+
+    void release(Entry entry) {
+        boolean closeNow;
+        synchronized (this) {
+            entry.refs--;
+            entry.lastUsed = System.nanoTime();
+            closeNow = entry.retired && entry.refs == 0;
+        }
+        if (closeNow) {
+            close(entry);
+        }
+    }
+
+    /**
+     * 关闭并移除缓存的 FileChannel，在上传完成、删除时调用
+     */
+    void invalidate(String key) {
+        List<Entry> toClose = new ArrayList<>(1);
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (Objects.nonNull(entry)) {
+                retire(entry, toClose);
+            }
+        }
+        toClose.forEach(this::close);
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    int openChannels() {
+        return openChannels.get();
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        List<Entry> toClose = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.refs == 0 && now - entry.lastUsed >= idleTimeoutNanos) {
+                    iterator.remove();
+                    retire(entry, toClose);
+                }
+            }
+        }
+        toClose.forEach(this::close);
+    }
+
+    /**
+     * 需要在持有锁时调用，没有使用者的 FileChannel 放入 toClose 由调用者在释放锁后关闭
+     */
+    private void retire(Entry entry, List<Entry> toClose) {
+        entry.retired = true;
+        if (entry.refs == 0) {
+            toClose.add(entry);
+        }
+    }
+
+    private FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        openChannels.incrementAndGet();
+        return channel;
+    }
+
+    private void close(Entry entry) {
+        try {
+            entry.channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close channel of {}", entry.key, e);
+        }
+        openChannels.decrementAndGet();
+    }
+
+    static final class Entry {
+
+        private final String key;
+        private final FileChannel channel;
+        // 以下字段只在持有 FileChannelCache 的锁时访问
+        private int refs;
+        private boolean retired;
+        private long lastUsed = System.nanoTime();
+
+        private Entry(String key, FileChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+
+        FileChannel channel() {
+            return channel;
+        }
+    }
+}
@@ -1,109 +1,430 @@
 package cc.ddrpa.tuskott.tus.storage;
 
 import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.jfr.JfrEventTypes;
+import cc.ddrpa.tuskott.jfr.StorageWriteEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * 将上传的文件块保存在本地磁盘上
+ * <p>
+ * 可以通过 {@code dirs} 配置多个目录（通常位于不同的磁盘），新的上传会被放到可用空间多且当前写入少的目录中，
+ * 放置结果记录在内存中，之后的读写不需要逐个目录查找。启动时扫描所有目录恢复放置记录。
+ * 写入失败或可用空间不高于 {@code min-free-space} 的目录会被暂时排除，不再接受新的上传。
+ * <p>
+ * 写入使用的 FileChannel 在多个 PATCH 请求之间保持打开，最多缓存 {@code channel-cache-size} 个，
+ * 闲置超过 {@code channel-idle-timeout} 毫秒或上传完成、删除时关闭。
  */
 public class LocalDiskStorage implements Storage {
 
-    private final Path storageDir;
-    private final String storageDirAsStr;
+    private static final Logger logger = LoggerFactory.getLogger(LocalDiskStorage.class);
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    private static final long DEFAULT_MIN_FREE_SPACE = 0L;
+    private static final int DEFAULT_CHANNEL_CACHE_SIZE = 256;
+    private static final long DEFAULT_CHANNEL_IDLE_TIMEOUT = 30_000L;
+    // 写入失败的目录被排除的时长，之后重新检查
+    private static final long UNHEALTHY_COOLDOWN_NANOS = 30_000_000_000L;
+
+    private final List<Volume> volumes;
+    // 上传资源 id 所在的目录
+    private final ConcurrentHashMap<String, Volume> placements = new ConcurrentHashMap<>();
+    // 每次从请求体读取并写入磁盘的字节数
+    private final int bufferSize;
+    // 目录可用空间不高于该值时不再接受新的上传
+    private final long minFreeSpace;
+    // 写入时使用的 FileChannel
+    private final FileChannelCache channels;
 
     public LocalDiskStorage(Map<String, Object> configuration) throws IOException {
-        storageDirAsStr = (String) configuration.getOrDefault("dir", "uploads");
-        storageDir = Paths.get(storageDirAsStr);
-        if (Files.notExists(storageDir)) {
-            Files.createDirectories(storageDir);
-        } else if (!Files.isDirectory(storageDir)) {
-            throw new RuntimeException("Upload path is not a directory: " + storageDir);
+        bufferSize = Integer.parseInt(String.valueOf(configuration.getOrDefault("buffer-size", DEFAULT_BUFFER_SIZE)));
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer-size must be positive: " + bufferSize);
+        }
+        minFreeSpace = Long.parseLong(String.valueOf(
+                configuration.getOrDefault("min-free-space", DEFAULT_MIN_FREE_SPACE)));
+        channels = new FileChannelCache(
+                Integer.parseInt(String.valueOf(
+                        configuration.getOrDefault("channel-cache-size", DEFAULT_CHANNEL_CACHE_SIZE))),
+                Long.parseLong(String.valueOf(
+                        configuration.getOrDefault("channel-idle-timeout", DEFAULT_CHANNEL_IDLE_TIMEOUT))));
+        List<String> dirs = parseDirs(configuration.get("dirs"));
+        if (dirs.isEmpty()) {
+            dirs = List.of((String) configuration.getOrDefault("dir", "uploads"));
+        }
+        List<Volume> configuredVolumes = new ArrayList<>(dirs.size());
+        for (String dir : dirs) {
+            Path storageDir = Paths.get(dir);
+            if (Files.notExists(storageDir)) {
+                Files.createDirectories(storageDir);
+            } else if (!Files.isDirectory(storageDir)) {
+                throw new RuntimeException("Upload path is not a directory: " + storageDir);
+            }
+            Volume volume = new Volume(storageDir);
+            configuredVolumes.add(volume);
+            // 恢复重启前的放置记录
+            try (Stream<Path> files = Files.list(storageDir)) {
+                files.forEach(file -> placements.putIfAbsent(file.getFileName().toString(), volume));
+            }
+        }
+        volumes = List.copyOf(configuredVolumes);
+    }
+
+    /**
+     * dirs 可以是以逗号分隔的字符串，也可以是 YAML 列表，绑定到 Map 后列表会以下标为键
+     */
+    private static List<String> parseDirs(Object dirs) {
+        Collection<?> values;
+        if (dirs instanceof Collection<?> collection) {
+            values = collection;
+        } else if (dirs instanceof Map<?, ?> map) {
+            values = map.values();
+        } else if (dirs instanceof String str) {
+            values = List.of(str.split(","));
+        } else {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        for (Object value : values) {
+            String dir = String.valueOf(value).trim();
+            if (!dir.isEmpty()) {
+                result.add(dir);
+            }
         }
+        return result;
     }
 
     @Override
     public void create(String resourceId) throws BlobAccessException, IOException {
-        Path filePath = buildFilePath(resourceId);
-        if (Files.exists(filePath)) {
+        Volume volume = choose();
+        Path filePath = volume.dir.resolve(resourceId);
+        if (placements.containsKey(resourceId) || Files.exists(filePath)) {
             throw new BlobAccessException(filePath + " already exists");
         }
-        Files.createFile(filePath);
+        try {
+            Files.createFile(filePath);
+        } catch (IOException e) {
+            volume.markUnhealthy(e);
+            throw e;
+        }
+        placements.put(resourceId, volume);
+    }
+
+    /**
+     * 在健康且空间充足的目录中，选择可用空间与当前写入数之比最大的目录
+     */
+    private Volume choose() throws BlobAccessException {
+        Volume chosen = null;
+        double chosenScore = -1;
+        for (Volume volume : volumes) {
+            if (!volume.isHealthy()) {
+                continue;
+            }
+            long usable = volume.usableSpace();
+            if (usable <= minFreeSpace) {
+                continue;
+            }
+            double score = (double) usable / (1 + volume.activeWrites.get());
+            if (score > chosenScore) {
+                chosen = volume;
+                chosenScore = score;
+            }
+        }
+        if (Objects.isNull(chosen)) {
+            throw new BlobAccessException("No upload directory is healthy and has enough free space");
+        }
+        return chosen;
     }
 
     @Override
     public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
             throws FileNotFoundException, BlobAccessException {
-        Path filePath = accessFilePath(resourceId);
+        Volume volume = volumeOf(resourceId);
+        FileChannelCache.Entry channelEntry = acquireChannel(volume, resourceId);
+        // 仅在录制 StorageWriteEvent 时分配事件对象，并分别统计读取请求体与写入磁盘的耗时
+        StorageWriteEvent writeEvent = JfrEventTypes.STORAGE_WRITE.isEnabled() ? new StorageWriteEvent() : null;
+        boolean timed = Objects.nonNull(writeEvent);
+        if (timed) {
+            writeEvent.begin();
+        }
+        long readNanos = 0L;
+        long writeNanos = 0L;
         long transferred = 0L;
-        try (RandomAccessFile raf = new RandomAccessFile(filePath.toFile(), "rw")) {
-            raf.seek(uploadOffset);
-            byte[] buffer = new byte[1024];
+        volume.activeWrites.incrementAndGet();
+        try {
+            FileChannel channel = channelEntry.channel();
+            byte[] buffer = new byte[bufferSize];
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
             while (true) {
                 int bytesRead;
                 try {
+                    long readStart = timed ? System.nanoTime() : 0L;
                     bytesRead = inputStream.read(buffer);
-                    if (bytesRead < 0) {
-                        break;
+                    if (timed) {
+                        readNanos += System.nanoTime() - readStart;
+                    }
+                } catch (IOException e) {
+                    // 传输被打断，保存当前的状态
+                    break;
+                }
+                if (bytesRead < 0) {
+                    break;
+                }
+                try {
+                    long writeStart = timed ? System.nanoTime() : 0L;
+                    byteBuffer.clear().limit(bytesRead);
+                    long position = uploadOffset + transferred;
+                    while (byteBuffer.hasRemaining()) {
+                        position += channel.write(byteBuffer, position);
+                    }
+                    if (timed) {
+                        writeNanos += System.nanoTime() - writeStart;
                     }
-                    raf.write(buffer, 0, bytesRead);
                 } catch (IOException e) {
-                    // 传输被打断或文件写入失败，保存当前的状态
-                    return uploadOffset + transferred;
+                    // 磁盘已满或出现故障，保存当前的状态，该目录暂时不再接受新的上传
+                    volume.markUnhealthy(e);
+                    break;
                 }
                 transferred += bytesRead;
             }
-        } catch (IOException e) {
-            throw new BlobAccessException(e.getMessage());
+        } finally {
+            channels.release(channelEntry);
+            volume.activeWrites.decrementAndGet();
+            if (timed) {
+                writeEvent.end();
+                if (writeEvent.shouldCommit()) {
+                    writeEvent.resourceId = resourceId;
+                    writeEvent.uploadOffset = uploadOffset;
+                    writeEvent.bytes = transferred;
+                    writeEvent.readTime = readNanos;
+                    writeEvent.writeTime = writeNanos;
+                    writeEvent.commit();
+                }
+            }
         }
         return uploadOffset + transferred;
     }
 
+    /**
+     * 截断文件，丢弃 offset 之后的数据
+     */
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        Volume volume = placements.get(resourceId);
+        if (Objects.isNull(volume)) {
+            return;
+        }
+        FileChannelCache.Entry channelEntry;
+        try {
+            channelEntry = acquireChannel(volume, resourceId);
+        } catch (FileNotFoundException | BlobAccessException e) {
+            logger.warn("Failed to roll {} back to {}: {}", resourceId, offset, e.getMessage());
+            return;
+        }
+        try {
+            FileChannel channel = channelEntry.channel();
+            if (channel.size() > offset) {
+                channel.truncate(offset);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to roll {} back to {}: {}", resourceId, offset, e.getMessage());
+        } finally {
+            channels.release(channelEntry);
+        }
+    }
+
+    /**
+     * 上传完成后不会再写入，关闭缓存的 FileChannel
+     */
+    @Override
+    public void complete(String resourceId) {
+        channels.invalidate(resourceId);
+    }
+
     @Override
     public void remove(List<String> resourceIds) {
         for (String resourceId : resourceIds) {
-            try {
-                Files.delete(buildFilePath(resourceId));
-            } catch (IOException ignored) {
-            }
+            remove(resourceId);
         }
     }
 
     @Override
     public void remove(String resourceId) {
+        Volume volume = placements.remove(resourceId);
+        channels.invalidate(resourceId);
+        if (Objects.isNull(volume)) {
+            return;
+        }
         try {
-            Files.delete(buildFilePath(resourceId));
+            Files.delete(volume.dir.resolve(resourceId));
         } catch (IOException ignored) {
         }
     }
 
     @Override
     public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
-        Path filePath = accessFilePath(resourceId);
+        Path filePath = accessFilePath(volumeOf(resourceId), resourceId);
         return Files.newInputStream(filePath, StandardOpenOption.READ);
     }
 
-    private Path buildFilePath(String resourceId) {
-        return Paths.get(storageDirAsStr, resourceId);
+    @Override
+    public long usableSpace() {
+        long usable = 0L;
+        for (Volume volume : distinctFileStoreVolumes()) {
+            if (volume.isHealthy()) {
+                usable += Math.max(0L, volume.usableSpace());
+            }
+        }
+        return usable;
+    }
+
+    @Override
+    public long totalSpace() {
+        long total = 0L;
+        for (Volume volume : distinctFileStoreVolumes()) {
+            if (volume.isHealthy()) {
+                try {
+                    total += Files.getFileStore(volume.dir).getTotalSpace();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 多个目录可能位于同一个磁盘上，统计容量时只计算一次
+     */
+    private List<Volume> distinctFileStoreVolumes() {
+        Set<FileStore> seen = new HashSet<>();
+        List<Volume> result = new ArrayList<>(volumes.size());
+        for (Volume volume : volumes) {
+            try {
+                if (seen.add(Files.getFileStore(volume.dir))) {
+                    result.add(volume);
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 命中缓存的 FileChannel 有效期内文件的存在与读写权限已在打开时确认
+     */
+    private FileChannelCache.Entry acquireChannel(Volume volume, String resourceId)
+            throws FileNotFoundException, BlobAccessException {
+        Path filePath = volume.dir.resolve(resourceId);
+        try {
+            return channels.acquire(resourceId, filePath);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(filePath + " does not exist");
+        } catch (IOException e) {
+            throw new BlobAccessException(filePath + " is not readable or not a regular file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 从缓存中取得 FileChannel 的次数
+     */
+    public long getChannelCacheHits() {
+        return channels.hits();
+    }
+
+    /**
+     * 需要打开文件的次数
+     */
+    public long getChannelCacheMisses() {
+        return channels.misses();
+    }
+
+    /**
+     * 当前打开的 FileChannel 数量
+     */
+    public int getOpenChannels() {
+        return channels.openChannels();
+    }
+
+    private Volume volumeOf(String resourceId) throws FileNotFoundException {
+        Volume volume = placements.get(resourceId);
+        if (Objects.isNull(volume)) {
+            throw new FileNotFoundException(resourceId + " does not exist");
+        }
+        return volume;
     }
 
-    private Path accessFilePath(String resourceId) throws FileNotFoundException, BlobAccessException {
-        Path filePath = Paths.get(storageDirAsStr, resourceId);
+    private Path accessFilePath(Volume volume, String resourceId) throws FileNotFoundException, BlobAccessException {
+        Path filePath = volume.dir.resolve(resourceId);
         if (!Files.exists(filePath)) {
-            throw new FileNotFoundException(filePath + " already exists");
+            throw new FileNotFoundException(filePath + " does not exist");
         }
         if (!Files.isReadable(filePath) || !Files.isWritable(filePath) || !Files.isRegularFile(filePath)) {
             throw new BlobAccessException(filePath + " is not readable or not a regular file");
         }
         return filePath;
     }
-}
\ No newline at end of file
+
+    private static final class Volume {
+
+        private final Path dir;
+        private final AtomicInteger activeWrites = new AtomicInteger();
+        // 在此之前不接受新的上传，0 表示健康
+        private volatile long unhealthyUntil;
+
+        private Volume(Path dir) {
+            this.dir = dir;
+        }
+
+        private boolean isHealthy() {
+            long until = unhealthyUntil;
+            if (until == 0L) {
+                return true;
+            }
+            if (System.nanoTime() - until < 0) {
+                return false;
+            }
+            // 冷却结束后确认目录恢复可写
+            if (Files.isDirectory(dir) && Files.isWritable(dir)) {
+                unhealthyUntil = 0L;
+                return true;
+            }
+            unhealthyUntil = System.nanoTime() + UNHEALTHY_COOLDOWN_NANOS;
+            return false;
+        }
+
+        private void markUnhealthy(IOException cause) {
+            logger.warn("Excluding upload directory {} from new placements: {}", dir, cause.getMessage());
+            unhealthyUntil = System.nanoTime() + UNHEALTHY_COOLDOWN_NANOS;
+        }
+
+        private long usableSpace() {
+            try {
+                return Files.getFileStore(dir).getUsableSpace();
+            } catch (IOException e) {
+                return -1L;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 根据配置创建被其他 Storage 包装的 Storage，配置格式与 {@code tuskott.storage} 相同
+ */
+final class NestedStorageFactory {
+
+    private NestedStorageFactory() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * @param configuration 外层 Storage 的配置
+     * @param key           内层 Storage 配置所在的键，其中包含 provider 与 config
+     */
+    @SuppressWarnings("unchecked")
+    static Storage create(Map<String, Object> configuration, String key) throws ReflectiveOperationException {
+        Object nestedConfiguration = configuration.get(key);
+        if (!(nestedConfiguration instanceof Map<?, ?> nestedMap) || Objects.isNull(nestedMap.get("provider"))) {
+            throw new IllegalArgumentException("Missing storage configuration " + key + ".provider");
+        }
+        Class<?> givenClass = Class.forName(String.valueOf(nestedMap.get("provider")));
+        if (!Storage.class.isAssignableFrom(givenClass)) {
+            throw new IllegalArgumentException("Storage class " + givenClass.getName() + " does not implement Storage interface");
+        }
+        Object config = nestedMap.get("config");
+        Map<String, Object> storageConfig = config instanceof Map<?, ?>
+                ? (Map<String, Object>) config
+                : Collections.emptyMap();
+        try {
+            return ((Class<Storage>) givenClass).getDeclaredConstructor(Map.class).newInstance(storageConfig);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create " + key + " storage", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 将小文件打包保存在少量大文件中
+ * <p>
+ * 不超过 {@code pack-threshold} 的上传在完成前只保存在内存中，完成后追加写入当前的打包文件，
+ * 并在打包文件对应的索引中记录位置，整个上传过程不需要为它创建、打开或删除单独的文件。
+ * 读取时在共享的 FileChannel 上按位置读取；删除只在索引中追加删除记录，
+ * 后台线程定期将失效数据比例超过 {@code compaction-threshold} 的打包文件中仍有效的数据搬到当前打包文件，再删除旧文件。
+ * <p>
+ * 超过阈值的上传转为保存在 {@code dir/loose} 目录下的单独文件中，行为与 {@link LocalDiskStorage} 相同。
+ * 未完成的小文件只保存在内存中，服务重启后无法继续，这与 {@code InMemoryUploadResourceTracker} 的行为一致。
+ */
+public class PackedDiskStorage implements Storage {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackedDiskStorage.class);
+    private static final int DEFAULT_PACK_THRESHOLD = 64 * 1024;
+    private static final long DEFAULT_PACK_SIZE = 64L * 1024 * 1024;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    private static final long DEFAULT_COMPACTION_INTERVAL = 60_000L;
+    private static final String PACK_PREFIX = "pack-";
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final Path packDir;
+    private final LocalDiskStorage loose;
+    // 不超过该字节数的上传会被打包
+    private final int packThreshold;
+    // 打包文件超过该字节数后开始写入新的打包文件
+    private final long packSize;
+    private final double compactionThreshold;
+    // 未完成的小文件
+    private final Map<String, PendingUpload> pending = new ConcurrentHashMap<>();
+    // 已打包的文件所在的位置
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+    private final Map<Integer, Pack> packs = new ConcurrentHashMap<>();
+    // 追加写入的打包文件，修改时持有 this 的锁
+    private volatile Pack activePack;
+    private final ScheduledExecutorService compactor;
+
+    public PackedDiskStorage(Map<String, Object> configuration) throws IOException {
+        Path storageDir = Paths.get((String) configuration.getOrDefault("dir", "uploads"));
+        packThreshold = Integer.parseInt(String.valueOf(
+                configuration.getOrDefault("pack-threshold", DEFAULT_PACK_THRESHOLD)));
+        packSize = Long.parseLong(String.valueOf(configuration.getOrDefault("pack-size", DEFAULT_PACK_SIZE)));
+        compactionThreshold = Double.parseDouble(String.valueOf(
+                configuration.getOrDefault("compaction-threshold", DEFAULT_COMPACTION_THRESHOLD)));
+        if (packThreshold < 0 || packSize <= 0 || compactionThreshold <= 0 || compactionThreshold > 1) {
+            throw new IllegalArgumentException("Invalid PackedDiskStorage configuration: " + configuration);
+        }
+        long compactionInterval = Long.parseLong(String.valueOf(
+                configuration.getOrDefault("compaction-interval", DEFAULT_COMPACTION_INTERVAL)));
+        packDir = storageDir.resolve("packs");
+        Files.createDirectories(packDir);
+        Map<String, Object> looseConfiguration = new HashMap<>(configuration);
+        looseConfiguration.remove("dirs");
+        looseConfiguration.put("dir", storageDir.resolve("loose").toString());
+        loose = new LocalDiskStorage(looseConfiguration);
+        recover();
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tuskott-pack-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按编号顺序重放各打包文件的索引，编号大的打包文件中的记录覆盖编号小的
+     */
+    private void recover() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(packDir)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(PACK_PREFIX) && name.endsWith(DATA_SUFFIX))
+                    .forEach(name -> numbers.add(Integer.parseInt(
+                            name.substring(PACK_PREFIX.length(), name.length() - DATA_SUFFIX.length()))));
+        }
+        numbers.sort(null);
+        for (int number : numbers) {
+            Pack pack = new Pack(number);
+            packs.put(number, pack);
+            Path indexFile = pack.indexFile();
+            if (!Files.exists(indexFile)) {
+                continue;
+            }
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(" ");
+                if (fields.length == 4 && "+".equals(fields[0])) {
+                    Location location = new Location(pack, Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                    Location previous = locations.put(fields[1], location);
+                    if (Objects.nonNull(previous)) {
+                        previous.pack().liveBytes.addAndGet(-previous.length());
+                    }
+                    pack.liveBytes.addAndGet(location.length());
+                } else if (fields.length == 2 && "-".equals(fields[0])) {
+                    Location previous = locations.get(fields[1]);
+                    if (Objects.nonNull(previous) && previous.pack() == pack) {
+                        locations.remove(fields[1]);
+                        pack.liveBytes.addAndGet(-previous.length());
+                    }
+                }
+            }
+        }
+        activePack = numbers.isEmpty() ? null : packs.get(numbers.get(numbers.size() - 1));
+        if (Objects.isNull(activePack) || activePack.size() >= packSize) {
+            activePack = newPack();
+        }
+    }
+
+    private Pack newPack() throws IOException {
+        int number = packs.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        Pack pack = new Pack(number);
+        packs.put(number, pack);
+        return pack;
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        if (pending.containsKey(resourceId) || locations.containsKey(resourceId)) {
+            throw new BlobAccessException(resourceId + " already exists");
+        }
+        pending.put(resourceId, new PendingUpload());
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        PendingUpload upload = pending.get(resourceId);
+        if (Objects.isNull(upload)) {
+            return loose.write(resourceId, inputStream, uploadOffset);
+        }
+        synchronized (upload) {
+            if (uploadOffset != upload.length) {
+                throw new BlobAccessException("Upload offset " + uploadOffset + " of " + resourceId
+                        + " does not match stored length " + upload.length);
+            }
+            // 多读取一个字节以判断是否超过阈值
+            int capacity = packThreshold + 1;
+            if (upload.data.length < capacity) {
+                upload.data = Arrays.copyOf(upload.data, capacity);
+            }
+            boolean eof = false;
+            while (upload.length < capacity) {
+                int bytesRead;
+                try {
+                    bytesRead = inputStream.read(upload.data, upload.length, capacity - upload.length);
+                } catch (IOException e) {
+                    // 传输被打断，保存当前的状态
+                    eof = true;
+                    break;
+                }
+                if (bytesRead < 0) {
+                    eof = true;
+                    break;
+                }
+                upload.length += bytesRead;
+            }
+            if (upload.length <= packThreshold) {
+                return (long) upload.length;
+            }
+            // 超过阈值，转为单独的文件
+            try {
+                loose.create(resourceId);
+            } catch (BlobAccessException | IOException e) {
+                upload.length = uploadOffset.intValue();
+                throw e;
+            }
+            InputStream remaining = new ByteArrayInputStream(upload.data, 0, upload.length);
+            if (!eof) {
+                remaining = new SequenceInputStream(remaining, inputStream);
+            }
+            Long newUploadOffset = loose.write(resourceId, remaining, 0L);
+            pending.remove(resourceId);
+            return newUploadOffset;
+        }
+    }
+
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        PendingUpload upload = pending.get(resourceId);
+        if (Objects.isNull(upload)) {
+            loose.rollback(resourceId, offset);
+            return;
+        }
+        synchronized (upload) {
+            upload.length = (int) Math.min(upload.length, offset);
+        }
+    }
+
+    /**
+     * 将完成的小文件追加到打包文件
+     */
+    @Override
+    public void complete(String resourceId) {
+        PendingUpload upload = pending.get(resourceId);
+        if (Objects.isNull(upload)) {
+            loose.complete(resourceId);
+            return;
+        }
+        synchronized (upload) {
+            try {
+                append(resourceId, ByteBuffer.wrap(upload.data, 0, upload.length));
+                pending.remove(resourceId);
+            } catch (IOException e) {
+                // 保留在内存中，仍然可以读取
+                logger.warn("Failed to pack {}: {}", resourceId, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void append(String resourceId, ByteBuffer data) throws IOException {
+        if (activePack.size() >= packSize) {
+            activePack = newPack();
+        }
+        Pack pack = activePack;
+        long offset = pack.size();
+        long length = data.remaining();
+        while (data.hasRemaining()) {
+            pack.channel.write(data, offset + length - data.remaining());
+        }
+        pack.appendIndex("+ " + resourceId + " " + offset + " " + length + "\n");
+        pack.liveBytes.addAndGet(length);
+        locations.put(resourceId, new Location(pack, offset, length));
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        for (String resourceId : resourceIds) {
+            remove(resourceId);
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        if (pending.remove(resourceId) != null) {
+            return;
+        }
+        synchronized (this) {
+            Location location = locations.remove(resourceId);
+            if (Objects.nonNull(location)) {
+                // 删除记录写入条目所在打包文件的索引，保证重放时位于添加记录之后
+                try {
+                    location.pack().appendIndex("- " + resourceId + "\n");
+                } catch (IOException e) {
+                    logger.warn("Failed to record removal of {}: {}", resourceId, e.getMessage());
+                }
+                location.pack().liveBytes.addAndGet(-location.length());
+                return;
+            }
+        }
+        loose.remove(resourceId);
+    }
+
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        PendingUpload upload = pending.get(resourceId);
+        if (Objects.nonNull(upload)) {
+            synchronized (upload) {
+                return new ByteArrayInputStream(Arrays.copyOf(upload.data, upload.length));
+            }
+        }
+        while (true) {
+            Location location = locations.get(resourceId);
+            if (Objects.isNull(location)) {
+                return loose.streaming(resourceId);
+            }
+            // 打包文件刚被压缩时重新查找位置
+            if (location.pack().retain()) {
+                return new PackEntryInputStream(location);
+            }
+        }
+    }
+
+    @Override
+    public long usableSpace() {
+        try {
+            return Files.getFileStore(packDir).getUsableSpace();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public long totalSpace() {
+        try {
+            return Files.getFileStore(packDir).getTotalSpace();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 保存超过阈值的上传的 LocalDiskStorage
+     */
+    public LocalDiskStorage getLoose() {
+        return loose;
+    }
+
+    /**
+     * 将失效数据较多的打包文件中仍有效的条目搬到当前打包文件，然后删除旧的打包文件
+     */
+    private void compact() {
+        for (Pack pack : List.copyOf(packs.values())) {
+            long size = pack.size();
+            if (pack == activePack || size == 0L
+                    || (double) (size - pack.liveBytes.get()) / size < compactionThreshold) {
+                continue;
+            }
+            try {
+                compact(pack);
+            } catch (IOException e) {
+                logger.warn("Failed to compact {}: {}", pack.dataFile(), e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void compact(Pack pack) throws IOException {
+        for (Map.Entry<String, Location> entry : locations.entrySet()) {
+            Location location = entry.getValue();
+            if (location.pack() != pack) {
+                continue;
+            }
+            if (activePack.size() >= packSize) {
+                activePack = newPack();
+            }
+            Pack target = activePack;
+            long offset = target.size();
+            long transferred = 0L;
+            while (transferred < location.length()) {
+                transferred += pack.channel.transferTo(location.offset() + transferred,
+                        location.length() - transferred, target.channel.position(offset + transferred));
+            }
+            target.appendIndex("+ " + entry.getKey() + " " + offset + " " + location.length() + "\n");
+            target.liveBytes.addAndGet(location.length());
+            entry.setValue(new Location(target, offset, location.length()));
+        }
+        packs.remove(pack.number);
+        pack.retire();
+        Files.deleteIfExists(pack.indexFile());
+        Files.deleteIfExists(pack.dataFile());
+        logger.debug("Compacted {}", pack.dataFile());
+    }
+
+    private static final class PendingUpload {
+
+        private byte[] data = new byte[0];
+        private int length;
+    }
+
+    private record Location(Pack pack, long offset, long length) {
+    }
+
+    /**
+     * 一个打包文件，数据文件与索引文件在打包文件的生命周期内保持打开
+     */
+    private final class Pack {
+
+        private final int number;
+        private final FileChannel channel;
+        private final FileChannel indexChannel;
+        // 仍有效的条目的总字节数
+        private final AtomicLong liveBytes = new AtomicLong();
+        private int readers;
+        private boolean retired;
+
+        private Pack(int number) throws IOException {
+            this.number = number;
+            this.channel = FileChannel.open(dataFile(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.indexChannel = FileChannel.open(indexFile(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        private Path dataFile() {
+            return packDir.resolve(PACK_PREFIX + number + DATA_SUFFIX);
+        }
+
+        private Path indexFile() {
+            return packDir.resolve(PACK_PREFIX + number + INDEX_SUFFIX);
+        }
+
+        private long size() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                return 0L;
+            }
+        }
+
+        private void appendIndex(String record) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                indexChannel.write(buffer);
+            }
+        }
+
+        /**
+         * @return 打包文件已被压缩时返回 false
+         */
+        private synchronized boolean retain() {
+            if (retired) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        private synchronized void release() {
+            readers--;
+            if (retired && readers == 0) {
+                closeQuietly();
+            }
+        }
+
+        /**
+         * 不再接受新的读取，正在进行的读取结束后关闭文件
+         */
+        private synchronized void retire() {
+            retired = true;
+            if (readers == 0) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                channel.close();
+                indexChannel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 在打包文件的 FileChannel 上按位置读取一个条目，不改变 FileChannel 的位置，多个读取方可以共享
+     */
+    private static final class PackEntryInputStream extends InputStream {
+
+        private final Pack pack;
+        private final long end;
+        private long position;
+        private boolean closed;
+
+        private PackEntryInputStream(Location location) {
+            this.pack = location.pack();
+            this.position = location.offset();
+            this.end = location.offset() + location.length();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (closed || position >= end) {
+                return -1;
+            }
+            int n = pack.channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of " + pack.dataFile() + " at " + position);
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0L, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                pack.release();
+            }
+        }
+    }
+}
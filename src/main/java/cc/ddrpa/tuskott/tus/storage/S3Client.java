@@ -0,0 +1,274 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * 使用 JDK HttpClient 访问 S3 兼容对象存储的最小客户端，只实现分片上传、范围读取与删除
+ * <p>
+ * 请求使用 AWS Signature Version 4 签名，请求体不参与签名（UNSIGNED-PAYLOAD），避免为每个分片额外计算一次 SHA-256。
+ */
+final class S3Client {
+
+    private static final String SIGNING_ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String SIGNED_HEADERS = "host;x-amz-content-sha256;x-amz-date";
+    private static final DateTimeFormatter AMZ_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final Duration requestTimeout;
+    // 签名密钥按日期派生，同一天内复用
+    private volatile SigningKey signingKey;
+
+    S3Client(URI endpoint, String region, String bucket, String accessKey, String secretKey,
+             boolean pathStyle, Duration requestTimeout) {
+        this.endpoint = endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(requestTimeout)
+                .build();
+    }
+
+    /**
+     * @return 分片上传的 UploadId
+     */
+    String createMultipartUpload(String key) throws IOException {
+        HttpResponse<String> response = send(key, "POST", Map.of("uploads", ""),
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofString());
+        String uploadId = elementOf(response.body(), "UploadId");
+        if (Objects.isNull(uploadId)) {
+            throw new IOException("CreateMultipartUpload for " + key + " did not return an UploadId");
+        }
+        return uploadId;
+    }
+
+    /**
+     * @return 分片的 ETag
+     */
+    String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length) throws IOException {
+        HttpResponse<Void> response = send(key, "PUT",
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId),
+                HttpRequest.BodyPublishers.ofByteArray(data, 0, length), HttpResponse.BodyHandlers.discarding());
+        return response.headers().firstValue("ETag")
+                .orElseThrow(() -> new IOException("UploadPart " + partNumber + " of " + key + " did not return an ETag"));
+    }
+
+    /**
+     * @param etags 按分片序号排列的 ETag，第一个元素对应分片 1
+     */
+    void completeMultipartUpload(String key, String uploadId, List<String> etags) throws IOException {
+        StringBuilder body = new StringBuilder(64 + etags.size() * 80).append("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i).replace("\"", "&quot;")).append("</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+        HttpResponse<String> response = send(key, "POST", Map.of("uploadId", uploadId),
+                HttpRequest.BodyPublishers.ofString(body.toString()), HttpResponse.BodyHandlers.ofString());
+        // 合并分片耗时较长时，服务端可能先返回 200 再在响应体中报告错误
+        if (response.body().contains("<Error>")) {
+            throw new IOException("CompleteMultipartUpload for " + key + " failed: " + response.body());
+        }
+    }
+
+    void abortMultipartUpload(String key, String uploadId) throws IOException {
+        send(key, "DELETE", Map.of("uploadId", uploadId),
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    void deleteObject(String key) throws IOException {
+        send(key, "DELETE", Map.of(), HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    /**
+     * 读取对象 [first, last] 范围内的字节，请求范围超出对象长度时返回 HTTP 416 的响应
+     */
+    HttpResponse<InputStream> getRange(String key, long first, long last) throws IOException {
+        HttpRequest.Builder builder = signedRequest(key, "GET", Map.of())
+                .header("Range", "bytes=" + first + "-" + last)
+                .GET();
+        HttpResponse<InputStream> response = execute(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        int status = response.statusCode();
+        if (status == 206 || status == 200 || status == 416) {
+            return response;
+        }
+        String message;
+        try (InputStream body = response.body()) {
+            message = new String(body.readNBytes(512), StandardCharsets.UTF_8);
+        }
+        if (status == 404) {
+            throw new FileNotFoundException(key + " does not exist");
+        }
+        throw new IOException("GET " + key + " failed with HTTP " + status + ": " + message);
+    }
+
+    private <T> HttpResponse<T> send(String key, String method, Map<String, String> query,
+                                     HttpRequest.BodyPublisher bodyPublisher,
+                                     HttpResponse.BodyHandler<T> bodyHandler) throws IOException {
+        HttpRequest request = signedRequest(key, method, query).method(method, bodyPublisher).build();
+        HttpResponse<T> response = execute(request, bodyHandler);
+        int status = response.statusCode();
+        if (status / 100 != 2) {
+            if (status == 404) {
+                throw new FileNotFoundException(method + " " + key + " returned HTTP 404: " + response.body());
+            }
+            throw new IOException(method + " " + key + " failed with HTTP " + status + ": " + response.body());
+        }
+        return response;
+    }
+
+    private <T> HttpResponse<T> execute(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException {
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling " + request.uri());
+        }
+    }
+
+    private HttpRequest.Builder signedRequest(String key, String method, Map<String, String> query) {
+        String canonicalUri = canonicalUri(key);
+        StringJoiner canonicalQuery = new StringJoiner("&");
+        for (Map.Entry<String, String> entry : new TreeMap<>(query).entrySet()) {
+            canonicalQuery.add(uriEncode(entry.getKey(), false) + "=" + uriEncode(entry.getValue(), false));
+        }
+        String authority = pathStyle ? endpoint.getRawAuthority() : bucket + "." + endpoint.getRawAuthority();
+        URI uri = URI.create(endpoint.getScheme() + "://" + authority + canonicalUri
+                + (canonicalQuery.length() == 0 ? "" : "?" + canonicalQuery));
+
+        String amzDate = AMZ_DATE_FORMATTER.format(Instant.now());
+        String date = amzDate.substring(0, 8);
+        String canonicalRequest = method + "\n"
+                + canonicalUri + "\n"
+                + canonicalQuery + "\n"
+                + "host:" + authority + "\n"
+                + "x-amz-content-sha256:" + UNSIGNED_PAYLOAD + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + SIGNED_HEADERS + "\n"
+                + UNSIGNED_PAYLOAD;
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = SIGNING_ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + HEX.formatHex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+        String signature = HEX.formatHex(hmac(signingKeyOf(date), stringToSign));
+        return HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", SIGNING_ALGORITHM + " Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + SIGNED_HEADERS + ", Signature=" + signature);
+    }
+
+    private String canonicalUri(String key) {
+        String encodedKey = uriEncode(key, true);
+        if (!pathStyle) {
+            return "/" + encodedKey;
+        }
+        String basePath = Objects.requireNonNullElse(endpoint.getRawPath(), "");
+        if (basePath.endsWith("/")) {
+            basePath = basePath.substring(0, basePath.length() - 1);
+        }
+        return basePath + "/" + uriEncode(bucket, false) + "/" + encodedKey;
+    }
+
+    private byte[] signingKeyOf(String date) {
+        SigningKey current = signingKey;
+        if (Objects.nonNull(current) && current.date().equals(date)) {
+            return current.key();
+        }
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        signingKey = new SigningKey(date, key);
+        return key;
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 按 RFC 3986 编码，只保留非保留字符
+     *
+     * @param keepSlash 对象键中的 / 不编码
+     */
+    private static String uriEncode(String value, boolean keepSlash) {
+        StringBuilder encoded = new StringBuilder(value.length());
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char ch = (char) (b & 0xFF);
+            if ((ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z') || (ch >= '0' && ch <= '9')
+                    || ch == '-' || ch == '_' || ch == '.' || ch == '~' || (keepSlash && ch == '/')) {
+                encoded.append(ch);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xF, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static String elementOf(String xml, String element) {
+        int start = xml.indexOf("<" + element + ">");
+        if (start < 0) {
+            return null;
+        }
+        start += element.length() + 2;
+        int end = xml.indexOf("</" + element + ">", start);
+        return end < 0 ? null : xml.substring(start, end);
+    }
+
+    private record SigningKey(String date, byte[] key) {
+    }
+}
@@ -0,0 +1,485 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将上传的文件直接写入 S3 兼容的对象存储
+ * <p>
+ * 每个上传资源对应一个分片上传（multipart upload）。PATCH 的数据先写入内存中大小为 {@code part-size} 的缓冲区，
+ * 缓冲区写满后交给后台线程作为一个分片上传，同一个 PATCH 内的多个分片并行上传，PATCH 返回前等待它们全部完成。
+ * 不足一个分片的剩余数据复制到与其长度相同的数组中留在内存里，缓冲区在 PATCH 结束时归还，
+ * 下一个 PATCH 开始时再将剩余数据拼接到缓冲区的开头，上传完成时作为最后一个分片上传并合并对象。
+ * {@link #streaming(String)} 通过按范围的 GET 请求分段读取对象，不会一次性下载整个文件。
+ * <p>
+ * 剩余数据只保存在内存中，服务重启后未完成的上传无法继续，这与 {@code InMemoryUploadResourceTracker} 的行为一致。
+ * 对象存储没有可用空间的概念，{@link #usableSpace()} 返回 -1。
+ */
+public class S3MultipartStorage implements Storage {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3MultipartStorage.class);
+    // S3 要求除最后一个分片外，每个分片不小于 5 MiB
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_UPLOAD_THREADS = 4;
+    private static final long DEFAULT_REQUEST_TIMEOUT = 60_000L;
+    // 分片上传失败时的尝试次数
+    private static final int PART_UPLOAD_ATTEMPTS = 3;
+
+    private final S3Client client;
+    private final String prefix;
+    private final int partSize;
+    // 单个 PATCH 同时上传的分片数
+    private final int maxInflightParts;
+    private final ExecutorService uploadExecutor;
+    // 分片缓冲区，避免为每个分片分配 part-size 大小的数组
+    private final BlockingQueue<byte[]> bufferPool;
+    // 尚未完成的分片上传
+    private final Map<String, MultipartState> uploads = new ConcurrentHashMap<>();
+
+    public S3MultipartStorage(Map<String, Object> configuration) {
+        String endpoint = (String) configuration.get("endpoint");
+        String bucket = (String) configuration.get("bucket");
+        if (Objects.isNull(endpoint) || Objects.isNull(bucket)) {
+            throw new IllegalArgumentException("S3MultipartStorage requires endpoint and bucket");
+        }
+        String accessKey = (String) configuration.getOrDefault("access-key", System.getenv("AWS_ACCESS_KEY_ID"));
+        String secretKey = (String) configuration.getOrDefault("secret-key", System.getenv("AWS_SECRET_ACCESS_KEY"));
+        if (Objects.isNull(accessKey) || Objects.isNull(secretKey)) {
+            throw new IllegalArgumentException("S3MultipartStorage requires access-key and secret-key");
+        }
+        partSize = Integer.parseInt(String.valueOf(configuration.getOrDefault("part-size", DEFAULT_PART_SIZE)));
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("part-size must be at least " + MIN_PART_SIZE + ": " + partSize);
+        }
+        int uploadThreads = Integer.parseInt(String.valueOf(
+                configuration.getOrDefault("upload-threads", DEFAULT_UPLOAD_THREADS)));
+        if (uploadThreads < 1) {
+            throw new IllegalArgumentException("upload-threads must be positive: " + uploadThreads);
+        }
+        maxInflightParts = uploadThreads;
+        prefix = String.valueOf(configuration.getOrDefault("prefix", ""));
+        client = new S3Client(URI.create(endpoint),
+                String.valueOf(configuration.getOrDefault("region", "us-east-1")),
+                bucket, accessKey, secretKey,
+                Boolean.parseBoolean(String.valueOf(configuration.getOrDefault("path-style", true))),
+                Duration.ofMillis(Long.parseLong(String.valueOf(
+                        configuration.getOrDefault("request-timeout", DEFAULT_REQUEST_TIMEOUT)))));
+        bufferPool = new ArrayBlockingQueue<>(uploadThreads * 2);
+        AtomicInteger threadCounter = new AtomicInteger();
+        uploadExecutor = Executors.newFixedThreadPool(uploadThreads, runnable -> {
+            Thread thread = new Thread(runnable, "tuskott-s3-upload-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        if (uploads.containsKey(resourceId)) {
+            throw new BlobAccessException(resourceId + " already exists");
+        }
+        String uploadId = client.createMultipartUpload(keyOf(resourceId));
+        uploads.put(resourceId, new MultipartState(keyOf(resourceId), uploadId));
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        MultipartState state = stateOf(resourceId);
+        synchronized (state) {
+            if (uploadOffset != state.length()) {
+                throw new BlobAccessException("Upload offset " + uploadOffset + " of " + resourceId
+                        + " does not match stored length " + state.length());
+            }
+            state.markWriteStart();
+            List<CompletableFuture<String>> inflight = new ArrayList<>();
+            int firstPartNumber = state.etags.size() + 1;
+            int awaited = 0;
+            long transferred = 0L;
+            IOException failure = null;
+            byte[] buffer = obtainBuffer();
+            int bufferLength = state.remainderLength;
+            if (bufferLength > 0) {
+                System.arraycopy(state.remainder, 0, buffer, 0, bufferLength);
+            }
+            try {
+                while (true) {
+                    if (Objects.isNull(buffer)) {
+                        buffer = obtainBuffer();
+                    }
+                    int bytesRead;
+                    try {
+                        bytesRead = inputStream.read(buffer, bufferLength, partSize - bufferLength);
+                    } catch (IOException e) {
+                        // 传输被打断，保存当前的状态
+                        break;
+                    }
+                    if (bytesRead < 0) {
+                        break;
+                    }
+                    bufferLength += bytesRead;
+                    transferred += bytesRead;
+                    if (bufferLength == partSize) {
+                        if (inflight.size() - awaited >= maxInflightParts) {
+                            // 等待最早的分片完成，限制单个 PATCH 占用的缓冲区
+                            try {
+                                state.etags.add(await(inflight.get(awaited++)));
+                            } catch (IOException e) {
+                                failure = e;
+                                break;
+                            }
+                        }
+                        inflight.add(uploadPartAsync(state, firstPartNumber + inflight.size(), buffer, bufferLength));
+                        buffer = null;
+                        bufferLength = 0;
+                    }
+                }
+            } finally {
+                // 无论是否出错都等待所有分片结束，确保缓冲区已经不再被使用
+                for (int i = awaited; i < inflight.size(); i++) {
+                    try {
+                        String etag = await(inflight.get(i));
+                        if (Objects.isNull(failure)) {
+                            state.etags.add(etag);
+                        }
+                    } catch (IOException e) {
+                        if (Objects.isNull(failure)) {
+                            failure = e;
+                        }
+                    }
+                }
+                if (Objects.isNull(failure)) {
+                    state.keepRemainder(buffer, bufferLength);
+                }
+                if (Objects.nonNull(buffer)) {
+                    bufferPool.offer(buffer);
+                }
+            }
+            if (Objects.nonNull(failure)) {
+                // 恢复到本次写入之前的状态，客户端可以从原偏移量重新上传
+                state.restoreWriteStart();
+                throw new BlobAccessException("Failed to upload part of " + resourceId + ": " + failure.getMessage());
+            }
+            return uploadOffset + transferred;
+        }
+    }
+
+    /**
+     * 只能回退到最近一次写入开始的位置，或仍在内存中的剩余数据范围内
+     */
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        MultipartState state = uploads.get(resourceId);
+        if (Objects.isNull(state)) {
+            return;
+        }
+        synchronized (state) {
+            if (offset == state.writeStartOffset) {
+                state.restoreWriteStart();
+            } else if (offset >= state.uploadedLength() && offset <= state.length()) {
+                state.remainderLength = (int) (offset - state.uploadedLength());
+            } else {
+                logger.warn("Cannot roll {} back to {}, data before {} has already been uploaded",
+                        resourceId, offset, state.uploadedLength());
+            }
+        }
+    }
+
+    /**
+     * 上传剩余数据作为最后一个分片，并合并对象
+     */
+    @Override
+    public void complete(String resourceId) throws IOException {
+        MultipartState state = uploads.get(resourceId);
+        if (Objects.isNull(state)) {
+            return;
+        }
+        String key = keyOf(resourceId);
+        synchronized (state) {
+            try {
+                // 最后一个分片的 ETag 不计入 state.etags，合并失败后再次调用时以相同的分片序号重新上传，覆盖之前的分片
+                List<String> parts = new ArrayList<>(state.etags);
+                // 合并对象至少需要一个分片，空文件上传一个空分片
+                if (state.remainderLength > 0 || parts.isEmpty()) {
+                    byte[] remainder = Objects.requireNonNullElseGet(state.remainder, () -> new byte[0]);
+                    parts.add(uploadPart(key, state.uploadId, parts.size() + 1, remainder, state.remainderLength));
+                }
+                client.completeMultipartUpload(key, state.uploadId, parts);
+            } catch (IOException e) {
+                throw new IOException("Failed to complete multipart upload of " + resourceId, e);
+            }
+            state.release();
+            uploads.remove(resourceId);
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        for (String resourceId : resourceIds) {
+            remove(resourceId);
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        String key = keyOf(resourceId);
+        MultipartState state = uploads.remove(resourceId);
+        try {
+            if (Objects.nonNull(state)) {
+                synchronized (state) {
+                    state.release();
+                }
+                client.abortMultipartUpload(key, state.uploadId);
+            } else {
+                client.deleteObject(key);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to remove {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 只能读取已完成的上传，未合并的分片无法从对象存储读取
+     */
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        if (uploads.containsKey(resourceId)) {
+            throw new BlobAccessException(resourceId + " has not been completed yet");
+        }
+        return new RangedObjectInputStream(keyOf(resourceId));
+    }
+
+    private String keyOf(String resourceId) {
+        return prefix + resourceId;
+    }
+
+    private MultipartState stateOf(String resourceId) throws FileNotFoundException {
+        MultipartState state = uploads.get(resourceId);
+        if (Objects.isNull(state)) {
+            throw new FileNotFoundException(resourceId + " does not exist");
+        }
+        return state;
+    }
+
+    private CompletableFuture<String> uploadPartAsync(MultipartState state, int partNumber, byte[] buffer, int length) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadPart(state.key, state.uploadId, partNumber, buffer, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                bufferPool.offer(buffer);
+            }
+        }, uploadExecutor);
+    }
+
+    private String uploadPart(String key, String uploadId, int partNumber, byte[] buffer, int length)
+            throws IOException {
+        IOException last = null;
+        for (int attempt = 1; attempt <= PART_UPLOAD_ATTEMPTS; attempt++) {
+            try {
+                return client.uploadPart(key, uploadId, partNumber, buffer, length);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                last = e;
+                logger.debug("Upload of part {} of {} failed (attempt {}): {}", partNumber, key, attempt, e.getMessage());
+            }
+        }
+        throw last;
+    }
+
+    private static String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for part upload");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+            throw cause instanceof IOException ioException ? ioException : new IOException(cause);
+        }
+    }
+
+    private byte[] obtainBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return Objects.nonNull(buffer) ? buffer : new byte[partSize];
+    }
+
+    /**
+     * 一个未完成的分片上传，由调用方在 synchronized 块中访问
+     */
+    private final class MultipartState {
+
+        private final String key;
+        private final String uploadId;
+        // 已上传分片的 ETag，下标 + 1 为分片序号
+        private final List<String> etags = new ArrayList<>();
+        // 不足一个分片的剩余数据，数组长度与写入时的剩余数据长度相同，回退后有效长度可能更短
+        private byte[] remainder;
+        private int remainderLength;
+        // 最近一次写入开始时的状态，用于回退。剩余数据在写入时只会被替换而不会被修改，直接保存引用即可
+        private long writeStartOffset = -1L;
+        private int writeStartPartCount;
+        private byte[] writeStartRemainder;
+        private int writeStartRemainderLength;
+
+        private MultipartState(String key, String uploadId) {
+            this.key = key;
+            this.uploadId = uploadId;
+        }
+
+        private long uploadedLength() {
+            return (long) etags.size() * partSize;
+        }
+
+        private long length() {
+            return uploadedLength() + remainderLength;
+        }
+
+        private void markWriteStart() {
+            writeStartOffset = length();
+            writeStartPartCount = etags.size();
+            writeStartRemainder = remainder;
+            writeStartRemainderLength = remainderLength;
+        }
+
+        /**
+         * 将缓冲区中不足一个分片的数据复制出来保存，缓冲区由调用方归还
+         */
+        private void keepRemainder(byte[] buffer, int length) {
+            remainder = length > 0 ? Arrays.copyOf(buffer, length) : null;
+            remainderLength = length;
+        }
+
+        private void restoreWriteStart() {
+            while (etags.size() > writeStartPartCount) {
+                etags.remove(etags.size() - 1);
+            }
+            remainder = writeStartRemainder;
+            remainderLength = writeStartRemainderLength;
+        }
+
+        private void release() {
+            remainder = null;
+            remainderLength = 0;
+            writeStartRemainder = null;
+        }
+    }
+
+    /**
+     * 按 part-size 分段发出范围请求读取对象
+     */
+    private final class RangedObjectInputStream extends InputStream {
+
+        private final String key;
+        private long position;
+        // 对象长度，第一次请求后才能得知
+        private long objectLength = -1L;
+        private InputStream current;
+        private long currentRemaining;
+        private boolean eof;
+
+        private RangedObjectInputStream(String key) throws IOException {
+            this.key = key;
+            // 立即发出第一个请求，对象不存在时由调用方得到 FileNotFoundException
+            nextRange();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!eof && currentRemaining == 0) {
+                nextRange();
+            }
+            if (eof) {
+                return -1;
+            }
+            int n = current.read(b, off, (int) Math.min(len, currentRemaining));
+            if (n < 0) {
+                throw new IOException("Unexpected end of " + key + " at " + position);
+            }
+            position += n;
+            currentRemaining -= n;
+            return n;
+        }
+
+        private void nextRange() throws IOException {
+            closeCurrent();
+            if (objectLength >= 0 && position >= objectLength) {
+                eof = true;
+                return;
+            }
+            HttpResponse<InputStream> response = client.getRange(key, position, position + partSize - 1);
+            if (response.statusCode() == 416) {
+                // 空对象
+                response.body().close();
+                objectLength = position;
+                eof = true;
+                return;
+            }
+            current = response.body();
+            if (response.statusCode() == 200) {
+                // 服务端忽略了 Range，返回整个对象
+                objectLength = response.headers().firstValueAsLong("Content-Length").orElse(Long.MAX_VALUE);
+                currentRemaining = objectLength - position;
+                if (position > 0) {
+                    current.skipNBytes(position);
+                }
+                return;
+            }
+            String contentRange = response.headers().firstValue("Content-Range").orElse("");
+            int slash = contentRange.lastIndexOf('/');
+            if (slash >= 0 && !contentRange.endsWith("*")) {
+                objectLength = Long.parseLong(contentRange.substring(slash + 1));
+            }
+            currentRemaining = response.headers().firstValueAsLong("Content-Length").orElse(partSize);
+        }
+
+        private void closeCurrent() throws IOException {
+            if (Objects.nonNull(current)) {
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            eof = true;
+            closeCurrent();
+        }
+    }
+}
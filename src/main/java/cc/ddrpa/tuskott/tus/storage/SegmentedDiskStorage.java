@@ -0,0 +1,422 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * 将每次写入保存为一个独立的分段文件
+ * <p>
+ * 每个上传资源对应一个目录，其中每次 PATCH 写入的数据是一个不再修改的分段文件，{@code manifest} 文件按顺序记录各分段。
+ * 回退只需要从清单中移除最后的分段并删除文件，不需要截断或重写已有的数据；{@link #streaming(String)} 按顺序串联各分段。
+ * 上传完成后，后台线程使用 {@link FileChannel#transferTo} 将所有分段合并为一个文件，之后的读取只打开一个文件。
+ */
+public class SegmentedDiskStorage implements Storage {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedDiskStorage.class);
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final String MANIFEST_FILE = "manifest";
+    private static final String COMPACTED_FILE = "compacted";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path storageDir;
+    // 每次从请求体读取并写入磁盘的字节数
+    private final int bufferSize;
+    // 已加载的清单，服务重启后从 manifest 文件按需加载
+    private final Map<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final ExecutorService compactor;
+
+    public SegmentedDiskStorage(Map<String, Object> configuration) throws IOException {
+        bufferSize = Integer.parseInt(String.valueOf(configuration.getOrDefault("buffer-size", DEFAULT_BUFFER_SIZE)));
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer-size must be positive: " + bufferSize);
+        }
+        storageDir = Paths.get((String) configuration.getOrDefault("dir", "uploads"));
+        if (Files.notExists(storageDir)) {
+            Files.createDirectories(storageDir);
+        } else if (!Files.isDirectory(storageDir)) {
+            throw new RuntimeException("Upload path is not a directory: " + storageDir);
+        }
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tuskott-segment-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        Path uploadDir = storageDir.resolve(resourceId);
+        if (Files.exists(uploadDir)) {
+            throw new BlobAccessException(uploadDir + " already exists");
+        }
+        Files.createDirectory(uploadDir);
+        Manifest manifest = new Manifest(uploadDir, List.of());
+        manifest.persist();
+        manifests.put(resourceId, manifest);
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        Manifest manifest = manifestOf(resourceId);
+        synchronized (manifest) {
+            if (uploadOffset != manifest.length()) {
+                throw new BlobAccessException("Upload offset " + uploadOffset + " of " + resourceId
+                        + " does not match stored length " + manifest.length());
+            }
+            String fileName = SEGMENT_PREFIX + uploadOffset;
+            Path temporary = manifest.uploadDir.resolve(fileName + TEMPORARY_SUFFIX);
+            long transferred = 0L;
+            try (OutputStream out = Files.newOutputStream(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[bufferSize];
+                while (true) {
+                    int bytesRead;
+                    try {
+                        bytesRead = inputStream.read(buffer);
+                    } catch (IOException e) {
+                        // 传输被打断，保存当前的状态
+                        break;
+                    }
+                    if (bytesRead < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, bytesRead);
+                    transferred += bytesRead;
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw new BlobAccessException(e.getMessage());
+            }
+            if (transferred == 0L) {
+                Files.deleteIfExists(temporary);
+                return uploadOffset;
+            }
+            Files.move(temporary, manifest.uploadDir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+            List<Segment> segments = new ArrayList<>(manifest.segments);
+            segments.add(new Segment(uploadOffset, transferred, fileName));
+            manifest.update(segments);
+            return uploadOffset + transferred;
+        }
+    }
+
+    /**
+     * 移除起始位置不小于 offset 的分段，跨越 offset 的分段被截断
+     */
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        Manifest manifest = manifests.get(resourceId);
+        if (Objects.isNull(manifest)) {
+            return;
+        }
+        synchronized (manifest) {
+            List<Segment> kept = new ArrayList<>();
+            List<Segment> dropped = new ArrayList<>();
+            for (Segment segment : manifest.segments) {
+                if (segment.start() >= offset) {
+                    dropped.add(segment);
+                } else if (segment.end() > offset) {
+                    try (FileChannel channel = FileChannel.open(manifest.uploadDir.resolve(segment.fileName()),
+                            StandardOpenOption.WRITE)) {
+                        channel.truncate(offset - segment.start());
+                    } catch (IOException e) {
+                        logger.warn("Failed to truncate {} of {}: {}", segment.fileName(), resourceId, e.getMessage());
+                        return;
+                    }
+                    kept.add(new Segment(segment.start(), offset - segment.start(), segment.fileName()));
+                } else {
+                    kept.add(segment);
+                }
+            }
+            try {
+                manifest.update(kept);
+            } catch (IOException e) {
+                logger.warn("Failed to roll {} back to {}: {}", resourceId, offset, e.getMessage());
+                return;
+            }
+            for (Segment segment : dropped) {
+                deleteQuietly(manifest.uploadDir.resolve(segment.fileName()));
+            }
+        }
+    }
+
+    @Override
+    public void complete(String resourceId) {
+        compactor.execute(() -> compact(resourceId));
+    }
+
+    /**
+     * 将所有分段合并为一个文件，先切换清单再删除旧的分段，正在读取旧分段的输入流会按清单重新定位
+     */
+    private void compact(String resourceId) {
+        Manifest manifest = manifests.get(resourceId);
+        if (Objects.isNull(manifest)) {
+            return;
+        }
+        synchronized (manifest) {
+            List<Segment> segments = manifest.segments;
+            if (segments.size() == 1 && COMPACTED_FILE.equals(segments.get(0).fileName())) {
+                return;
+            }
+            Path temporary = manifest.uploadDir.resolve(COMPACTED_FILE + TEMPORARY_SUFFIX);
+            try {
+                try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (Segment segment : segments) {
+                        try (FileChannel in = FileChannel.open(manifest.uploadDir.resolve(segment.fileName()),
+                                StandardOpenOption.READ)) {
+                            long position = 0L;
+                            while (position < segment.length()) {
+                                position += in.transferTo(position, segment.length() - position, out);
+                            }
+                        }
+                    }
+                }
+                Files.move(temporary, manifest.uploadDir.resolve(COMPACTED_FILE), StandardCopyOption.ATOMIC_MOVE);
+                manifest.update(List.of(new Segment(0L, manifest.length(), COMPACTED_FILE)));
+            } catch (IOException e) {
+                logger.warn("Failed to compact segments of {}: {}", resourceId, e.getMessage());
+                deleteQuietly(temporary);
+                return;
+            }
+            for (Segment segment : segments) {
+                deleteQuietly(manifest.uploadDir.resolve(segment.fileName()));
+            }
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        for (String resourceId : resourceIds) {
+            remove(resourceId);
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        manifests.remove(resourceId);
+        Path uploadDir = storageDir.resolve(resourceId);
+        if (!Files.isDirectory(uploadDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(SegmentedDiskStorage::deleteQuietly);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        Manifest manifest = manifestOf(resourceId);
+        return new SegmentChainInputStream(resourceId, manifest.length());
+    }
+
+    @Override
+    public long usableSpace() {
+        try {
+            return Files.getFileStore(storageDir).getUsableSpace();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public long totalSpace() {
+        try {
+            return Files.getFileStore(storageDir).getTotalSpace();
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    private Manifest manifestOf(String resourceId) throws IOException {
+        Manifest manifest = manifests.get(resourceId);
+        if (Objects.nonNull(manifest)) {
+            return manifest;
+        }
+        Path uploadDir = storageDir.resolve(resourceId);
+        Path manifestFile = uploadDir.resolve(MANIFEST_FILE);
+        if (!Files.exists(manifestFile)) {
+            throw new FileNotFoundException(uploadDir + " does not exist");
+        }
+        List<Segment> segments = new ArrayList<>();
+        for (String line : Files.readAllLines(manifestFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.split(" ");
+            segments.add(new Segment(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+        }
+        return manifests.computeIfAbsent(resourceId, id -> new Manifest(uploadDir, List.copyOf(segments)));
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private record Segment(long start, long length, String fileName) {
+
+        private long end() {
+            return start + length;
+        }
+    }
+
+    /**
+     * 上传资源的分段清单，修改时由调用方持有该对象的锁，读取方通过 volatile 字段获取快照
+     */
+    private static final class Manifest {
+
+        private final Path uploadDir;
+        private volatile List<Segment> segments;
+
+        private Manifest(Path uploadDir, List<Segment> segments) {
+            this.uploadDir = uploadDir;
+            this.segments = segments;
+        }
+
+        private long length() {
+            List<Segment> current = segments;
+            return current.isEmpty() ? 0L : current.get(current.size() - 1).end();
+        }
+
+        private void update(List<Segment> updated) throws IOException {
+            List<Segment> previous = segments;
+            segments = List.copyOf(updated);
+            try {
+                persist();
+            } catch (IOException e) {
+                segments = previous;
+                throw e;
+            }
+        }
+
+        /**
+         * 先写入临时文件再替换，避免留下不完整的清单
+         */
+        private void persist() throws IOException {
+            StringBuilder content = new StringBuilder();
+            for (Segment segment : segments) {
+                content.append(segment.start()).append(' ').append(segment.length()).append(' ')
+                        .append(segment.fileName()).append('\n');
+            }
+            Path temporary = uploadDir.resolve(MANIFEST_FILE + TEMPORARY_SUFFIX);
+            Files.writeString(temporary, content, StandardCharsets.UTF_8);
+            Files.move(temporary, uploadDir.resolve(MANIFEST_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 按顺序读取各分段，只在需要时打开下一个分段文件
+     * <p>
+     * 读取期间分段可能被合并，打开时发现文件已删除则按最新的清单重新定位到当前位置。
+     */
+    private final class SegmentChainInputStream extends InputStream {
+
+        private final String resourceId;
+        // 打开时已写入的长度，之后写入的数据不会被读取
+        private final long length;
+        private long position;
+        private InputStream current;
+        private long currentRemaining;
+
+        private SegmentChainInputStream(String resourceId, long length) {
+            this.resourceId = resourceId;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            if (Objects.isNull(current) || currentRemaining == 0) {
+                openAt(position);
+            }
+            int n = current.read(b, off, (int) Math.min(len, Math.min(currentRemaining, length - position)));
+            if (n < 0) {
+                throw new IOException("Unexpected end of segment of " + resourceId + " at " + position);
+            }
+            position += n;
+            currentRemaining -= n;
+            return n;
+        }
+
+        private void openAt(long offset) throws IOException {
+            closeCurrent();
+            NoSuchFileException lastFailure = null;
+            // 第一次失败说明分段刚被合并，重新读取清单后再试一次
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Manifest manifest = manifestOf(resourceId);
+                for (Segment segment : manifest.segments) {
+                    if (segment.start() <= offset && offset < segment.end()) {
+                        try {
+                            FileChannel channel = FileChannel.open(manifest.uploadDir.resolve(segment.fileName()),
+                                    StandardOpenOption.READ);
+                            channel.position(offset - segment.start());
+                            current = Channels.newInputStream(channel);
+                            currentRemaining = segment.end() - offset;
+                            return;
+                        } catch (NoSuchFileException e) {
+                            lastFailure = e;
+                        }
+                        break;
+                    }
+                }
+            }
+            throw Objects.nonNull(lastFailure)
+                    ? lastFailure
+                    : new FileNotFoundException("No segment of " + resourceId + " covers offset " + offset);
+        }
+
+        private void closeCurrent() throws IOException {
+            if (Objects.nonNull(current)) {
+                current.close();
+                current = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeCurrent();
+        }
+    }
+}
@@ -61,4 +61,34 @@ public interface Storage {
      */
     default void rollback(String resourceId, Long offset) {
     }
+
+    /**
+     * 文件块的所有数据都已写入，上传完成
+     * <p>
+     * 在最后的偏移量提交之前调用，抛出异常时调用方会回退最后一次写入，客户端重新上传最后一个 chunk 时再次调用
+     *
+     * @param resourceId
+     * @throws BlobAccessException
+     * @throws IOException
+     */
+    default void complete(String resourceId) throws BlobAccessException, IOException {
+    }
+
+    /**
+     * 存储后端当前可用的字节数
+     *
+     * @return 无法获知时返回 -1
+     */
+    default long usableSpace() {
+        return -1L;
+    }
+
+    /**
+     * 存储后端的总字节数
+     *
+     * @return 无法获知时返回 -1
+     */
+    default long totalSpace() {
+        return -1L;
+    }
 }
\ No newline at end of file
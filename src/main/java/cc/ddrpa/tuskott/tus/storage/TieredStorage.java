@@ -0,0 +1,217 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 由热、冷两层 Storage 组成的存储
+ * <p>
+ * PATCH 的数据总是写入热层（通常是本地 NVMe），上传完成后在后台线程中将文件复制到冷层（大容量磁盘或对象存储），
+ * 同时进行的复制数量由 {@code migration-threads} 限制。复制完成后分别读取两层的数据计算摘要，
+ * 一致时才切换到冷层并释放热层的空间，失败时文件留在热层。{@link #streaming(String)} 总是从当前持有数据的层读取。
+ * <p>
+ * 迁移记录只保存在内存中。服务重启时尚未迁移完成的文件会一直留在热层，不会重新排队迁移，但仍可以正常读取和删除；
+ * 重启后无法判断文件在哪一层，{@link #remove(String)} 会同时删除两层的文件。
+ * <p>
+ * 配置示例：
+ * <pre>
+ * provider: 'cc.ddrpa.tuskott.tus.storage.TieredStorage'
+ * config:
+ *   hot:
+ *     provider: 'cc.ddrpa.tuskott.tus.storage.LocalDiskStorage'
+ *     config:
+ *       dir: '/mnt/nvme/uploads'
+ *   cold:
+ *     provider: 'cc.ddrpa.tuskott.tus.storage.LocalDiskStorage'
+ *     config:
+ *       dir: '/mnt/hdd/uploads'
+ *   migration-threads: 4
+ * </pre>
+ */
+public class TieredStorage implements Storage {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredStorage.class);
+    private static final int DEFAULT_MIGRATION_THREADS = 4;
+
+    private final Storage hot;
+    private final Storage cold;
+    private final ExecutorService migrationExecutor;
+    // 已迁移到冷层的文件块，其余的文件块在热层
+    private final Map<String, Boolean> migrated = new ConcurrentHashMap<>();
+    // 正在迁移的文件块，迁移期间被删除时放弃迁移
+    private final Map<String, Boolean> migrating = new ConcurrentHashMap<>();
+
+    public TieredStorage(Map<String, Object> configuration) throws ReflectiveOperationException {
+        this(NestedStorageFactory.create(configuration, "hot"), NestedStorageFactory.create(configuration, "cold"),
+                Integer.parseInt(String.valueOf(
+                        configuration.getOrDefault("migration-threads", DEFAULT_MIGRATION_THREADS))));
+    }
+
+    public TieredStorage(Storage hot, Storage cold, int migrationThreads) {
+        if (migrationThreads < 1) {
+            throw new IllegalArgumentException("migration-threads must be positive: " + migrationThreads);
+        }
+        this.hot = hot;
+        this.cold = cold;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.migrationExecutor = Executors.newFixedThreadPool(migrationThreads, runnable -> {
+            Thread thread = new Thread(runnable, "tuskott-tier-migration-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void create(String resourceId) throws BlobAccessException, IOException {
+        hot.create(resourceId);
+    }
+
+    @Override
+    public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+            throws BlobAccessException, IOException {
+        return hot.write(resourceId, inputStream, uploadOffset);
+    }
+
+    @Override
+    public void rollback(String resourceId, Long offset) {
+        hot.rollback(resourceId, offset);
+    }
+
+    @Override
+    public void complete(String resourceId) throws BlobAccessException, IOException {
+        hot.complete(resourceId);
+        if (migrating.putIfAbsent(resourceId, Boolean.TRUE) == null) {
+            migrationExecutor.execute(() -> migrate(resourceId));
+        }
+    }
+
+    private void migrate(String resourceId) {
+        try {
+            cold.create(resourceId);
+            long copied;
+            try (InputStream inputStream = hot.streaming(resourceId)) {
+                copied = cold.write(resourceId, inputStream, 0L);
+            }
+            cold.complete(resourceId);
+            if (!migrating.containsKey(resourceId)) {
+                // 迁移期间上传被删除
+                cold.remove(resourceId);
+                return;
+            }
+            if (!verify(resourceId, copied)) {
+                logger.warn("Copy of {} on the cold tier does not match, keeping it on the hot tier", resourceId);
+                cold.remove(resourceId);
+                return;
+            }
+            migrated.put(resourceId, Boolean.TRUE);
+            // 以移除 migrating 中的记录作为提交点，remove() 也会移除该记录，两者中只有一方能成功
+            if (!migrating.remove(resourceId, Boolean.TRUE)) {
+                // 校验期间上传被删除，remove() 已删除两层的文件，撤销迁移记录
+                migrated.remove(resourceId);
+                return;
+            }
+            // 已打开的热层输入流在 POSIX 系统上仍然可以读完
+            hot.remove(resourceId);
+        } catch (BlobAccessException | IOException | RuntimeException e) {
+            logger.warn("Failed to migrate {} to the cold tier, keeping it on the hot tier: {}",
+                    resourceId, e.getMessage());
+            cold.remove(resourceId);
+        } finally {
+            migrating.remove(resourceId);
+        }
+    }
+
+    /**
+     * 分别读取两层的数据，比较长度与摘要
+     */
+    private boolean verify(String resourceId, long copied) throws BlobAccessException, IOException {
+        byte[] hotDigest;
+        long hotLength;
+        try (DigestInputStream inputStream = new DigestInputStream(hot.streaming(resourceId), newDigest())) {
+            hotLength = inputStream.transferTo(OutputStream.nullOutputStream());
+            hotDigest = inputStream.getMessageDigest().digest();
+        }
+        if (hotLength != copied) {
+            return false;
+        }
+        try (DigestInputStream inputStream = new DigestInputStream(cold.streaming(resourceId), newDigest())) {
+            long coldLength = inputStream.transferTo(OutputStream.nullOutputStream());
+            return coldLength == hotLength && MessageDigest.isEqual(hotDigest, inputStream.getMessageDigest().digest());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void remove(List<String> resourceIds) {
+        for (String resourceId : resourceIds) {
+            remove(resourceId);
+        }
+    }
+
+    @Override
+    public void remove(String resourceId) {
+        migrating.remove(resourceId);
+        migrated.remove(resourceId);
+        // 服务重启后 migrated 为空，冷层可能已有迁移完成的副本，两层都删除，删除不存在的文件没有影响
+        hot.remove(resourceId);
+        cold.remove(resourceId);
+    }
+
+    @Override
+    public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+        if (migrated.containsKey(resourceId)) {
+            return cold.streaming(resourceId);
+        }
+        try {
+            return hot.streaming(resourceId);
+        } catch (FileNotFoundException e) {
+            // 服务重启后没有迁移记录，或在读取时恰好完成了迁移
+            InputStream inputStream = cold.streaming(resourceId);
+            migrated.put(resourceId, Boolean.TRUE);
+            return inputStream;
+        }
+    }
+
+    /**
+     * 热层的可用空间，新的上传总是写入热层
+     */
+    @Override
+    public long usableSpace() {
+        return hot.usableSpace();
+    }
+
+    @Override
+    public long totalSpace() {
+        return hot.totalSpace();
+    }
+
+    public Storage getHot() {
+        return hot;
+    }
+
+    public Storage getCold() {
+        return cold;
+    }
+}
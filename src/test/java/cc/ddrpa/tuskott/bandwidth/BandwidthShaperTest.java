@@ -0,0 +1,55 @@
+package cc.ddrpa.tuskott.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BandwidthShaperTest {
+
+    /**
+     * 全局带宽按权重分给有上传在进行的租户，租户空闲后份额分给其他租户
+     */
+    @Test
+    void globalRateIsSharedByWeight() throws Exception {
+        BandwidthShaper shaper = new BandwidthShaper(4_000L, 0L, 0L, 0L, Map.of("a", 3));
+
+        InputStream a = shaper.throttle("a", body());
+        assertThat(shaper.tenantRateOf("a")).isEqualTo(4_000L);
+        InputStream b1 = shaper.throttle("b", body());
+        InputStream b2 = shaper.throttle("b", body());
+        assertThat(shaper.tenantRateOf("a")).isEqualTo(3_000L);
+        assertThat(shaper.tenantRateOf("b")).isEqualTo(1_000L);
+
+        // 同一租户的多个上传只计算一次权重
+        b1.close();
+        assertThat(shaper.tenantRateOf("b")).isEqualTo(1_000L);
+        b2.close();
+        b2.close();
+        assertThat(shaper.tenantRateOf("b")).isZero();
+        assertThat(shaper.tenantRateOf("a")).isEqualTo(4_000L);
+        a.close();
+        assertThat(shaper.tenantRateOf("a")).isZero();
+    }
+
+    @Test
+    void tenantRateCapsTheShare() throws Exception {
+        BandwidthShaper shaper = new BandwidthShaper(4_000L, 2_500L, 0L, 0L, Map.of("a", 3));
+
+        try (InputStream a = shaper.throttle("a", body()); InputStream b = shaper.throttle("b", body())) {
+            assertThat(shaper.tenantRateOf("a")).isEqualTo(2_500L);
+            assertThat(shaper.tenantRateOf("b")).isEqualTo(1_000L);
+        }
+        BandwidthShaper tenantOnly = new BandwidthShaper(0L, 2_500L, 0L, 0L, Map.of());
+        try (InputStream a = tenantOnly.throttle("a", body())) {
+            assertThat(tenantOnly.tenantRateOf("a")).isEqualTo(2_500L);
+        }
+    }
+
+    private static InputStream body() {
+        return new ByteArrayInputStream(new byte[16]);
+    }
+}
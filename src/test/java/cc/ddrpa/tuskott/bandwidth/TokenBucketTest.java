@@ -0,0 +1,56 @@
+package cc.ddrpa.tuskott.bandwidth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long ONE_YEAR = TimeUnit.DAYS.toNanos(365);
+
+    /**
+     * burst 之内无需等待，之后按速率计算等待时长
+     */
+    @Test
+    void burstThenWaitByRate() {
+        TokenBucket bucket = new TokenBucket(1_000L);
+
+        assertThat(bucket.reserve(1_000L, 1_000L)).isZero();
+        long wait = bucket.reserve(500L, 1_000L);
+        assertThat(wait).isBetween(TimeUnit.MILLISECONDS.toNanos(400), TimeUnit.MILLISECONDS.toNanos(500));
+        // 未等待就继续消费，等待时长累加
+        assertThat(bucket.reserve(500L, 1_000L)).isBetween(wait, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void unlimitedRateNeverWaits() {
+        TokenBucket bucket = new TokenBucket(0L);
+
+        assertThat(bucket.reserve(Long.MAX_VALUE, 0L)).isZero();
+    }
+
+    /**
+     * 跳过大量数据时 bytes × 10^9 溢出，等待时长按上限计算而不是变为负数
+     */
+    @Test
+    void largeReservationIsClamped() {
+        TokenBucket bucket = new TokenBucket(0L);
+
+        long wait = bucket.reserve(20_000_000_000L, 1_000_000L);
+        assertThat(wait).isBetween(TimeUnit.SECONDS.toNanos(19_999), TimeUnit.SECONDS.toNanos(20_000));
+        assertThat(new TokenBucket(0L).reserve(Long.MAX_VALUE, 1L)).isPositive().isLessThanOrEqualTo(ONE_YEAR);
+    }
+
+    /**
+     * 超过 9.2 GB 的 burst 不会溢出为负数
+     */
+    @Test
+    void largeBurstIsClamped() {
+        TokenBucket bucket = new TokenBucket(10_000_000_000L);
+
+        assertThat(bucket.reserve(1_000_000L, 1_000_000L)).isZero();
+        assertThat(bucket.reserve(1L, 1L)).isZero();
+    }
+}
@@ -0,0 +1,148 @@
+package cc.ddrpa.tuskott.cluster;
+
+import cc.ddrpa.tuskott.ConstantsPool;
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.resource.TimeOrderedUploadIdGenerator;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NodeAffinityFilterTest {
+
+    private static final byte[] BODY = "hello, owner".getBytes();
+
+    private HttpServer ownerNode;
+    private volatile String receivedMethod;
+    private volatile Headers receivedHeaders;
+    private volatile byte[] receivedBody;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // 所属节点收到 PATCH 后返回新的偏移量
+        ownerNode = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ownerNode.createContext("/", exchange -> {
+            try (exchange; InputStream inputStream = exchange.getRequestBody()) {
+                receivedMethod = exchange.getRequestMethod();
+                receivedHeaders = exchange.getRequestHeaders();
+                receivedBody = inputStream.readAllBytes();
+                exchange.getResponseHeaders().add("Upload-Offset", String.valueOf(receivedBody.length));
+                exchange.sendResponseHeaders(204, -1);
+            }
+        });
+        ownerNode.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ownerNode.stop(0);
+    }
+
+    @Test
+    void forwardsToTheOwnerNode() throws Exception {
+        NodeAffinityFilter filter = filter(TuskottProperties.Cluster.Mode.FORWARD, ownerUrl());
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(patch(idOf("b")), response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(204);
+        assertThat(response.getHeader("Upload-Offset")).isEqualTo(String.valueOf(BODY.length));
+        assertThat(receivedMethod).isEqualTo("PATCH");
+        assertThat(receivedBody).isEqualTo(BODY);
+        assertThat(receivedHeaders.getFirst(ConstantsPool.HEADER_TUSKOTT_FORWARDED_BY)).isEqualTo("a");
+        assertThat(receivedHeaders.getFirst("Upload-Offset")).isEqualTo("0");
+    }
+
+    @Test
+    void redirectsToTheOwnerNode() throws Exception {
+        NodeAffinityFilter filter = filter(TuskottProperties.Cluster.Mode.REDIRECT, ownerUrl());
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        String id = idOf("b");
+        MockHttpServletRequest request = patch(id);
+        request.setQueryString("tenant=t1");
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(307);
+        assertThat(response.getHeader(ConstantsPool.HEADER_LOCATION))
+                .isEqualTo(ownerUrl() + "/tus/files/" + id + "?tenant=t1");
+        assertThat(receivedMethod).isNull();
+    }
+
+    /**
+     * 已经被转发过一次的请求、属于当前节点或所属节点未知的请求都由当前节点处理
+     */
+    @Test
+    void handlesLocallyWhenNotRoutable() throws Exception {
+        NodeAffinityFilter filter = filter(TuskottProperties.Cluster.Mode.FORWARD, ownerUrl());
+        MockHttpServletRequest forwarded = patch(idOf("b"));
+        forwarded.addHeader(ConstantsPool.HEADER_TUSKOTT_FORWARDED_BY, "c");
+
+        for (MockHttpServletRequest request : new MockHttpServletRequest[]{
+                forwarded, patch(idOf("a")), patch(idOf("unknown")), patch("not-a-time-ordered-id")}) {
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+            assertThat(chain.getRequest()).isSameAs(request);
+        }
+        assertThat(receivedMethod).isNull();
+    }
+
+    @Test
+    void unreachableOwnerIsABadGateway() throws Exception {
+        String closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = "http://127.0.0.1:" + socket.getLocalPort();
+        }
+        NodeAffinityFilter filter = filter(TuskottProperties.Cluster.Mode.FORWARD, closedPort);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(patch(idOf("b")), response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(502);
+        assertThat(response.getContentType()).isEqualTo(ConstantsPool.PROBLEM_JSON_CONTENT_TYPE);
+    }
+
+    private String ownerUrl() {
+        return "http://127.0.0.1:" + ownerNode.getAddress().getPort();
+    }
+
+    private static NodeAffinityFilter filter(TuskottProperties.Cluster.Mode mode, String ownerUrl) {
+        TuskottProperties properties = new TuskottProperties();
+        TuskottProperties.Cluster cluster = properties.getCluster();
+        cluster.setEnable(true);
+        cluster.setNodeId("a");
+        cluster.setNodes(Map.of("a", "http://127.0.0.1:1", "b", ownerUrl));
+        cluster.setMode(mode);
+        return new NodeAffinityFilter(properties, new TimeOrderedUploadIdGenerator("a"));
+    }
+
+    private static String idOf(String node) {
+        return new TimeOrderedUploadIdGenerator(node).generate();
+    }
+
+    private static MockHttpServletRequest patch(String id) {
+        MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/tus/files/" + id);
+        request.addHeader("Tus-Resumable", "1.0.0");
+        request.addHeader("Upload-Offset", "0");
+        request.setContentType("application/offset+octet-stream");
+        request.setContent(BODY);
+        return request;
+    }
+}
@@ -0,0 +1,107 @@
+package cc.ddrpa.tuskott.event;
+
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以 {@code List<…Event>} 接收事件的回调方法的攒批与投递
+ */
+class TuskottEventDispatcherTest {
+
+    private final Callbacks callbacks = new Callbacks();
+    private TuskottEventDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (Objects.nonNull(dispatcher)) {
+            dispatcher.close();
+        }
+    }
+
+    /**
+     * 攒够 batchSize 个事件后不等待定时器立即投递，剩余的事件留到下一批
+     */
+    @Test
+    void fullBatchIsFlushedWithoutWaitingForTheTimer() throws Exception {
+        dispatcher = dispatcher(3, 60_000L);
+
+        dispatchAll("a", "b", "c", "d", "e", "f", "g");
+
+        List<List<String>> batches = List.of(nextBatch(), nextBatch());
+        assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSize(3));
+        assertThat(batches.stream().flatMap(List::stream)).containsExactlyInAnyOrder("a", "b", "c", "d", "e", "f");
+        assertThat(callbacks.batches.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    /**
+     * 不足一批的事件在 batchDelay 之后投递
+     */
+    @Test
+    void partialBatchIsFlushedAfterTheDelay() throws Exception {
+        dispatcher = dispatcher(100, 300L);
+
+        dispatchAll("a", "b");
+
+        assertThat(callbacks.batches.poll(50, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(nextBatch()).containsExactly("a", "b");
+    }
+
+    /**
+     * close() 投递尚未投递的事件，之后的事件不再攒批
+     */
+    @Test
+    void closeFlushesPendingEvents() throws Exception {
+        dispatcher = dispatcher(100, 60_000L);
+
+        dispatchAll("a", "b", "c");
+        assertThat(callbacks.batches.poll(200, TimeUnit.MILLISECONDS)).isNull();
+
+        dispatcher.close();
+        assertThat(nextBatch()).containsExactly("a", "b", "c");
+        dispatchAll("d");
+        assertThat(nextBatch()).containsExactly("d");
+    }
+
+    private TuskottEventDispatcher dispatcher(int batchSize, long batchDelay) throws NoSuchMethodException {
+        TuskottEventDispatcher eventDispatcher = new TuskottEventDispatcher(batchSize, batchDelay);
+        TuskottEventCallback callback = new TuskottEventCallback(callbacks,
+                Callbacks.class.getMethod("onCompleteBatch", List.class), true);
+        eventDispatcher.register(List.of(), List.of(callback), List.of());
+        return eventDispatcher;
+    }
+
+    private void dispatchAll(String... ids) {
+        for (String id : ids) {
+            dispatcher.dispatch(new PostCompleteEvent(new UploadResource(id, 3L, "")));
+        }
+    }
+
+    private List<String> nextBatch() throws InterruptedException {
+        List<String> batch = callbacks.batches.poll(5, TimeUnit.SECONDS);
+        assertThat(batch).as("batch delivered").isNotNull();
+        return batch;
+    }
+
+    public static class Callbacks {
+
+        private final BlockingQueue<List<String>> batches = new LinkedBlockingQueue<>();
+
+        public void onCompleteBatch(List<PostCompleteEvent> events) {
+            List<String> ids = new ArrayList<>(events.size());
+            for (PostCompleteEvent event : events) {
+                ids.add(event.getUploadResource().getId());
+            }
+            batches.add(ids);
+        }
+    }
+}
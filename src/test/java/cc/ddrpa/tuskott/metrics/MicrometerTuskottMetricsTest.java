@@ -0,0 +1,54 @@
+package cc.ddrpa.tuskott.metrics;
+
+import cc.ddrpa.tuskott.tus.storage.CompressingStorage;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import cc.ddrpa.tuskott.tus.storage.PackedDiskStorage;
+import cc.ddrpa.tuskott.tus.storage.TieredStorage;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MicrometerTuskottMetricsTest {
+
+    @TempDir
+    Path hotDir;
+    @TempDir
+    Path coldDir;
+
+    @Test
+    void bindsChannelCacheOfTopLevelLocalDiskStorage() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new MicrometerTuskottMetrics(registry)
+                .bindChannelCaches(new LocalDiskStorage(Map.of("dir", hotDir.toString())));
+
+        assertThat(registry.find("tuskott.storage.channels.open").tag("storage", "root").gauge()).isNotNull();
+        assertThat(registry.find("tuskott.storage.channel.cache").tag("storage", "root").functionCounters())
+                .hasSize(2);
+    }
+
+    /**
+     * 被分层、压缩与打包存储包装的 LocalDiskStorage 同样需要注册指标，以 storage 标签区分
+     */
+    @Test
+    void bindsChannelCachesOfWrappedLocalDiskStorages() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TieredStorage storage = new TieredStorage(
+                new CompressingStorage(new LocalDiskStorage(Map.of("dir", hotDir.toString())), 1024, 1),
+                new PackedDiskStorage(Map.of("dir", coldDir.toString())), 1);
+        new MicrometerTuskottMetrics(registry).bindChannelCaches(storage);
+
+        assertThat(registry.find("tuskott.storage.channels.open").gauges())
+                .map(gauge -> gauge.getId().getTag("storage"))
+                .containsExactlyInAnyOrder("hot", "cold");
+        assertThat(registry.find("tuskott.storage.channel.cache").meters())
+                .map(Meter::getId)
+                .map(id -> id.getTag("storage") + "/" + id.getTag("result"))
+                .containsExactlyInAnyOrder("hot/hit", "hot/miss", "cold/hit", "cold/miss");
+    }
+}
@@ -0,0 +1,141 @@
+package cc.ddrpa.tuskott.stream;
+
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommitWatcherTest {
+
+    private static final String RESOURCE_ID = "upload";
+    private static final byte[] DATA = "0123456789abcdefghij".getBytes();
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalDiskStorage storage;
+    private InMemoryUploadResourceTracker tracker;
+    private CommitWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = new LocalDiskStorage(Map.of("dir", uploadDir.toString()));
+        tracker = new InMemoryUploadResourceTracker(Map.of());
+        watcher = new CommitWatcher();
+        tracker.create(RESOURCE_ID, (long) DATA.length, null);
+        storage.create(RESOURCE_ID);
+    }
+
+    /**
+     * 读到已提交的位置后等待，下一次提交后继续读取，上传完成后读到 EOF
+     */
+    @Test
+    void followWaitsForTheNextCommit() throws Exception {
+        patch(DATA, 0, 10);
+        try (InputStream follower = watcher.follow(RESOURCE_ID, 0L, storage, tracker)) {
+            assertThat(follower.readNBytes(10)).isEqualTo(Arrays.copyOf(DATA, 10));
+
+            CompletableFuture<byte[]> rest = readAllAsync(follower);
+            Thread.sleep(200);
+            assertThat(rest).isNotDone();
+
+            patch(DATA, 10, 10);
+            watcher.completed(RESOURCE_ID);
+            assertThat(rest.get(5, TimeUnit.SECONDS)).isEqualTo(Arrays.copyOfRange(DATA, 10, 20));
+            assertThat(follower.read()).isEqualTo(-1);
+        }
+    }
+
+    /**
+     * 从已完成的上传中间开始读取，读完后直接结束
+     */
+    @Test
+    void completedUploadEndsWithoutWaiting() throws Exception {
+        patch(DATA, 0, DATA.length);
+        try (InputStream follower = watcher.follow(RESOURCE_ID, 5L, storage, tracker)) {
+            assertThat(follower.readAllBytes()).isEqualTo(Arrays.copyOfRange(DATA, 5, 20));
+        }
+        assertThatThrownBy(() -> watcher.follow("missing", 0L, storage, tracker))
+                .isInstanceOf(FileNotFoundException.class);
+    }
+
+    /**
+     * 等待中的读取者在上传被终止时抛出异常
+     */
+    @Test
+    void terminationFailsTheWaitingReader() throws Exception {
+        patch(DATA, 0, 10);
+        try (InputStream follower = watcher.follow(RESOURCE_ID, 10L, storage, tracker)) {
+            CompletableFuture<byte[]> rest = readAllAsync(follower);
+            Thread.sleep(200);
+            assertThat(rest).isNotDone();
+
+            watcher.terminated(RESOURCE_ID);
+            assertThatThrownBy(() -> rest.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasRootCauseInstanceOf(IOException.class)
+                    .hasRootCauseMessage("Upload was terminated");
+        }
+    }
+
+    /**
+     * 正在写入和被回退的数据已经在 Storage 中，但读取者只读到已提交的位置
+     */
+    @Test
+    void neverReadsPastTheCommittedOffset() throws Exception {
+        patch(DATA, 0, 10);
+        // 写入了但没有提交，相当于 PATCH 仍在进行或校验失败
+        byte[] corrupted = DATA.clone();
+        Arrays.fill(corrupted, 10, 20, (byte) '!');
+        storage.write(RESOURCE_ID, new ByteArrayInputStream(corrupted, 10, 10), 10L);
+
+        try (InputStream follower = watcher.follow(RESOURCE_ID, 0L, storage, tracker)) {
+            assertThat(follower.available()).isEqualTo(10);
+            assertThat(follower.readNBytes(10)).isEqualTo(Arrays.copyOf(DATA, 10));
+            assertThat(follower.available()).isZero();
+
+            CompletableFuture<byte[]> rest = readAllAsync(follower);
+            Thread.sleep(200);
+            assertThat(rest).isNotDone();
+
+            storage.rollback(RESOURCE_ID, 10L);
+            patch(DATA, 10, 10);
+            watcher.completed(RESOURCE_ID);
+            assertThat(rest.get(5, TimeUnit.SECONDS)).isEqualTo(Arrays.copyOfRange(DATA, 10, 20));
+        }
+    }
+
+    /**
+     * 与 TuskottProcessor 一致：写入 Storage，更新上传进度后通知提交
+     */
+    private void patch(byte[] data, int offset, int length) throws Exception {
+        long newOffset = storage.write(RESOURCE_ID, new ByteArrayInputStream(data, offset, length), (long) offset);
+        tracker.patch(RESOURCE_ID, newOffset);
+        watcher.committed(RESOURCE_ID, newOffset);
+    }
+
+    private static CompletableFuture<byte[]> readAllAsync(InputStream follower) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return follower.readAllBytes();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
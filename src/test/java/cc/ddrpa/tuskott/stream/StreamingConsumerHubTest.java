@@ -0,0 +1,285 @@
+package cc.ddrpa.tuskott.stream;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 按 TuskottProcessor 的调用顺序驱动 StreamingConsumerHub：tee、写入 Storage、提交或回退、endWrite
+ */
+class StreamingConsumerHubTest {
+
+    private static final String RESOURCE_ID = "upload";
+    private static final int KiB = 1024;
+
+    @TempDir
+    Path uploadDir;
+
+    private CountingStorage storage;
+    private InMemoryUploadResourceTracker tracker;
+    private StreamingConsumerHub hub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = new CountingStorage(uploadDir);
+        tracker = new InMemoryUploadResourceTracker(Map.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (Objects.nonNull(hub)) {
+            hub.close();
+        }
+    }
+
+    /**
+     * 多个 PATCH 的数据按偏移量顺序交付给同一个会话，缓存足够时不需要从 Storage 读取
+     */
+    @Test
+    void deliversInOrderAcrossPatches() throws Exception {
+        byte[] data = randomBytes(300 * KiB);
+        RecordingConsumer consumer = new RecordingConsumer(StreamingConsumer.OverflowPolicy.CATCH_UP);
+        hub = new StreamingConsumerHub(List.of(consumer), storage, 2, 16 * 1024 * KiB, 5_000L);
+        UploadResource uploadResource = create(data.length);
+
+        long offset = 0L;
+        for (int length : new int[]{100 * KiB, 70 * KiB, 130 * KiB}) {
+            offset = patch(uploadResource, data, offset, length);
+        }
+
+        assertThat(result(uploadResource, offset).value()).isEqualTo(data);
+        assertThat(consumer.opened).hasValue(1);
+        assertThat(consumer.aborted).hasValue(0);
+        assertThat(storage.streamed).hasValue(0);
+    }
+
+    /**
+     * CATCH_UP 的消费者处理不过来时，被丢弃的数据在提交后从 Storage 中补齐
+     */
+    @Test
+    void catchUpRefillsTheDroppedGapFromStorage() throws Exception {
+        byte[] data = randomBytes(256 * KiB);
+        RecordingConsumer consumer = new RecordingConsumer(StreamingConsumer.OverflowPolicy.CATCH_UP);
+        consumer.paused = new CountDownLatch(1);
+        hub = new StreamingConsumerHub(List.of(consumer), storage, 1, KiB, 5_000L);
+        UploadResource uploadResource = create(data.length);
+
+        // 第一个数据块被交付时会话暂停，之后的数据块超过缓存被丢弃
+        long offset = patch(uploadResource, data, 0L, data.length);
+        consumer.paused.countDown();
+
+        assertThat(result(uploadResource, offset).value()).isEqualTo(data);
+        assertThat(storage.streamed.get()).isPositive();
+    }
+
+    /**
+     * 已交付的数据因校验失败被回退时中止会话，重新打开后从头交付已提交的数据
+     */
+    @Test
+    void restartsAfterAChecksumMismatch() throws Exception {
+        byte[] data = randomBytes(200 * KiB);
+        byte[] corrupted = data.clone();
+        corrupted[150 * KiB] ^= 1;
+        RecordingConsumer consumer = new RecordingConsumer(StreamingConsumer.OverflowPolicy.CATCH_UP);
+        hub = new StreamingConsumerHub(List.of(consumer), storage, 1, 16 * 1024 * KiB, 5_000L);
+        UploadResource uploadResource = create(data.length);
+
+        long offset = patch(uploadResource, data, 0L, 100 * KiB);
+        // 未提交的数据也会被交付，请求体按 64 KiB 的数据块复制，等待会话收到第一个数据块后再回退
+        InputStream tee = hub.tee(uploadResource, new ByteArrayInputStream(corrupted, (int) offset, 100 * KiB), offset);
+        storage.write(RESOURCE_ID, tee, offset);
+        consumer.awaitReceived(offset + 64 * KiB);
+        storage.rollback(RESOURCE_ID, offset);
+        hub.endWrite(RESOURCE_ID);
+
+        offset = patch(uploadResource, data, offset, 100 * KiB);
+        assertThat(result(uploadResource, offset).value()).isEqualTo(data);
+        assertThat(consumer.opened).hasValue(2);
+        assertThat(consumer.aborted).hasValue(1);
+    }
+
+    /**
+     * BLOCK 的消费者处理不过来时暂停读取请求体，消费者跟上后继续
+     */
+    @Test
+    void blockPolicyHoldsBackTheUpload() throws Exception {
+        byte[] data = randomBytes(256 * KiB);
+        RecordingConsumer consumer = new RecordingConsumer(StreamingConsumer.OverflowPolicy.BLOCK);
+        consumer.paused = new CountDownLatch(1);
+        hub = new StreamingConsumerHub(List.of(consumer), storage, 1, KiB, 5_000L);
+        UploadResource uploadResource = create(data.length);
+
+        CompletableFuture<Long> writing = CompletableFuture.supplyAsync(() -> {
+            try {
+                return patch(uploadResource, data, 0L, data.length);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(300);
+        assertThat(writing).isNotDone();
+
+        consumer.paused.countDown();
+        long offset = writing.get(5, TimeUnit.SECONDS);
+        assertThat(result(uploadResource, offset).value()).isEqualTo(data);
+        assertThat(storage.streamed).hasValue(0);
+    }
+
+    /**
+     * 超过 completionTimeout 仍未处理完的消费者结果为 TimeoutException
+     */
+    @Test
+    void completeTimesOutASlowConsumer() throws Exception {
+        byte[] data = randomBytes(10 * KiB);
+        RecordingConsumer consumer = new RecordingConsumer(StreamingConsumer.OverflowPolicy.CATCH_UP);
+        consumer.paused = new CountDownLatch(1);
+        hub = new StreamingConsumerHub(List.of(consumer), storage, 1, 16 * 1024 * KiB, 100L);
+        UploadResource uploadResource = create(data.length);
+        try {
+            long offset = patch(uploadResource, data, 0L, data.length);
+            StreamingResult result = result(uploadResource, offset);
+            assertThat(result.isSuccess()).isFalse();
+            assertThat(result.failure()).isInstanceOf(TimeoutException.class);
+        } finally {
+            consumer.paused.countDown();
+        }
+    }
+
+    private UploadResource create(long length) throws Exception {
+        storage.create(RESOURCE_ID);
+        return tracker.create(RESOURCE_ID, length, null);
+    }
+
+    /**
+     * 与 TuskottProcessor 处理 PATCH 的顺序一致
+     */
+    private long patch(UploadResource uploadResource, byte[] data, long offset, int length)
+            throws BlobAccessException, IOException {
+        try {
+            InputStream tee = hub.tee(uploadResource, new ByteArrayInputStream(data, (int) offset, length), offset);
+            long newOffset = storage.write(RESOURCE_ID, tee, offset);
+            tracker.patch(RESOURCE_ID, newOffset);
+            hub.committed(RESOURCE_ID, newOffset);
+            return newOffset;
+        } finally {
+            hub.endWrite(RESOURCE_ID);
+        }
+    }
+
+    private StreamingResult result(UploadResource uploadResource, long offset) throws Exception {
+        assertThat(offset).isEqualTo(uploadResource.getUploadLength());
+        Map<String, StreamingResult> results = hub.complete(tracker.head(RESOURCE_ID)).get(5, TimeUnit.SECONDS);
+        assertThat(results).containsOnlyKeys(RecordingConsumer.NAME);
+        return results.get(RecordingConsumer.NAME);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * 统计从 Storage 读取的次数，用于判断数据是否来自补齐
+     */
+    private static class CountingStorage extends LocalDiskStorage {
+
+        private final AtomicInteger streamed = new AtomicInteger();
+
+        CountingStorage(Path dir) throws Exception {
+            super(Map.of("dir", dir.toString()));
+        }
+
+        @Override
+        public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+            streamed.incrementAndGet();
+            return super.streaming(resourceId);
+        }
+    }
+
+    /**
+     * 收集交付的数据，finish() 返回完整的内容；paused 不为 null 时每次交付前等待放行
+     */
+    private static class RecordingConsumer implements StreamingConsumer {
+
+        private static final String NAME = "recording";
+
+        private final OverflowPolicy overflowPolicy;
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger aborted = new AtomicInteger();
+        private final AtomicLong received = new AtomicLong();
+        private volatile CountDownLatch paused;
+
+        RecordingConsumer(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        @Override
+        public String name() {
+            return NAME;
+        }
+
+        @Override
+        public OverflowPolicy overflowPolicy() {
+            return overflowPolicy;
+        }
+
+        @Override
+        public StreamingConsumerSession open(UploadResource uploadResource) {
+            opened.incrementAndGet();
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            return new StreamingConsumerSession() {
+                @Override
+                public void accept(byte[] data, int offset, int length) throws Exception {
+                    CountDownLatch latch = paused;
+                    if (Objects.nonNull(latch)) {
+                        latch.await();
+                    }
+                    content.write(data, offset, length);
+                    received.addAndGet(length);
+                }
+
+                @Override
+                public Object finish() {
+                    return content.toByteArray();
+                }
+
+                @Override
+                public void abort() {
+                    aborted.incrementAndGet();
+                }
+            };
+        }
+
+        void awaitReceived(long bytes) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.get() < bytes && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(received.get()).isGreaterThanOrEqualTo(bytes);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package cc.ddrpa.tuskott.tracing;
+
+import cc.ddrpa.tuskott.event.PostCompleteEvent;
+import cc.ddrpa.tuskott.event.TuskottEventCallback;
+import cc.ddrpa.tuskott.event.TuskottEventDispatcher;
+import cc.ddrpa.tuskott.metrics.TuskottMetrics;
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.stream.StreamingConsumer;
+import cc.ddrpa.tuskott.stream.StreamingConsumerSession;
+import cc.ddrpa.tuskott.tus.TuskottProcessor;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.TimeOrderedUploadIdGenerator;
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.resource.UploadResourceTracker;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenTelemetryTracingTest {
+
+    private static final String CALLBACK_SPAN = "tus.event.PostCompleteEvent";
+
+    @TempDir
+    Path uploadDir;
+
+    private InMemorySpanExporter exporter;
+    private SdkTracerProvider tracerProvider;
+    private OpenTelemetryTracing tracing;
+
+    @BeforeEach
+    void setUp() {
+        exporter = InMemorySpanExporter.create();
+        tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+        tracing = new OpenTelemetryTracing(OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Test
+    void storageAndTrackerCallsAreChildrenOfRequestSpan() throws Exception {
+        Storage storage = new TracedStorage(new LocalDiskStorage(Map.of("dir", uploadDir.toString())), tracing);
+        UploadResourceTracker tracker = new TracedUploadResourceTracker(
+                new InMemoryUploadResourceTracker(Map.of()), tracing);
+        SpanContext patchSpan;
+        try (TracingScope scope = tracing.startSpan("tus.patch", "upload")) {
+            patchSpan = Span.current().getSpanContext();
+            tracker.create("upload", 3L, "");
+            storage.create("upload");
+            storage.write("upload", new ByteArrayInputStream(new byte[]{1, 2, 3}), 0L);
+            tracker.patch("upload", 3L);
+            storage.rollback("upload", 3L);
+            scope.setHttpStatus(204);
+        }
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertThat(spans).extracting(SpanData::getName).containsExactly(
+                "tus.tracker.create", "tus.storage.create", "tus.storage.write",
+                "tus.tracker.patch", "tus.storage.rollback", "tus.patch");
+        for (SpanData span : spans.subList(0, spans.size() - 1)) {
+            assertThat(span.getParentSpanId()).isEqualTo(patchSpan.getSpanId());
+            assertThat(span.getAttributes().get(OpenTelemetryTracing.UPLOAD_ID)).isEqualTo("upload");
+        }
+        SpanData patch = spans.get(spans.size() - 1);
+        assertThat(patch.getAttributes().get(OpenTelemetryTracing.HTTP_STATUS)).isEqualTo(204L);
+        assertThat(patch.getStatus().getStatusCode()).isEqualTo(StatusCode.UNSET);
+    }
+
+    @Test
+    void failedStorageCallIsRecordedOnSpan() throws Exception {
+        Storage storage = new TracedStorage(new LocalDiskStorage(Map.of("dir", uploadDir.toString())), tracing);
+
+        assertThatThrownBy(() -> storage.write("missing", new ByteArrayInputStream(new byte[1]), 0L))
+                .isInstanceOf(FileNotFoundException.class);
+
+        SpanData write = exporter.getFinishedSpanItems().get(0);
+        assertThat(write.getName()).isEqualTo("tus.storage.write");
+        assertThat(write.getStatus().getStatusCode()).isEqualTo(StatusCode.ERROR);
+        assertThat(write.getEvents()).extracting(EventData::getName).contains("exception");
+    }
+
+    @Test
+    void completionCallbackIsChildOfFinalPatchSpan() throws Exception {
+        Callbacks callbacks = new Callbacks(1);
+        TuskottEventDispatcher dispatcher = dispatcher(callbacks, "onComplete", PostCompleteEvent.class);
+        SpanContext patchSpan;
+        try (TracingScope scope = tracing.startSpan("tus.patch", "upload")) {
+            patchSpan = Span.current().getSpanContext();
+            dispatcher.dispatch(new PostCompleteEvent(new UploadResource("upload", 3L, "")));
+            scope.setHttpStatus(204);
+        }
+
+        SpanData callback = awaitSpan(CALLBACK_SPAN);
+        assertThat(callbacks.invoked.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(callback.getTraceId()).isEqualTo(patchSpan.getTraceId());
+        assertThat(callback.getParentSpanId()).isEqualTo(patchSpan.getSpanId());
+        assertThat(callback.getStatus().getStatusCode()).isEqualTo(StatusCode.UNSET);
+    }
+
+    /**
+     * 有流式消费者时，完成事件在消费者线程中分发，回调仍然是最后一个 PATCH span 的子 span
+     */
+    @Test
+    void completionCallbackAfterStreamingConsumersIsChildOfFinalPatchSpan() throws Exception {
+        LocalDiskStorage storage = new LocalDiskStorage(Map.of("dir", uploadDir.toString()));
+        InMemoryUploadResourceTracker tracker = new InMemoryUploadResourceTracker(Map.of());
+        tracker.create("upload", 3L, null);
+        storage.create("upload");
+        TuskottProcessor processor = new TuskottProcessor(new TuskottProperties(), tracker, storage,
+                new InMemoryLockProvider(Map.of()), new TimeOrderedUploadIdGenerator(Map.of()),
+                TuskottMetrics.NOOP, tracing);
+        Callbacks callbacks = new Callbacks(1);
+        processor.registerCallBack(List.of(), List.of(new TuskottEventCallback(callbacks,
+                Callbacks.class.getMethod("onComplete", PostCompleteEvent.class), false)), List.of());
+        CountDownLatch finishing = new CountDownLatch(1);
+        processor.registerStreamingConsumers(List.of(new BlockingConsumer(finishing)));
+        try {
+            MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/tus/files/upload");
+            request.addHeader("Tus-Resumable", "1.0.0");
+            request.addHeader("Upload-Offset", "0");
+            request.setContentType("application/offset+octet-stream");
+            request.setContent(new byte[]{1, 2, 3});
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            processor.patch("upload", request, response);
+            assertThat(response.getStatus()).isEqualTo(204);
+            // 请求线程已经离开 PATCH span，消费者才给出结果
+            finishing.countDown();
+
+            SpanData callback = awaitSpan(CALLBACK_SPAN);
+            SpanData patch = awaitSpan("tus.patch");
+            assertThat(callbacks.invoked.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(callback.getTraceId()).isEqualTo(patch.getTraceId());
+            assertThat(callback.getParentSpanId()).isEqualTo(patch.getSpanId());
+        } finally {
+            processor.close();
+        }
+    }
+
+    @Test
+    void failedCallbackMarksSpanAsError() throws Exception {
+        Callbacks callbacks = new Callbacks(1);
+        TuskottEventDispatcher dispatcher = dispatcher(callbacks, "onCompleteFailing", PostCompleteEvent.class);
+        try (TracingScope scope = tracing.startSpan("tus.patch", "upload")) {
+            dispatcher.dispatch(new PostCompleteEvent(new UploadResource("upload", 3L, "")));
+            scope.setHttpStatus(204);
+        }
+
+        SpanData callback = awaitSpan(CALLBACK_SPAN);
+        assertThat(callback.getStatus().getStatusCode()).isEqualTo(StatusCode.ERROR);
+        assertThat(callback.getEvents()).singleElement().satisfies(event -> {
+            assertThat(event.getName()).isEqualTo("exception");
+            assertThat(event.getAttributes().asMap().values()).contains(IllegalStateException.class.getName());
+        });
+    }
+
+    @Test
+    void batchCallbackLinksAllProducingRequests() throws Exception {
+        Callbacks callbacks = new Callbacks(1);
+        TuskottEventDispatcher dispatcher = dispatcher(callbacks, "onCompleteBatch", List.class);
+        SpanContext first;
+        SpanContext second;
+        try (TracingScope scope = tracing.startSpan("tus.patch", "first")) {
+            first = Span.current().getSpanContext();
+            dispatcher.dispatch(new PostCompleteEvent(new UploadResource("first", 3L, "")));
+            scope.setHttpStatus(204);
+        }
+        try (TracingScope scope = tracing.startSpan("tus.patch", "second")) {
+            second = Span.current().getSpanContext();
+            dispatcher.dispatch(new PostCompleteEvent(new UploadResource("second", 3L, "")));
+            scope.setHttpStatus(204);
+        }
+
+        SpanData callback = awaitSpan(CALLBACK_SPAN);
+        assertThat(callback.getParentSpanContext().isValid()).isFalse();
+        assertThat(callback.getLinks()).extracting(LinkData::getSpanContext).containsExactly(first, second);
+        dispatcher.close();
+    }
+
+    private TuskottEventDispatcher dispatcher(Callbacks callbacks, String methodName, Class<?> parameterType)
+            throws NoSuchMethodException {
+        boolean batch = List.class.equals(parameterType);
+        TuskottEventDispatcher dispatcher = new TuskottEventDispatcher(2, 60_000L, TuskottMetrics.NOOP, tracing);
+        TuskottEventCallback callback = new TuskottEventCallback(callbacks,
+                Callbacks.class.getMethod(methodName, parameterType), batch);
+        dispatcher.register(List.of(), List.of(callback), List.of());
+        return dispatcher;
+    }
+
+    /**
+     * 回调 span 在回调返回之后才结束，需要等待导出
+     */
+    private SpanData awaitSpan(String name) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            for (SpanData span : exporter.getFinishedSpanItems()) {
+                if (span.getName().equals(name)) {
+                    return span;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Span " + name + " was not exported");
+    }
+
+    /**
+     * 在 finishing 计数归零之前不给出结果
+     */
+    private record BlockingConsumer(CountDownLatch finishing) implements StreamingConsumer {
+
+        @Override
+        public String name() {
+            return "blocking";
+        }
+
+        @Override
+        public StreamingConsumerSession open(UploadResource uploadResource) {
+            return new StreamingConsumerSession() {
+                @Override
+                public void accept(byte[] data, int offset, int length) {
+                }
+
+                @Override
+                public Object finish() throws InterruptedException {
+                    finishing.await(5, TimeUnit.SECONDS);
+                    return "done";
+                }
+            };
+        }
+    }
+
+    public static class Callbacks {
+
+        private final CountDownLatch invoked;
+
+        Callbacks(int count) {
+            this.invoked = new CountDownLatch(count);
+        }
+
+        public void onComplete(PostCompleteEvent event) {
+            invoked.countDown();
+        }
+
+        public void onCompleteFailing(PostCompleteEvent event) {
+            invoked.countDown();
+            throw new IllegalStateException("callback failed");
+        }
+
+        public void onCompleteBatch(List<PostCompleteEvent> events) {
+            invoked.countDown();
+        }
+    }
+}
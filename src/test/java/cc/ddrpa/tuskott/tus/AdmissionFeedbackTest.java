@@ -0,0 +1,187 @@
+package cc.ddrpa.tuskott.tus;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.metrics.TuskottMetrics;
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tracing.TuskottTracing;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.TimeOrderedUploadIdGenerator;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import cc.ddrpa.tuskott.tus.storage.Storage;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 准入控制的反馈只反映服务端的处理耗时，发送缓慢的客户端不会让全局上限缩小
+ */
+class AdmissionFeedbackTest {
+
+    private static final String RESOURCE_ID = "upload";
+    private static final int CHUNK_SIZE = 128 * 1024;
+    // 每次写入在服务端固定花费的时间，使采样不受写入页缓存时的抖动影响
+    private static final long STORAGE_PAUSE_MILLIS = 10L;
+
+    @TempDir
+    Path uploadDir;
+
+    private final List<Integer> limitChanges = new CopyOnWriteArrayList<>();
+    private InMemoryUploadResourceTracker tracker;
+    private TuskottProcessor processor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TuskottProperties properties = new TuskottProperties();
+        TuskottProperties.Admission admission = properties.getAdmission();
+        admission.setEnable(true);
+        admission.setInitialLimit(8);
+        admission.setMinLimit(1);
+        admission.setMaxLimit(8);
+        admission.setBackoffRatio(0.5);
+        Storage storage = new SteadyStorage(new LocalDiskStorage(Map.of("dir", uploadDir.toString())));
+        tracker = new InMemoryUploadResourceTracker(Map.of());
+        tracker.create(RESOURCE_ID, CHUNK_SIZE * 16L, null);
+        storage.create(RESOURCE_ID);
+        TuskottMetrics metrics = new TuskottMetrics() {
+            @Override
+            public void admissionLimitChanged(int limit) {
+                limitChanges.add(limit);
+            }
+        };
+        processor = new TuskottProcessor(properties, tracker, storage, new InMemoryLockProvider(Map.of()),
+                new TimeOrderedUploadIdGenerator(Map.of()), metrics, TuskottTracing.NOOP);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.close();
+    }
+
+    @Test
+    void slowClientsDoNotShrinkTheLimit() throws Exception {
+        // 先以正常速度写入，建立每字节耗时的基线
+        for (int i = 0; i < 4; i++) {
+            assertThat(patch(0L).getStatus()).isEqualTo(204);
+        }
+        // 客户端每发送 8 KiB 就停顿 2 毫秒，整个请求的每字节耗时是基线的数倍
+        for (int i = 0; i < 4; i++) {
+            assertThat(patch(2L).getStatus()).isEqualTo(204);
+        }
+
+        assertThat(limitChanges).containsOnly(8);
+    }
+
+    private MockHttpServletResponse patch(long pauseMillisPerRead) throws Exception {
+        long offset = tracker.head(RESOURCE_ID).getUploadOffset();
+        SlowRequest request = new SlowRequest(new byte[CHUNK_SIZE], pauseMillisPerRead);
+        request.addHeader("Tus-Resumable", "1.0.0");
+        request.addHeader("Upload-Offset", String.valueOf(offset));
+        request.setContentType("application/offset+octet-stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        processor.patch(RESOURCE_ID, request, response);
+        return response;
+    }
+
+    /**
+     * 每次写入前停顿固定的时间，模拟耗时稳定的存储
+     */
+    private static class SteadyStorage implements Storage {
+
+        private final Storage delegate;
+
+        SteadyStorage(Storage delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void create(String resourceId) throws BlobAccessException, IOException {
+            delegate.create(resourceId);
+        }
+
+        @Override
+        public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+                throws BlobAccessException, IOException {
+            LockSupport.parkNanos(STORAGE_PAUSE_MILLIS * 1_000_000L);
+            return delegate.write(resourceId, inputStream, uploadOffset);
+        }
+
+        @Override
+        public void remove(List<String> resourceIds) {
+            delegate.remove(resourceIds);
+        }
+
+        @Override
+        public void remove(String resourceId) {
+            delegate.remove(resourceId);
+        }
+
+        @Override
+        public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+            return delegate.streaming(resourceId);
+        }
+    }
+
+    /**
+     * 每次读取最多返回 8 KiB，并在返回前停顿，模拟网络较慢的客户端
+     */
+    private static class SlowRequest extends MockHttpServletRequest {
+
+        private final ServletInputStream inputStream;
+
+        SlowRequest(byte[] body, long pauseMillisPerRead) {
+            super("PATCH", "/tus/files/" + RESOURCE_ID);
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            this.inputStream = new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (pauseMillisPerRead > 0) {
+                        LockSupport.parkNanos(pauseMillisPerRead * 1_000_000L);
+                    }
+                    return in.read(b, off, Math.min(len, 8192));
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return inputStream;
+        }
+    }
+}
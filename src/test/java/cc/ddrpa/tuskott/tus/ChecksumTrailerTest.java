@@ -0,0 +1,252 @@
+package cc.ddrpa.tuskott.tus;
+
+import cc.ddrpa.tuskott.metrics.MicrometerTuskottMetrics;
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tracing.TuskottTracing;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.TimeOrderedUploadIdGenerator;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 通过 trailer 提供 Upload-Checksum 的 PATCH，请求对象模拟 Tomcat 的行为：读到请求体 EOF 之后 trailer 才可用
+ */
+class ChecksumTrailerTest {
+
+    private static final String RESOURCE_ID = "upload";
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalDiskStorage storage;
+    private InMemoryUploadResourceTracker tracker;
+    private TuskottProcessor processor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = new LocalDiskStorage(Map.of("dir", uploadDir.toString()));
+        tracker = new InMemoryUploadResourceTracker(Map.of());
+        processor = new TuskottProcessor(new TuskottProperties(), tracker, storage, new InMemoryLockProvider(Map.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.close();
+    }
+
+    @Test
+    void singlePatchUploadWithTrailerCompletes() throws Exception {
+        byte[] body = "hello, trailer".getBytes();
+        tracker.create(RESOURCE_ID, (long) body.length, null);
+        storage.create(RESOURCE_ID);
+
+        MockHttpServletResponse response = patch(body, sha256(body));
+
+        assertThat(response.getStatus()).isEqualTo(204);
+        assertThat(response.getHeader("Upload-Offset")).isEqualTo(String.valueOf(body.length));
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void bodyLongerThanTheRemainingUploadIsRejected() throws Exception {
+        byte[] body = "hello, trailer".getBytes();
+        tracker.create(RESOURCE_ID, 5L, null);
+        storage.create(RESOURCE_ID);
+
+        MockHttpServletResponse response = patch(body, sha256(body));
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(tracker.head(RESOURCE_ID).getUploadOffset()).isZero();
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEmpty();
+        }
+    }
+
+    @Test
+    void mismatchedTrailerRollsBack() throws Exception {
+        byte[] body = "hello, trailer".getBytes();
+        tracker.create(RESOURCE_ID, (long) body.length, null);
+        storage.create(RESOURCE_ID);
+
+        MockHttpServletResponse response = patch(body, sha256("something else".getBytes()));
+
+        assertThat(response.getStatus()).isEqualTo(460);
+        assertThat(tracker.head(RESOURCE_ID).getUploadOffset()).isZero();
+    }
+
+    /**
+     * trailer 中声明的算法要记录到指标与 JFR 事件中，校验失败的请求也一样
+     */
+    @Test
+    void trailerAlgorithmIsReported() throws Exception {
+        byte[] body = "hello, trailer".getBytes();
+        tracker.create(RESOURCE_ID, (long) body.length, null);
+        storage.create(RESOURCE_ID);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TuskottProcessor meteredProcessor = new TuskottProcessor(new TuskottProperties(), tracker, storage,
+                new InMemoryLockProvider(Map.of()), new TimeOrderedUploadIdGenerator(Map.of()),
+                new MicrometerTuskottMetrics(registry), TuskottTracing.NOOP);
+        Path dump = Files.createTempFile("tuskott", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("cc.ddrpa.tuskott.Patch").withThreshold(Duration.ZERO);
+            recording.start();
+            assertThat(patch(meteredProcessor, body, sha256("something else".getBytes())).getStatus()).isEqualTo(460);
+            assertThat(patch(meteredProcessor, body, sha256(body)).getStatus()).isEqualTo(204);
+            recording.stop();
+            recording.dump(dump);
+        } finally {
+            meteredProcessor.close();
+        }
+
+        assertThat(registry.find("tuskott.patch").tag("checksum", "sha256").timer().count()).isEqualTo(2);
+        assertThat(registry.find("tuskott.patch").tag("checksum", "none").timer().count()).isZero();
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        assertThat(events).filteredOn(event -> "cc.ddrpa.tuskott.Patch".equals(event.getEventType().getName()))
+                .extracting(event -> event.getString("checksumAlgorithm"))
+                .containsExactly("sha256", "sha256");
+    }
+
+    /**
+     * 未录制时不分配 ChecksumEvent 与 TrackerCallEvent，开始录制后两者都被提交
+     */
+    @Test
+    void checksumAndTrackerEventsAreRecordedOnlyWhenEnabled() throws Exception {
+        byte[] body = "hello, trailer".getBytes();
+        tracker.create(RESOURCE_ID, (long) body.length, null);
+        storage.create(RESOURCE_ID);
+        assertThat(patch(body, sha256("something else".getBytes())).getStatus()).isEqualTo(460);
+
+        Path dump = Files.createTempFile("tuskott", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("cc.ddrpa.tuskott.Checksum").withThreshold(Duration.ZERO);
+            recording.enable("cc.ddrpa.tuskott.TrackerCall").withThreshold(Duration.ZERO);
+            recording.start();
+            assertThat(patch(body, sha256(body)).getStatus()).isEqualTo(204);
+            recording.stop();
+            recording.dump(dump);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.delete(dump);
+        assertThat(events).filteredOn(event -> "cc.ddrpa.tuskott.Checksum".equals(event.getEventType().getName()))
+                .singleElement()
+                .satisfies(event -> {
+                    assertThat(event.getString("algorithm")).isEqualTo("sha256");
+                    assertThat(event.getBoolean("matched")).isTrue();
+                    assertThat(event.getLong("bytes")).isEqualTo(body.length);
+                });
+        assertThat(events).filteredOn(event -> "cc.ddrpa.tuskott.TrackerCall".equals(event.getEventType().getName()))
+                .extracting(event -> event.getString("operation"))
+                .contains("patch");
+    }
+
+    private MockHttpServletResponse patch(byte[] body, String checksum) throws Exception {
+        return patch(processor, body, checksum);
+    }
+
+    private static MockHttpServletResponse patch(TuskottProcessor processor, byte[] body, String checksum)
+            throws Exception {
+        TrailerRequest request = new TrailerRequest(body, Map.of("upload-checksum", checksum));
+        request.addHeader("Tus-Resumable", "1.0.0");
+        request.addHeader("Upload-Offset", "0");
+        request.addHeader("Trailer", "Upload-Checksum");
+        request.setContentType("application/offset+octet-stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        processor.patch(RESOURCE_ID, request, response);
+        return response;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return "sha256 " + Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    /**
+     * 与 Tomcat 一致，只有在请求体读到 EOF 之后才解析 trailer
+     */
+    private static class TrailerRequest extends MockHttpServletRequest {
+
+        private final Map<String, String> trailers;
+        private final ServletInputStream inputStream;
+        private boolean eof;
+
+        TrailerRequest(byte[] body, Map<String, String> trailers) {
+            super("PATCH", "/tus/files/" + RESOURCE_ID);
+            this.trailers = trailers;
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            this.inputStream = new ServletInputStream() {
+                @Override
+                public int read() {
+                    int ch = in.read();
+                    eof |= ch == -1;
+                    return ch;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    int n = in.read(b, off, len);
+                    eof |= n == -1;
+                    return n;
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return eof;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public boolean isTrailerFieldsReady() {
+            return eof;
+        }
+
+        @Override
+        public Map<String, String> getTrailerFields() {
+            if (!eof) {
+                throw new IllegalStateException("Trailer fields are not ready");
+            }
+            return trailers;
+        }
+    }
+}
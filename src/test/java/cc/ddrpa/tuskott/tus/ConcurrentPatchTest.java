@@ -0,0 +1,189 @@
+package cc.ddrpa.tuskott.tus;
+
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.lock.LockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 多个线程同时向同一个上传发送 PATCH 时，已提交的偏移量只能前进，且每个偏移量只被一个请求写入
+ */
+class ConcurrentPatchTest {
+
+    private static final String RESOURCE_ID = "upload";
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalDiskStorage storage;
+    private RecordingTracker tracker;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = new LocalDiskStorage(Map.of("dir", uploadDir.toString()));
+        tracker = new RecordingTracker();
+    }
+
+    /**
+     * 两个 PATCH 都在加锁前通过了偏移量检查，随后先后拿到锁：后一个请求必须得到 409，而不是从过期的偏移量写入
+     */
+    @Test
+    void patchesThatPassedTheOffsetCheckTogetherHaveExactlyOneWinner() throws Exception {
+        CyclicBarrier bothChecked = new CyclicBarrier(2);
+        TuskottProcessor processor = processor(new BlockingLockProvider(bothChecked), 8L);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<MockHttpServletResponse> first = executor.submit(() -> patch(processor, 0L, chunk(0L, 4)));
+            Future<MockHttpServletResponse> second = executor.submit(() -> patch(processor, 0L, chunk(0L, 4)));
+            List<Integer> statuses = List.of(first.get(10, TimeUnit.SECONDS).getStatus(),
+                    second.get(10, TimeUnit.SECONDS).getStatus());
+
+            assertThat(statuses).containsExactlyInAnyOrder(204, 409);
+            assertThat(tracker.committedOffsets).containsExactly(4L);
+            assertThat(tracker.head(RESOURCE_ID).getUploadOffset()).isEqualTo(4L);
+        } finally {
+            executor.shutdownNow();
+            processor.close();
+        }
+    }
+
+    @Test
+    void committedOffsetsAdvanceMonotonicallyUnderContention() throws Exception {
+        int threads = 8;
+        int chunkSize = 3;
+        long uploadLength = 3_000L;
+        TuskottProcessor processor = processor(new InMemoryLockProvider(Map.of()), uploadLength);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        try {
+            List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    List<Integer> statuses = new ArrayList<>();
+                    start.await();
+                    while (true) {
+                        long offset = tracker.head(RESOURCE_ID).getUploadOffset();
+                        if (offset >= uploadLength) {
+                            return statuses;
+                        }
+                        int len = (int) Math.min(chunkSize, uploadLength - offset);
+                        statuses.add(patch(processor, offset, chunk(offset, len)).getStatus());
+                    }
+                }));
+            }
+            List<Integer> statuses = new ArrayList<>();
+            for (Future<List<Integer>> future : futures) {
+                statuses.addAll(future.get(60, TimeUnit.SECONDS));
+            }
+
+            assertThat(statuses).allMatch(status -> status == 204 || status == 409 || status == 423);
+            assertThat(statuses.stream().filter(status -> status == 204).count())
+                    .isEqualTo(uploadLength / chunkSize);
+            assertThat(tracker.committedOffsets).isSorted().doesNotHaveDuplicates();
+            assertThat(tracker.committedOffsets.get(tracker.committedOffsets.size() - 1)).isEqualTo(uploadLength);
+            try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+                assertThat(inputStream.readAllBytes()).isEqualTo(chunk(0L, (int) uploadLength));
+            }
+        } finally {
+            executor.shutdownNow();
+            processor.close();
+        }
+    }
+
+    private TuskottProcessor processor(LockProvider lockProvider, long uploadLength) throws Exception {
+        tracker.create(RESOURCE_ID, uploadLength, null);
+        storage.create(RESOURCE_ID);
+        return new TuskottProcessor(new TuskottProperties(), tracker, storage, lockProvider);
+    }
+
+    private static MockHttpServletResponse patch(TuskottProcessor processor, long offset, byte[] body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/tus/files/" + RESOURCE_ID);
+        request.addHeader("Tus-Resumable", "1.0.0");
+        request.addHeader("Upload-Offset", String.valueOf(offset));
+        request.setContentType("application/offset+octet-stream");
+        request.setContent(body);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        processor.patch(RESOURCE_ID, request, response);
+        return response;
+    }
+
+    /**
+     * 每个字节的取值只由它在文件中的位置决定，写错位置的数据可以通过比较最终内容发现
+     */
+    private static byte[] chunk(long offset, int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) {
+            bytes[i] = (byte) ((offset + i) % 251);
+        }
+        return bytes;
+    }
+
+    /**
+     * 按提交顺序记录每一次更新的偏移量
+     */
+    private static class RecordingTracker extends InMemoryUploadResourceTracker {
+
+        private final List<Long> committedOffsets = new CopyOnWriteArrayList<>();
+
+        RecordingTracker() {
+            super(Map.of());
+        }
+
+        @Override
+        public synchronized UploadResource patch(String resourceId, long newUploadOffset) {
+            committedOffsets.add(newUploadOffset);
+            return super.patch(resourceId, newUploadOffset);
+        }
+    }
+
+    /**
+     * 等两个请求都通过偏移量检查后再排队加锁，稳定复现"检查后、加锁前"的竞争窗口
+     */
+    private static class BlockingLockProvider implements LockProvider {
+
+        private final CyclicBarrier barrier;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        BlockingLockProvider(CyclicBarrier barrier) {
+            this.barrier = barrier;
+        }
+
+        @Override
+        public boolean acquire(String id) {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            lock.lock();
+            return true;
+        }
+
+        @Override
+        public void release(String id) {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cc.ddrpa.tuskott.tus;
+
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import cc.ddrpa.tuskott.tus.resource.UploadResource;
+import cc.ddrpa.tuskott.tus.storage.LocalDiskStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExpirationTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private LocalDiskStorage storage;
+    private InMemoryUploadResourceTracker tracker;
+    private InMemoryLockProvider lockProvider;
+    private TuskottProcessor processor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storage = new LocalDiskStorage(Map.of("dir", uploadDir.toString()));
+        tracker = new ExpiredTracker();
+        lockProvider = new InMemoryLockProvider(Map.of());
+        processor = new TuskottProcessor(new TuskottProperties(), tracker, storage, lockProvider);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.close();
+    }
+
+    /**
+     * 正在处理 PATCH（持有锁）的上传不会被删除，锁释放后的下一次清理才删除
+     */
+    @Test
+    void uploadsWithAHeldLockAreSkipped() throws Exception {
+        for (String id : new String[]{"idle", "busy"}) {
+            tracker.create(id, 10L, null);
+            storage.create(id);
+        }
+        assertThat(lockProvider.acquire("busy")).isTrue();
+
+        assertThat(processor.removeExpiredUploadResources()).isEqualTo(1);
+        assertThat(tracker.head("idle")).isNull();
+        assertThatThrownBy(() -> storage.streaming("idle")).isInstanceOf(FileNotFoundException.class);
+        assertThat(tracker.head("busy")).isNotNull();
+        storage.streaming("busy").close();
+        // 清理结束后释放锁
+        assertThat(lockProvider.acquire("idle")).isTrue();
+        lockProvider.release("idle");
+
+        lockProvider.release("busy");
+        assertThat(processor.removeExpiredUploadResources()).isEqualTo(1);
+        assertThat(tracker.head("busy")).isNull();
+        assertThat(lockProvider.acquire("busy")).isTrue();
+    }
+
+    /**
+     * 所有上传都视为已过期
+     */
+    private static class ExpiredTracker extends InMemoryUploadResourceTracker {
+
+        ExpiredTracker() {
+            super(Map.of());
+        }
+
+        @Override
+        public Stream<UploadResource> filter(Predicate<UploadResource> predicate) {
+            return super.filter(resource -> true);
+        }
+    }
+}
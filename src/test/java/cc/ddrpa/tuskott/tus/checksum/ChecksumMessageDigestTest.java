@@ -0,0 +1,78 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 已知答案测试，覆盖不足 32 字节（XXH64 只走尾部处理）与超过 32 字节（经过 32 字节条带）的输入
+ */
+class ChecksumMessageDigestTest {
+
+    private static final String QUICK_BROWN_FOX = "The quick brown fox jumps over the lazy dog";
+
+    @Test
+    void xxh64KnownAnswers() {
+        assertKnownAnswers(() -> new ChecksumMessageDigest("XXH64", new XxHash64(), Long.BYTES), Map.of(
+                "", "ef46db3751d8e999",
+                "a", "d24ec4f1a98c6e5b",
+                "abc", "44bc2cf5ad770999",
+                "Nobody inspects the spammish repetition", "fbcea83c8a378bf1",
+                QUICK_BROWN_FOX, "0b242d361fda71bc"));
+        assertThat(digest(() -> new ChecksumMessageDigest("XXH64", new XxHash64(), Long.BYTES), sequence(100)))
+                .isEqualTo("6ac1e58032166597");
+    }
+
+    @Test
+    void crc32cKnownAnswers() {
+        assertKnownAnswers(() -> new ChecksumMessageDigest("CRC32C", new CRC32C(), Integer.BYTES), Map.of(
+                "", "00000000",
+                "123456789", "e3069283",
+                QUICK_BROWN_FOX, "22620404"));
+        // RFC 3720 B.4
+        assertThat(digest(() -> new ChecksumMessageDigest("CRC32C", new CRC32C(), Integer.BYTES), new byte[32]))
+                .isEqualTo("8a9136aa");
+        assertThat(digest(() -> new ChecksumMessageDigest("CRC32C", new CRC32C(), Integer.BYTES), sequence(100)))
+                .isEqualTo("c1caebe5");
+    }
+
+    private static void assertKnownAnswers(Supplier<MessageDigest> digestSupplier, Map<String, String> answers) {
+        answers.forEach((input, expected) ->
+                assertThat(digest(digestSupplier, input.getBytes(StandardCharsets.US_ASCII)))
+                        .as(input).isEqualTo(expected));
+    }
+
+    /**
+     * 一次性、逐字节与跨越条带边界分段输入的结果必须一致，digest() 之后可以复用
+     */
+    private static String digest(Supplier<MessageDigest> digestSupplier, byte[] input) {
+        MessageDigest messageDigest = digestSupplier.get();
+        String whole = HexFormat.of().formatHex(messageDigest.digest(input));
+
+        for (byte b : input) {
+            messageDigest.update(b);
+        }
+        assertThat(HexFormat.of().formatHex(messageDigest.digest())).isEqualTo(whole);
+
+        for (int offset = 0, length = 1; offset < input.length; offset += length, length += 7) {
+            messageDigest.update(input, offset, Math.min(length, input.length - offset));
+        }
+        assertThat(HexFormat.of().formatHex(messageDigest.digest())).isEqualTo(whole);
+        return whole;
+    }
+
+    private static byte[] sequence(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+}
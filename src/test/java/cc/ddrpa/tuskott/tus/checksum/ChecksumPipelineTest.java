@@ -0,0 +1,77 @@
+package cc.ddrpa.tuskott.tus.checksum;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChecksumPipelineTest {
+
+    private ChecksumPipeline pipeline;
+    private final byte[] data = new byte[100_000];
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new ChecksumPipeline(1, 4096, 4);
+        new Random(42).nextBytes(data);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.close();
+    }
+
+    @Test
+    void digestMatchesSequentialComputation() throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        try (PipelinedDigestInputStream inputStream = pipeline.wrap(new ByteArrayInputStream(data), messageDigest)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(data);
+            assertThat(inputStream.digest()).isEqualTo(MessageDigest.getInstance("SHA-256").digest(data));
+        }
+        assertThat(pipeline.isReleased(messageDigest)).isTrue();
+    }
+
+    /**
+     * 请求线程在等待摘要时被中断，后台线程还没有处理完数据，此时摘要不能被复用
+     */
+    @Test
+    void digestIsNotReleasedWhileTheDigesterStillUsesIt() throws Exception {
+        CountDownLatch digesterBlocked = new CountDownLatch(1);
+        // 占住唯一的后台线程，让提交的数据块排队
+        pipeline.executor().execute(() -> {
+            try {
+                digesterBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        PipelinedDigestInputStream inputStream = pipeline.wrap(
+                new ByteArrayInputStream(data, 0, 4096 * 3), messageDigest);
+        inputStream.readAllBytes();
+
+        Thread.currentThread().interrupt();
+        assertThatThrownBy(inputStream::digest).isInstanceOf(InterruptedIOException.class);
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(pipeline.isReleased(messageDigest)).isFalse();
+
+        digesterBlocked.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!pipeline.isReleased(messageDigest) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pipeline.isReleased(messageDigest)).isTrue();
+        assertThat(inputStream.digest()).isEqualTo(MessageDigest.getInstance("SHA-256").digest(
+                Arrays.copyOf(data, 4096 * 3)));
+    }
+}
@@ -0,0 +1,58 @@
+package cc.ddrpa.tuskott.tus.lock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryLockProviderTest {
+
+    @Test
+    void atMostOneHolderPerId() throws Exception {
+        InMemoryLockProvider lockProvider = new InMemoryLockProvider(Map.of());
+        int threads = 8;
+        int rounds = 20_000;
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    int acquired = 0;
+                    for (int i = 0; i < rounds; i++) {
+                        if (lockProvider.acquire("upload")) {
+                            maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                            holders.decrementAndGet();
+                            lockProvider.release("upload");
+                            acquired++;
+                        }
+                    }
+                    return acquired;
+                }));
+            }
+            int acquired = 0;
+            for (Future<Integer> future : futures) {
+                acquired += future.get(60, TimeUnit.SECONDS);
+            }
+
+            assertThat(maxHolders.get()).isEqualTo(1);
+            assertThat(acquired).isPositive();
+            // 所有持有者都已释放，锁可以再次获取
+            assertThat(lockProvider.acquire("upload")).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompressingStorageTest {
+
+    private static final String RESOURCE_ID = "upload";
+    private static final int FRAME_SIZE = 64;
+
+    @TempDir
+    Path storageDir;
+
+    /**
+     * 多次 PATCH 的长度都不是帧大小的整数倍，读取时逐帧解压还原
+     */
+    @Test
+    void multiPatchRoundTrip() throws Exception {
+        byte[] data = text(300);
+        CompressingStorage storage = newStorage();
+        storage.create(RESOURCE_ID);
+        long offset = 0L;
+        for (int length : new int[]{100, 37, 163}) {
+            offset = storage.write(RESOURCE_ID, slice(data, offset, length), offset);
+        }
+        storage.complete(RESOURCE_ID);
+
+        assertThat(offset).isEqualTo(data.length);
+        assertThat(read(storage)).isEqualTo(data);
+        assertThat(storage.getRawBytes()).isEqualTo(data.length);
+        assertThat(storage.getStoredBytes()).isLessThan(data.length);
+        assertThat(storageDir.resolve(RESOURCE_ID)).hasSize(storage.getStoredBytes());
+    }
+
+    /**
+     * 回退到帧中间时，该帧的前半部分被重新压缩为一个新帧
+     */
+    @Test
+    void rollbackIntoTheMiddleOfAFrameRecompressesThePrefix() throws Exception {
+        byte[] data = text(200);
+        CompressingStorage storage = newStorage();
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, slice(data, 0L, 100), 0L);
+
+        // 帧为 [0, 64) 与 [64, 100)，回退到第二帧中间
+        storage.rollback(RESOURCE_ID, 80L);
+        assertThat(read(storage)).isEqualTo(Arrays.copyOf(data, 80));
+        assertThatThrownBy(() -> storage.write(RESOURCE_ID, slice(data, 100L, 100), 100L))
+                .isInstanceOf(BlobAccessException.class);
+
+        assertThat(storage.write(RESOURCE_ID, slice(data, 80L, 120), 80L)).isEqualTo(data.length);
+        assertThat(read(storage)).isEqualTo(data);
+        assertThat(read(newStorage())).isEqualTo(data);
+    }
+
+    /**
+     * 被包装的 Storage 只写入了一帧的一部分时丢弃该帧，客户端从最后一个完整帧的末尾续传
+     */
+    @Test
+    void truncatedWriteDropsThePartialFrame() throws Exception {
+        // 随机数据无法压缩，每帧按原样保存，物理偏移量与逻辑偏移量一致
+        byte[] data = new byte[200];
+        new Random(200).nextBytes(data);
+        TruncatingStorage delegate = new TruncatingStorage(new LocalDiskStorage(Map.of("dir", storageDir.toString())));
+        CompressingStorage storage = new CompressingStorage(delegate, FRAME_SIZE, 1);
+        storage.create(RESOURCE_ID);
+
+        delegate.limit = 100;
+        assertThat(storage.write(RESOURCE_ID, slice(data, 0L, 200), 0L)).isEqualTo(FRAME_SIZE);
+        assertThat(storageDir.resolve(RESOURCE_ID)).hasSize(FRAME_SIZE);
+        assertThat(read(storage)).isEqualTo(Arrays.copyOf(data, FRAME_SIZE));
+
+        assertThat(storage.write(RESOURCE_ID, slice(data, FRAME_SIZE, 200 - FRAME_SIZE), (long) FRAME_SIZE))
+                .isEqualTo(data.length);
+        assertThat(read(storage)).isEqualTo(data);
+    }
+
+    /**
+     * 服务重启后从 .idx 加载帧索引，忽略末尾不完整的记录
+     */
+    @Test
+    void indexIsReloadedAfterRestart() throws Exception {
+        byte[] data = text(300);
+        CompressingStorage storage = newStorage();
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, slice(data, 0L, 150), 0L);
+        // 模拟写入索引时进程退出留下的半条记录
+        Files.write(storageDir.resolve(RESOURCE_ID + ".idx"), new byte[5], StandardOpenOption.APPEND);
+
+        CompressingStorage restarted = newStorage();
+        assertThat(read(restarted)).isEqualTo(Arrays.copyOf(data, 150));
+        assertThatThrownBy(() -> restarted.write(RESOURCE_ID, slice(data, 0L, 150), 0L))
+                .isInstanceOf(BlobAccessException.class);
+        assertThat(restarted.write(RESOURCE_ID, slice(data, 150L, 150), 150L)).isEqualTo(data.length);
+        assertThat(read(restarted)).isEqualTo(data);
+    }
+
+    private CompressingStorage newStorage() throws IOException {
+        return new CompressingStorage(new LocalDiskStorage(Map.of("dir", storageDir.toString())), FRAME_SIZE, 1);
+    }
+
+    private static byte[] read(Storage storage) throws Exception {
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static InputStream slice(byte[] data, long offset, int length) {
+        return new ByteArrayInputStream(data, (int) offset, length);
+    }
+
+    private static byte[] text(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; text.length() < length; line++) {
+            text.append("line ").append(line).append(" status=200\n");
+        }
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.US_ASCII), length);
+    }
+
+    /**
+     * 下一次写入数据文件时只写入前 limit 个字节，模拟磁盘写满或连接中断
+     */
+    private static class TruncatingStorage implements Storage {
+
+        private final Storage delegate;
+        private int limit = -1;
+
+        TruncatingStorage(Storage delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void create(String resourceId) throws BlobAccessException, IOException {
+            delegate.create(resourceId);
+        }
+
+        @Override
+        public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+                throws BlobAccessException, IOException {
+            if (limit >= 0 && !resourceId.endsWith(".idx")) {
+                byte[] head = inputStream.readNBytes(limit);
+                limit = -1;
+                return delegate.write(resourceId, new ByteArrayInputStream(head), uploadOffset);
+            }
+            return delegate.write(resourceId, inputStream, uploadOffset);
+        }
+
+        @Override
+        public void rollback(String resourceId, Long offset) {
+            delegate.rollback(resourceId, offset);
+        }
+
+        @Override
+        public void complete(String resourceId) throws BlobAccessException, IOException {
+            delegate.complete(resourceId);
+        }
+
+        @Override
+        public void remove(List<String> resourceIds) {
+            delegate.remove(resourceIds);
+        }
+
+        @Override
+        public void remove(String resourceId) {
+            delegate.remove(resourceId);
+        }
+
+        @Override
+        public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+            return delegate.streaming(resourceId);
+        }
+
+        @Override
+        public long usableSpace() {
+            return delegate.usableSpace();
+        }
+
+        @Override
+        public long totalSpace() {
+            return delegate.totalSpace();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 在进程内运行的 S3 兼容服务，只实现 S3MultipartStorage 用到的请求，不校验签名
+ * <p>
+ * 合并分片时严格检查分片序号连续且 ETag 与已上传的分片一致，与真实的对象存储一样拒绝不存在的分片。
+ */
+class FakeS3Server implements AutoCloseable {
+
+    private static final Pattern PART_PATTERN =
+            Pattern.compile("<Part><PartNumber>(\\d+)</PartNumber><ETag>([^<]*)</ETag></Part>");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final HttpServer server;
+    private final String bucket;
+    private final AtomicInteger uploadCounter = new AtomicInteger();
+    // uploadId -> 分片序号 -> 分片数据
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    // 最近一次成功合并的分片长度
+    private volatile List<Integer> lastCompletedPartSizes = List.of();
+    // 接下来若干次的分片上传或合并请求返回 HTTP 500
+    final AtomicInteger failUploadPart = new AtomicInteger();
+    final AtomicInteger failComplete = new AtomicInteger();
+
+    FakeS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    byte[] object(String key) {
+        return objects.get(key);
+    }
+
+    int pendingUploads() {
+        return uploads.size();
+    }
+
+    List<Integer> lastCompletedPartSizes() {
+        return lastCompletedPartSizes;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String prefix = "/" + bucket + "/";
+            String path = exchange.getRequestURI().getPath();
+            if (!path.startsWith(prefix)) {
+                respond(exchange, 404, "<Error><Code>NoSuchBucket</Code></Error>");
+                return;
+            }
+            String key = path.substring(prefix.length());
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] body;
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                body = inputStream.readAllBytes();
+            }
+            switch (exchange.getRequestMethod()) {
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        String uploadId = "upload-" + uploadCounter.incrementAndGet();
+                        uploads.put(uploadId, new ConcurrentHashMap<>());
+                        respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + uploadId
+                                + "</UploadId></InitiateMultipartUploadResult>");
+                    } else {
+                        completeMultipartUpload(exchange, key, query.get("uploadId"),
+                                new String(body, StandardCharsets.UTF_8));
+                    }
+                }
+                case "PUT" -> {
+                    Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+                    if (Objects.isNull(parts)) {
+                        respond(exchange, 404, "<Error><Code>NoSuchUpload</Code></Error>");
+                    } else if (failUploadPart.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                        respond(exchange, 500, "<Error><Code>InternalError</Code></Error>");
+                    } else {
+                        int partNumber = Integer.parseInt(query.get("partNumber"));
+                        parts.put(partNumber, body);
+                        exchange.getResponseHeaders().add("ETag", etagOf(partNumber, body));
+                        respond(exchange, 200, "");
+                    }
+                }
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    respond(exchange, 204, "");
+                }
+                case "GET" -> getRange(exchange, key);
+                default -> respond(exchange, 405, "");
+            }
+        }
+    }
+
+    private void completeMultipartUpload(HttpExchange exchange, String key, String uploadId, String body)
+            throws IOException {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (Objects.isNull(parts)) {
+            respond(exchange, 404, "<Error><Code>NoSuchUpload</Code></Error>");
+            return;
+        }
+        if (failComplete.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            respond(exchange, 500, "<Error><Code>InternalError</Code></Error>");
+            return;
+        }
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        List<Integer> partSizes = new ArrayList<>();
+        Matcher matcher = PART_PATTERN.matcher(body);
+        int expectedPartNumber = 1;
+        while (matcher.find()) {
+            int partNumber = Integer.parseInt(matcher.group(1));
+            byte[] part = parts.get(partNumber);
+            if (partNumber != expectedPartNumber++ || Objects.isNull(part)
+                    || !etagOf(partNumber, part).equals(matcher.group(2).replace("&quot;", "\""))) {
+                respond(exchange, 400, "<Error><Code>InvalidPart</Code><PartNumber>" + partNumber
+                        + "</PartNumber></Error>");
+                return;
+            }
+            object.write(part);
+            partSizes.add(part.length);
+        }
+        uploads.remove(uploadId);
+        objects.put(key, object.toByteArray());
+        lastCompletedPartSizes = List.copyOf(partSizes);
+        respond(exchange, 200, "<CompleteMultipartUploadResult><Key>" + key + "</Key></CompleteMultipartUploadResult>");
+    }
+
+    private void getRange(HttpExchange exchange, String key) throws IOException {
+        byte[] object = objects.get(key);
+        if (Objects.isNull(object)) {
+            respond(exchange, 404, "<Error><Code>NoSuchKey</Code></Error>");
+            return;
+        }
+        Matcher matcher = RANGE_PATTERN.matcher(Objects.requireNonNullElse(
+                exchange.getRequestHeaders().getFirst("Range"), ""));
+        if (!matcher.matches()) {
+            exchange.sendResponseHeaders(200, object.length == 0 ? -1 : object.length);
+            exchange.getResponseBody().write(object);
+            return;
+        }
+        int first = Integer.parseInt(matcher.group(1));
+        if (first >= object.length) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes */" + object.length);
+            respond(exchange, 416, "");
+            return;
+        }
+        int last = (int) Math.min(Long.parseLong(matcher.group(2)), object.length - 1L);
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last + "/" + object.length);
+        exchange.sendResponseHeaders(206, last - first + 1L);
+        exchange.getResponseBody().write(object, first, last - first + 1);
+    }
+
+    private static String etagOf(int partNumber, byte[] data) {
+        return "\"" + partNumber + "-" + data.length + "-" + Arrays.hashCode(data) + "\"";
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (Objects.isNull(rawQuery)) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            query.put(equals < 0 ? pair : pair.substring(0, equals), equals < 0 ? "" : pair.substring(equals + 1));
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,200 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.TuskottProcessor;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PackedDiskStorageTest {
+
+    @TempDir
+    Path storageDir;
+
+    /**
+     * 按编号顺序重放索引，删除记录只对同一打包文件中之前的添加记录生效，之后重新上传的同名文件不受影响
+     */
+    @Test
+    void recoverReplaysIndexesAndTombstones() throws Exception {
+        // 每个打包文件只保存一个条目
+        PackedDiskStorage storage = new PackedDiskStorage(Map.of("dir", storageDir.toString(), "pack-size", 1));
+        upload(storage, "kept", "kept".getBytes());
+        upload(storage, "removed", "removed".getBytes());
+        upload(storage, "replaced", "first".getBytes());
+        storage.remove("removed");
+        storage.remove("replaced");
+        upload(storage, "replaced", "second".getBytes());
+
+        PackedDiskStorage restarted = new PackedDiskStorage(Map.of("dir", storageDir.toString(), "pack-size", 1));
+        assertThat(read(restarted, "kept")).isEqualTo("kept".getBytes());
+        assertThat(read(restarted, "replaced")).isEqualTo("second".getBytes());
+        assertThatThrownBy(() -> restarted.streaming("removed")).isInstanceOf(FileNotFoundException.class);
+        // 删除后可以重新创建同名的上传
+        upload(restarted, "removed", "again".getBytes());
+        assertThat(read(restarted, "removed")).isEqualTo("again".getBytes());
+    }
+
+    /**
+     * 压缩时已打开的读取继续读取旧的打包文件，之后的读取使用搬移后的位置
+     */
+    @Test
+    void compactionKeepsOpenReadersValid() throws Exception {
+        byte[] live = filled(20, 'b');
+        PackedDiskStorage storage = new PackedDiskStorage(Map.of("dir", storageDir.toString(),
+                "pack-size", 32, "compaction-interval", 10));
+        // pack-1 保存 dead 与 live，pack-2 成为当前的打包文件
+        upload(storage, "dead", filled(20, 'a'));
+        upload(storage, "live", live);
+        upload(storage, "active", filled(20, 'c'));
+        Path firstPack = storageDir.resolve("packs").resolve("pack-1.dat");
+        assertThat(firstPack).exists();
+
+        try (InputStream reader = storage.streaming("live")) {
+            byte[] head = reader.readNBytes(5);
+            storage.remove("dead");
+            awaitDeleted(firstPack);
+            assertThat(concat(head, reader.readAllBytes())).isEqualTo(live);
+        }
+        assertThat(read(storage, "live")).isEqualTo(live);
+
+        PackedDiskStorage restarted = new PackedDiskStorage(Map.of("dir", storageDir.toString(), "pack-size", 32));
+        assertThat(read(restarted, "live")).isEqualTo(live);
+        assertThat(read(restarted, "active")).isEqualTo(filled(20, 'c'));
+        assertThatThrownBy(() -> restarted.streaming("dead")).isInstanceOf(FileNotFoundException.class);
+    }
+
+    /**
+     * 超过 pack-threshold 转为单独文件的 PATCH 校验失败时，回退单独文件的长度，客户端重新上传后完成
+     */
+    @Test
+    void spilledUploadRollsBackAfterChecksumMismatch() throws Exception {
+        byte[] data = new byte[48];
+        new Random(48).nextBytes(data);
+        PackedDiskStorage storage = new PackedDiskStorage(Map.of("dir", storageDir.toString(), "pack-threshold", 16));
+        InMemoryUploadResourceTracker tracker = new InMemoryUploadResourceTracker(Map.of());
+        tracker.create("spilled", (long) data.length, null);
+        storage.create("spilled");
+        TuskottProcessor processor = new TuskottProcessor(new TuskottProperties(), tracker, storage,
+                new InMemoryLockProvider(Map.of()));
+        try {
+            assertThat(patch(processor, data, 0, 10, sha256(data, 0, 10)).getStatus()).isEqualTo(204);
+            assertThat(listFiles(storageDir.resolve("loose"))).isEmpty();
+
+            MockHttpServletResponse mismatched = patch(processor, data, 10, 38, sha256(data, 0, 38));
+            assertThat(mismatched.getStatus()).isEqualTo(460);
+            assertThat(tracker.head("spilled").getUploadOffset()).isEqualTo(10L);
+            assertThat(listFiles(storageDir.resolve("loose"))).hasSize(1);
+            assertThat(read(storage, "spilled")).isEqualTo(Arrays.copyOf(data, 10));
+
+            assertThat(patch(processor, data, 10, 38, sha256(data, 10, 38)).getStatus()).isEqualTo(204);
+        } finally {
+            processor.close();
+        }
+        assertThat(read(storage, "spilled")).isEqualTo(data);
+        // 单独文件不会再被打包
+        assertThat(storageDir.resolve("packs").resolve("pack-1.dat")).isEmptyFile();
+    }
+
+    /**
+     * 写入打包文件失败时上传保留在内存中，仍然可以读取，再次 complete() 时完成打包
+     */
+    @Test
+    void failedCompleteKeepsTheUploadInMemory() throws Exception {
+        PackedDiskStorage storage = new PackedDiskStorage(Map.of("dir", storageDir.toString(), "pack-size", 1));
+        upload(storage, "first", "first".getBytes());
+        // 下一次打包需要创建新的打包文件，移除目录使其失败，已打开的 pack-1 不受影响
+        Path packDir = storageDir.resolve("packs");
+        for (Path file : listFiles(packDir)) {
+            Files.delete(file);
+        }
+        Files.delete(packDir);
+
+        storage.create("second");
+        storage.write("second", new ByteArrayInputStream("second".getBytes()), 0L);
+        storage.complete("second");
+        assertThat(read(storage, "second")).isEqualTo("second".getBytes());
+
+        Files.createDirectories(packDir);
+        storage.complete("second");
+        assertThat(listFiles(packDir)).isNotEmpty();
+        PackedDiskStorage restarted = new PackedDiskStorage(Map.of("dir", storageDir.toString(), "pack-size", 1));
+        assertThat(read(restarted, "second")).isEqualTo("second".getBytes());
+    }
+
+    private static void upload(PackedDiskStorage storage, String resourceId, byte[] data) throws Exception {
+        storage.create(resourceId);
+        storage.write(resourceId, new ByteArrayInputStream(data), 0L);
+        storage.complete(resourceId);
+    }
+
+    private static byte[] read(Storage storage, String resourceId) throws Exception {
+        try (InputStream inputStream = storage.streaming(resourceId)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static MockHttpServletResponse patch(TuskottProcessor processor, byte[] data, int offset, int length,
+                                                 String checksum) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/tus/files/spilled");
+        request.addHeader("Tus-Resumable", "1.0.0");
+        request.addHeader("Upload-Offset", String.valueOf(offset));
+        request.addHeader("Upload-Checksum", checksum);
+        request.setContentType("application/offset+octet-stream");
+        request.setContent(Arrays.copyOfRange(data, offset, offset + length));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        processor.patch("spilled", request, response);
+        return response;
+    }
+
+    private static String sha256(byte[] data, int offset, int length) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(data, offset, length);
+        return "sha256 " + Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static byte[] filled(int length, char ch) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) ch);
+        return data;
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail) {
+        byte[] data = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, data, head.length, tail.length);
+        return data;
+    }
+
+    private static void awaitDeleted(Path file) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Files.exists(file) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(file).doesNotExist();
+    }
+
+    private static List<Path> listFiles(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+}
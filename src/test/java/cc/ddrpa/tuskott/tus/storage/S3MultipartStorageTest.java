@@ -0,0 +1,185 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import cc.ddrpa.tuskott.properties.TuskottProperties;
+import cc.ddrpa.tuskott.tus.TuskottProcessor;
+import cc.ddrpa.tuskott.tus.lock.InMemoryLockProvider;
+import cc.ddrpa.tuskott.tus.resource.InMemoryUploadResourceTracker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class S3MultipartStorageTest {
+
+    private static final String BUCKET = "tuskott";
+    private static final String RESOURCE_ID = "upload";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+    private static final int MiB = 1024 * 1024;
+
+    private FakeS3Server server;
+    private S3MultipartStorage storage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new FakeS3Server(BUCKET);
+        storage = new S3MultipartStorage(Map.of(
+                "endpoint", server.endpoint(),
+                "bucket", BUCKET,
+                "access-key", "access",
+                "secret-key", "secret",
+                "part-size", PART_SIZE,
+                "upload-threads", 2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    /**
+     * 多个长度不是分片大小整数倍的 PATCH，剩余数据跨 PATCH 拼接成完整的分片
+     */
+    @Test
+    void remainderIsCarriedAcrossWrites() throws Exception {
+        byte[] data = randomBytes(14 * MiB);
+        storage.create(RESOURCE_ID);
+        long offset = 0L;
+        for (int length : new int[]{3 * MiB, 4 * MiB, 6 * MiB, MiB}) {
+            offset = storage.write(RESOURCE_ID, slice(data, offset, length), offset);
+        }
+        assertThat(offset).isEqualTo(data.length);
+        storage.complete(RESOURCE_ID);
+
+        assertThat(server.lastCompletedPartSizes()).containsExactly(PART_SIZE, PART_SIZE, 4 * MiB);
+        assertThat(server.object(RESOURCE_ID)).isEqualTo(data);
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(data);
+        }
+    }
+
+    /**
+     * 合并失败后再次调用 complete()，最后一个分片不能被重复计入
+     */
+    @Test
+    void completeCanBeRetriedAfterFailure() throws Exception {
+        byte[] data = randomBytes(7 * MiB);
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, new ByteArrayInputStream(data), 0L);
+
+        server.failComplete.set(1);
+        assertThatThrownBy(() -> storage.complete(RESOURCE_ID)).isInstanceOf(IOException.class);
+        storage.complete(RESOURCE_ID);
+
+        assertThat(server.lastCompletedPartSizes()).containsExactly(PART_SIZE, 2 * MiB);
+        assertThat(server.object(RESOURCE_ID)).isEqualTo(data);
+        assertThat(server.pendingUploads()).isZero();
+    }
+
+    /**
+     * 最后一个 PATCH 合并对象失败时不提交偏移量，客户端重新上传最后一个 chunk 即可完成上传
+     */
+    @Test
+    void failedCompletionLeavesTheFinalPatchRetryable() throws Exception {
+        byte[] data = randomBytes(7 * MiB);
+        InMemoryUploadResourceTracker tracker = new InMemoryUploadResourceTracker(Map.of());
+        tracker.create(RESOURCE_ID, (long) data.length, null);
+        storage.create(RESOURCE_ID);
+        TuskottProcessor processor = new TuskottProcessor(new TuskottProperties(), tracker, storage,
+                new InMemoryLockProvider(Map.of()));
+        try {
+            assertThat(patch(processor, data, 0, 6 * MiB).getStatus()).isEqualTo(204);
+
+            server.failComplete.set(1);
+            MockHttpServletResponse failed = patch(processor, data, 6 * MiB, MiB);
+            assertThat(failed.getStatus()).isEqualTo(500);
+            assertThat(tracker.head(RESOURCE_ID).getUploadOffset()).isEqualTo(6L * MiB);
+
+            MockHttpServletResponse retried = patch(processor, data, 6 * MiB, MiB);
+            assertThat(retried.getStatus()).isEqualTo(204);
+            assertThat(retried.getHeader("Upload-Offset")).isEqualTo(String.valueOf(data.length));
+        } finally {
+            processor.close();
+        }
+        assertThat(server.lastCompletedPartSizes()).containsExactly(PART_SIZE, 2 * MiB);
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(data);
+        }
+    }
+
+    /**
+     * 分片上传失败时恢复到写入之前的剩余数据，客户端从原偏移量重新上传
+     */
+    @Test
+    void failedPartUploadRestoresTheRemainder() throws Exception {
+        byte[] data = randomBytes(9 * MiB);
+        storage.create(RESOURCE_ID);
+        long offset = storage.write(RESOURCE_ID, slice(data, 0L, 3 * MiB), 0L);
+
+        // 超过分片上传的重试次数
+        server.failUploadPart.set(3);
+        assertThatThrownBy(() -> storage.write(RESOURCE_ID, slice(data, 3 * MiB, 6 * MiB), 3L * MiB))
+                .isInstanceOf(BlobAccessException.class);
+        offset = storage.write(RESOURCE_ID, slice(data, offset, 6 * MiB), offset);
+        assertThat(offset).isEqualTo(data.length);
+        storage.complete(RESOURCE_ID);
+
+        assertThat(server.lastCompletedPartSizes()).containsExactly(PART_SIZE, 4 * MiB);
+        assertThat(server.object(RESOURCE_ID)).isEqualTo(data);
+    }
+
+    @Test
+    void emptyUploadCompletesWithAnEmptyPart() throws Exception {
+        storage.create(RESOURCE_ID);
+        storage.complete(RESOURCE_ID);
+
+        assertThat(server.lastCompletedPartSizes()).containsExactly(0);
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEmpty();
+        }
+    }
+
+    @Test
+    void removeAbortsTheMultipartUpload() throws Exception {
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, new ByteArrayInputStream(randomBytes(MiB)), 0L);
+        storage.remove(List.of(RESOURCE_ID));
+
+        assertThat(server.pendingUploads()).isZero();
+        assertThat(server.object(RESOURCE_ID)).isNull();
+    }
+
+    private static MockHttpServletResponse patch(TuskottProcessor processor, byte[] data, int offset, int length)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/tus/files/" + RESOURCE_ID);
+        request.addHeader("Tus-Resumable", "1.0.0");
+        request.addHeader("Upload-Offset", String.valueOf(offset));
+        request.setContentType("application/offset+octet-stream");
+        request.setContent(Arrays.copyOfRange(data, offset, offset + length));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        processor.patch(RESOURCE_ID, request, response);
+        return response;
+    }
+
+    private static InputStream slice(byte[] data, long offset, int length) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(data, (int) offset, (int) offset + length));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
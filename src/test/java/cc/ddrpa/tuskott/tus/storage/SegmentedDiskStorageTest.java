@@ -0,0 +1,170 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentedDiskStorageTest {
+
+    private static final String RESOURCE_ID = "upload";
+    private static final byte[] DATA = "0123456789abcdefghijklmnopqrst".getBytes();
+
+    @TempDir
+    Path storageDir;
+
+    /**
+     * 回退到分段中间时截断该分段，删除之后的分段，续传的数据保存为新的分段
+     */
+    @Test
+    void rollbackTruncatesTheSegmentSpanningTheOffset() throws Exception {
+        SegmentedDiskStorage storage = newStorage();
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, slice(0, 10), 0L);
+        storage.write(RESOURCE_ID, slice(10, 10), 10L);
+
+        storage.rollback(RESOURCE_ID, 5L);
+        assertThat(fileNames()).containsExactlyInAnyOrder("manifest", "segment-0");
+        assertThat(uploadDir().resolve("segment-0")).hasSize(5);
+        assertThat(read(storage)).isEqualTo(Arrays.copyOf(DATA, 5));
+        assertThatThrownBy(() -> storage.write(RESOURCE_ID, slice(10, 10), 10L))
+                .isInstanceOf(BlobAccessException.class);
+
+        assertThat(storage.write(RESOURCE_ID, slice(5, 25), 5L)).isEqualTo(DATA.length);
+        assertThat(read(storage)).isEqualTo(DATA);
+    }
+
+    /**
+     * 读取期间分段被合并并删除，输入流按新的清单在合并后的文件中继续读取
+     */
+    @Test
+    void compactionSwapsTheManifestUnderAnOpenReader() throws Exception {
+        SegmentedDiskStorage storage = newStorage();
+        storage.create(RESOURCE_ID);
+        for (int offset = 0; offset < DATA.length; offset += 10) {
+            storage.write(RESOURCE_ID, slice(offset, 10), (long) offset);
+        }
+
+        try (InputStream reader = storage.streaming(RESOURCE_ID)) {
+            byte[] head = reader.readNBytes(5);
+            storage.complete(RESOURCE_ID);
+            awaitCompacted();
+            byte[] tail = reader.readAllBytes();
+            byte[] data = Arrays.copyOf(head, head.length + tail.length);
+            System.arraycopy(tail, 0, data, head.length, tail.length);
+            assertThat(data).isEqualTo(DATA);
+        }
+        assertThat(read(storage)).isEqualTo(DATA);
+    }
+
+    /**
+     * 服务重启后从 manifest 文件加载清单，继续读取、续传与回退
+     */
+    @Test
+    void manifestIsReloadedAfterRestart() throws Exception {
+        SegmentedDiskStorage storage = newStorage();
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, slice(0, 10), 0L);
+        storage.write(RESOURCE_ID, slice(10, 10), 10L);
+
+        SegmentedDiskStorage restarted = newStorage();
+        assertThat(read(restarted)).isEqualTo(Arrays.copyOf(DATA, 20));
+        assertThatThrownBy(() -> restarted.write(RESOURCE_ID, slice(0, 10), 0L))
+                .isInstanceOf(BlobAccessException.class);
+        restarted.rollback(RESOURCE_ID, 15L);
+        assertThat(restarted.write(RESOURCE_ID, slice(15, 15), 15L)).isEqualTo(DATA.length);
+        restarted.complete(RESOURCE_ID);
+        awaitCompacted();
+
+        assertThat(read(newStorage())).isEqualTo(DATA);
+    }
+
+    /**
+     * 请求体在分段中间断开时保存已收到的数据，不留下临时文件
+     */
+    @Test
+    void interruptedWriteKeepsTheReceivedBytes() throws Exception {
+        SegmentedDiskStorage storage = new SegmentedDiskStorage(Map.of("dir", storageDir.toString(), "buffer-size", 4));
+        storage.create(RESOURCE_ID);
+
+        assertThat(storage.write(RESOURCE_ID, new BrokenInputStream(Arrays.copyOf(DATA, 12)), 0L)).isEqualTo(12L);
+        assertThat(fileNames()).containsExactlyInAnyOrder("manifest", "segment-0");
+        assertThat(read(storage)).isEqualTo(Arrays.copyOf(DATA, 12));
+
+        assertThat(storage.write(RESOURCE_ID, slice(12, 18), 12L)).isEqualTo(DATA.length);
+        assertThat(read(storage)).isEqualTo(DATA);
+    }
+
+    private SegmentedDiskStorage newStorage() throws IOException {
+        return new SegmentedDiskStorage(Map.of("dir", storageDir.toString()));
+    }
+
+    private static InputStream slice(int offset, int length) {
+        return new ByteArrayInputStream(DATA, offset, length);
+    }
+
+    private static byte[] read(Storage storage) throws Exception {
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private Path uploadDir() {
+        return storageDir.resolve(RESOURCE_ID);
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (var files = Files.list(uploadDir())) {
+            return files.map(file -> file.getFileName().toString()).toList();
+        }
+    }
+
+    private void awaitCompacted() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!fileNames().stream().sorted().toList().equals(List.of("compacted", "manifest"))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(fileNames()).containsExactlyInAnyOrder("compacted", "manifest");
+    }
+
+    /**
+     * 读完给定的数据后抛出异常，模拟客户端断开
+     */
+    private static class BrokenInputStream extends InputStream {
+
+        private final ByteArrayInputStream data;
+
+        BrokenInputStream(byte[] data) {
+            this.data = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = data.read(b, off, len);
+            if (n < 0) {
+                throw new IOException("Connection reset");
+            }
+            return n;
+        }
+    }
+}
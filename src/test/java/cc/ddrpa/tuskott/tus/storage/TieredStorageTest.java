@@ -0,0 +1,174 @@
+package cc.ddrpa.tuskott.tus.storage;
+
+import cc.ddrpa.tuskott.exception.BlobAccessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TieredStorageTest {
+
+    private static final String RESOURCE_ID = "upload";
+    private static final byte[] DATA = "tiered storage".getBytes();
+
+    @TempDir
+    Path hotDir;
+    @TempDir
+    Path coldDir;
+
+    @Test
+    void completedUploadMovesToTheColdTier() throws Exception {
+        LocalDiskStorage cold = new LocalDiskStorage(Map.of("dir", coldDir.toString()));
+        TieredStorage storage = new TieredStorage(new LocalDiskStorage(Map.of("dir", hotDir.toString())), cold, 1);
+        upload(storage);
+
+        awaitEmpty(hotDir);
+        try (InputStream inputStream = storage.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(DATA);
+        }
+        storage.remove(RESOURCE_ID);
+        assertThat(listFiles(coldDir)).isEmpty();
+    }
+
+    /**
+     * 服务重启后没有迁移记录，remove() 仍然要删除冷层的副本
+     */
+    @Test
+    void removeAfterRestartDeletesTheColdCopy() throws Exception {
+        TieredStorage storage = new TieredStorage(new LocalDiskStorage(Map.of("dir", hotDir.toString())),
+                new LocalDiskStorage(Map.of("dir", coldDir.toString())), 1);
+        upload(storage);
+        awaitEmpty(hotDir);
+
+        TieredStorage restarted = new TieredStorage(new LocalDiskStorage(Map.of("dir", hotDir.toString())),
+                new LocalDiskStorage(Map.of("dir", coldDir.toString())), 1);
+        restarted.remove(RESOURCE_ID);
+        assertThat(listFiles(coldDir)).isEmpty();
+        assertThatThrownBy(() -> restarted.streaming(RESOURCE_ID)).isInstanceOf(FileNotFoundException.class);
+    }
+
+    /**
+     * 重启前尚未迁移的文件留在热层，重启后仍可读取和删除
+     */
+    @Test
+    void unmigratedUploadStaysOnTheHotTierAfterRestart() throws Exception {
+        LocalDiskStorage hot = new LocalDiskStorage(Map.of("dir", hotDir.toString()));
+        hot.create(RESOURCE_ID);
+        hot.write(RESOURCE_ID, new ByteArrayInputStream(DATA), 0L);
+
+        TieredStorage restarted = new TieredStorage(new LocalDiskStorage(Map.of("dir", hotDir.toString())),
+                new LocalDiskStorage(Map.of("dir", coldDir.toString())), 1);
+        try (InputStream inputStream = restarted.streaming(RESOURCE_ID)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(DATA);
+        }
+        assertThat(listFiles(coldDir)).isEmpty();
+        restarted.remove(RESOURCE_ID);
+        assertThat(listFiles(hotDir)).isEmpty();
+    }
+
+    /**
+     * remove() 发生在迁移的校验阶段，即检查过 migrating 之后、记录迁移结果之前，冷层的副本必须被删除
+     */
+    @Test
+    void removeDuringVerificationDeletesTheColdCopy() throws Exception {
+        CountDownLatch verifying = new CountDownLatch(1);
+        CountDownLatch removed = new CountDownLatch(1);
+        PausingStorage cold = new PausingStorage(new LocalDiskStorage(Map.of("dir", coldDir.toString())),
+                verifying, removed);
+        TieredStorage storage = new TieredStorage(new LocalDiskStorage(Map.of("dir", hotDir.toString())), cold, 1);
+        upload(storage);
+
+        assertThat(verifying.await(5, TimeUnit.SECONDS)).isTrue();
+        storage.remove(RESOURCE_ID);
+        removed.countDown();
+
+        awaitEmpty(coldDir);
+        awaitEmpty(hotDir);
+        assertThatThrownBy(() -> storage.streaming(RESOURCE_ID)).isInstanceOf(FileNotFoundException.class);
+    }
+
+    private static void upload(TieredStorage storage) throws Exception {
+        storage.create(RESOURCE_ID);
+        storage.write(RESOURCE_ID, new ByteArrayInputStream(DATA), 0L);
+        storage.complete(RESOURCE_ID);
+    }
+
+    private static void awaitEmpty(Path dir) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!listFiles(dir).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(listFiles(dir)).isEmpty();
+    }
+
+    private static List<Path> listFiles(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.toList();
+        }
+    }
+
+    /**
+     * 迁移校验读取冷层时暂停，直到测试完成 remove()
+     */
+    private static class PausingStorage implements Storage {
+
+        private final Storage delegate;
+        private final CountDownLatch verifying;
+        private final CountDownLatch resume;
+
+        PausingStorage(Storage delegate, CountDownLatch verifying, CountDownLatch resume) {
+            this.delegate = delegate;
+            this.verifying = verifying;
+            this.resume = resume;
+        }
+
+        @Override
+        public void create(String resourceId) throws BlobAccessException, IOException {
+            delegate.create(resourceId);
+        }
+
+        @Override
+        public Long write(String resourceId, InputStream inputStream, Long uploadOffset)
+                throws BlobAccessException, IOException {
+            return delegate.write(resourceId, inputStream, uploadOffset);
+        }
+
+        @Override
+        public void complete(String resourceId) throws BlobAccessException, IOException {
+            delegate.complete(resourceId);
+        }
+
+        @Override
+        public void remove(List<String> resourceIds) {
+            delegate.remove(resourceIds);
+        }
+
+        @Override
+        public void remove(String resourceId) {
+            delegate.remove(resourceId);
+        }
+
+        @Override
+        public InputStream streaming(String resourceId) throws IOException, BlobAccessException {
+            verifying.countDown();
+            try {
+                resume.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.streaming(resourceId);
+        }
+    }
+}